@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with multiple producers and a single consumer.
+ *
+ * <p>Each slot carries a sequence number, which tells the producers whether the slot is free
+ * and the consumer whether it has been filled. The producers claim the slots by CAS on the
+ * tail, the consumer advances the head without synchronization.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class RingBuffer<E> {
+
+  private final int mask;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicReferenceArray<E> elements;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity
+   *          Minimal capacity, will be rounded up to the next power of 2.
+   */
+  RingBuffer(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("invalid capacity " + capacity);
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.mask = size - 1;
+    this.sequences = new AtomicLongArray(size);
+    this.elements = new AtomicReferenceArray<>(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  } // constructor
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Adds the element if the buffer is not full.
+   *
+   * @param element
+   *          Element to be added. Must not be {@code null}.
+   * @return whether the element has been added.
+   */
+  boolean offer(E element) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          elements.set(index, element);
+          // publish the element to the consumer
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // the slot has not been consumed yet
+        return false;
+      } else {
+        // claimed by another producer
+        pos = tail.get();
+      }
+    }
+  } // method offer
+
+  /**
+   * Removes the oldest element. Must be called only by the consumer thread.
+   *
+   * @return the oldest element, or {@code null} if the buffer is empty.
+   */
+  E poll() {
+    long pos = head.get();
+    int index = (int) pos & mask;
+    if (sequences.get(index) != pos + 1) {
+      return null;
+    }
+
+    E element = elements.get(index);
+    elements.set(index, null);
+    // free the slot for the producers
+    sequences.set(index, pos + mask + 1);
+    head.lazySet(pos + 1);
+    return element;
+  } // method poll
+
+  /**
+   * Removes at most {@code maxElements} elements. Must be called only by the consumer thread.
+   *
+   * @param list
+   *          List to which the elements are added.
+   * @param maxElements
+   *          Maximal number of elements to be removed.
+   * @return number of removed elements.
+   */
+  int drainTo(List<E> list, int maxElements) {
+    int num = 0;
+    E element;
+    while (num < maxElements && (element = poll()) != null) {
+      list.add(element);
+      num++;
+    }
+    return num;
+  } // method drainTo
+
+  boolean isEmpty() {
+    long pos = head.get();
+    return sequences.get((int) pos & mask) != pos + 1;
+  }
+
+  /**
+   * Returns the approximate number of elements in the buffer.
+   * @return the number of elements.
+   */
+  int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, mask + 1));
+  }
+
+}
@@ -20,13 +20,20 @@ package org.xipki.audit.services;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.net.ssl.SSLContext;
 
@@ -40,6 +47,7 @@ import org.xipki.audit.AuditServiceRuntimeException;
 import org.xipki.audit.AuditStatus;
 import org.xipki.audit.PciAuditEvent;
 import org.xipki.util.FileOrBinary;
+import org.xipki.util.IoUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.http.SslContextConf;
 
@@ -54,12 +62,97 @@ import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
 /**
  * Syslog audit service.
  *
+ * <p>In the asynchronous mode (property {@code async}), the messages are formatted by the
+ * calling thread, put in a bounded ring buffer, and sent by a dedicated thread. If the buffer is
+ * full, the {@link OverflowPolicy} applies.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 public class SyslogAuditService implements AuditService {
 
+  /**
+   * What to do with a message if the ring buffer of the asynchronous mode is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * Wait until the buffer has space.
+     */
+    BLOCK,
+
+    /**
+     * Discard the message, and count it.
+     */
+    DROP,
+
+    /**
+     * Write the message to the local spill file.
+     */
+    SPILL;
+
+    public static OverflowPolicy forName(String text) {
+      for (OverflowPolicy value : values()) {
+        if (value.name().equalsIgnoreCase(text)) {
+          return value;
+        }
+      }
+
+      throw new IllegalArgumentException("invalid OverflowPolicy " + text);
+    } // method forName
+
+  } // class OverflowPolicy
+
+  /**
+   * Sends the messages in the ring buffer to the syslog server.
+   */
+  private class Sender implements Runnable {
+
+    @Override
+    public void run() {
+      List<SyslogMessage> batch = new ArrayList<>(batchSize);
+      long nextMetricsTime = System.currentTimeMillis() + METRICS_INTERVAL_MS;
+
+      while (true) {
+        ringBuffer.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+          if (!running) {
+            break;
+          }
+
+          senderWaiting = true;
+          // check again to avoid missing the wakeup of a producer
+          if (ringBuffer.isEmpty()) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+          }
+          senderWaiting = false;
+        } else {
+          for (SyslogMessage sm : batch) {
+            sendMessage(sm);
+          }
+          batch.clear();
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= nextMetricsTime) {
+          logMetrics();
+          nextMetricsTime = now + METRICS_INTERVAL_MS;
+        }
+      }
+    } // method run
+
+  } // class Sender
+
+  private class ShutdownHook implements Runnable {
+
+    @Override
+    public void run() {
+      close();
+    }
+
+  } // class ShutdownHook
+
   /**
    * The default port is 514.
    */
@@ -85,8 +178,24 @@ public class SyslogAuditService implements AuditService {
    */
   public static final String DFLT_MESSAGE_FORMAT = "rfc_5424";
 
+  /**
+   * The default capacity of the ring buffer in the asynchronous mode is 8192.
+   */
+  public static final int DFLT_QUEUE_SIZE = 8192;
+
+  /**
+   * The default number of messages the sender takes from the ring buffer at once is 100.
+   */
+  public static final int DFLT_BATCH_SIZE = 100;
+
   private static final Logger LOG = LoggerFactory.getLogger(SyslogAuditService.class);
 
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final long METRICS_INTERVAL_MS = 60000;
+
   /**
    * The syslog client instance.
    */
@@ -111,12 +220,47 @@ public class SyslogAuditService implements AuditService {
 
   private boolean initialized;
 
+  private MessageFormat msgFormat;
+
+  private RingBuffer<SyslogMessage> ringBuffer;
+
+  private int batchSize = DFLT_BATCH_SIZE;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+  private Path spillFile;
+
+  private Writer spillWriter;
+
+  private Thread senderThread;
+
+  private Thread shutdownHook;
+
+  private volatile boolean running;
+
+  private volatile boolean senderWaiting;
+
+  private final AtomicLong sentCount = new AtomicLong();
+
+  private final AtomicLong failedCount = new AtomicLong();
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private final AtomicLong spilledCount = new AtomicLong();
+
+  private long lastLoggedDroppedCount;
+
+  private long lastLoggedSpilledCount;
+
   public SyslogAuditService() {
   }
 
   @Override
   public void init(String conf) {
     LOG.info("initializing: {}", SyslogAuditService.class);
+    // stop the sender of the previous initialization
+    close();
+
     Properties props = loadProperties(conf.trim());
     // host
     String host = getString(props, "host", DFLT_SYSLOG_HOST);
@@ -138,7 +282,6 @@ public class SyslogAuditService implements AuditService {
     String protocol = getString(props, "protocol", DFLT_SYSLOG_PROTOCOL);
     // messageFormat
     this.messageFormat = getString(props, "messageFormat", DFLT_MESSAGE_FORMAT);
-    MessageFormat msgFormat;
     if ("rfc3164".equalsIgnoreCase(messageFormat) || "rfc_3164".equalsIgnoreCase(messageFormat)) {
       msgFormat = MessageFormat.RFC_3164;
     } else if ("rfc5424".equalsIgnoreCase(messageFormat)
@@ -224,6 +367,39 @@ public class SyslogAuditService implements AuditService {
     }
     syslog.setDefaultFacility(sysFacility);
 
+    // asynchronous mode
+    if (getBoolean(props, "async", false)) {
+      int queueSize = getInt(props, "queueSize", DFLT_QUEUE_SIZE);
+      this.ringBuffer = new RingBuffer<>(queueSize > 0 ? queueSize : DFLT_QUEUE_SIZE);
+
+      ti = getInt(props, "batchSize", DFLT_BATCH_SIZE);
+      this.batchSize = (ti > 0) ? ti : DFLT_BATCH_SIZE;
+
+      String policy = getString(props, "overflowPolicy", OverflowPolicy.BLOCK.name());
+      try {
+        this.overflowPolicy = OverflowPolicy.forName(policy);
+      } catch (IllegalArgumentException ex) {
+        LOG.warn("invalid overflowPolicy '{}', use the default one '{}'", policy,
+            OverflowPolicy.BLOCK);
+        this.overflowPolicy = OverflowPolicy.BLOCK;
+      }
+
+      if (overflowPolicy == OverflowPolicy.SPILL) {
+        String file = getString(props, "spillFile", "logs/audit-syslog-spill.log");
+        this.spillFile = Paths.get(IoUtil.expandFilepath(file));
+      }
+
+      this.running = true;
+      this.senderThread = new Thread(new Sender(), "audit-syslog-sender");
+      senderThread.setDaemon(true);
+      senderThread.start();
+      this.shutdownHook = new Thread(new ShutdownHook(), "audit-syslog-close");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+      LOG.info("asynchronous mode: queueSize={}, batchSize={}, overflowPolicy={}",
+          ringBuffer.capacity(), batchSize, overflowPolicy);
+    }
+
     // after we're finished set initialized to true
     this.initialized = true;
     LOG.info("initialized: {}", SyslogAuditService.class);
@@ -283,12 +459,7 @@ public class SyslogAuditService implements AuditService {
     sm.setMsgId(event.getName());
     sm.setMsg(sb);
 
-    try {
-      syslog.sendMessage(sm);
-    } catch (Throwable th) {
-      LOG.error("could not send syslog message: {}", th.getMessage());
-      LOG.debug("could not send syslog message", th);
-    }
+    send(sm);
   } // method logEvent(AuditEvent)
 
   @Override
@@ -315,13 +486,165 @@ public class SyslogAuditService implements AuditService {
     sm.setSeverity(getSeverity(event.getLevel()));
     sm.setMsg(msg);
 
+    send(sm);
+  } // method logEvent(PCIAuditEvent)
+
+  private void send(SyslogMessage sm) {
+    if (ringBuffer == null || !running) {
+      sendMessage(sm);
+      return;
+    }
+
+    if (ringBuffer.offer(sm)) {
+      wakeUpSender();
+      return;
+    }
+
+    switch (overflowPolicy) {
+      case BLOCK:
+        while (!ringBuffer.offer(sm)) {
+          if (!running) {
+            sendMessage(sm);
+            return;
+          }
+          wakeUpSender();
+          LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        wakeUpSender();
+        break;
+      case DROP:
+        if (droppedCount.incrementAndGet() == 1) {
+          LOG.warn("audit queue is full, dropping syslog messages");
+        }
+        break;
+      case SPILL:
+        spill(sm);
+        break;
+      default:
+        throw new IllegalStateException("unknown OverflowPolicy " + overflowPolicy);
+    }
+  } // method send
+
+  private void wakeUpSender() {
+    if (senderWaiting) {
+      LockSupport.unpark(senderThread);
+    }
+  }
+
+  private void sendMessage(SyslogMessage sm) {
     try {
       syslog.sendMessage(sm);
+      sentCount.incrementAndGet();
     } catch (Throwable th) {
+      failedCount.incrementAndGet();
       LOG.error("could not send syslog message: {}", th.getMessage());
       LOG.debug("could not send syslog message", th);
     }
-  } // method logEvent(PCIAuditEvent)
+  } // method sendMessage
+
+  private synchronized void spill(SyslogMessage sm) {
+    try {
+      if (spillWriter == null) {
+        IoUtil.mkdirsParent(spillFile);
+        spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        LOG.warn("audit queue is full, writing syslog messages to {}", spillFile);
+      }
+
+      sm.toSyslogMessage(msgFormat, spillWriter);
+      spillWriter.write('\n');
+      spillWriter.flush();
+      spilledCount.incrementAndGet();
+    } catch (IOException ex) {
+      droppedCount.incrementAndGet();
+      LOG.error("could not write syslog message to {}: {}", spillFile, ex.getMessage());
+    }
+  } // method spill
+
+  /**
+   * Returns the number of messages in the ring buffer of the asynchronous mode.
+   * @return the queue depth, 0 in the synchronous mode.
+   */
+  public int getQueueDepth() {
+    return ringBuffer == null ? 0 : ringBuffer.size();
+  }
+
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public long getSpilledCount() {
+    return spilledCount.get();
+  }
+
+  private void logMetrics() {
+    long dropped = droppedCount.get();
+    long spilled = spilledCount.get();
+    if (dropped != lastLoggedDroppedCount || spilled != lastLoggedSpilledCount) {
+      LOG.warn("audit queue: depth={}, sent={}, failed={}, dropped={}, spilled={}",
+          getQueueDepth(), sentCount.get(), failedCount.get(), dropped, spilled);
+      lastLoggedDroppedCount = dropped;
+      lastLoggedSpilledCount = spilled;
+    } else {
+      LOG.debug("audit queue: depth={}, sent={}, failed={}",
+          getQueueDepth(), sentCount.get(), failedCount.get());
+    }
+  } // method logMetrics
+
+  /**
+   * Stops the asynchronous mode, and sends the messages remaining in the ring buffer.
+   */
+  public void close() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException ex) {
+        // JVM is shutting down
+      }
+    }
+    shutdownHook = null;
+
+    LockSupport.unpark(senderThread);
+    try {
+      senderThread.join(10000);
+    } catch (InterruptedException ex) {
+      LOG.warn("interrupted while waiting for the sender");
+    }
+
+    if (!senderThread.isAlive()) {
+      // messages put in the buffer while closing
+      SyslogMessage sm;
+      while ((sm = ringBuffer.poll()) != null) {
+        sendMessage(sm);
+      }
+    }
+
+    synchronized (this) {
+      if (spillWriter != null) {
+        try {
+          spillWriter.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close {}: {}", spillFile, ex.getMessage());
+        }
+        spillWriter = null;
+      }
+    }
+
+    logMetrics();
+  } // method close
 
   private static boolean notEmpty(String text) {
     return text != null && !text.isEmpty();
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * RingBuffer test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class RingBufferTest {
+
+  @Test
+  public void testCapacity() {
+    Assert.assertEquals(1, new RingBuffer<Integer>(1).capacity());
+    Assert.assertEquals(8, new RingBuffer<Integer>(8).capacity());
+    Assert.assertEquals(16, new RingBuffer<Integer>(9).capacity());
+
+    try {
+      new RingBuffer<Integer>(0);
+      Assert.fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFullAndEmpty() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(4);
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertNull(buffer.poll());
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(buffer.offer(i));
+    }
+    Assert.assertFalse("offer to full buffer", buffer.offer(4));
+    Assert.assertEquals(4, buffer.size());
+
+    Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+    Assert.assertTrue(buffer.offer(4));
+    Assert.assertFalse(buffer.offer(5));
+
+    for (int i = 1; i < 5; i++) {
+      Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+    }
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void testWrapAround() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(4);
+    List<Integer> list = new ArrayList<>();
+    int next = 0;
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 3; i++) {
+        Assert.assertTrue(buffer.offer(next + i));
+      }
+
+      list.clear();
+      Assert.assertEquals(2, buffer.drainTo(list, 2));
+      Assert.assertEquals(1, buffer.drainTo(list, 10));
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals(Integer.valueOf(next + i), list.get(i));
+      }
+      next += 3;
+    }
+    Assert.assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  public void testMultipleProducers() throws Exception {
+    final int numProducers = 4;
+    final int numPerProducer = 100000;
+    final RingBuffer<long[]> buffer = new RingBuffer<>(64);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    Thread[] producers = new Thread[numProducers];
+    for (int i = 0; i < numProducers; i++) {
+      final int producer = i;
+      producers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException ex) {
+            return;
+          }
+
+          for (long j = 0; j < numPerProducer; j++) {
+            long[] element = {producer, j};
+            while (!buffer.offer(element)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      producers[i].start();
+    }
+
+    start.countDown();
+
+    // the elements of each producer must be consumed completely and in order
+    long[] expectedNext = new long[numProducers];
+    int count = 0;
+    final int total = numProducers * numPerProducer;
+    long deadline = System.currentTimeMillis() + 60000;
+    while (count < total) {
+      long[] element = buffer.poll();
+      if (element == null) {
+        Assert.assertTrue("timeout, received " + count + " elements",
+            System.currentTimeMillis() < deadline);
+        Thread.yield();
+        continue;
+      }
+
+      int producer = (int) element[0];
+      Assert.assertEquals("producer " + producer, expectedNext[producer], element[1]);
+      expectedNext[producer]++;
+      count++;
+    }
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertNull(buffer.poll());
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.benchmark.ocsp;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Utility functions for the OCSP benchmarks.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class OcspBenchmarkUtil {
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private OcspBenchmarkUtil() {
+  }
+
+  /**
+   * Creates CertIDs with the same issuer.
+   *
+   * @param hashAlgo
+   *          Hash algorithm of the CertIDs.
+   * @param numCertIds
+   *          Number of CertIDs.
+   * @return the CertIDs.
+   */
+  public static List<CertID> createCertIds(HashAlgo hashAlgo, int numCertIds) {
+    DEROctetString nameHash = new DEROctetString(randomBytes(hashAlgo.getLength()));
+    DEROctetString keyHash = new DEROctetString(randomBytes(hashAlgo.getLength()));
+
+    List<CertID> certIds = new ArrayList<>(numCertIds);
+    for (int i = 0; i < numCertIds; i++) {
+      certIds.add(new CertID(hashAlgo.getAlgorithmIdentifier(), nameHash, keyHash,
+          new ASN1Integer(randomSerialNumber())));
+    }
+    return certIds;
+  } // method createCertIds
+
+  /**
+   * Creates an unsigned OCSP request.
+   *
+   * @param certIds
+   *          CertIDs.
+   * @param withNonce
+   *          Whether the nonce extension is contained.
+   * @return the DER-encoded OCSPRequest.
+   * @throws IOException
+   *           if error occurs while encoding the request.
+   */
+  public static byte[] createRequest(List<CertID> certIds, boolean withNonce)
+      throws IOException {
+    ASN1EncodableVector requests = new ASN1EncodableVector();
+    for (CertID certId : certIds) {
+      requests.add(new Request(certId, null));
+    }
+
+    Extensions extensions = null;
+    if (withNonce) {
+      extensions = new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false,
+          new DEROctetString(randomBytes(16)).getEncoded()));
+    }
+
+    TBSRequest tbsRequest = new TBSRequest(null, new DERSequence(requests), extensions);
+    return new OCSPRequest(tbsRequest, null).getEncoded();
+  } // method createRequest
+
+  /**
+   * Converts the BouncyCastle CertID to the XiPKI one.
+   *
+   * @param certId
+   *          BouncyCastle CertID.
+   * @return the XiPKI CertID.
+   * @throws IOException
+   *           if error occurs while encoding the hashes.
+   */
+  public static org.xipki.ocsp.server.type.CertID toXipkiCertId(CertID certId)
+      throws IOException {
+    HashAlgo hashAlgo = HashAlgo.getNonNullInstance(certId.getHashAlgorithm().getAlgorithm());
+    byte[] nameHash = certId.getIssuerNameHash().getEncoded();
+    byte[] keyHash = certId.getIssuerKeyHash().getEncoded();
+
+    byte[] hashData = new byte[nameHash.length + keyHash.length];
+    System.arraycopy(nameHash, 0, hashData, 0, nameHash.length);
+    System.arraycopy(keyHash, 0, hashData, nameHash.length, keyHash.length);
+    return new org.xipki.ocsp.server.type.CertID(new RequestIssuer(hashAlgo, hashData),
+        certId.getSerialNumber().getValue());
+  } // method toXipkiCertId
+
+  public static BigInteger randomSerialNumber() {
+    return new BigInteger(64, RANDOM);
+  }
+
+  public static byte[] randomBytes(int len) {
+    byte[] bytes = new byte[len];
+    RANDOM.nextBytes(bytes);
+    return bytes;
+  }
+
+}
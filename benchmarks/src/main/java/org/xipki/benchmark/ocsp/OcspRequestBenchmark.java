@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.benchmark.ocsp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.server.type.OcspRequest;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Base64;
+
+/**
+ * Benchmark of the parsing of OCSP requests, received via POST (DER-encoded) and via GET
+ * (Base64-encoded). The BouncyCastle parser is used as baseline.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcspRequestBenchmark {
+
+  @Param({"1", "10"})
+  private int numCertIds;
+
+  @Param({"true", "false"})
+  private boolean withNonce;
+
+  private byte[] request;
+
+  private byte[] base64Request;
+
+  @Setup
+  public void setup() throws Exception {
+    request = OcspBenchmarkUtil.createRequest(
+        OcspBenchmarkUtil.createCertIds(HashAlgo.SHA1, numCertIds), withNonce);
+    base64Request = Base64.encodeToByte(request);
+  }
+
+  @Benchmark
+  public OcspRequest xipkiPost() throws Exception {
+    return OcspRequest.getInstance(request);
+  }
+
+  @Benchmark
+  public OCSPReq bcPost() throws Exception {
+    return new OCSPReq(request);
+  }
+
+  /**
+   * Same as the GET path of the OCSP servlet.
+   */
+  @Benchmark
+  public OcspRequest xipkiGet() throws Exception {
+    if (!Base64.containsOnlyBase64Chars(base64Request, 0, base64Request.length)) {
+      throw new IllegalStateException("invalid Base64 request");
+    }
+    return OcspRequest.getInstance(Base64.decodeFast(base64Request));
+  }
+
+  @Benchmark
+  public OCSPReq bcGet() throws Exception {
+    return new OCSPReq(org.bouncycastle.util.encoders.Base64.decode(base64Request));
+  }
+
+}
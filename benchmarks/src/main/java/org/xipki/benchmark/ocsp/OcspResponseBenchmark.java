@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.benchmark.ocsp;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.server.OCSPRespBuilder;
+import org.xipki.ocsp.server.type.ResponderID;
+import org.xipki.ocsp.server.type.ResponseData;
+import org.xipki.ocsp.server.type.SingleResponse;
+import org.xipki.security.ConcurrentContentSigner;
+import org.xipki.security.DfltConcurrentContentSigner;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SignatureSigner;
+import org.xipki.security.XiContentSigner;
+import org.xipki.security.util.AlgorithmUtil;
+
+/**
+ * Benchmark of the building of OCSP responses (encoding and signing), and of the encoding of
+ * the ResponseData only. The BouncyCastle builder is used as baseline.
+ *
+ * <p>The responses are signed with ECDSA (curve P-256) and SHA-256, and are built without
+ * certificates.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcspResponseBenchmark {
+
+  private static final String SIG_ALGO = "SHA256withECDSA";
+
+  private static final byte[] CERTSTATUS_GOOD = new byte[]{(byte) 0x80, 0x00};
+
+  @Param({"1", "10"})
+  private int numCertIds;
+
+  private List<CertID> bcCertIds;
+
+  private List<CertificateID> bcCertificateIds;
+
+  private List<org.xipki.ocsp.server.type.CertID> certIds;
+
+  private Date thisUpdate;
+
+  private Date nextUpdate;
+
+  private ResponderID responderId;
+
+  private RespID bcRespId;
+
+  private ConcurrentContentSigner signer;
+
+  private ContentSigner bcSigner;
+
+  @Setup
+  public void setup() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    byte[] keyHash = MessageDigest.getInstance("SHA-1").digest(SubjectPublicKeyInfo.getInstance(
+        keypair.getPublic().getEncoded()).getPublicKeyData().getBytes());
+    responderId = new ResponderID(keyHash);
+    bcRespId = new RespID(new org.bouncycastle.asn1.ocsp.ResponderID(
+        new DEROctetString(keyHash)));
+
+    XiContentSigner signer0 = new SignatureSigner(AlgorithmUtil.getSigAlgId(SIG_ALGO),
+        Signature.getInstance(SIG_ALGO), keypair.getPrivate());
+    signer = new DfltConcurrentContentSigner(false, Collections.singletonList(signer0));
+    bcSigner = new JcaContentSignerBuilder(SIG_ALGO).build(keypair.getPrivate());
+
+    bcCertIds = OcspBenchmarkUtil.createCertIds(
+        HashAlgo.SHA1, numCertIds);
+    bcCertificateIds = new ArrayList<>(numCertIds);
+    certIds = new ArrayList<>(numCertIds);
+    for (CertID bcCertId : bcCertIds) {
+      bcCertificateIds.add(new CertificateID(bcCertId));
+      certIds.add(OcspBenchmarkUtil.toXipkiCertId(bcCertId));
+    }
+
+    long now = System.currentTimeMillis();
+    thisUpdate = new Date(now);
+    nextUpdate = new Date(now + 3600 * 1000L);
+  } // method setup
+
+  @Benchmark
+  public byte[] xipkiBuild() throws Exception {
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+    for (org.xipki.ocsp.server.type.CertID certId : certIds) {
+      builder.addResponse(certId, CERTSTATUS_GOOD, thisUpdate, nextUpdate, null);
+    }
+    return builder.buildOCSPResponse(signer, null, new Date());
+  }
+
+  @Benchmark
+  public byte[] bcBuild() throws Exception {
+    BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(bcRespId);
+    for (CertificateID certId : bcCertificateIds) {
+      builder.addResponse(certId, CertificateStatus.GOOD, thisUpdate, nextUpdate, null);
+    }
+    BasicOCSPResp basicResp = builder.build(bcSigner, null, new Date());
+    return new org.bouncycastle.cert.ocsp.OCSPRespBuilder().build(
+        org.bouncycastle.cert.ocsp.OCSPRespBuilder.SUCCESSFUL, basicResp).getEncoded();
+  }
+
+  @Benchmark
+  public byte[] xipkiEncodeResponseData() {
+    List<SingleResponse> responses = new ArrayList<>(certIds.size());
+    for (org.xipki.ocsp.server.type.CertID certId : certIds) {
+      responses.add(new SingleResponse(certId, CERTSTATUS_GOOD, thisUpdate, nextUpdate, null));
+    }
+
+    ResponseData responseData = new ResponseData(0, responderId, new Date(), responses, null);
+    byte[] encoded = new byte[responseData.getEncodedLength()];
+    responseData.write(encoded, 0);
+    return encoded;
+  }
+
+  @Benchmark
+  public byte[] bcEncodeResponseData() throws Exception {
+    ASN1GeneralizedTime asn1ThisUpdate = new ASN1GeneralizedTime(thisUpdate);
+    ASN1GeneralizedTime asn1NextUpdate = new ASN1GeneralizedTime(nextUpdate);
+
+    ASN1EncodableVector responses = new ASN1EncodableVector();
+    for (CertID certId : bcCertIds) {
+      responses.add(new org.bouncycastle.asn1.ocsp.SingleResponse(certId, new CertStatus(),
+          asn1ThisUpdate, asn1NextUpdate, null));
+    }
+
+    return new org.bouncycastle.asn1.ocsp.ResponseData(bcRespId.toASN1Primitive(),
+        new ASN1GeneralizedTime(new Date()), new DERSequence(responses), null).getEncoded();
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server;
+
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.isismtt.ISISMTTObjectIdentifiers;
+import org.bouncycastle.asn1.isismtt.ocsp.CertHash;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.ocsp.RevokedInfo;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xipki.ocsp.server.type.WritableOnlyExtension;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Benchmark of the pre-encoded prefixes in {@link Template}, compared to the encoding via
+ * the BouncyCastle ASN.1 classes.
+ *
+ * <p>This class is in the package of {@link Template}, since the latter is package-private.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+  private Date time;
+
+  private byte[] certHash;
+
+  @Setup
+  public void setup() {
+    time = new Date();
+    certHash = new byte[HashAlgo.SHA256.getLength()];
+    new SecureRandom().nextBytes(certHash);
+  }
+
+  @Benchmark
+  public byte[] xipkiRevokedInfo() {
+    return Template.getEncodeRevokedInfo(CrlReason.KEY_COMPROMISE, time);
+  }
+
+  @Benchmark
+  public byte[] bcRevokedInfo() throws Exception {
+    RevokedInfo revokedInfo = new RevokedInfo(new ASN1GeneralizedTime(time),
+        CRLReason.lookup(CRLReason.keyCompromise));
+    return new CertStatus(revokedInfo).getEncoded();
+  }
+
+  @Benchmark
+  public byte[] xipkiInvalidityDate() {
+    return encode(Template.getInvalidityDateExtension(time));
+  }
+
+  @Benchmark
+  public byte[] bcInvalidityDate() throws Exception {
+    return new Extension(Extension.invalidityDate, false,
+        new ASN1GeneralizedTime(time).getEncoded()).getEncoded();
+  }
+
+  @Benchmark
+  public byte[] xipkiCertHash() {
+    return encode(Template.getCertHashExtension(HashAlgo.SHA256, certHash));
+  }
+
+  @Benchmark
+  public byte[] bcCertHash() throws Exception {
+    ASN1ObjectIdentifier hashAlgOid = HashAlgo.SHA256.getOid();
+    CertHash bcCertHash = new CertHash(new AlgorithmIdentifier(hashAlgOid, DERNull.INSTANCE),
+        certHash);
+    return new Extension(ISISMTTObjectIdentifiers.id_isismtt_at_certHash, false,
+        bcCertHash.getEncoded()).getEncoded();
+  }
+
+  private static byte[] encode(WritableOnlyExtension extension) {
+    byte[] encoded = new byte[extension.getEncodedLength()];
+    extension.write(encoded, 0);
+    return encoded;
+  }
+
+}
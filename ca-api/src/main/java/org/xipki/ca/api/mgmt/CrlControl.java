@@ -148,6 +148,10 @@ public class CrlControl {
 
   public static final String KEY_XIPKI_CERTSET_CERTS = "xipki.certset.certs";
 
+  public static final String KEY_XIPKI_CERTSET_MAXSIZE = "xipki.certset.maxsize";
+
+  public static final String KEY_XIPKI_CERTSET_THREADS = "xipki.certset.threads";
+
   public static final String KEY_FULLCRL_INTERVALS = "fullcrl.intervals";
 
   public static final String KEY_DELTACRL_INTERVALS = "deltacrl.intervals";
@@ -170,6 +174,11 @@ public class CrlControl {
 
   private boolean xipkiCertsetCertIncluded = true;
 
+  // 0 for no limit
+  private int xipkiCertsetMaxSize;
+
+  private int xipkiCertsetThreads = 1;
+
   private boolean includeExpiredCerts;
 
   private int fullCrlIntervals = 1;
@@ -211,6 +220,10 @@ public class CrlControl {
 
     this.xipkiCertsetCertIncluded = getBoolean(props, KEY_XIPKI_CERTSET_CERTS, true);
 
+    this.xipkiCertsetMaxSize = getInteger(props, KEY_XIPKI_CERTSET_MAXSIZE, 0);
+
+    this.xipkiCertsetThreads = getInteger(props, KEY_XIPKI_CERTSET_THREADS, 1);
+
     str = props.value(KEY_EYTENSIONS);
     if (str == null) {
       this.extensionOids = Collections.emptySet();
@@ -266,6 +279,8 @@ public class CrlControl {
     pairs.putPair(KEY_EXPIRED_CERTS_INCLUDED, Boolean.toString(includeExpiredCerts));
     pairs.putPair(KEY_XIPKI_CERTSET, Boolean.toString(xipkiCertsetIncluded));
     pairs.putPair(KEY_XIPKI_CERTSET_CERTS, Boolean.toString(xipkiCertsetCertIncluded));
+    pairs.putPair(KEY_XIPKI_CERTSET_MAXSIZE, Integer.toString(xipkiCertsetMaxSize));
+    pairs.putPair(KEY_XIPKI_CERTSET_THREADS, Integer.toString(xipkiCertsetThreads));
     pairs.putPair(KEY_XIPKI_CERTSET, Boolean.toString(xipkiCertsetIncluded));
     pairs.putPair(KEY_ONLY_CONTAINS_CACERTS, Boolean.toString(onlyContainsCaCerts));
     pairs.putPair(KEY_ONLY_CONTAINS_USERCERTS, Boolean.toString(onlyContainsUserCerts));
@@ -298,6 +313,9 @@ public class CrlControl {
 
     if (xipkiCertsetIncluded) {
       sb.append("\t\tinclude cert: ").append(xipkiCertsetCertIncluded);
+      sb.append("\t\tmax size: ").append(xipkiCertsetMaxSize == 0 ? "unlimited"
+          : Integer.toString(xipkiCertsetMaxSize));
+      sb.append("\t\tthreads: ").append(xipkiCertsetThreads);
     }
     String xipkiCertSetStr = sb.toString();
 
@@ -327,6 +345,14 @@ public class CrlControl {
     return xipkiCertsetCertIncluded;
   }
 
+  public int getXipkiCertsetMaxSize() {
+    return xipkiCertsetMaxSize;
+  }
+
+  public int getXipkiCertsetThreads() {
+    return xipkiCertsetThreads;
+  }
+
   public boolean isIncludeExpiredCerts() {
     return includeExpiredCerts;
   }
@@ -392,6 +418,16 @@ public class CrlControl {
       throw new InvalidConfException(
           "deltaCRLIntervals may not be less than 0: " + deltaCrlIntervals);
     }
+
+    if (xipkiCertsetMaxSize < 0) {
+      throw new InvalidConfException(
+          "xipkiCertsetMaxSize may not be less than 0: " + xipkiCertsetMaxSize);
+    }
+
+    if (xipkiCertsetThreads < 1) {
+      throw new InvalidConfException(
+          "xipkiCertsetThreads may not be less than 1: " + xipkiCertsetThreads);
+    }
   } // method validate
 
   @Override
@@ -411,6 +447,8 @@ public class CrlControl {
     if (deltaCrlIntervals != obj2.deltaCrlIntervals
         || xipkiCertsetIncluded != obj2.xipkiCertsetIncluded
         || xipkiCertsetCertIncluded != obj2.xipkiCertsetCertIncluded
+        || xipkiCertsetMaxSize != obj2.xipkiCertsetMaxSize
+        || xipkiCertsetThreads != obj2.xipkiCertsetThreads
         || extendedNextUpdate != obj2.extendedNextUpdate
         || fullCrlIntervals != obj2.fullCrlIntervals
         || includeExpiredCerts != obj2.includeExpiredCerts
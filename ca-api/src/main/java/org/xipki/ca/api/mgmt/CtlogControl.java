@@ -48,12 +48,34 @@ public class CtlogControl {
    */
   public static final String KEY_SSLCONTEXT_NAME = "sslcontext.name";
 
+  /**
+   * Number of SCTs required for a certificate. Defaults to the number of servers.
+   */
+  public static final String KEY_QUORUM = "quorum";
+
+  /**
+   * Deadline in milliseconds to collect the SCTs of a certificate. Defaults to 10000.
+   */
+  public static final String KEY_TIMEOUT = "timeout";
+
+  /**
+   * Maximal number of concurrent requests to each CT log server, further requests wait until
+   * a request has finished or the deadline is exceeded. Defaults to 8.
+   */
+  public static final String KEY_CONCURRENCY = "concurrency";
+
   private boolean enabled;
 
   private String sslContextName;
 
   private List<String> servers;
 
+  private int quorum;
+
+  private int timeoutMs;
+
+  private int concurrency;
+
   private String conf;
 
   public CtlogControl(String conf) throws InvalidConfException {
@@ -70,6 +92,14 @@ public class CtlogControl {
       throw new InvalidConfException(KEY_SERVERS + " is not specified");
     }
 
+    quorum = getInt(pairs, KEY_QUORUM);
+    if (quorum > servers.size()) {
+      throw new InvalidConfException(KEY_QUORUM + " " + quorum
+          + " is greater than the number of servers " + servers.size());
+    }
+    timeoutMs = getInt(pairs, KEY_TIMEOUT);
+    concurrency = getInt(pairs, KEY_CONCURRENCY);
+
     this.conf = pairs.getEncoded();
   } // constructor
 
@@ -116,6 +146,30 @@ public class CtlogControl {
     this.servers = servers;
   }
 
+  /**
+   * Returns the number of SCTs required for a certificate.
+   * @return the quorum, 0 if not specified.
+   */
+  public int getQuorum() {
+    return quorum;
+  }
+
+  /**
+   * Returns the deadline to collect the SCTs of a certificate.
+   * @return the deadline in milliseconds, 0 if not specified.
+   */
+  public int getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  /**
+   * Returns the maximal number of concurrent requests to each CT log server.
+   * @return the maximal number of concurrent requests, 0 if not specified.
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
   public void setEnabled(boolean enabled) {
     this.enabled = enabled;
   }
@@ -134,7 +188,10 @@ public class CtlogControl {
     return StringUtil.concatObjects(
         "  enabled: ", enabled,
         "\n  SSL context name: ", sslContextName,
-        "\n  Servers: ", servers);
+        "\n  Servers: ", servers,
+        "\n  quorum: ", (quorum == 0 ? "all" : quorum),
+        "\n  timeout (ms): ", (timeoutMs == 0 ? "default" : timeoutMs),
+        "\n  concurrency: ", (concurrency == 0 ? "default" : concurrency));
   }
 
   @Override
@@ -155,4 +212,23 @@ public class CtlogControl {
     return ret;
   } // method getBoolean
 
+  private static int getInt(ConfPairs pairs, String key) throws InvalidConfException {
+    String str = pairs.value(key);
+    if (StringUtil.isBlank(str)) {
+      return 0;
+    }
+
+    int ret;
+    try {
+      ret = Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new InvalidConfException("invalid " + key + ": " + str);
+    }
+
+    if (ret < 0) {
+      throw new InvalidConfException("invalid " + key + ": " + str);
+    }
+    return ret;
+  } // method getInt
+
 }
@@ -44,7 +44,6 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.StringUtil;
 
 /**
@@ -88,6 +87,9 @@ class RefDigestReader implements Closeable {
 
   private HashAlgo certhashAlgo;
 
+  // whether the column CERT.CERT is binary, otherwise Base64 encoded text
+  private boolean binaryCert;
+
   private class Retriever implements Runnable {
 
     private PreparedStatement selectCertStmt;
@@ -143,12 +145,7 @@ class RefDigestReader implements Closeable {
               if (certhashAlgo == HashAlgo.SHA1) {
                 hash = rs.getString("SHA1");
               } else {
-                byte[] encodedCert;
-                if (dbType == DbType.XIPKI_CA_v4) {
-                  encodedCert = Base64.decodeFast(rs.getString("CERT"));
-                } else {
-                  encodedCert = rs.getBytes("CERT");
-                }
+                byte[] encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
                 hash = certhashAlgo.base64Hash(encodedCert);
               }
               break;
@@ -227,6 +224,9 @@ class RefDigestReader implements Closeable {
             Integer.toString(caId), " AND ID>=?");
         break;
       case XIPKI_CA_v4:
+        if (certhashAlgo != HashAlgo.SHA1) {
+          this.binaryCert = datasource.isBinaryColumn(conn, "CERT", "CERT");
+        }
         coreSql = StringUtil.concat("ID,SN,REV,RR,RT,RIT,",
             (certhashAlgo == HashAlgo.SHA1 ? "SHA1" : "CERT"),
             " FROM CERT WHERE CA_ID=", Integer.toString(caId), " AND ID>=?");
@@ -39,7 +39,6 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.datasource.DatabaseType;
 import org.xipki.security.HashAlgo;
 import org.xipki.util.Args;
-import org.xipki.util.Base64;
 import org.xipki.util.ProcessLog;
 import org.xipki.util.StringUtil;
 
@@ -149,6 +148,9 @@ class TargetDigestReader implements Closeable {
 
   private final HashAlgo certhashAlgo;
 
+  // whether the column CERT.CERT is binary, otherwise Base64 encoded text
+  private boolean binaryCert;
+
   private final DataSourceWrapper datasource;
 
   private final int numPerSelect;
@@ -214,6 +216,7 @@ class TargetDigestReader implements Closeable {
           hashOrCertColumn = "SHA1";
         } else {
           hashOrCertColumn = "CERT";
+          binaryCert = datasource.isBinaryColumn(null, "CERT", "CERT");
         }
 
         singleSql = StringUtil.concat("REV,RR,RT,RIT,", hashOrCertColumn,
@@ -386,7 +389,7 @@ class TargetDigestReader implements Closeable {
         if (certhashAlgo == HashAlgo.SHA1) {
           return rs.getString("SHA1");
         } else {
-          byte[] encodedCert = Base64.decodeFast(rs.getString("CERT"));
+          byte[] encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
           return certhashAlgo.base64Hash(encodedCert);
         }
       default:
@@ -25,15 +25,26 @@ import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -65,22 +76,232 @@ import com.alibaba.fastjson.JSON;
 
 class CaCertstoreDbExporter extends DbPorter {
 
+  /**
+   * ID range of the table CERT exported by one task in the parallel mode.
+   */
+  private static class IdRange {
+
+    private final long fromId;
+
+    private final long toId;
+
+    /**
+     * The highest ID whose certificate has been saved in a bundle, {@code fromId - 1} if none.
+     */
+    private long lastId;
+
+    private int numExported;
+
+    IdRange(long fromId, long toId, long lastId, int numExported) {
+      this.fromId = fromId;
+      this.toId = toId;
+      this.lastId = lastId;
+      this.numExported = numExported;
+    }
+
+    boolean isFinished() {
+      return lastId >= toId;
+    }
+
+    boolean contains(long id) {
+      return id >= fromId && id <= toId;
+    }
+
+  } // class IdRange
+
+  /**
+   * Exports the certificates of the {@link IdRange}s with its own database connection.
+   */
+  private class CertsExportWorker implements Runnable {
+
+    private final Queue<IdRange> pendingRanges;
+
+    private final List<IdRange> ranges;
+
+    private final File checkpointFile;
+
+    private final File entriesDir;
+
+    private final long maxId;
+
+    private final ProcessLog processLog;
+
+    private final AtomicReference<Exception> exception;
+
+    CertsExportWorker(Queue<IdRange> pendingRanges, List<IdRange> ranges, File checkpointFile,
+        File entriesDir, long maxId, ProcessLog processLog, AtomicReference<Exception> exception) {
+      this.pendingRanges = pendingRanges;
+      this.ranges = ranges;
+      this.checkpointFile = checkpointFile;
+      this.entriesDir = entriesDir;
+      this.maxId = maxId;
+      this.processLog = processLog;
+      this.exception = exception;
+    }
+
+    @Override
+    public void run() {
+      final String sql = datasource.buildSelectFirstSql(numCertsPerSelect, "ID ASC",
+          CORE_SQL_CERT + " AND ID<=?");
+      PreparedStatement ps = null;
+      try {
+        Connection conn = datasource.getConnection();
+        try {
+          ps = datasource.prepareStatement(conn, sql);
+        } catch (DataAccessException ex) {
+          datasource.returnConnection(conn);
+          throw ex;
+        }
+
+        IdRange range;
+        while ((range = pendingRanges.poll()) != null) {
+          if (stopMe.get() || exception.get() != null) {
+            break;
+          }
+          exportRange(ps, range);
+        }
+      } catch (Exception ex) {
+        LOG.error("could not export certificates", ex);
+        exception.compareAndSet(null, ex);
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    } // method run
+
+    private void exportRange(PreparedStatement ps, IdRange range) throws Exception {
+      final int numEntriesPerZip = Math.max(1,
+          Math.round(CaDbEntryType.CERT.getSqlBatchFactor() * numCertsInBundle));
+
+      long lastId = range.lastId;
+      File zipFile = null;
+      ZipOutputStream zipOs = null;
+      CaCertstore.Certs certs = null;
+      long minIdOfBundle = -1;
+
+      try {
+        while (true) {
+          if (stopMe.get()) {
+            throw new InterruptedException("interrupted by the user");
+          }
+
+          if (exception.get() != null) {
+            throw new InterruptedException("interrupted due to error in other worker");
+          }
+
+          ps.setLong(1, lastId + 1);
+          ps.setLong(2, range.toId);
+
+          int num = 0;
+          ResultSet rs = ps.executeQuery();
+          try {
+            while (rs.next()) {
+              num++;
+              long id = rs.getLong("ID");
+              lastId = id;
+
+              if (zipOs == null) {
+                zipFile = new File(baseDir, "tmp-" + CaDbEntryType.CERT.getDirName() + "-"
+                    + Thread.currentThread().getId() + "-" + System.nanoTime() + ".zip");
+                zipOs = getZipOutputStream(zipFile);
+                certs = new CaCertstore.Certs();
+                minIdOfBundle = id;
+              }
+
+              exportCert(rs, id, zipOs, certs);
+
+              if (certs.getCerts().size() == numEntriesPerZip) {
+                saveBundle(range, zipFile, zipOs, certs, minIdOfBundle, id, false);
+                zipOs = null;
+              }
+            }
+          } finally {
+            releaseResources(null, rs);
+          }
+
+          if (num < numCertsPerSelect) {
+            break;
+          }
+        }
+
+        if (zipOs != null) {
+          saveBundle(range, zipFile, zipOs, certs, minIdOfBundle, lastId, true);
+          zipOs = null;
+        } else {
+          markFinished(range);
+        }
+      } catch (SQLException ex) {
+        throw translate(null, ex);
+      } finally {
+        if (zipOs != null) {
+          IoUtil.closeQuietly(zipOs);
+          zipFile.delete();
+        }
+      }
+    } // method exportRange
+
+    private void saveBundle(IdRange range, File zipFile, ZipOutputStream zipOs,
+        CaCertstore.Certs certs, long minIdOfBundle, long maxIdOfBundle, boolean lastOfRange)
+            throws IOException {
+      finalizeZip(zipOs, "overview.json", certs);
+      String filename = buildFilename(CaDbEntryType.CERT.getDirName() + "_", ".zip",
+          minIdOfBundle, maxIdOfBundle, maxId);
+      Files.move(zipFile.toPath(), new File(entriesDir, filename).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+
+      int num = certs.getCerts().size();
+      synchronized (ranges) {
+        range.lastId = lastOfRange ? range.toId : maxIdOfBundle;
+        range.numExported += num;
+        writeIdRanges(ranges, checkpointFile);
+      }
+
+      processLog.addNumProcessed(num);
+      processLog.printStatus();
+    } // method saveBundle
+
+    private void markFinished(IdRange range) throws IOException {
+      synchronized (ranges) {
+        range.lastId = range.toId;
+        writeIdRanges(ranges, checkpointFile);
+      }
+    } // method markFinished
+
+  } // class CertsExportWorker
+
   private static final Logger LOG = LoggerFactory.getLogger(CaCertstoreDbExporter.class);
 
+  private static final String CORE_SQL_CERT =
+      "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
+      + "REQ_SUBJECT,CRL_SCOPE,CERT FROM CERT WHERE ID>=?";
+
+  /**
+   * Number of ID ranges per thread in the parallel mode, more ranges balance the load better.
+   */
+  private static final int ID_RANGES_PER_THREAD = 4;
+
   private final int numCertsInBundle;
 
   private final int numCertsPerSelect;
 
   private final boolean resume;
 
+  private final int numThreads;
+
+  private final boolean binaryCert;
+
+  private final boolean binaryCrl;
+
   CaCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
-      int numCertsPerSelect, boolean resume, AtomicBoolean stopMe)
+      int numCertsPerSelect, boolean resume, int numThreads, AtomicBoolean stopMe)
           throws DataAccessException {
     super(datasource, baseDir, stopMe);
 
     this.numCertsInBundle = Args.positive(numCertsInBundle, "numCertsInBundle");
     this.numCertsPerSelect = Args.positive(numCertsPerSelect, "numCertsPerSelect");
     this.resume = resume;
+    this.numThreads = Args.positive(numThreads, "numThreads");
+    this.binaryCert = datasource.isBinaryColumn(null, "CERT", "CERT");
+    this.binaryCrl = datasource.isBinaryColumn(null, "CRL", "CRL");
   } // constructor
 
   public void export() throws Exception {
@@ -123,6 +344,11 @@ class CaCertstoreDbExporter extends DbPorter {
         }
       }
 
+      // an export of the table CERT in the parallel mode is resumed in the parallel mode,
+      // and one in the sequential mode in the sequential mode.
+      boolean parallelCerts = new File(baseDir, EXPORT_CERTS_CHECKPOINT_FILENAME).exists()
+          || (numThreads > 1 && CaDbEntryType.CERT != typeProcessedInLastProcess);
+
       if (CaDbEntryType.CRL == typeProcessedInLastProcess || typeProcessedInLastProcess == null) {
         exception = exportEntries(CaDbEntryType.CRL, certstore, processLogFile,
             idProcessedInLastProcess);
@@ -135,7 +361,11 @@ class CaCertstoreDbExporter extends DbPorter {
       for (CaDbEntryType type : types) {
         if (exception == null
             && (type == typeProcessedInLastProcess || typeProcessedInLastProcess == null)) {
-          exception = exportEntries(type, certstore, processLogFile, idProcessedInLastProcess);
+          if (CaDbEntryType.CERT == type && parallelCerts) {
+            exception = exportCertsInParallel(certstore, processLogFile);
+          } else {
+            exception = exportEntries(type, certstore, processLogFile, idProcessedInLastProcess);
+          }
           typeProcessedInLastProcess = null;
           idProcessedInLastProcess = null;
         }
@@ -197,8 +427,7 @@ class CaCertstoreDbExporter extends DbPorter {
     switch (type) {
       case CERT:
         numProcessedBefore = certstore.getCountCerts();
-        coreSql = "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
-            + "REQ_SUBJECT,CRL_SCOPE,CERT FROM CERT WHERE ID>=?";
+        coreSql = CORE_SQL_CERT;
         break;
       case CRL:
         numProcessedBefore = certstore.getCountCrls();
@@ -285,64 +514,9 @@ class CaCertstoreDbExporter extends DbPorter {
           }
 
           if (CaDbEntryType.CERT == type) {
-            byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
-
-            String sha1 = HashAlgo.SHA1.hexHash(certBytes);
-            String certFileName = sha1 + ".der";
-            ZipEntry certZipEntry = new ZipEntry(certFileName);
-            currentEntriesZip.putNextEntry(certZipEntry);
-            try {
-              currentEntriesZip.write(certBytes);
-            } finally {
-              currentEntriesZip.closeEntry();
-            }
-
-            CaCertstore.Cert cert = new CaCertstore.Cert();
-            cert.setId(id);
-            cert.setCaId(rs.getInt("CA_ID"));
-            cert.setEe(rs.getBoolean("EE"));
-            cert.setFile(certFileName);
-
-            long fpReqSubject = rs.getLong("FP_RS");
-            if (fpReqSubject != 0) {
-              cert.setFpRs(fpReqSubject);
-              cert.setRs(rs.getString("REQ_SUBJECT"));
-            }
-
-            cert.setPid(rs.getInt("PID"));
-            cert.setReqType(rs.getInt("RTYPE"));
-            cert.setRid(rs.getInt("RID"));
-            cert.setSn(rs.getString("SN"));
-
-            String str = rs.getString("TID");
-            if (StringUtil.isNotBlank(str)) {
-              cert.setTid(str);
-            }
-
-            int userId = rs.getInt("UID");
-            if (userId != 0) {
-              cert.setUid(userId);
-            }
-            cert.setUpdate(rs.getLong("LUPDATE"));
-
-            int revoked = rs.getInt("REV");
-            cert.setRev(revoked);
-
-            if (revoked == 1) {
-              cert.setRr(rs.getInt("RR"));
-              cert.setRt(rs.getLong("RT"));
-              long revInvTime = rs.getLong("RIT");
-              if (revInvTime != 0) {
-                cert.setRit(revInvTime);
-              }
-            }
-
-            cert.setCrlScope(rs.getInt("CRL_SCOPE"));
-
-            cert.validate();
-            ((CaCertstore.Certs) entriesInCurrentFile).add(cert);
+            exportCert(rs, id, currentEntriesZip, (CaCertstore.Certs) entriesInCurrentFile);
           } else if (CaDbEntryType.CRL == type) {
-            byte[] crlBytes = Base64.decodeFast(rs.getString("CRL"));
+            byte[] crlBytes = datasource.getBinary(rs, "CRL", binaryCrl);
 
             X509CRL x509Crl = null;
             try {
@@ -481,6 +655,263 @@ class CaCertstoreDbExporter extends DbPorter {
     System.out.println(" exported " + sum + " entries from " + tablesText);
   } // method exportEntries
 
+  private Exception exportCertsInParallel(CaCertstore certstore, File processLogFile) {
+    try {
+      exportCertsInParallel0(certstore, processLogFile);
+      return null;
+    } catch (Exception ex) {
+      // delete the temporary files
+      deleteTmpFiles(baseDir, "tmp-");
+
+      System.err.println("\nexporting table CERT has been cancelled due to error,\n"
+          + "please continue with the option '--resume'");
+      LOG.error("Exception", ex);
+      return ex;
+    }
+  } // method exportCertsInParallel
+
+  /**
+   * Exports the table CERT with several threads. The ID space is split into ranges, which are
+   * exported by the threads, each with its own database connection. The progress of each range
+   * is saved in the checkpoint file after each bundle, so that an interrupted export can be
+   * resumed.
+   */
+  private void exportCertsInParallel0(CaCertstore certstore, File processLogFile)
+      throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final String tableName = type.getTableName();
+    File entriesDir = new File(baseDir, type.getDirName());
+    entriesDir.mkdirs();
+
+    File checkpointFile = new File(baseDir, EXPORT_CERTS_CHECKPOINT_FILENAME);
+    List<IdRange> ranges;
+    if (checkpointFile.exists()) {
+      ranges = readIdRanges(checkpointFile);
+      deleteTmpFiles(baseDir, "tmp-" + type.getDirName() + "-");
+      deleteUncheckpointedBundles(entriesDir, ranges);
+    } else {
+      ranges = splitIdRange(min(tableName, "ID"), max(tableName, "ID"),
+          numThreads * ID_RANGES_PER_THREAD);
+      writeIdRanges(ranges, checkpointFile);
+    }
+
+    // resume with the table CERT instead of the table CRL
+    echoToFile(tableName + ":0", processLogFile);
+
+    Queue<IdRange> pendingRanges = new ConcurrentLinkedQueue<>();
+    int numProcessedBefore = 0;
+    for (IdRange range : ranges) {
+      numProcessedBefore += range.numExported;
+      if (!range.isFinished()) {
+        pendingRanges.add(range);
+      }
+    }
+
+    long maxId = ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1).toId;
+    long total = count(tableName) - numProcessedBefore;
+    if (total < 1) {
+      total = 1; // to avoid exception
+    }
+
+    // one connection is held by this exporter
+    int threads = Math.min(numThreads, Math.max(1, datasource.getMaximumPoolSize() - 1));
+    threads = Math.max(1, Math.min(threads, pendingRanges.size()));
+
+    System.out.println("exporting table " + tableName + " with " + threads + " threads");
+    ProcessLog processLog = new ProcessLog(total);
+    processLog.printHeader();
+
+    AtomicReference<Exception> exception = new AtomicReference<>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i = 0; i < threads; i++) {
+        executor.execute(new CertsExportWorker(pendingRanges, ranges, checkpointFile, entriesDir,
+            maxId, processLog, exception));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+      processLog.printStatus();
+    }
+
+    if (exception.get() != null) {
+      throw exception.get();
+    }
+
+    if (stopMe.get()) {
+      throw new InterruptedException("interrupted by the user");
+    }
+
+    // the bundles are listed in the order of IDs, as required by the sequential import
+    String[] filenames = entriesDir.list();
+    Arrays.sort(filenames);
+    try (OutputStream os = Files.newOutputStream(Paths.get(baseDir, type.getDirName() + ".mf"))) {
+      for (String filename : filenames) {
+        if (filename.endsWith(".zip")) {
+          writeLine(os, filename);
+        }
+      }
+    }
+
+    int sum = 0;
+    for (IdRange range : ranges) {
+      sum += range.numExported;
+    }
+    certstore.setCountCerts(sum);
+
+    processLog.printTrailer();
+    // all successful, delete the checkpoint and processLogFile
+    checkpointFile.delete();
+    processLogFile.delete();
+    System.out.println(" exported " + processLog.numProcessed() + " entries from table "
+        + tableName);
+  } // method exportCertsInParallel0
+
+  private static List<IdRange> splitIdRange(long minId, long maxId, int numRanges) {
+    List<IdRange> ranges = new ArrayList<>(numRanges);
+    if (maxId < 1 || maxId < minId) {
+      return ranges;
+    }
+
+    long width = Math.max(1, (maxId - minId) / numRanges + 1);
+    for (long from = minId; from <= maxId; from += width) {
+      long to = Math.min(maxId, from + width - 1);
+      ranges.add(new IdRange(from, to, from - 1, 0));
+    }
+    return ranges;
+  } // method splitIdRange
+
+  /**
+   * Writes the ID ranges, one range per line in the format
+   * {@code <fromId>:<toId>:<lastId>:<numExported>}.
+   */
+  private static void writeIdRanges(List<IdRange> ranges, File file) throws IOException {
+    StringBuilder sb = new StringBuilder(ranges.size() * 50);
+    for (IdRange range : ranges) {
+      sb.append(range.fromId).append(':').append(range.toId).append(':')
+        .append(range.lastId).append(':').append(range.numExported).append('\n');
+    }
+
+    File tmpFile = new File(file.getPath() + ".tmp");
+    echoToFile(sb.toString(), tmpFile);
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  } // method writeIdRanges
+
+  private static List<IdRange> readIdRanges(File file) throws IOException {
+    List<IdRange> ranges = new ArrayList<>();
+    for (String line : Files.readAllLines(file.toPath())) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+
+      StringTokenizer st = new StringTokenizer(line, ":");
+      ranges.add(new IdRange(Long.parseLong(st.nextToken()), Long.parseLong(st.nextToken()),
+          Long.parseLong(st.nextToken()), Integer.parseInt(st.nextToken())));
+    }
+    return ranges;
+  } // method readIdRanges
+
+  /**
+   * Deletes the bundles which have been saved but not recorded in the checkpoint file, they
+   * will be exported again.
+   */
+  private static void deleteUncheckpointedBundles(File entriesDir, List<IdRange> ranges) {
+    String[] filenames = entriesDir.list();
+    if (filenames == null) {
+      return;
+    }
+
+    for (String filename : filenames) {
+      // <dirName>_<minId>-<maxId>.zip
+      int fromIdx = filename.indexOf('_');
+      int toIdx = filename.indexOf('-');
+      if (fromIdx == -1 || toIdx == -1 || !filename.endsWith(".zip")) {
+        continue;
+      }
+
+      long minIdOfBundle;
+      try {
+        minIdOfBundle = Long.parseLong(filename.substring(fromIdx + 1, toIdx));
+      } catch (NumberFormatException ex) {
+        LOG.warn("invalid file name '{}', ignore it", filename);
+        continue;
+      }
+
+      for (IdRange range : ranges) {
+        if (range.contains(minIdOfBundle)) {
+          if (minIdOfBundle > range.lastId) {
+            LOG.info("delete bundle {} not recorded in the checkpoint", filename);
+            new File(entriesDir, filename).delete();
+          }
+          break;
+        }
+      }
+    }
+  } // method deleteUncheckpointedBundles
+
+  private void exportCert(ResultSet rs, long id, ZipOutputStream zipOs,
+      CaCertstore.Certs certs) throws SQLException, IOException, InvalidConfException {
+    byte[] certBytes = datasource.getBinary(rs, "CERT", binaryCert);
+
+    String sha1 = HashAlgo.SHA1.hexHash(certBytes);
+    String certFileName = sha1 + ".der";
+    ZipEntry certZipEntry = new ZipEntry(certFileName);
+    zipOs.putNextEntry(certZipEntry);
+    try {
+      zipOs.write(certBytes);
+    } finally {
+      zipOs.closeEntry();
+    }
+
+    CaCertstore.Cert cert = new CaCertstore.Cert();
+    cert.setId(id);
+    cert.setCaId(rs.getInt("CA_ID"));
+    cert.setEe(rs.getBoolean("EE"));
+    cert.setFile(certFileName);
+
+    long fpReqSubject = rs.getLong("FP_RS");
+    if (fpReqSubject != 0) {
+      cert.setFpRs(fpReqSubject);
+      cert.setRs(rs.getString("REQ_SUBJECT"));
+    }
+
+    cert.setPid(rs.getInt("PID"));
+    cert.setReqType(rs.getInt("RTYPE"));
+    cert.setRid(rs.getInt("RID"));
+    cert.setSn(rs.getString("SN"));
+
+    String str = rs.getString("TID");
+    if (StringUtil.isNotBlank(str)) {
+      cert.setTid(str);
+    }
+
+    int userId = rs.getInt("UID");
+    if (userId != 0) {
+      cert.setUid(userId);
+    }
+    cert.setUpdate(rs.getLong("LUPDATE"));
+
+    int revoked = rs.getInt("REV");
+    cert.setRev(revoked);
+
+    if (revoked == 1) {
+      cert.setRr(rs.getInt("RR"));
+      cert.setRt(rs.getLong("RT"));
+      long revInvTime = rs.getLong("RIT");
+      if (revInvTime != 0) {
+        cert.setRit(revInvTime);
+      }
+    }
+
+    cert.setCrlScope(rs.getInt("CRL_SCOPE"));
+
+    cert.validate();
+    certs.add(cert);
+  } // method exportCert
+
   private void exportPublishQueue(CaCertstore certstore)
       throws DataAccessException, InvalidConfException {
     System.out.println("exporting table PUBLISHQUEUE");
@@ -17,22 +17,40 @@
 
 package org.xipki.ca.mgmt.db.port;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -64,6 +82,166 @@ import com.alibaba.fastjson.JSON;
 
 class CaCertstoreDbImporter extends DbPorter {
 
+  /**
+   * Imports the certificate bundles with its own database connection.
+   */
+  private class CertsImportWorker implements Runnable {
+
+    private final Queue<String> pendingBundles;
+
+    private final File checkpointFile;
+
+    private final boolean cleanBeforeImport;
+
+    private final ProcessLog processLog;
+
+    private final AtomicLong numImported;
+
+    private final AtomicReference<Exception> exception;
+
+    private Connection conn;
+
+    CertsImportWorker(Queue<String> pendingBundles, File checkpointFile,
+        boolean cleanBeforeImport, ProcessLog processLog, AtomicLong numImported,
+        AtomicReference<Exception> exception) {
+      this.pendingBundles = pendingBundles;
+      this.checkpointFile = checkpointFile;
+      this.cleanBeforeImport = cleanBeforeImport;
+      this.processLog = processLog;
+      this.numImported = numImported;
+      this.exception = exception;
+    }
+
+    @Override
+    public void run() {
+      PreparedStatement stmt = null;
+      PreparedStatement deleteStmt = null;
+      boolean autoCommit = true;
+      try {
+        conn = datasource.getConnection();
+        autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        stmt = datasource.prepareStatement(conn, SQL_ADD_CERT);
+        if (cleanBeforeImport) {
+          deleteStmt = datasource.prepareStatement(conn, SQL_DELETE_CERTS_IN_RANGE);
+        }
+
+        String bundleName;
+        while ((bundleName = pendingBundles.poll()) != null) {
+          if (stopMe.get() || exception.get() != null) {
+            break;
+          }
+
+          try {
+            importBundle(bundleName, stmt, deleteStmt);
+          } catch (Exception ex) {
+            System.err.println("\ncould not import entries from file " + bundleName);
+            throw ex;
+          }
+        }
+      } catch (Exception ex) {
+        LOG.error("could not import certificates", ex);
+        if (conn != null) {
+          try {
+            conn.rollback();
+          } catch (SQLException ex2) {
+            LOG.warn("could not rollback connection: {}", ex2.getMessage());
+          }
+        }
+        exception.compareAndSet(null, ex);
+      } finally {
+        datasource.releaseResources(stmt, null, false);
+        datasource.releaseResources(deleteStmt, null, false);
+        if (conn != null) {
+          try {
+            conn.setAutoCommit(autoCommit);
+          } catch (SQLException ex) {
+            LOG.warn("could not recover autoCommit: {}", ex.getMessage());
+          }
+          datasource.returnConnection(conn);
+        }
+      }
+    } // method run
+
+    private void importBundle(String bundleName, PreparedStatement stmt,
+        PreparedStatement deleteStmt) throws Exception {
+      final int numEntriesPerCommit = Math.max(1,
+          Math.round(CaDbEntryType.CERT.getSqlBatchFactor() * numCertsPerCommit));
+
+      File bundleFile = new File(baseDir, CaDbEntryType.CERT.getDirName() + File.separator
+          + bundleName);
+      Map<String, byte[]> entries = readZipEntries(bundleFile);
+
+      byte[] overview = entries.remove("overview.json");
+      if (overview == null) {
+        throw new IOException("found no overview.json in file " + bundleFile.getPath());
+      }
+
+      CaCertstore.Certs certs = JSON.parseObject(overview, CaCertstore.Certs.class);
+      certs.validate();
+      List<CaCertstore.Cert> list = certs.getCerts();
+
+      try {
+        if (deleteStmt != null && !list.isEmpty()) {
+          // remove the certificates imported by the interrupted previous process
+          long minId = Long.MAX_VALUE;
+          long maxId = Long.MIN_VALUE;
+          for (CaCertstore.Cert cert : list) {
+            minId = Math.min(minId, cert.getId());
+            maxId = Math.max(maxId, cert.getId());
+          }
+
+          deleteStmt.setLong(1, minId);
+          deleteStmt.setLong(2, maxId);
+          deleteStmt.executeUpdate();
+          conn.commit();
+        }
+
+        int numEntriesInBatch = 0;
+        for (CaCertstore.Cert cert : list) {
+          if (stopMe.get()) {
+            throw new InterruptedException("interrupted by the user");
+          }
+
+          byte[] encodedCert = entries.get(cert.getFile());
+          if (encodedCert == null) {
+            throw new IOException("found no file " + cert.getFile() + " in file "
+                + bundleFile.getPath());
+          }
+
+          setCertParams(stmt, cert, encodedCert);
+          stmt.addBatch();
+          numEntriesInBatch++;
+
+          if (numEntriesInBatch == numEntriesPerCommit) {
+            stmt.executeBatch();
+            conn.commit();
+            processLog.addNumProcessed(numEntriesInBatch);
+            numEntriesInBatch = 0;
+          }
+        }
+
+        if (numEntriesInBatch > 0) {
+          stmt.executeBatch();
+          conn.commit();
+          processLog.addNumProcessed(numEntriesInBatch);
+        }
+      } catch (SQLException ex) {
+        throw translate(SQL_ADD_CERT, ex);
+      }
+
+      numImported.addAndGet(list.size());
+      synchronized (checkpointFile) {
+        try (OutputStream os = Files.newOutputStream(checkpointFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+          writeLine(os, bundleName + ":" + list.size());
+        }
+      }
+      processLog.printStatus();
+    } // method importBundle
+
+  } // class CertsImportWorker
+
   private static final Logger LOG = LoggerFactory.getLogger(CaCertstoreDbImporter.class);
 
   private static final String SQL_ADD_CERT =
@@ -80,13 +258,24 @@ class CaCertstoreDbImporter extends DbPorter {
 
   private static final String SQL_ADD_REQCERT = "INSERT INTO REQCERT (ID,RID,CID) VALUES (?,?,?)";
 
+  private static final String SQL_DELETE_CERTS_IN_RANGE = "DELETE FROM CERT WHERE ID>=? AND ID<=?";
+
   private final int numCertsPerCommit;
 
+  private final int numThreads;
+
+  private final boolean binaryCert;
+
+  private final boolean binaryCrl;
+
   CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
-      boolean resume, AtomicBoolean stopMe) throws Exception {
+      boolean resume, int numThreads, AtomicBoolean stopMe) throws Exception {
     super(datasource, srcDir, stopMe);
 
     this.numCertsPerCommit = Args.positive(numCertsPerCommit, "numCertsPerCommit");
+    this.numThreads = Args.positive(numThreads, "numThreads");
+    this.binaryCert = datasource.isBinaryColumn(null, "CERT", "CERT");
+    this.binaryCrl = datasource.isBinaryColumn(null, "CRL", "CRL");
 
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
     if (resume) {
@@ -158,6 +347,13 @@ class CaCertstoreDbImporter extends DbPorter {
       }
 
       if (!entriesFinished) {
+        // an import of the table CERT in the parallel mode is resumed in the parallel mode,
+        // and one in the sequential mode in the sequential mode.
+        boolean sequentialCertsInProcess = CaDbEntryType.CERT == typeProcessedInLastProcess
+            && idProcessedInLastProcess != null && idProcessedInLastProcess > 0;
+        boolean parallelCerts = new File(baseDir, IMPORT_CERTS_CHECKPOINT_FILENAME).exists()
+            || (numThreads > 1 && !sequentialCertsInProcess);
+
         Exception exception = null;
         if (CaDbEntryType.CRL == typeProcessedInLastProcess
             || typeProcessedInLastProcess == null) {
@@ -173,8 +369,12 @@ class CaCertstoreDbImporter extends DbPorter {
         for (CaDbEntryType type : types) {
           if (exception == null
               && (type == typeProcessedInLastProcess || typeProcessedInLastProcess == null)) {
-            exception = importEntries(type, certstore, processLogFile,
-                numProcessedInLastProcess, idProcessedInLastProcess);
+            if (CaDbEntryType.CERT == type && parallelCerts) {
+              exception = importCertsInParallel(certstore, processLogFile);
+            } else {
+              exception = importEntries(type, certstore, processLogFile,
+                  numProcessedInLastProcess, idProcessedInLastProcess);
+            }
           }
         }
 
@@ -373,6 +573,130 @@ class CaCertstoreDbImporter extends DbPorter {
     }
   } // method importEntries
 
+  private Exception importCertsInParallel(CaCertstore certstore, File processLogFile) {
+    try {
+      importCertsInParallel0(certstore, processLogFile);
+      return null;
+    } catch (Exception ex) {
+      System.err.println("\nimporting table CERT has been cancelled due to error,\n"
+          + "please continue with the option '--resume'");
+      LOG.error("Exception", ex);
+      return ex;
+    }
+  } // method importCertsInParallel
+
+  /**
+   * Imports the table CERT with several threads. The bundles are imported by the threads,
+   * each with its own database connection. The name of each completely imported bundle is
+   * appended to the checkpoint file, so that an interrupted import can be resumed. The bundles
+   * not recorded there are cleaned from the database before being imported again.
+   */
+  private void importCertsInParallel0(CaCertstore certstore, File processLogFile)
+      throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final String tableName = type.getTableName();
+
+    File checkpointFile = new File(baseDir, IMPORT_CERTS_CHECKPOINT_FILENAME);
+    Set<String> importedBundles = new HashSet<>();
+    long numProcessedBefore = 0;
+
+    final boolean resumed = checkpointFile.exists();
+    if (resumed) {
+      for (String line : Files.readAllLines(checkpointFile.toPath())) {
+        int idx = line.lastIndexOf(':');
+        if (idx != -1) {
+          importedBundles.add(line.substring(0, idx));
+          numProcessedBefore += Integer.parseInt(line.substring(idx + 1).trim());
+        }
+      }
+    } else {
+      deleteFromTableWithLargerId(tableName, "ID", 0, LOG);
+      echoToFile("", checkpointFile);
+    }
+
+    // resume with the table CERT instead of the table CRL
+    echoToFile(type + ":0:0", processLogFile);
+
+    Queue<String> pendingBundles = new ConcurrentLinkedQueue<>();
+    DbPortFileNameIterator entriesFileIterator = new DbPortFileNameIterator(
+        baseDir + File.separator + type.getDirName() + ".mf");
+    try {
+      while (entriesFileIterator.hasNext()) {
+        String bundleName = entriesFileIterator.next();
+        if (!importedBundles.contains(bundleName)) {
+          pendingBundles.add(bundleName);
+        }
+      }
+    } finally {
+      entriesFileIterator.close();
+    }
+
+    long remainingTotal = certstore.getCountCerts() - numProcessedBefore;
+    if (remainingTotal < 1) {
+      remainingTotal = 1; // to avoid exception
+    }
+
+    // one connection is held by this importer
+    int threads = Math.min(numThreads, Math.max(1, datasource.getMaximumPoolSize() - 1));
+    threads = Math.max(1, Math.min(threads, pendingBundles.size()));
+
+    System.out.println("importing entries to table " + tableName + " with " + threads
+        + " threads");
+    ProcessLog processLog = new ProcessLog(remainingTotal);
+    processLog.printHeader();
+
+    AtomicLong numImported = new AtomicLong(numProcessedBefore);
+    AtomicReference<Exception> exception = new AtomicReference<>();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i = 0; i < threads; i++) {
+        executor.execute(new CertsImportWorker(pendingBundles, checkpointFile, resumed,
+            processLog, numImported, exception));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+      processLog.printStatus();
+    }
+
+    if (exception.get() != null) {
+      throw exception.get();
+    }
+
+    if (stopMe.get()) {
+      throw new InterruptedException("interrupted by the user");
+    }
+
+    processLog.printTrailer();
+    echoToFile(type + ":" + numImported.get() + ":-1", processLogFile);
+    checkpointFile.delete();
+    System.out.println(" imported " + processLog.numProcessed() + " entries");
+  } // method importCertsInParallel0
+
+  /**
+   * Reads all entries of the ZIP file sequentially in one pass.
+   */
+  private static Map<String, byte[]> readZipEntries(File file) throws IOException {
+    Map<String, byte[]> entries = new HashMap<>();
+    byte[] buffer = new byte[8192];
+    try (ZipInputStream zipIn = new ZipInputStream(
+        new BufferedInputStream(Files.newInputStream(file.toPath()), 65536))) {
+      ZipEntry entry;
+      while ((entry = zipIn.getNextEntry()) != null) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(
+            entry.getSize() > 0 ? (int) entry.getSize() : 2048);
+        int read;
+        while ((read = zipIn.read(buffer)) != -1) {
+          bout.write(buffer, 0, read);
+        }
+        entries.put(entry.getName(), bout.toByteArray());
+      }
+    }
+    return entries;
+  } // method readZipEntries
+
   private long importCerts(String entriesZipFile, long minId,
       File processLogFile, ProcessLog processLog, int numProcessedInLastProcess,
       PreparedStatement stmt, String sql) throws Exception {
@@ -426,70 +750,8 @@ class CaCertstoreDbImporter extends DbPorter {
         // rawcert
         byte[] encodedCert = IoUtil.read(zipFile.getInputStream(certZipEnty));
 
-        TBSCertificate tbsCert;
         try {
-          Certificate cc = Certificate.getInstance(encodedCert);
-          tbsCert = cc.getTBSCertificate();
-        } catch (RuntimeException ex) {
-          LOG.error("could not parse certificate in file {}", filename);
-          LOG.debug("could not parse certificate in file " + filename, ex);
-          throw new CertificateException(ex.getMessage(), ex);
-        }
-
-        byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
-
-        String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
-
-        // cert
-        String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
-
-        try {
-          int idx = 1;
-
-          stmt.setLong(idx++, id);
-          stmt.setLong(idx++, cert.getUpdate());
-          stmt.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
-
-          stmt.setString(idx++, subjectText);
-          long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
-          stmt.setLong(idx++, fpSubject);
-
-          if (cert.getFpRs() != null) {
-            stmt.setLong(idx++, cert.getFpRs());
-          } else {
-            stmt.setNull(idx++, Types.BIGINT);
-          }
-
-          stmt.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
-          stmt.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
-          setInt(stmt, idx++, cert.getRev());
-          setInt(stmt, idx++, cert.getRr());
-          setLong(stmt, idx++, cert.getRt());
-          setLong(stmt, idx++, cert.getRit());
-          setInt(stmt, idx++, cert.getPid());
-          setInt(stmt, idx++, cert.getCaId());
-
-          setInt(stmt, idx++, cert.getRid());
-          setInt(stmt, idx++, cert.getUid());
-          stmt.setLong(idx++, FpIdCalculator.hash(encodedKey));
-          Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
-          boolean ee = true;
-          if (extension != null) {
-            ASN1Encodable asn1 = extension.getParsedValue();
-            ee = !BasicConstraints.getInstance(asn1).isCA();
-          }
-
-          stmt.setInt(idx++, ee ? 1 : 0);
-          stmt.setInt(idx++, cert.getReqType());
-          String tidS = null;
-          if (cert.getTid() != null) {
-            tidS = cert.getTid();
-          }
-          stmt.setString(idx++, tidS);
-          stmt.setString(idx++, b64Sha1FpCert);
-          stmt.setString(idx++, cert.getRs());
-          stmt.setInt(idx++, cert.getCrlScope());
-          stmt.setString(idx++, Base64.encodeToString(encodedCert));
+          setCertParams(stmt, cert, encodedCert);
           stmt.addBatch();
         } catch (SQLException ex) {
           throw translate(sql, ex);
@@ -530,6 +792,73 @@ class CaCertstoreDbImporter extends DbPorter {
     }
   } // method importCerts
 
+  private void setCertParams(PreparedStatement stmt, CaCertstore.Cert cert, byte[] encodedCert)
+      throws SQLException, CertificateException {
+    TBSCertificate tbsCert;
+    try {
+      Certificate cc = Certificate.getInstance(encodedCert);
+      tbsCert = cc.getTBSCertificate();
+    } catch (RuntimeException ex) {
+      LOG.error("could not parse certificate in file {}", cert.getFile());
+      LOG.debug("could not parse certificate in file " + cert.getFile(), ex);
+      throw new CertificateException(ex.getMessage(), ex);
+    }
+
+    byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+
+    String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
+
+    // cert
+    String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
+
+    int idx = 1;
+
+    stmt.setLong(idx++, cert.getId());
+    stmt.setLong(idx++, cert.getUpdate());
+    stmt.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
+
+    stmt.setString(idx++, subjectText);
+    long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
+    stmt.setLong(idx++, fpSubject);
+
+    if (cert.getFpRs() != null) {
+      stmt.setLong(idx++, cert.getFpRs());
+    } else {
+      stmt.setNull(idx++, Types.BIGINT);
+    }
+
+    stmt.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
+    stmt.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
+    setInt(stmt, idx++, cert.getRev());
+    setInt(stmt, idx++, cert.getRr());
+    setLong(stmt, idx++, cert.getRt());
+    setLong(stmt, idx++, cert.getRit());
+    setInt(stmt, idx++, cert.getPid());
+    setInt(stmt, idx++, cert.getCaId());
+
+    setInt(stmt, idx++, cert.getRid());
+    setInt(stmt, idx++, cert.getUid());
+    stmt.setLong(idx++, FpIdCalculator.hash(encodedKey));
+    Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
+    boolean ee = true;
+    if (extension != null) {
+      ASN1Encodable asn1 = extension.getParsedValue();
+      ee = !BasicConstraints.getInstance(asn1).isCA();
+    }
+
+    stmt.setInt(idx++, ee ? 1 : 0);
+    stmt.setInt(idx++, cert.getReqType());
+    String tidS = null;
+    if (cert.getTid() != null) {
+      tidS = cert.getTid();
+    }
+    stmt.setString(idx++, tidS);
+    stmt.setString(idx++, b64Sha1FpCert);
+    stmt.setString(idx++, cert.getRs());
+    stmt.setInt(idx++, cert.getCrlScope());
+    datasource.setBinary(stmt, idx++, encodedCert, binaryCert);
+  } // method setCertParams
+
   private long importCrls(String entriesZipFile, long minId,
       File processLogFile, ProcessLog processLog, int numProcessedInLastProcess,
       PreparedStatement stmt, String sql) throws Exception {
@@ -631,7 +960,7 @@ class CaCertstoreDbImporter extends DbPorter {
           }
 
           stmt.setInt(idx++, crl.getCrlScope());
-          stmt.setString(idx++, Base64.encodeToString(encodedCrl));
+          datasource.setBinary(stmt, idx++, encodedCrl, binaryCrl);
 
           stmt.addBatch();
         } catch (SQLException ex) {
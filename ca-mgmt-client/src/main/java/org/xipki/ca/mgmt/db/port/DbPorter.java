@@ -189,6 +189,10 @@ public class DbPorter extends DbToolBase {
 
   public static final String IMPORT_TO_OCSP_PROCESS_LOG_FILENAME = "import-to-ocsp.process";
 
+  public static final String EXPORT_CERTS_CHECKPOINT_FILENAME = "export-certs.checkpoint";
+
+  public static final String IMPORT_CERTS_CHECKPOINT_FILENAME = "import-certs.checkpoint";
+
   public static final int VERSION = 1;
 
   protected final int dbSchemaVersion;
@@ -17,13 +17,14 @@
 
 package org.xipki.ca.server;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xipki.ca.api.NameId;
 
 /**
- * Container of NameId of CA management entries.
+ * Container of NameId of CA management entries. The entries may be replaced while they are
+ * read concurrently, e.g. while the CA system is reloaded.
  *
  * @author Lijun Liao
  * @since 2.2.0
@@ -31,41 +32,50 @@ import org.xipki.ca.api.NameId;
 
 public class CaIdNameMap {
 
-  private final Map<Integer, NameId> idCertprofileMap = new HashMap<>();
+  private final Map<Integer, NameId> idCertprofileMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idPublisherMap = new HashMap<>();
+  private final Map<Integer, NameId> idPublisherMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idRequestorMap = new HashMap<>();
+  private final Map<Integer, NameId> idRequestorMap = new ConcurrentHashMap<>();
 
-  private final Map<Integer, NameId> idCaMap = new HashMap<>();
+  private final Map<Integer, NameId> idCaMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameCertprofileMap = new HashMap<>();
+  private final Map<String, NameId> nameCertprofileMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> namePublisherMap = new HashMap<>();
+  private final Map<String, NameId> namePublisherMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameRequestorMap = new HashMap<>();
+  private final Map<String, NameId> nameRequestorMap = new ConcurrentHashMap<>();
 
-  private final Map<String, NameId> nameCaMap = new HashMap<>();
+  private final Map<String, NameId> nameCaMap = new ConcurrentHashMap<>();
 
   public void addCertprofile(NameId nameId) {
-    idCertprofileMap.put(nameId.getId(), nameId);
-    nameCertprofileMap.put(nameId.getName(), nameId);
+    add(nameId, idCertprofileMap, nameCertprofileMap);
   }
 
   public void addPublisher(NameId nameId) {
-    idPublisherMap.put(nameId.getId(), nameId);
-    namePublisherMap.put(nameId.getName(), nameId);
+    add(nameId, idPublisherMap, namePublisherMap);
   }
 
   public void addRequestor(NameId nameId) {
-    idRequestorMap.put(nameId.getId(), nameId);
-    nameRequestorMap.put(nameId.getName(), nameId);
+    add(nameId, idRequestorMap, nameRequestorMap);
   }
 
   public void addCa(NameId nameId) {
-    idCaMap.put(nameId.getId(), nameId);
-    nameCaMap.put(nameId.getName(), nameId);
-  }
+    add(nameId, idCaMap, nameCaMap);
+  }
+
+  /**
+   * Adds the entry, or replaces the entry with the same name. The entry is never absent for
+   * concurrent readers.
+   */
+  private static void add(NameId nameId, Map<Integer, NameId> idMap,
+      Map<String, NameId> nameMap) {
+    idMap.put(nameId.getId(), nameId);
+    NameId old = nameMap.put(nameId.getName(), nameId);
+    if (old != null && !old.getId().equals(nameId.getId())) {
+      idMap.remove(old.getId(), old);
+    }
+  } // method add
 
   public NameId getCertprofile(int id) {
     return idCertprofileMap.get(id);
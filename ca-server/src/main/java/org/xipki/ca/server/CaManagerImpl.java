@@ -43,6 +43,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
@@ -155,6 +157,7 @@ public class CaManagerImpl implements CaManager, Closeable {
           } else {
             LOG.error("publishing certificates of CA {} in PUBLISHQUEUE failed", name);
           }
+          ca.logPublishingMetrics();
         }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not publish CertsInQueue");
@@ -190,7 +193,7 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   } // class UnreferencedRequstCleaner
 
-  private class CaRestarter implements Runnable {
+  private class CaChangeChecker implements Runnable {
 
     private boolean inProcess;
 
@@ -205,23 +208,51 @@ public class CaManagerImpl implements CaManager, Closeable {
         SystemEvent event = queryExecutor.getSystemEvent(EVENT_CACHAGNE);
         long caChangedTime = (event == null) ? 0 : event.getEventTime();
 
-        LOG.info("check the restart CA system event: changed at={}, lastStartTime={}",
-            new Date(caChangedTime * 1000L), lastStartTime);
-
-        if (caChangedTime > lastStartTime.getTime() / 1000L) {
-          LOG.info("received event to restart CA");
-          restartCaSystem();
+        if (caChangedTime > lastCaChangeTime) {
+          LOG.info("received event to reload CA system: changed at={}, last change at={}",
+              new Date(caChangedTime * 1000L), new Date(lastCaChangeTime * 1000L));
+          try {
+            reloadCaSystem();
+          } catch (Throwable th) {
+            LogUtil.error(LOG, th, "could not reload CA system, restart it");
+            restartCaSystem();
+          }
+          lastCaChangeTime = caChangedTime;
         } else {
-          LOG.debug("received no event to restart CA");
+          LOG.debug("received no event to reload CA system");
         }
       } catch (Throwable th) {
-        LogUtil.error(LOG, th, "ScheduledCaRestarter");
+        LogUtil.error(LOG, th, "CaChangeChecker");
       } finally {
         inProcess = false;
       }
     } // method run
 
-  } // class CaRestarter
+  } // class CaChangeChecker
+
+  /**
+   * Closes the entries replaced by the reload of the CA system.
+   */
+  private static class ReplacedEntriesCloser implements Runnable {
+
+    private final List<Closeable> entries;
+
+    ReplacedEntriesCloser(List<Closeable> entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public void run() {
+      for (Closeable entry : entries) {
+        try {
+          entry.close();
+        } catch (Throwable th) {
+          LogUtil.warn(LOG, th, "could not close replaced entry " + entry);
+        }
+      }
+    } // method run
+
+  } // class ReplacedEntriesCloser
 
   private static final Logger LOG = LoggerFactory.getLogger(CaManagerImpl.class);
 
@@ -229,6 +260,12 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private static final String EVENT_CACHAGNE = "CA_CHANGE";
 
+  /**
+   * Delay in seconds to close the replaced CAs, certprofiles and publishers, so that the
+   * requests in process can still use them.
+   */
+  private static final long REPLACED_ENTRIES_CLOSE_DELAY_SECONDS = 30;
+
   private final String lockInstanceId;
 
   private final CaIdNameMap idNameMap = new CaIdNameMap();
@@ -274,6 +311,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  /**
+   * Executor to generate the certificates of a multi-template request in parallel.
+   */
+  private ExecutorService certGenExecutor;
+
   private final Map<String, CmpResponder> cmpResponders = new ConcurrentHashMap<>();
 
   private final Map<String, ScepResponder> scepResponders = new ConcurrentHashMap<>();
@@ -302,6 +344,11 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private Date lastStartTime;
 
+  /**
+   * Time in seconds of the last processed CA_CHANGE event, used only in slave mode.
+   */
+  private volatile long lastCaChangeTime;
+
   private CertprofileFactoryRegister certprofileFactoryRegister;
 
   private CertPublisherFactoryRegister certPublisherFactoryRegister;
@@ -429,12 +476,21 @@ public class CaManagerImpl implements CaManager, Closeable {
     final long epoch = DateUtil.parseUtcTimeyyyyMMdd("20100101").getTime();
     UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
 
+    if (this.certstore != null) {
+      this.certstore.close();
+    }
+
     try {
       this.certstore = new CertStore(datasource, idGen);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    CaServerConf.CertGroupCommit groupCommit = caServerConf.getCertGroupCommit();
+    if (groupCommit != null && groupCommit.isEnabled()) {
+      certstore.enableGroupCommit(groupCommit.getMaxBatchSize(), groupCommit.getWindowMs());
+    }
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -566,11 +622,316 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
   } // method restartCaSystem
 
+  /**
+   * Reloads the CA configuration from the database in slave mode. Only the signers,
+   * certprofiles, publishers, requestors and CAs whose configuration differs from the loaded
+   * one are re-created. Each of them is replaced atomically in the maps, the requests in
+   * process keep using the replaced entries, which are closed after
+   * {@link #REPLACED_ENTRIES_CLOSE_DELAY_SECONDS} seconds.
+   *
+   * @throws CaMgmtException
+   *           if the configuration could not be read.
+   */
+  private void reloadCaSystem() throws CaMgmtException {
+    if (!caSystemSetuped || caInfos.isEmpty()) {
+      // the periodic tasks are scheduled only if at least one CA is configured.
+      restartCaSystem();
+      return;
+    }
+
+    List<Closeable> replacedEntries = new LinkedList<>();
+    Set<String> changedSigners = reloadSigners();
+    reloadCertprofiles(replacedEntries);
+    reloadPublishers(replacedEntries);
+    reloadRequestors();
+    reloadCaAliases();
+    reloadCas(changedSigners, replacedEntries);
+
+    if (!replacedEntries.isEmpty()) {
+      scheduledThreadPoolExecutor.schedule(new ReplacedEntriesCloser(replacedEntries),
+          REPLACED_ENTRIES_CLOSE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    LOG.info("reloaded CA system");
+    auditLogPciEvent(true, "CA_CHANGE");
+  } // method reloadCaSystem
+
+  private Set<String> reloadSigners() throws CaMgmtException {
+    Set<String> changedNames = new HashSet<>();
+    List<String> names = queryExecutor.namesFromTable("SIGNER");
+    for (String name : names) {
+      MgmtEntry.Signer entry = queryExecutor.createSigner(name);
+      if (entry == null) {
+        LOG.error("could not initialize signer '{}'", name);
+        continue;
+      }
+
+      if (entry.equals(signerDbEntries.get(name))) {
+        continue;
+      }
+
+      changedNames.add(name);
+      entry.setConfFaulty(true);
+      signerDbEntries.put(name, entry);
+
+      SignerEntryWrapper signer = null;
+      try {
+        signer = createSigner(entry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load signer " + name);
+      }
+
+      if (signer != null) {
+        entry.setConfFaulty(false);
+        signers.put(name, signer);
+        LOG.info("reloaded signer {}", name);
+      } else {
+        signers.remove(name);
+      }
+    }
+
+    for (String name : signerDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        changedNames.add(name);
+        signerDbEntries.remove(name);
+        signers.remove(name);
+        LOG.info("removed signer {}", name);
+      }
+    }
+
+    return changedNames;
+  } // method reloadSigners
+
+  private void reloadCertprofiles(List<Closeable> replacedEntries) throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("PROFILE");
+    for (String name : names) {
+      MgmtEntry.Certprofile dbEntry = queryExecutor.createCertprofile(name);
+      if (dbEntry == null) {
+        LOG.error("could not initialize Certprofile '{}'", name);
+        continue;
+      }
+
+      if (dbEntry.equals(certprofileDbEntries.get(name))) {
+        continue;
+      }
+
+      idNameMap.addCertprofile(dbEntry.getIdent());
+      dbEntry.setFaulty(true);
+      certprofileDbEntries.put(name, dbEntry);
+
+      IdentifiedCertprofile profile = null;
+      try {
+        profile = createCertprofile(dbEntry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load certprofile " + name);
+      }
+
+      IdentifiedCertprofile oldProfile;
+      if (profile != null) {
+        dbEntry.setFaulty(false);
+        oldProfile = certprofiles.put(name, profile);
+        LOG.info("reloaded certprofile {}", name);
+      } else {
+        oldProfile = certprofiles.remove(name);
+      }
+
+      if (oldProfile != null) {
+        replacedEntries.add(oldProfile);
+      }
+    }
+
+    for (String name : certprofileDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        certprofileDbEntries.remove(name);
+        idNameMap.removeCertprofile(name);
+        IdentifiedCertprofile oldProfile = certprofiles.remove(name);
+        if (oldProfile != null) {
+          replacedEntries.add(oldProfile);
+        }
+        LOG.info("removed certprofile {}", name);
+      }
+    }
+  } // method reloadCertprofiles
+
+  private void reloadPublishers(List<Closeable> replacedEntries) throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("PUBLISHER");
+    for (String name : names) {
+      MgmtEntry.Publisher dbEntry = queryExecutor.createPublisher(name);
+      if (dbEntry == null) {
+        LOG.error("could not initialize publisher '{}'", name);
+        continue;
+      }
+
+      if (dbEntry.equals(publisherDbEntries.get(name))) {
+        continue;
+      }
+
+      idNameMap.addPublisher(dbEntry.getIdent());
+      dbEntry.setFaulty(true);
+      publisherDbEntries.put(name, dbEntry);
+
+      IdentifiedCertPublisher publisher = null;
+      try {
+        publisher = createPublisher(dbEntry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load publisher " + name);
+      }
+
+      IdentifiedCertPublisher oldPublisher;
+      if (publisher != null) {
+        dbEntry.setFaulty(false);
+        oldPublisher = publishers.put(name, publisher);
+        LOG.info("reloaded publisher {}", name);
+      } else {
+        oldPublisher = publishers.remove(name);
+      }
+
+      if (oldPublisher != null) {
+        replacedEntries.add(oldPublisher);
+      }
+    }
+
+    for (String name : publisherDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        publisherDbEntries.remove(name);
+        idNameMap.removePublisher(name);
+        IdentifiedCertPublisher oldPublisher = publishers.remove(name);
+        if (oldPublisher != null) {
+          replacedEntries.add(oldPublisher);
+        }
+        LOG.info("removed publisher {}", name);
+      }
+    }
+  } // method reloadPublishers
+
+  private void reloadRequestors() throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("REQUESTOR");
+    for (String name : names) {
+      if (RequestorInfo.NAME_BY_CA.equals(name) || RequestorInfo.NAME_BY_USER.equals(name)) {
+        continue;
+      }
+
+      MgmtEntry.Requestor dbEntry = queryExecutor.createRequestor(name);
+      if (dbEntry == null) {
+        LOG.error("could not load requestor {}", name);
+        continue;
+      }
+
+      if (dbEntry.equals(requestorDbEntries.get(name))) {
+        continue;
+      }
+
+      idNameMap.addRequestor(dbEntry.getIdent());
+      requestorDbEntries.put(name, dbEntry);
+      RequestorEntryWrapper requestor = new RequestorEntryWrapper();
+      requestor.setDbEntry(dbEntry, securityFactory.getPasswordResolver());
+      requestors.put(name, requestor);
+      LOG.info("reloaded requestor {}", name);
+    }
+
+    for (String name : requestorDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        requestorDbEntries.remove(name);
+        idNameMap.removeRequestor(name);
+        requestors.remove(name);
+        LOG.info("removed requestor {}", name);
+      }
+    }
+  } // method reloadRequestors
+
+  private void reloadCaAliases() throws CaMgmtException {
+    Map<String, Integer> map = queryExecutor.createCaAliases();
+    caAliases.putAll(map);
+    caAliases.keySet().retainAll(map.keySet());
+  } // method reloadCaAliases
+
+  private void reloadCas(Set<String> changedSigners, List<Closeable> replacedEntries)
+      throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("CA");
+    for (String name : names) {
+      CaInfo oldCaInfo = caInfos.get(name);
+      CaInfo caInfo = queryExecutor.createCaInfo(name, masterMode, certstore);
+
+      if (oldCaInfo == null
+          || !oldCaInfo.getCaEntry().equals(caInfo.getCaEntry(), true, false)) {
+        // the CA itself has been changed, replace its X509Ca and responders.
+        X509Ca oldCa = x509cas.get(name);
+        loadCaAssociations(name, caInfo.getIdent());
+
+        if (CaStatus.ACTIVE == caInfo.getCaEntry().getStatus()) {
+          if (!startCa(name, caInfo)) {
+            // keep the loaded CA, the reload is retried with the next change.
+            LOG.error("could not reload CA {}, keep the loaded one", name);
+            continue;
+          }
+
+          if (caInfo.getScepResponderName() == null) {
+            scepResponders.remove(name);
+          }
+          LOG.info("reloaded CA {}", name);
+        } else {
+          x509cas.remove(name);
+          cmpResponders.remove(name);
+          scepResponders.remove(name);
+          LOG.info("reloaded inactive CA {}", name);
+        }
+
+        caInfos.put(name, caInfo);
+        idNameMap.addCa(caInfo.getIdent());
+
+        X509Ca newCa = x509cas.get(name);
+        if (oldCa != null && oldCa != newCa) {
+          if (newCa != null && newCa.getCaIdent().getId().equals(oldCa.getCaIdent().getId())) {
+            oldCa.setKeepFingerprintIndex(true);
+          }
+          replacedEntries.add(oldCa);
+        }
+        continue;
+      }
+
+      // the X509Ca uses the associations and signers by name, just replace them.
+      loadCaAssociations(name, caInfo.getIdent());
+
+      String scepResponderName = oldCaInfo.getScepResponderName();
+      ScepResponder scepResponder = scepResponders.get(name);
+      if (scepResponder != null && changedSigners.contains(scepResponderName)) {
+        SignerEntryWrapper signer = signers.get(scepResponderName);
+        if (signer != null) {
+          scepResponder.setResponder(signer);
+        }
+      }
+    }
+
+    for (String name : caInfos.keySet()) {
+      if (!names.contains(name)) {
+        caInfos.remove(name);
+        idNameMap.removeCa(name);
+        caHasProfiles.remove(name);
+        caHasPublishers.remove(name);
+        caHasRequestors.remove(name);
+        cmpResponders.remove(name);
+        scepResponders.remove(name);
+        X509Ca oldCa = x509cas.remove(name);
+        if (oldCa != null) {
+          replacedEntries.add(oldCa);
+        }
+        LOG.info("removed CA {}", name);
+      }
+    }
+  } // method reloadCas
+
   @Override
   public void notifyCaChange() throws CaMgmtException {
     try {
-      SystemEvent systemEvent = new SystemEvent(EVENT_CACHAGNE, lockInstanceId,
-          System.currentTimeMillis() / 1000L);
+      long eventTime = System.currentTimeMillis() / 1000L;
+      // the slaves detect the change by the increase of the event time, which must be
+      // increased even if notified more than once within one second.
+      SystemEvent lastEvent = queryExecutor.getSystemEvent(EVENT_CACHAGNE);
+      if (lastEvent != null && lastEvent.getEventTime() >= eventTime) {
+        eventTime = lastEvent.getEventTime() + 1;
+      }
+
+      SystemEvent systemEvent = new SystemEvent(EVENT_CACHAGNE, lockInstanceId, eventTime);
       queryExecutor.changeSystemEvent(systemEvent);
       LOG.info("notified the change of CA system");
     } catch (CaMgmtException ex) {
@@ -612,6 +973,7 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
 
       this.lastStartTime = new Date();
+      this.lastCaChangeTime = lastStartTime.getTime() / 1000L;
 
       x509cas.clear();
       cmpResponders.clear();
@@ -620,6 +982,9 @@ public class CaManagerImpl implements CaManager, Closeable {
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
+      certGenExecutor = Executors.newFixedThreadPool(
+          Math.max(2, Runtime.getRuntime().availableProcessors()));
+
       List<String> startedCaNames = new LinkedList<>();
       List<String> failedCaNames = new LinkedList<>();
 
@@ -695,8 +1060,9 @@ public class CaManagerImpl implements CaManager, Closeable {
       if (!masterMode && persistentScheduledThreadPoolExecutor == null) {
         persistentScheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
         persistentScheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
-        persistentScheduledThreadPoolExecutor.scheduleAtFixedRate(new CaRestarter(),
-            300, 300, TimeUnit.SECONDS);
+        int interval = caServerConf.getChangeCheckIntervalSeconds();
+        persistentScheduledThreadPoolExecutor.scheduleAtFixedRate(new CaChangeChecker(),
+            interval, interval, TimeUnit.SECONDS);
       }
     }
 
@@ -704,8 +1070,14 @@ public class CaManagerImpl implements CaManager, Closeable {
   } // method startCaSystem0
 
   private boolean startCa(String caName) {
-    CaInfo caEntry = caInfos.get(caName);
+    return startCa(caName, caInfos.get(caName));
+  }
 
+  /**
+   * Creates the X509Ca and the responders of the CA. They are registered only if all of them
+   * have been created.
+   */
+  private boolean startCa(String caName, CaInfo caEntry) {
     CtlogControl ctlogControl = caEntry.getCaEntry().getCtlogControl();
     CtLogClient ctlogClient = null;
     if (ctlogControl != null && ctlogControl.isEnabled()) {
@@ -728,7 +1100,8 @@ public class CaManagerImpl implements CaManager, Closeable {
           }
         }
       }
-      ctlogClient = new CtLogClient(ctlogControl.getServers(), ctxConf);
+      ctlogClient = new CtLogClient(ctlogControl.getServers(), ctxConf,
+          ctlogControl.getQuorum(), ctlogControl.getTimeoutMs(), ctlogControl.getConcurrency());
     }
 
     X509Ca ca;
@@ -736,27 +1109,34 @@ public class CaManagerImpl implements CaManager, Closeable {
       ca = new X509Ca(this, caEntry, certstore, ctlogClient);
     } catch (OperationException ex) {
       LogUtil.error(LOG, ex, concat("X509CA.<init> (ca=", caName, ")"));
+      if (ctlogClient != null) {
+        ctlogClient.close();
+      }
       return false;
     }
 
-    x509cas.put(caName, ca);
     CmpResponder caResponder;
+    ScepResponder scepResponder = null;
     try {
       caResponder = new CmpResponder(this, caName);
-    } catch (NoSuchAlgorithmException ex) {
-      LogUtil.error(LOG, ex, concat("CmpResponderImpl.<init> (ca=", caName, ")"));
+      if (caEntry.getScepResponderName() != null) {
+        scepResponder = new ScepResponder(this, caEntry.getCaEntry());
+      }
+    } catch (NoSuchAlgorithmException | CaMgmtException ex) {
+      LogUtil.error(LOG, ex, concat("could not create the responders of CA ", caName));
+      // the fingerprint index is shared with the loaded CA with the same ID
+      X509Ca loadedCa = x509cas.get(caName);
+      if (loadedCa != null && loadedCa.getCaIdent().getId().equals(ca.getCaIdent().getId())) {
+        ca.setKeepFingerprintIndex(true);
+      }
+      ca.close();
       return false;
     }
 
+    x509cas.put(caName, ca);
     cmpResponders.put(caName, caResponder);
-
-    if (caEntry.getScepResponderName() != null) {
-      try {
-        scepResponders.put(caName, new ScepResponder(this, caEntry.getCaEntry()));
-      } catch (CaMgmtException ex) {
-        LogUtil.error(LOG, ex, concat("X509CA.<init> (scep=", caName, ")"));
-        return false;
-      }
+    if (scepResponder != null) {
+      scepResponders.put(caName, scepResponder);
     }
     return true;
   } // method startCa
@@ -795,6 +1175,10 @@ public class CaManagerImpl implements CaManager, Closeable {
       }
     }
 
+    if (certstore != null) {
+      certstore.close();
+    }
+
     if (datasource != null) {
       try {
         datasource.close();
@@ -834,6 +1218,10 @@ public class CaManagerImpl implements CaManager, Closeable {
     return scheduledThreadPoolExecutor;
   }
 
+  ExecutorService getCertGenExecutor() {
+    return certGenExecutor;
+  }
+
   @Override
   public Set<String> getCertprofileNames() {
     return certprofileDbEntries.keySet();
@@ -1085,7 +1473,12 @@ public class CaManagerImpl implements CaManager, Closeable {
     LOG.info("created CA {}: {}", name, ca.toString(false));
     caInfos.put(name, ca);
     idNameMap.addCa(ca.getIdent());
-    Set<MgmtEntry.CaHasRequestor> caReqEntries = queryExecutor.createCaHasRequestors(ca.getIdent());
+    loadCaAssociations(name, ca.getIdent());
+    return true;
+  } // method createCa
+
+  private void loadCaAssociations(String name, NameId ident) throws CaMgmtException {
+    Set<MgmtEntry.CaHasRequestor> caReqEntries = queryExecutor.createCaHasRequestors(ident);
     caHasRequestors.put(name, caReqEntries);
     if (LOG.isInfoEnabled()) {
       StringBuilder sb = new StringBuilder();
@@ -1095,7 +1488,7 @@ public class CaManagerImpl implements CaManager, Closeable {
       LOG.info("CA {} is associated with following requestors:{}", name, sb);
     }
 
-    Set<Integer> profileIds = queryExecutor.createCaHasProfiles(ca.getIdent());
+    Set<Integer> profileIds = queryExecutor.createCaHasProfiles(ident);
     Set<String> profileNames = new HashSet<>();
     for (Integer id : profileIds) {
       profileNames.add(idNameMap.getCertprofileName(id));
@@ -1103,16 +1496,14 @@ public class CaManagerImpl implements CaManager, Closeable {
     caHasProfiles.put(name, profileNames);
     LOG.info("CA {} is associated with following profiles: {}", name, profileNames);
 
-    Set<Integer> publisherIds = queryExecutor.createCaHasPublishers(ca.getIdent());
+    Set<Integer> publisherIds = queryExecutor.createCaHasPublishers(ident);
     Set<String> publisherNames = new HashSet<>();
     for (Integer id : publisherIds) {
       publisherNames.add(idNameMap.getPublisherName(id));
     }
     caHasPublishers.put(name, publisherNames);
     LOG.info("CA {} is associated with following publishers: {}", name, publisherNames);
-
-    return true;
-  } // method createCa
+  } // method loadCaAssociations
 
   public void commitNextCrlNo(NameId ca, long nextCrlNo) throws OperationException {
     try {
@@ -2008,6 +2399,11 @@ public class CaManagerImpl implements CaManager, Closeable {
   } // method clearPublishQueue
 
   private void shutdownScheduledThreadPoolExecutor() {
+    if (certGenExecutor != null) {
+      certGenExecutor.shutdown();
+      certGenExecutor = null;
+    }
+
     if (scheduledThreadPoolExecutor == null) {
       return;
     }
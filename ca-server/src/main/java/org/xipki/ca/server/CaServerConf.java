@@ -112,6 +112,100 @@ public class CaServerConf extends ValidatableConf {
 
   } // class RemoteMgmt
 
+  /**
+   * Group commit of the newly issued certificates.
+   */
+  public static class CertGroupCommit extends ValidatableConf {
+
+    private boolean enabled;
+
+    /**
+     * Maximal number of certificates written in one transaction. The default is 100.
+     */
+    private int maxBatchSize = 100;
+
+    /**
+     * Time in milliseconds to wait for further certificates before the commit. The default
+     * is 0, namely only the certificates arriving during the previous commit are grouped.
+     */
+    private int windowMs = 0;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxBatchSize() {
+      return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getWindowMs() {
+      return windowMs;
+    }
+
+    public void setWindowMs(int windowMs) {
+      this.windowMs = windowMs;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxBatchSize < 1) {
+        throw new InvalidConfException("maxBatchSize is not positive");
+      }
+
+      if (windowMs < 0) {
+        throw new InvalidConfException("windowMs is negative");
+      }
+    }
+
+  } // class CertGroupCommit
+
+  /**
+   * In-memory index of the public key and subject fingerprints of the issued certificates,
+   * used to skip the database queries for the duplicate key and duplicate subject checks.
+   */
+  public static class CertFingerprintIndex extends ValidatableConf {
+
+    private boolean enabled;
+
+    /**
+     * Interval in seconds to load the certificates added by other CA instances. Until then,
+     * the duplicate checks do not see these certificates. The default is 300.
+     */
+    private int refreshIntervalSeconds = 300;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getRefreshIntervalSeconds() {
+      return refreshIntervalSeconds;
+    }
+
+    public void setRefreshIntervalSeconds(int refreshIntervalSeconds) {
+      this.refreshIntervalSeconds = refreshIntervalSeconds;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (refreshIntervalSeconds < 1) {
+        throw new InvalidConfException("refreshIntervalSeconds is not positive");
+      }
+    }
+
+  } // class CertFingerprintIndex
+
   private AuditConf audit;
 
   private SecurityConf security;
@@ -129,6 +223,28 @@ public class CaServerConf extends ValidatableConf {
    */
   private int shardId = 0;
 
+  /**
+   * Capacity of the in-memory queue of each asynchronous publisher. Certificates which do not
+   * fit in the queue are written to the table PUBLISHQUEUE. The default is 10000.
+   */
+  private int publishQueueSize = 10000;
+
+  /**
+   * Maximal number of certificates an asynchronous publisher publishes at once.
+   * The default is 100.
+   */
+  private int publishBatchSize = 100;
+
+  /**
+   * Interval in seconds of a slave CA system to check whether the CA configuration has been
+   * changed by the master. The default is 10.
+   */
+  private int changeCheckIntervalSeconds = 10;
+
+  private CertGroupCommit certGroupCommit;
+
+  private CertFingerprintIndex certFingerprintIndex;
+
   private List<DataSourceConf> datasources;
 
   private List<SslContext> sslContexts;
@@ -169,6 +285,46 @@ public class CaServerConf extends ValidatableConf {
     this.shardId = shardId;
   }
 
+  public int getPublishQueueSize() {
+    return publishQueueSize;
+  }
+
+  public void setPublishQueueSize(int publishQueueSize) {
+    this.publishQueueSize = publishQueueSize;
+  }
+
+  public int getPublishBatchSize() {
+    return publishBatchSize;
+  }
+
+  public void setPublishBatchSize(int publishBatchSize) {
+    this.publishBatchSize = publishBatchSize;
+  }
+
+  public int getChangeCheckIntervalSeconds() {
+    return changeCheckIntervalSeconds;
+  }
+
+  public void setChangeCheckIntervalSeconds(int changeCheckIntervalSeconds) {
+    this.changeCheckIntervalSeconds = changeCheckIntervalSeconds;
+  }
+
+  public CertGroupCommit getCertGroupCommit() {
+    return certGroupCommit;
+  }
+
+  public void setCertGroupCommit(CertGroupCommit certGroupCommit) {
+    this.certGroupCommit = certGroupCommit;
+  }
+
+  public CertFingerprintIndex getCertFingerprintIndex() {
+    return certFingerprintIndex;
+  }
+
+  public void setCertFingerprintIndex(CertFingerprintIndex certFingerprintIndex) {
+    this.certFingerprintIndex = certFingerprintIndex;
+  }
+
   public List<DataSourceConf> getDatasources() {
     return datasources;
   }
@@ -258,9 +414,23 @@ public class CaServerConf extends ValidatableConf {
       throw new InvalidConfException("shardId is not in [0, 127]");
     }
 
+    if (publishQueueSize < 1) {
+      throw new InvalidConfException("publishQueueSize is not positive");
+    }
+
+    if (publishBatchSize < 1) {
+      throw new InvalidConfException("publishBatchSize is not positive");
+    }
+
+    if (changeCheckIntervalSeconds < 1) {
+      throw new InvalidConfException("changeCheckIntervalSeconds is not positive");
+    }
+
     notEmpty(datasources, "datasources");
     validate(remoteMgmt);
     validate(security);
+    validate(certGroupCommit);
+    validate(certFingerprintIndex);
   } // method validate
 
 }
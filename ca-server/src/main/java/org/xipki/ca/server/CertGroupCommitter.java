@@ -0,0 +1,337 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Group commit of the INSERT statements of the same SQL. The rows of concurrent callers are
+ * written by a background thread in one JDBC batch and one transaction, and each caller
+ * returns once its row has been committed.
+ *
+ * <p>If the batch fails, it is rolled back and the rows are written one by one, so that the
+ * failure of a row is reported only to its own caller.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class CertGroupCommitter implements Closeable {
+
+  /**
+   * Row to be inserted.
+   */
+  interface Row {
+
+    /**
+     * Sets the parameters of the INSERT statement.
+     *
+     * @param ps
+     *          Prepared statement.
+     * @throws SQLException
+     *           if the parameters could not be set.
+     */
+    void bind(PreparedStatement ps) throws SQLException;
+
+  } // interface Row
+
+  private static final class PendingRow {
+
+    private final Row row;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    PendingRow(Row row) {
+      this.row = row;
+    }
+
+  } // class PendingRow
+
+  private class Writer implements Runnable {
+
+    @Override
+    public void run() {
+      List<PendingRow> batch = new ArrayList<>(maxBatchSize);
+      while (running || !queue.isEmpty()) {
+        try {
+          PendingRow first = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, maxBatchSize - 1);
+
+          if (windowMs > 0 && batch.size() < maxBatchSize) {
+            // wait for further rows within the window
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+            while (batch.size() < maxBatchSize) {
+              long remaining = deadline - System.nanoTime();
+              PendingRow next = (remaining <= 0) ? null
+                  : queue.poll(remaining, TimeUnit.NANOSECONDS);
+              if (next == null) {
+                break;
+              }
+              batch.add(next);
+              queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+          }
+
+          write(batch);
+        } catch (InterruptedException ex) {
+          if (running) {
+            LOG.warn("interrupted while waiting for rows");
+          }
+
+          // the callers wait until their rows are written, hence the drained rows must be
+          // written, too.
+          if (!batch.isEmpty()) {
+            write(batch);
+          }
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while writing rows");
+          for (PendingRow m : batch) {
+            m.future.completeExceptionally(th);
+          }
+        } finally {
+          batch.clear();
+        }
+      }
+    } // method run
+
+  } // class Writer
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertGroupCommitter.class);
+
+  private final DataSourceWrapper datasource;
+
+  private final String sql;
+
+  private final int maxBatchSize;
+
+  private final int windowMs;
+
+  private final BlockingQueue<PendingRow> queue = new LinkedBlockingQueue<>();
+
+  private final AtomicLong commitCount = new AtomicLong();
+
+  private final AtomicLong rowCount = new AtomicLong();
+
+  private volatile boolean running;
+
+  private Thread writerThread;
+
+  CertGroupCommitter(DataSourceWrapper datasource, String sql, int maxBatchSize, int windowMs) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    this.sql = Args.notBlank(sql, "sql");
+    this.maxBatchSize = Args.positive(maxBatchSize, "maxBatchSize");
+    this.windowMs = Args.notNegative(windowMs, "windowMs");
+  }
+
+  void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    writerThread = new Thread(new Writer(), "cert-group-commit");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Inserts the row, and waits until it is committed.
+   *
+   * @param row
+   *          Row to be inserted.
+   * @throws DataAccessException
+   *           if the row could not be inserted.
+   */
+  void insert(Row row) throws DataAccessException {
+    PendingRow pending = new PendingRow(row);
+    if (running) {
+      queue.add(pending);
+      if (!running && queue.remove(pending)) {
+        // closed in the meantime
+        writeSingle(pending);
+      }
+    } else {
+      writeSingle(pending);
+    }
+    waitFor(pending);
+  } // method insert
+
+  private void waitFor(PendingRow pending) throws DataAccessException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          pending.future.get();
+          return;
+        } catch (InterruptedException ex) {
+          // the row may be committed later, hence we must wait for the result.
+          interrupted = true;
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof DataAccessException) {
+            throw (DataAccessException) cause;
+          } else {
+            throw new DataAccessException(cause.getMessage(), cause);
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // method waitFor
+
+  private void write(List<PendingRow> batch) {
+    if (batch.size() == 1) {
+      writeSingle(batch.get(0));
+      return;
+    }
+
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      for (PendingRow m : batch) {
+        m.future.completeExceptionally(ex);
+      }
+      return;
+    }
+
+    PreparedStatement ps = null;
+    boolean autoCommit = true;
+    boolean committed = false;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      ps = datasource.prepareStatement(conn, sql);
+      for (PendingRow m : batch) {
+        m.row.bind(ps);
+        ps.addBatch();
+      }
+
+      ps.executeBatch();
+      conn.commit();
+      committed = true;
+    } catch (SQLException | DataAccessException | RuntimeException ex) {
+      LOG.info("could not commit {} rows in batch, write them one by one: {}",
+          batch.size(), ex.getMessage());
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LOG.warn("could not rollback connection: {}", ex2.getMessage());
+      }
+    } finally {
+      datasource.releaseResources(ps, null, false);
+      try {
+        conn.setAutoCommit(autoCommit);
+      } catch (SQLException ex) {
+        LOG.warn("could not reset autoCommit of connection: {}", ex.getMessage());
+      }
+      datasource.returnConnection(conn);
+    }
+
+    if (committed) {
+      commitCount.incrementAndGet();
+      rowCount.addAndGet(batch.size());
+      for (PendingRow m : batch) {
+        m.future.complete(null);
+      }
+    } else {
+      for (PendingRow m : batch) {
+        writeSingle(m);
+      }
+    }
+  } // method write
+
+  private void writeSingle(PendingRow pending) {
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      pending.row.bind(ps);
+      ps.executeUpdate();
+      commitCount.incrementAndGet();
+      rowCount.incrementAndGet();
+      pending.future.complete(null);
+    } catch (SQLException ex) {
+      pending.future.completeExceptionally(datasource.translate(sql, ex));
+    } catch (DataAccessException | RuntimeException ex) {
+      pending.future.completeExceptionally(ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method writeSingle
+
+  public long getCommitCount() {
+    return commitCount.get();
+  }
+
+  public long getRowCount() {
+    return rowCount.get();
+  }
+
+  /**
+   * Stops accepting new rows, and writes the queued ones.
+   */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    if (writerThread != null) {
+      try {
+        writerThread.join(10000);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+      writerThread = null;
+    }
+
+    // write the remaining rows, if any, directly
+    PendingRow pending;
+    while ((pending = queue.poll()) != null) {
+      writeSingle(pending);
+    }
+  } // method close
+
+}
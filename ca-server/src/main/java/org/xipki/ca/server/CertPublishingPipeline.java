@@ -0,0 +1,591 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.X509Cert;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Publishes the certificate events (issuance, revocation, unrevocation and removal) to the
+ * asynchronous publishers of a CA. Each publisher has its own bounded in-memory queue and
+ * worker thread, which publishes the events in the order they have been queued. Consecutive
+ * issued certificates are published in batches.
+ *
+ * <p>The table PUBLISHQUEUE is used as the durable overflow and retry log: events which
+ * do not fit in the queue, could not be published, or are still in the queue when the
+ * pipeline is closed are written to PUBLISHQUEUE, and will be published by the
+ * periodic CertsInQueuePublisher, which reads the current state of the certificate from
+ * the database. Since an issuance event carries the state of the certificate at the time of
+ * issuance, queued issuance events of a certificate whose later event has been written to
+ * PUBLISHQUEUE are dropped.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class CertPublishingPipeline implements Closeable {
+
+  private enum EventType {
+    ADD,
+    REVOKE,
+    UNREVOKE,
+    REMOVE
+  } // class EventType
+
+  private static final class Event {
+
+    private final EventType type;
+
+    private final long seq;
+
+    private final CertificateInfo certInfo;
+
+    private final CertWithDbId cert;
+
+    private final String certprofile;
+
+    private final CertRevocationInfo revInfo;
+
+    private final long enqueueTime;
+
+    private Event(EventType type, long seq, CertificateInfo certInfo, CertWithDbId cert,
+        String certprofile, CertRevocationInfo revInfo) {
+      this.type = type;
+      this.seq = seq;
+      this.certInfo = certInfo;
+      this.cert = (certInfo != null) ? certInfo.getCert() : cert;
+      this.certprofile = certprofile;
+      this.revInfo = revInfo;
+      this.enqueueTime = System.currentTimeMillis();
+    }
+
+    private long getCertId() {
+      return cert.getCertId().longValue();
+    }
+
+  } // class Event
+
+  /**
+   * Worker of a publisher.
+   */
+  class Worker implements Runnable {
+
+    private final String publisherName;
+
+    private final BlockingQueue<Event> queue;
+
+    private final AtomicLong seqGenerator = new AtomicLong();
+
+    /**
+     * Certificate ID to the sequence number of the first event which has not been queued.
+     * Queued issuance events of these certificates with lower sequence number are outdated.
+     */
+    private final Map<Long, Long> bypassedCertIds = new ConcurrentHashMap<>();
+
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong lastLagMs = new AtomicLong();
+
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    Worker(String publisherName) {
+      this.publisherName = publisherName;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    private void start() {
+      thread = new Thread(this, "publisher-" + caIdent.getName() + "-" + publisherName);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      Deque<Event> batch = new ArrayDeque<>(batchSize);
+      while (running || !queue.isEmpty()) {
+        try {
+          Event first = queue.poll(1, TimeUnit.SECONDS);
+          if (first == null) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          publish(batch);
+        } catch (InterruptedException ex) {
+          if (running) {
+            LOG.warn("interrupted while waiting for certificates to publish");
+          }
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while publishing certificates to " + publisherName);
+        } finally {
+          // events which have not been published, e.g. due to interruption
+          Event event;
+          while ((event = batch.poll()) != null) {
+            saveUnpublished(event);
+          }
+        }
+      }
+    } // method run
+
+    private boolean offer(Event event) {
+      if (!running) {
+        return false;
+      }
+
+      if (event.type == EventType.ADD) {
+        return queue.offer(event);
+      }
+
+      // wait for free space to keep the order of the events of a certificate
+      try {
+        return queue.offer(event, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    } // method offer
+
+    private Event newEvent(EventType type, CertificateInfo certInfo, CertWithDbId cert,
+        String certprofile, CertRevocationInfo revInfo) {
+      return new Event(type, seqGenerator.incrementAndGet(), certInfo, cert, certprofile,
+          revInfo);
+    }
+
+    /**
+     * Marks the queued issuance events of the certificate as outdated.
+     */
+    private void bypassed(Event event) {
+      bypassedCertIds.put(event.getCertId(), event.seq);
+    }
+
+    private void publish(Deque<Event> batch) {
+      IdentifiedCertPublisher publisher = ca.getPublisher(publisherName);
+      if (publisher == null) {
+        LOG.warn("publisher {} is no longer assigned to CA {}, ignore {} events",
+            publisherName, caIdent.getName(), batch.size());
+        batch.clear();
+        return;
+      }
+
+      long lag = System.currentTimeMillis() - batch.peek().enqueueTime;
+      long lastSeq = batch.peekLast().seq;
+      int size = batch.size();
+
+      List<CertificateInfo> certInfos = new ArrayList<>(size);
+      while (!batch.isEmpty()) {
+        Event event = batch.peek();
+        if (event.type != EventType.ADD) {
+          publishSingle(publisher, event);
+          batch.poll();
+          continue;
+        }
+
+        // publish the consecutive issuance events in one batch
+        certInfos.clear();
+        while (!batch.isEmpty() && batch.peek().type == EventType.ADD) {
+          event = batch.poll();
+          Long bypassedSeq = bypassedCertIds.get(event.getCertId());
+          if (bypassedSeq != null && event.seq < bypassedSeq) {
+            LOG.debug("ignore outdated issuance event of certificate {}", event.getCertId());
+          } else {
+            certInfos.add(event.certInfo);
+          }
+        }
+
+        if (certInfos.isEmpty()) {
+          continue;
+        }
+
+        List<CertificateInfo> failed;
+        try {
+          failed = publisher.certificatesAdded(certInfos);
+        } catch (RuntimeException ex) {
+          LogUtil.warn(LOG, ex, "could not publish certificates to the publisher "
+              + publisherName);
+          failed = certInfos;
+        }
+
+        for (CertificateInfo certInfo : failed) {
+          addToPublishQueue(publisher.getIdent(), certInfo.getCert().getCertId());
+        }
+
+        failedCount.addAndGet(failed.size());
+        publishedCount.addAndGet(certInfos.size() - failed.size());
+      }
+
+      // all events queued before lastSeq have been processed
+      if (!bypassedCertIds.isEmpty()) {
+        Iterator<Entry<Long, Long>> it = bypassedCertIds.entrySet().iterator();
+        while (it.hasNext()) {
+          if (it.next().getValue() <= lastSeq) {
+            it.remove();
+          }
+        }
+      }
+
+      lastLagMs.set(lag);
+      long currentMax = maxLagMs.get();
+      while (lag > currentMax) {
+        if (maxLagMs.compareAndSet(currentMax, lag)) {
+          break;
+        }
+        currentMax = maxLagMs.get();
+      }
+
+      LOG.debug("published {} events to {}, lag {} ms", size, publisherName, lag);
+    } // method publish
+
+    private void publishSingle(IdentifiedCertPublisher publisher, Event event) {
+      boolean successful;
+      try {
+        if (event.type == EventType.REVOKE) {
+          successful = publisher.certificateRevoked(caCert(), event.cert, event.certprofile,
+              event.revInfo);
+        } else if (event.type == EventType.UNREVOKE) {
+          successful = publisher.certificateUnrevoked(caCert(), event.cert);
+        } else {
+          successful = publisher.certificateRemoved(caCert(), event.cert);
+        }
+      } catch (RuntimeException ex) {
+        successful = false;
+        LogUtil.warn(LOG, ex, "could not publish " + event.type + " event of certificate "
+            + event.getCertId() + " to the publisher " + publisherName);
+      }
+
+      if (successful) {
+        publishedCount.incrementAndGet();
+      } else {
+        failedCount.incrementAndGet();
+        saveUnpublished(publisher, event);
+      }
+    } // method publishSingle
+
+    private void saveUnpublished(Event event) {
+      IdentifiedCertPublisher publisher = ca.getPublisher(publisherName);
+      if (publisher != null) {
+        saveUnpublished(publisher, event);
+      }
+    } // method saveUnpublished
+
+    private void saveUnpublished(IdentifiedCertPublisher publisher, Event event) {
+      if (event.type != EventType.REMOVE) {
+        addToPublishQueue(publisher.getIdent(), event.getCertId());
+      } else {
+        // the certificate has been removed from the database, so it cannot be
+        // published via PUBLISHQUEUE.
+        LOG.error("removing certificate {} from publisher {} failed", event.getCertId(),
+            publisherName);
+      }
+    } // method saveUnpublished
+
+    private void stop() {
+      running = false;
+      if (thread == null) {
+        return;
+      }
+
+      try {
+        thread.join(CLOSE_TIMEOUT_MS);
+        if (thread.isAlive()) {
+          // interrupt the waiting of a hanging publisher, the worker writes the current
+          // batch to PUBLISHQUEUE.
+          thread.interrupt();
+          thread.join(CLOSE_TIMEOUT_MS);
+        }
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (thread.isAlive()) {
+        // the worker is still publishing, and will empty the queue itself.
+        LOG.warn("publisher {} of CA {} has not been stopped in {} ms, {} events in queue",
+            publisherName, caIdent.getName(), 2 * CLOSE_TIMEOUT_MS, queue.size());
+        thread = null;
+        return;
+      }
+      thread = null;
+
+      // save the remaining events
+      IdentifiedCertPublisher publisher = ca.getPublisher(publisherName);
+      Event event;
+      while ((event = queue.poll()) != null) {
+        if (publisher == null) {
+          continue;
+        }
+
+        overflowCount.incrementAndGet();
+        if (event.type == EventType.REMOVE) {
+          publishSingle(publisher, event);
+        } else {
+          addToPublishQueue(publisher.getIdent(), event.getCertId());
+        }
+      }
+    } // method stop
+
+    public String getPublisherName() {
+      return publisherName;
+    }
+
+    public int getQueueDepth() {
+      return queue.size();
+    }
+
+    public long getPublishedCount() {
+      return publishedCount.get();
+    }
+
+    /**
+     * Returns the number of events which are written to PUBLISHQUEUE instead of the
+     * in-memory queue.
+     * @return the number of overflowed events.
+     */
+    public long getOverflowCount() {
+      return overflowCount.get();
+    }
+
+    public long getFailedCount() {
+      return failedCount.get();
+    }
+
+    /**
+     * Returns the queue lag of the last published batch.
+     * @return the time in milliseconds between the enqueuing of the oldest event in the
+     *     last batch and its publication.
+     */
+    public long getLastLagMs() {
+      return lastLagMs.get();
+    }
+
+    public long getMaxLagMs() {
+      return maxLagMs.get();
+    }
+
+  } // class Worker
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertPublishingPipeline.class);
+
+  private static final long CLOSE_TIMEOUT_MS = 10000;
+
+  private static final long OFFER_TIMEOUT_MS = 5000;
+
+  private final X509Ca ca;
+
+  private final NameId caIdent;
+
+  private final CertStore certstore;
+
+  private final int queueSize;
+
+  private final int batchSize;
+
+  private final Map<String, Worker> workers = new ConcurrentHashMap<>();
+
+  private volatile boolean closed;
+
+  CertPublishingPipeline(X509Ca ca, CertStore certstore, int queueSize, int batchSize) {
+    this.ca = Args.notNull(ca, "ca");
+    this.caIdent = ca.getCaIdent();
+    this.certstore = Args.notNull(certstore, "certstore");
+    this.queueSize = Args.positive(queueSize, "queueSize");
+    this.batchSize = Args.positive(batchSize, "batchSize");
+  }
+
+  /**
+   * Puts the issued certificate in the queue of the given publisher. If the queue is full, the
+   * certificate is written to PUBLISHQUEUE.
+   *
+   * @param publisher
+   *          Publisher.
+   * @param certInfo
+   *          Certificate to be published.
+   * @return whether the certificate has been put in the in-memory queue or in PUBLISHQUEUE.
+   */
+  boolean publish(IdentifiedCertPublisher publisher, CertificateInfo certInfo) {
+    return publish(publisher, EventType.ADD, certInfo, null, null, null);
+  }
+
+  /**
+   * Puts the revocation of the certificate in the queue of the given publisher. If the queue
+   * is full, the certificate is written to PUBLISHQUEUE.
+   *
+   * @param publisher
+   *          Publisher.
+   * @param cert
+   *          Revoked certificate.
+   * @param certprofile
+   *          Certificate profile of the certificate.
+   * @param revInfo
+   *          Revocation information.
+   * @return whether the event has been put in the in-memory queue or in PUBLISHQUEUE.
+   */
+  boolean publishRevoked(IdentifiedCertPublisher publisher, CertWithDbId cert,
+      String certprofile, CertRevocationInfo revInfo) {
+    return publish(publisher, EventType.REVOKE, null, cert, certprofile, revInfo);
+  }
+
+  /**
+   * Puts the unrevocation of the certificate in the queue of the given publisher. If the queue
+   * is full, the certificate is written to PUBLISHQUEUE.
+   *
+   * @param publisher
+   *          Publisher.
+   * @param cert
+   *          Unrevoked certificate.
+   * @return whether the event has been put in the in-memory queue or in PUBLISHQUEUE.
+   */
+  boolean publishUnrevoked(IdentifiedCertPublisher publisher, CertWithDbId cert) {
+    return publish(publisher, EventType.UNREVOKE, null, cert, null, null);
+  }
+
+  /**
+   * Puts the removal of the certificate in the queue of the given publisher. If the queue
+   * is full, the certificate is removed from the publisher directly.
+   *
+   * @param publisher
+   *          Publisher.
+   * @param cert
+   *          Certificate to be removed.
+   * @return whether the event has been put in the in-memory queue or removed from the
+   *     publisher successfully.
+   */
+  boolean publishRemoved(IdentifiedCertPublisher publisher, CertWithDbId cert) {
+    return publish(publisher, EventType.REMOVE, null, cert, null, null);
+  }
+
+  private boolean publish(IdentifiedCertPublisher publisher, EventType type,
+      CertificateInfo certInfo, CertWithDbId cert, String certprofile,
+      CertRevocationInfo revInfo) {
+    String name = publisher.getIdent().getName();
+    Worker worker = null;
+    if (!closed) {
+      worker = workers.get(name);
+      if (worker == null) {
+        synchronized (workers) {
+          worker = workers.get(name);
+          if (worker == null && !closed) {
+            worker = new Worker(name);
+            worker.start();
+            workers.put(name, worker);
+          }
+        }
+      }
+    }
+
+    Event event;
+    if (worker != null) {
+      event = worker.newEvent(type, certInfo, cert, certprofile, revInfo);
+      if (worker.offer(event)) {
+        return true;
+      }
+      worker.overflowCount.incrementAndGet();
+      if (type != EventType.ADD) {
+        worker.bypassed(event);
+      }
+    } else {
+      event = new Event(type, 0, certInfo, cert, certprofile, revInfo);
+    }
+
+    if (type != EventType.REMOVE) {
+      return addToPublishQueue(publisher.getIdent(), event.getCertId());
+    }
+
+    try {
+      return publisher.certificateRemoved(caCert(), event.cert);
+    } catch (RuntimeException ex) {
+      LogUtil.warn(LOG, ex, "could not remove certificate from the publisher " + name);
+      return false;
+    }
+  } // method publish
+
+  private boolean addToPublishQueue(NameId publisherIdent, long certId) {
+    try {
+      certstore.addToPublishQueue(publisherIdent, certId, caIdent);
+      return true;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+      return false;
+    }
+  } // method addToPublishQueue
+
+  private X509Cert caCert() {
+    return ca.getCaInfo().getCert();
+  }
+
+  List<Worker> getWorkers() {
+    return new ArrayList<>(workers.values());
+  }
+
+  /**
+   * Logs the queue depth and lag of each publisher.
+   */
+  void logMetrics() {
+    for (Worker worker : workers.values()) {
+      LOG.info("CA {}, publisher {}: queueDepth={}, published={}, overflow={}, failed={}, "
+          + "lastLagMs={}, maxLagMs={}", caIdent.getName(), worker.publisherName,
+          worker.getQueueDepth(), worker.getPublishedCount(), worker.getOverflowCount(),
+          worker.getFailedCount(), worker.getLastLagMs(), worker.getMaxLagMs());
+    }
+  } // method logMetrics
+
+  /**
+   * Stops accepting new events, publishes the queued ones, and writes the remaining ones
+   * to PUBLISHQUEUE.
+   */
+  @Override
+  public void close() {
+    synchronized (workers) {
+      closed = true;
+    }
+
+    for (Worker worker : workers.values()) {
+      worker.stop();
+    }
+    workers.clear();
+  } // method close
+
+}
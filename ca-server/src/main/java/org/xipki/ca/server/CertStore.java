@@ -20,15 +20,16 @@ package org.xipki.ca.server;
 import static org.xipki.ca.api.OperationException.ErrorCode.BAD_REQUEST;
 import static org.xipki.ca.api.OperationException.ErrorCode.CERT_REVOKED;
 import static org.xipki.ca.api.OperationException.ErrorCode.CERT_UNREVOKED;
+import static org.xipki.ca.api.OperationException.ErrorCode.CRL_FAILURE;
 import static org.xipki.ca.api.OperationException.ErrorCode.DATABASE_FAILURE;
 import static org.xipki.ca.api.OperationException.ErrorCode.NOT_PERMITTED;
 import static org.xipki.ca.api.OperationException.ErrorCode.SYSTEM_FAILURE;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
-import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -44,14 +45,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERPrintableString;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
-import org.bouncycastle.asn1.x509.Extension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
@@ -85,7 +84,7 @@ import org.xipki.util.StringUtil;
  * @since 2.0.0
  */
 
-public class CertStore {
+public class CertStore implements Closeable {
 
   static enum CertStatus {
 
@@ -174,8 +173,157 @@ public class CertStore {
 
   } // class SerialWithId
 
+  static class CertForCrlCertset {
+
+    private final long id;
+
+    private final BigInteger serial;
+
+    private final int profileId;
+
+    private final byte[] encodedCert;
+
+    public CertForCrlCertset(long id, BigInteger serial, int profileId, byte[] encodedCert) {
+      this.id = id;
+      this.serial = serial;
+      this.profileId = profileId;
+      this.encodedCert = encodedCert;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public BigInteger getSerial() {
+      return serial;
+    }
+
+    public int getProfileId() {
+      return profileId;
+    }
+
+    public byte[] getEncodedCert() {
+      return encodedCert;
+    }
+
+  } // class CertForCrlCertset
+
+  /**
+   * Row of the table CERT to be inserted.
+   */
+  private static final class CertRow implements CertGroupCommitter.Row {
+
+    private final long id;
+
+    private final long lastUpdate;
+
+    private final String serialNumber;
+
+    private final String subject;
+
+    private final long fpSubject;
+
+    private final Long fpReqSubject;
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final int profileId;
+
+    private final int caId;
+
+    private final Integer requestorId;
+
+    private final Integer userId;
+
+    private final long fpPublicKey;
+
+    private final boolean ee;
+
+    private final int reqType;
+
+    private final String transactionId;
+
+    private final String sha1;
+
+    private final String reqSubject;
+
+    private final byte[] encodedCert;
+
+    private final DataSourceWrapper datasource;
+
+    private final boolean binaryCert;
+
+    private CertRow(long id, X509Certificate cert, String subject, long fpSubject,
+        Long fpReqSubject, int profileId, int caId, Integer requestorId, Integer userId,
+        long fpPublicKey, int reqType, String transactionId, String sha1, String reqSubject,
+        byte[] encodedCert, DataSourceWrapper datasource, boolean binaryCert) {
+      this.id = id;
+      this.lastUpdate = System.currentTimeMillis() / 1000;
+      this.serialNumber = cert.getSerialNumber().toString(16);
+      this.subject = subject;
+      this.fpSubject = fpSubject;
+      this.fpReqSubject = fpReqSubject;
+      this.notBefore = cert.getNotBefore().getTime() / 1000;
+      this.notAfter = cert.getNotAfter().getTime() / 1000;
+      this.profileId = profileId;
+      this.caId = caId;
+      this.requestorId = requestorId;
+      this.userId = userId;
+      this.fpPublicKey = fpPublicKey;
+      this.ee = cert.getBasicConstraints() == -1;
+      this.reqType = reqType;
+      this.transactionId = transactionId;
+      this.sha1 = sha1;
+      this.reqSubject = reqSubject;
+      this.encodedCert = encodedCert;
+      this.datasource = datasource;
+      this.binaryCert = binaryCert;
+    }
+
+    @Override
+    public void bind(PreparedStatement ps) throws SQLException {
+      int idx = 1;
+      ps.setLong(idx++, id);
+      ps.setLong(idx++, lastUpdate);
+      ps.setString(idx++, serialNumber);
+      ps.setString(idx++, subject);
+      ps.setLong(idx++, fpSubject);
+      setLong(ps, idx++, fpReqSubject);
+      ps.setLong(idx++, notBefore);
+      ps.setLong(idx++, notAfter);
+      setBoolean(ps, idx++, false);
+      ps.setInt(idx++, profileId);
+      ps.setInt(idx++, caId);
+      setInt(ps, idx++, requestorId);
+      setInt(ps, idx++, userId);
+      ps.setLong(idx++, fpPublicKey);
+      ps.setInt(idx++, ee ? 1 : 0);
+      ps.setInt(idx++, reqType);
+      ps.setString(idx++, transactionId);
+      ps.setString(idx++, sha1);
+      ps.setString(idx++, reqSubject);
+      // in this version we set CRL_SCOPE to fixed value 0
+      ps.setInt(idx++, 0);
+      datasource.setBinary(ps, idx++, encodedCert, binaryCert);
+    } // method bind
+
+  } // class CertRow
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
+  private static final int FP_INDEX_PAGE_SIZE = 1000;
+
+  private static final long FP_INDEX_MIN_CAPACITY = 100000;
+
+  /**
+   * Certificates with ID greater than (max. loaded ID - overlap) are re-read by the refresh of
+   * the fingerprint index. The ID begins with the timestamp in ms shifted by 17 bits, so this
+   * covers the certificates committed up to 5 minutes out of order.
+   */
+  private static final long FP_INDEX_REFRESH_OVERLAP = (5 * 60 * 1000L) << 17;
+
   private static final String SQL_ADD_CERT =
       "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,PID,"
       + "CA_ID,RID,UID,FP_K,EE,RTYPE,TID,SHA1,REQ_SUBJECT,CRL_SCOPE,CERT)"
@@ -193,6 +341,8 @@ public class CertStore {
   private static final String SQL_REMOVE_PUBLISHQUEUE =
       "DELETE FROM PUBLISHQUEUE WHERE PID=? AND CID=?";
 
+  private static final String SQL_MAXID_CERT = "SELECT MAX(ID) FROM CERT WHERE CA_ID=?";
+
   private static final String SQL_MAXID_DELTACRL_CACHE =
       "SELECT MAX(ID) FROM DELTACRL_CACHE WHERE CA_ID=?";
 
@@ -204,6 +354,9 @@ public class CertStore {
   private static final String SQL_MAX_THISUPDAATE_CRL =
       "SELECT MAX(THISUPDATE) FROM CRL WHERE CA_ID=? AND DELTACRL=?";
 
+  private static final String SQL_MAX_THISUPDATE_ANY_CRL =
+      "SELECT MAX(THISUPDATE) FROM CRL WHERE CA_ID=?";
+
   private static final String SQL_ADD_CRL =
       "INSERT INTO CRL (ID,CA_ID,CRL_NO,THISUPDATE,NEXTUPDATE,DELTACRL,BASECRL_NO,CRL_SCOPE,CRL)"
       + " VALUES (?,?,?,?,?,?,?,?,?)";
@@ -251,6 +404,8 @@ public class CertStore {
 
   private final String sqlCrl;
 
+  private final String sqlCurrentCrl;
+
   private final String sqlCrlWithNo;
 
   private final String sqlReqIdForSerial;
@@ -278,10 +433,23 @@ public class CertStore {
   @SuppressWarnings("unused")
   private final int dbSchemaVersion;
 
+  private final boolean binaryCert;
+
+  private final boolean binaryCrl;
+
   private final int maxX500nameLen;
 
   private final UniqueIdGenerator idGenerator;
 
+  private volatile CertGroupCommitter certGroupCommitter;
+
+  /**
+   * CA id to the index of fingerprints of the CA's certificates.
+   */
+  private final Map<Integer, FingerprintIndex> fpIndexes = new ConcurrentHashMap<>();
+
+  private final String sqlFingerprints;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -290,6 +458,11 @@ public class CertStore {
     DbSchemaInfo dbSchemaInfo = new DbSchemaInfo(datasource);
     this.dbSchemaVersion = Integer.parseInt(dbSchemaInfo.variableValue("VERSION"));
     this.maxX500nameLen = Integer.parseInt(dbSchemaInfo.variableValue("X500NAME_MAXLEN"));
+    this.binaryCert = datasource.isBinaryColumn(null, "CERT", "CERT");
+    this.binaryCrl = datasource.isBinaryColumn(null, "CRL", "CRL");
+    if (binaryCert || binaryCrl) {
+      LOG.info("binary columns: CERT.CERT={}, CRL.CRL={}", binaryCert, binaryCrl);
+    }
 
     this.sqlCaHasCrl = buildSelectFirstSql("ID FROM CRL WHERE CA_ID=?");
     this.sqlCertForId = buildSelectFirstSql("PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE ID=?");
@@ -315,14 +488,49 @@ public class CertStore {
         "SUBJECT FROM CERT WHERE SUBJECT LIKE ?");
     this.sqlCrl = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
+    this.sqlCurrentCrl = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
+        "THISUPDATE,CRL_NO,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = datasource.buildSelectFirstSql(1, "THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+    this.sqlFingerprints = datasource.buildSelectFirstSql(FP_INDEX_PAGE_SIZE, "ID ASC",
+        "ID,FP_K,FP_S FROM CERT WHERE ID>? AND CA_ID=?");
   } // constructor
 
   private String buildSelectFirstSql(String coreSql) {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
 
+  /**
+   * Enables the group commit of the newly issued certificates: the certificates added by
+   * concurrent callers are written in one JDBC batch and one transaction.
+   *
+   * @param maxBatchSize
+   *          Maximal number of certificates in one transaction.
+   * @param windowMs
+   *          Time in milliseconds to wait for further certificates before the commit. If 0,
+   *          only the certificates arriving during the previous commit are grouped.
+   */
+  void enableGroupCommit(int maxBatchSize, int windowMs) {
+    if (certGroupCommitter != null) {
+      return;
+    }
+
+    CertGroupCommitter committer =
+        new CertGroupCommitter(datasource, SQL_ADD_CERT, maxBatchSize, windowMs);
+    committer.start();
+    this.certGroupCommitter = committer;
+    LOG.info("enabled group commit of certificates, maxBatchSize={}, windowMs={}",
+        maxBatchSize, windowMs);
+  } // method enableGroupCommit
+
+  @Override
+  public void close() {
+    if (certGroupCommitter != null) {
+      certGroupCommitter.close();
+      certGroupCommitter = null;
+    }
+  }
+
   public boolean addCert(CertificateInfo certInfo) {
     Args.notNull(certInfo, "certInfo");
     try {
@@ -367,50 +575,122 @@ public class CertStore {
 
     byte[] encodedCert = certificate.getEncodedCert();
     String b64FpCert = base64Fp(encodedCert);
-    String b64Cert = Base64.encodeToString(encodedCert);
     String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
 
-    final String sql = SQL_ADD_CERT;
+    CertRow row = new CertRow(certId, certificate.getCert(), subjectText, fpSubject,
+        fpReqSubject, certprofile.getId(), ca.getId(), requestor.getId(), userId, fpPk,
+        reqType.getCode(), tid, b64FpCert, reqSubjectText, encodedCert, datasource, binaryCert);
+
+    CertGroupCommitter committer = certGroupCommitter;
+    if (committer != null) {
+      committer.insert(row);
+    } else {
+      final String sql = SQL_ADD_CERT;
+      PreparedStatement ps = borrowPreparedStatement(sql);
+
+      try {
+        row.bind(ps);
+        ps.executeUpdate();
+      } catch (SQLException ex) {
+        throw datasource.translate(null, ex);
+      } finally {
+        datasource.releaseResources(ps, null);
+      }
+    }
+
+    certificate.setCertId(certId);
+
+    // the index must be updated after the commit, see refreshFingerprintIndex().
+    FingerprintIndex fpIndex = fpIndexes.get(ca.getId());
+    if (fpIndex != null) {
+      fpIndex.add(certId, fpPk, fpSubject);
+    }
+  } // method addCert
+
+  /**
+   * Refreshes the in-memory index of the public key and subject fingerprints of the CA's
+   * certificates. The index is created and loaded in the first call, and rebuilt if it is
+   * saturated. Otherwise, the certificates added since the last refresh, also by other
+   * processes, are loaded.
+   *
+   * @param ca
+   *          CA identifier.
+   * @throws OperationException
+   *           if the certificates could not be read from the database.
+   */
+  void refreshFingerprintIndex(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+    FingerprintIndex fpIndex = fpIndexes.get(ca.getId());
+    if (fpIndex != null && !fpIndex.isSaturated()) {
+      loadFingerprints(fpIndex, Math.max(0, fpIndex.getMaxId() - FP_INDEX_REFRESH_OVERLAP));
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    long capacity = Math.max(FP_INDEX_MIN_CAPACITY, 2 * getCountOfCerts(ca, false));
+    FingerprintIndex newIndex = new FingerprintIndex(ca.getId(), capacity);
+
+    if (fpIndex == null) {
+      // register it first, so that certificates added during the loading are indexed.
+      fpIndexes.put(ca.getId(), newIndex);
+      try {
+        loadFingerprints(newIndex, 0);
+      } catch (OperationException ex) {
+        fpIndexes.remove(ca.getId());
+        throw ex;
+      }
+    } else {
+      loadFingerprints(newIndex, 0);
+      fpIndexes.put(ca.getId(), newIndex);
+      // certificates added to the old index during the loading have been committed before
+      loadFingerprints(newIndex, Math.max(0, newIndex.getMaxId() - FP_INDEX_REFRESH_OVERLAP));
+    }
+
+    newIndex.setReady(true);
+    LOG.info("loaded fingerprint index of CA {} with {} certificates (capacity {}) in {} ms",
+        ca.getName(), newIndex.getCount(), capacity, System.currentTimeMillis() - start);
+  } // method refreshFingerprintIndex
+
+  void removeFingerprintIndex(NameId ca) {
+    fpIndexes.remove(ca.getId());
+  }
+
+  private void loadFingerprints(FingerprintIndex fpIndex, long fromId) throws OperationException {
+    final String sql = sqlFingerprints;
     PreparedStatement ps = borrowPreparedStatement(sql);
+    ResultSet rs = null;
 
     try {
-      // cert
-      X509Certificate cert = certificate.getCert();
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, cert.getSerialNumber().toString(16));
-      ps.setString(idx++, subjectText);
-      ps.setLong(idx++, fpSubject);
-      setLong(ps, idx++, fpReqSubject);
-      ps.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      ps.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(ps, idx++, false);
-      ps.setInt(idx++, certprofile.getId());
-      ps.setInt(idx++, ca.getId());
-      setInt(ps, idx++, requestor.getId());
-      setInt(ps, idx++, userId);
-      ps.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      ps.setInt(idx++, isEeCert ? 1 : 0);
-      ps.setInt(idx++, reqType.getCode());
-      ps.setString(idx++, tid);
-
-      ps.setString(idx++, b64FpCert);
-      ps.setString(idx++, reqSubjectText);
-      // in this version we set CRL_SCOPE to fixed value 0
-      ps.setInt(idx++, 0);
-      ps.setString(idx++, b64Cert);
+      long startId = fromId;
+      while (true) {
+        ps.setLong(1, startId);
+        ps.setInt(2, fpIndex.getCaId());
+        rs = ps.executeQuery();
 
-      ps.executeUpdate();
+        int num = 0;
+        while (rs.next()) {
+          num++;
+          startId = rs.getLong("ID");
+          fpIndex.add(startId, rs.getLong("FP_K"), rs.getLong("FP_S"));
+        }
+        rs.close();
+        rs = null;
 
-      certificate.setCertId(certId);
+        if (num < FP_INDEX_PAGE_SIZE) {
+          break;
+        }
+      }
     } catch (SQLException ex) {
-      throw datasource.translate(null, ex);
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
     } finally {
-      datasource.releaseResources(ps, null);
+      datasource.releaseResources(ps, rs);
     }
-  } // method addCert
+  } // method loadFingerprints
+
+  private FingerprintIndex getReadyFingerprintIndex(NameId ca) {
+    FingerprintIndex fpIndex = fpIndexes.get(ca.getId());
+    return (fpIndex != null && fpIndex.isReady()) ? fpIndex : null;
+  }
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -463,6 +743,26 @@ public class CertStore {
     }
   } // method getMaxIdOfDeltaCrlCache
 
+  public long getMaxCertId(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = SQL_MAXID_CERT;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return 0;
+      }
+      return rs.getLong(1);
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getMaxCertId
+
   public void clearDeltaCrlCache(NameId ca, long maxId) throws OperationException {
     final String sql = SQL_CLEAR_DELTACRL_CACHE;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -555,6 +855,35 @@ public class CertStore {
     }
   } // method getThisUpdateOfCurrentCrl
 
+  /**
+   * Returns the thisUpdate of the latest CRL, full or delta.
+   *
+   * @param ca
+   *          CA identifier.
+   * @return the thisUpdate in seconds, or 0 if the CA has no CRL.
+   * @throws OperationException
+   *           if database error occurs.
+   */
+  public long getThisUpdateOfCurrentCrl(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = SQL_MAX_THISUPDATE_ANY_CRL;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return 0L;
+      }
+      return rs.getLong(1);
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getThisUpdateOfCurrentCrl
+
   public boolean hasCrl(NameId ca) throws OperationException {
     Args.notNull(ca, "ca");
 
@@ -573,23 +902,23 @@ public class CertStore {
     }
   } // method hasCrl
 
-  public void addCrl(NameId ca, X509CRL crl) throws OperationException, CRLException {
+  /**
+   * Adds the CRL. The CRL is streamed from its temporary file to the database.
+   *
+   * @param ca
+   *          CA identifier.
+   * @param crl
+   *          The generated CRL.
+   * @throws OperationException
+   *           if the CRL cannot be read or written to the database.
+   */
+  public void addCrl(NameId ca, CrlStreamWriter.GeneratedCrl crl) throws OperationException {
     Args.notNull(ca, "ca");
     Args.notNull(crl, "crl");
 
-    byte[] encodedExtnValue = crl.getExtensionValue(Extension.cRLNumber.getId());
-    Long crlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
-
-    encodedExtnValue = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    Long baseCrlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
+    Long crlNumber = (crl.getCrlNumber() == null) ? null : crl.getCrlNumber().longValue();
+    Long baseCrlNumber =
+        (crl.getBaseCrlNumber() == null) ? null : crl.getBaseCrlNumber().longValue();
 
     final String sql = SQL_ADD_CRL;
     long currentMaxCrlId;
@@ -600,11 +929,9 @@ public class CertStore {
     }
     long crlId = currentMaxCrlId + 1;
 
-    String b64Crl = Base64.encodeToString(crl.getEncoded());
-
     PreparedStatement ps = null;
 
-    try {
+    try (InputStream crlStream = crl.newInputStream()) {
       ps = borrowPreparedStatement(sql);
 
       int idx = 1;
@@ -618,11 +945,13 @@ public class CertStore {
       setLong(ps, idx++, baseCrlNumber);
       // in this version we set CRL_SCOPE to fixed value 0
       ps.setInt(idx++, 0);
-      ps.setString(idx++, b64Crl);
+      datasource.setBinaryStream(ps, idx++, crlStream, crl.getLength(), binaryCrl);
 
       ps.executeUpdate();
     } catch (SQLException ex) {
       throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } catch (IOException ex) {
+      throw new OperationException(CRL_FAILURE, ex);
     } finally {
       datasource.releaseResources(ps, null);
     }
@@ -971,6 +1300,74 @@ public class CertStore {
     }
   } // method getSerialNumbers
 
+  /**
+   * Retrieves the serial number, profile id and optionally the certificate with one query.
+   *
+   * @param ca
+   *          CA.
+   * @param notExpiredAt
+   *          Only certificates not expired at this time will be considered.
+   * @param startId
+   *          The minimal ID of the certificates (inclusive).
+   * @param endId
+   *          The maximal ID of the certificates (inclusive).
+   * @param numEntries
+   *          Maximal number of entries to be returned.
+   * @param withCert
+   *          Whether the certificates are returned.
+   * @param onlyCaCerts
+   *          Whether only CA certificates will be considered.
+   * @param onlyUserCerts
+   *          Whether only end entity certificates will be considered.
+   * @return the certificates ordered by ID.
+   * @throws OperationException
+   *           If database error occurs.
+   */
+  public List<CertForCrlCertset> getCertsForCrlCertset(NameId ca, Date notExpiredAt,
+      long startId, long endId, int numEntries, boolean withCert, boolean onlyCaCerts,
+      boolean onlyUserCerts) throws OperationException {
+    Args.notNull(ca, "ca");
+    Args.notNull(notExpiredAt, "notExpiredAt");
+    Args.positive(numEntries, "numEntries");
+
+    if (onlyCaCerts && onlyUserCerts) {
+      throw new IllegalArgumentException("onlyCaCerts and onlyUserCerts cannot be both of true");
+    }
+    boolean withEe = onlyCaCerts || onlyUserCerts;
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        StringUtil.concat("ID,SN,PID", (withCert ? ",CERT" : ""),
+            " FROM CERT WHERE ID>? AND ID<=? AND CA_ID=? AND NAFTER>?",
+            (withEe ? " AND EE=?" : "")));
+
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      int idx = 1;
+      ps.setLong(idx++, startId - 1);
+      ps.setLong(idx++, endId);
+      ps.setInt(idx++, ca.getId());
+      ps.setLong(idx++, notExpiredAt.getTime() / 1000 + 1);
+      if (withEe) {
+        setBoolean(ps, idx++, onlyUserCerts);
+      }
+      rs = ps.executeQuery();
+
+      List<CertForCrlCertset> ret = new ArrayList<>(numEntries);
+      while (rs.next() && ret.size() < numEntries) {
+        byte[] encodedCert = withCert ? datasource.getBinary(rs, "CERT", binaryCert) : null;
+        ret.add(new CertForCrlCertset(rs.getLong("ID"), new BigInteger(rs.getString("SN"), 16),
+            rs.getInt("PID"), encodedCert));
+      }
+      return ret;
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getCertsForCrlCertset
+
   public List<BigInteger> getExpiredSerialNumbers(NameId ca, long expiredAt, int numEntries)
       throws OperationException {
     Args.notNull(ca, "ca");
@@ -1032,7 +1429,7 @@ public class CertStore {
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
 
-    String b64Crl = null;
+    byte[] encodedCrl = null;
     try {
       int idx = 1;
       ps.setInt(idx++, ca.getId());
@@ -1045,7 +1442,7 @@ public class CertStore {
       while (rs.next()) {
         long thisUpdate = rs.getLong("THISUPDATE");
         if (thisUpdate >= currentThisUpdate) {
-          b64Crl = rs.getString("CRL");
+          encodedCrl = datasource.getBinary(rs, "CRL", binaryCrl);
           currentThisUpdate = thisUpdate;
         }
       }
@@ -1055,9 +1452,46 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    return (b64Crl == null) ? null : Base64.decodeFast(b64Crl);
+    return encodedCrl;
   } // method getEncodedCrl
 
+  EncodedCrl getEncodedCurrentCrl(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+
+    final String sql = sqlCurrentCrl;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    byte[] encodedCrl = null;
+    Long crlNumber = null;
+    long currentThisUpdate = 0;
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      // iterate all entries to make sure that the latest CRL will be returned
+      while (rs.next()) {
+        long thisUpdate = rs.getLong("THISUPDATE");
+        if (thisUpdate >= currentThisUpdate) {
+          encodedCrl = datasource.getBinary(rs, "CRL", binaryCrl);
+          long no = rs.getLong("CRL_NO");
+          crlNumber = rs.wasNull() ? null : no;
+          currentThisUpdate = thisUpdate;
+        }
+      }
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    if (encodedCrl == null) {
+      return null;
+    }
+
+    return new EncodedCrl(encodedCrl,
+        (crlNumber == null) ? null : BigInteger.valueOf(crlNumber), currentThisUpdate);
+  } // method getEncodedCurrentCrl
+
   public int cleanupCrls(NameId ca, int numCrls) throws OperationException {
     Args.notNull(ca, "ca");
     Args.positive(numCrls, "numCrls");
@@ -1115,7 +1549,7 @@ public class CertStore {
 
     final String sql = sqlCertForId;
 
-    String b64Cert;
+    byte[] encodedCert;
     int certprofileId;
     int requestorId;
     boolean revoked;
@@ -1131,7 +1565,7 @@ public class CertStore {
       if (!rs.next()) {
         return null;
       }
-      b64Cert = rs.getString("CERT");
+      encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
       certprofileId = rs.getInt("PID");
       requestorId = rs.getInt("RID");
       revoked = rs.getBoolean("REV");
@@ -1146,7 +1580,6 @@ public class CertStore {
       datasource.releaseResources(ps, rs);
     }
 
-    byte[] encodedCert = Base64.decodeFast(b64Cert);
     X509Certificate cert = X509Util.parseCert(encodedCert);
     CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
     certWithMeta.setCertId(certId);
@@ -1172,7 +1605,7 @@ public class CertStore {
     final String sql = sqlCertWithRevInfo;
 
     long certId;
-    String b64Cert;
+    byte[] encodedCert;
     boolean revoked;
     int revReason = 0;
     long revTime = 0;
@@ -1191,7 +1624,7 @@ public class CertStore {
         return null;
       }
       certId = rs.getLong("ID");
-      b64Cert = rs.getString("CERT");
+      encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
       certprofileId = rs.getInt("PID");
 
       revoked = rs.getBoolean("REV");
@@ -1206,7 +1639,6 @@ public class CertStore {
       datasource.releaseResources(ps, null);
     }
 
-    byte[] encodedCert = Base64.decodeFast(b64Cert);
     X509Certificate cert;
     try {
       cert = X509Util.parseCert(encodedCert);
@@ -1240,7 +1672,7 @@ public class CertStore {
 
     final String sql = sqlCertInfo;
 
-    String b64Cert;
+    byte[] encodedCert;
     boolean revoked;
     int revReason = 0;
     long revTime = 0;
@@ -1259,7 +1691,7 @@ public class CertStore {
       if (!rs.next()) {
         return null;
       }
-      b64Cert = rs.getString("CERT");
+      encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
       certprofileId = rs.getInt("PID");
       requestorId = rs.getInt("RID");
       revoked = rs.getBoolean("REV");
@@ -1275,7 +1707,6 @@ public class CertStore {
     }
 
     try {
-      byte[] encodedCert = Base64.decodeFast(b64Cert);
       X509Certificate cert = X509Util.parseCert(encodedCert);
 
       CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
@@ -1356,8 +1787,7 @@ public class CertStore {
       rs = ps.executeQuery();
 
       while (rs.next()) {
-        String b64Cert = rs.getString("CERT");
-        byte[] encodedCert = Base64.decodeFast(b64Cert);
+        byte[] encodedCert = datasource.getBinary(rs, "CERT", binaryCert);
 
         X509Certificate cert;
         try {
@@ -1762,6 +2192,11 @@ public class CertStore {
       throws OperationException {
     Args.notNull(ca, "ca");
 
+    FingerprintIndex fpIndex = getReadyFingerprintIndex(ca);
+    if (fpIndex != null && !fpIndex.mightContainSubject(subjectFp)) {
+      return CertStatus.UNKNOWN;
+    }
+
     final String sql = sqlCertStatusForSubjectFp;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1783,6 +2218,12 @@ public class CertStore {
 
   public boolean isCertForSubjectIssued(NameId ca, long subjectFp) throws OperationException {
     Args.notNull(ca, "ca");
+
+    FingerprintIndex fpIndex = getReadyFingerprintIndex(ca);
+    if (fpIndex != null && !fpIndex.mightContainSubject(subjectFp)) {
+      return false;
+    }
+
     String sql = sqlCertforSubjectIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1801,6 +2242,12 @@ public class CertStore {
 
   public boolean isCertForKeyIssued(NameId ca, long keyFp) throws OperationException {
     Args.notNull(ca, "ca");
+
+    FingerprintIndex fpIndex = getReadyFingerprintIndex(ca);
+    if (fpIndex != null && !fpIndex.mightContainKey(keyFp)) {
+      return false;
+    }
+
     String sql = sqlCertForKeyIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
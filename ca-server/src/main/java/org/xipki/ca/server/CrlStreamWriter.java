@@ -0,0 +1,887 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.xipki.security.ObjectIdentifiers;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+
+/**
+ * Writes X.509 CRL with bounded memory, independent of the number of revoked certificates.
+ *
+ * <p>The revoked certificates are buffered in memory. If the buffer is full, the entries are
+ * sorted by the serial number and written as a run to a temporary file. While building the
+ * CRL, the runs are merged, and the DER-encoded revokedCertificates is written to a temporary
+ * file. Afterwards the TBSCertList is streamed to the signer, and the whole CRL to the target
+ * file, which can be streamed to the database without being loaded in memory.
+ *
+ * <p>The entries of the XiPKI extension CrlCertSet are handled in the same way, sorted by their
+ * encodings as required by DER for SET OF.
+ *
+ * <p>The encoding is identical to that of BouncyCastle's X509v2CRLBuilder.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class CrlStreamWriter implements Closeable {
+
+  /**
+   * The generated CRL, stored in a temporary file which is deleted when the
+   * {@link CrlStreamWriter} is closed.
+   */
+  static class GeneratedCrl {
+
+    private final File file;
+
+    private final BigInteger crlNumber;
+
+    private final BigInteger baseCrlNumber;
+
+    private final Date thisUpdate;
+
+    private final Date nextUpdate;
+
+    private GeneratedCrl(File file, BigInteger crlNumber, BigInteger baseCrlNumber,
+        Date thisUpdate, Date nextUpdate) {
+      this.file = file;
+      this.crlNumber = crlNumber;
+      this.baseCrlNumber = baseCrlNumber;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+    /**
+     * Returns the CRL number.
+     * @return the CRL number, {@code null} if absent.
+     */
+    BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    /**
+     * Returns the CRL number of the base CRL.
+     * @return the base CRL number if this is a delta CRL, {@code null} otherwise.
+     */
+    BigInteger getBaseCrlNumber() {
+      return baseCrlNumber;
+    }
+
+    Date getThisUpdate() {
+      return thisUpdate;
+    }
+
+    Date getNextUpdate() {
+      return nextUpdate;
+    }
+
+    long getLength() {
+      return file.length();
+    }
+
+    /**
+     * Opens a stream of the DER-encoded CRL. The caller must close it.
+     * @return stream of the DER-encoded CRL.
+     * @throws IOException
+     *           if the temporary file cannot be opened.
+     */
+    InputStream newInputStream() throws IOException {
+      return new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024);
+    }
+
+    /**
+     * Parses the CRL. Only required by the APIs which return the CRL to the client.
+     * @return the parsed CRL.
+     * @throws IOException
+     *           if the temporary file cannot be read.
+     * @throws CRLException
+     *           if the CRL is invalid.
+     * @throws CertificateException
+     *           if the CRL cannot be parsed.
+     */
+    X509CRL toX509Crl() throws IOException, CRLException, CertificateException {
+      return X509Util.parseCrl(file);
+    }
+
+  } // class GeneratedCrl
+
+  /**
+   * Record which can be written to and read from the temporary files.
+   */
+  private interface Record<T> extends Comparable<T> {
+
+    void write(DataOutputStream out) throws IOException;
+
+  } // interface Record
+
+  private interface RecordReader<T> {
+
+    T read(DataInputStream in) throws IOException;
+
+  } // interface RecordReader
+
+  private static class RevokedEntry implements Record<RevokedEntry> {
+
+    private static final RecordReader<RevokedEntry> READER = new RecordReader<RevokedEntry>() {
+
+      @Override
+      public RevokedEntry read(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        int reason = in.readUnsignedByte();
+        long revocationTime = in.readLong();
+        long invalidityTime = in.readLong();
+        return new RevokedEntry(new BigInteger(bytes), reason, revocationTime, invalidityTime);
+      }
+
+    };
+
+    private final BigInteger serial;
+
+    private final int reason;
+
+    private final long revocationTime;
+
+    // 0 if not present
+    private final long invalidityTime;
+
+    RevokedEntry(BigInteger serial, int reason, long revocationTime, long invalidityTime) {
+      this.serial = serial;
+      this.reason = reason;
+      this.revocationTime = revocationTime;
+      this.invalidityTime = invalidityTime;
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+      byte[] bytes = serial.toByteArray();
+      out.writeShort(bytes.length);
+      out.write(bytes);
+      out.writeByte(reason);
+      out.writeLong(revocationTime);
+      out.writeLong(invalidityTime);
+    }
+
+    @Override
+    public int compareTo(RevokedEntry obj) {
+      return serial.compareTo(obj.serial);
+    }
+
+  } // class RevokedEntry
+
+  /**
+   * DER-encoded element of a SET OF, ordered as required by DER.
+   */
+  private static class SetElement implements Record<SetElement> {
+
+    private static final RecordReader<SetElement> READER = new RecordReader<SetElement>() {
+
+      @Override
+      public SetElement read(DataInputStream in) throws IOException {
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        return new SetElement(encoded);
+      }
+
+    };
+
+    private final byte[] encoded;
+
+    SetElement(byte[] encoded) {
+      this.encoded = encoded;
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    }
+
+    @Override
+    public int compareTo(SetElement obj) {
+      byte[] a = encoded;
+      byte[] b = obj.encoded;
+      int len = Math.min(a.length, b.length);
+      for (int i = 0; i < len; i++) {
+        int diff = (0xFF & a[i]) - (0xFF & b[i]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return a.length - b.length;
+    }
+
+  } // class SetElement
+
+  private static class RunReader<T extends Record<T>>
+      implements Closeable, Comparable<RunReader<T>> {
+
+    private final DataInputStream in;
+
+    private final RecordReader<T> recordReader;
+
+    private int remaining;
+
+    private T current;
+
+    RunReader(File file, int size, RecordReader<T> recordReader) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024));
+      this.remaining = size;
+      this.recordReader = recordReader;
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+
+      remaining--;
+      current = recordReader.read(in);
+      return true;
+    }
+
+    @Override
+    public int compareTo(RunReader<T> obj) {
+      return current.compareTo(obj.current);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class RunReader
+
+  /**
+   * Merges the sorted runs.
+   */
+  private static class MergeIterator<T extends Record<T>> implements Iterator<T>, Closeable {
+
+    private final PriorityQueue<RunReader<T>> readers;
+
+    private final List<RunReader<T>> allReaders;
+
+    MergeIterator(List<File> runFiles, List<Integer> runSizes, RecordReader<T> recordReader)
+        throws IOException {
+      this.readers = new PriorityQueue<>(Math.max(1, runFiles.size()));
+      this.allReaders = new ArrayList<>(runFiles.size());
+
+      for (int i = 0; i < runFiles.size(); i++) {
+        RunReader<T> reader = new RunReader<>(runFiles.get(i), runSizes.get(i), recordReader);
+        allReaders.add(reader);
+        if (reader.next()) {
+          readers.add(reader);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !readers.isEmpty();
+    }
+
+    @Override
+    public T next() {
+      RunReader<T> reader = readers.poll();
+      if (reader == null) {
+        throw new NoSuchElementException("no next object anymore");
+      }
+
+      T ret = reader.current;
+      try {
+        if (reader.next()) {
+          readers.add(reader);
+        }
+      } catch (IOException ex) {
+        throw new IllegalStateException("error reading the temporary CRL file", ex);
+      }
+      return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (RunReader<T> reader : allReaders) {
+        reader.close();
+      }
+    }
+
+  } // class MergeIterator
+
+  /**
+   * Records buffered in memory up to the given weight, and then written in sorted runs to
+   * temporary files.
+   */
+  private class SortedRecords<T extends Record<T>> {
+
+    private final RecordReader<T> recordReader;
+
+    private final long maxWeightInMemory;
+
+    private final List<T> records = new ArrayList<>();
+
+    private final List<File> runFiles = new LinkedList<>();
+
+    private final List<Integer> runSizes = new LinkedList<>();
+
+    private long weightInMemory;
+
+    private int size;
+
+    SortedRecords(RecordReader<T> recordReader, long maxWeightInMemory) {
+      this.recordReader = recordReader;
+      this.maxWeightInMemory = maxWeightInMemory;
+    }
+
+    void add(T record, int weight) throws IOException {
+      records.add(record);
+      size++;
+      weightInMemory += weight;
+      if (weightInMemory >= maxWeightInMemory) {
+        writeRun();
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * Returns the iterator of all records sorted. The returned iterator must be closed.
+     */
+    CloseableIterator<T> sorted() throws IOException {
+      if (runFiles.isEmpty()) {
+        Collections.sort(records);
+        final Iterator<T> it = records.iterator();
+        return new CloseableIterator<T>() {
+
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public T next() {
+            return it.next();
+          }
+
+          @Override
+          public void close() {
+            records.clear();
+          }
+
+        };
+      }
+
+      if (!records.isEmpty()) {
+        writeRun();
+      }
+
+      final MergeIterator<T> it = new MergeIterator<>(runFiles, runSizes, recordReader);
+      return new CloseableIterator<T>() {
+
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public T next() {
+          return it.next();
+        }
+
+        @Override
+        public void close() throws IOException {
+          it.close();
+        }
+
+      };
+    } // method sorted
+
+    void clear() {
+      records.clear();
+      runFiles.clear();
+      runSizes.clear();
+      weightInMemory = 0;
+    }
+
+    private void writeRun() throws IOException {
+      Collections.sort(records);
+
+      File file = newTmpFile();
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(file.toPath()), 64 * 1024))) {
+        for (T m : records) {
+          m.write(out);
+        }
+      }
+
+      runFiles.add(file);
+      runSizes.add(records.size());
+      records.clear();
+      weightInMemory = 0;
+    } // method writeRun
+
+  } // class SortedRecords
+
+  private interface CloseableIterator<T> extends Iterator<T>, Closeable {
+  }
+
+  private static final byte TAG_SEQUENCE = 0x30;
+
+  private static final byte TAG_SET = 0x31;
+
+  private static final byte TAG_OCTET_STRING = 0x04;
+
+  private static final byte TAG_CONTEXT_0 = (byte) 0xA0;
+
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  // maximal bytes of the Xipki-CrlCert buffered in memory.
+  private static final long MAX_CRLCERT_BYTES_IN_MEMORY = 32L * 1024 * 1024;
+
+  private final SortedRecords<RevokedEntry> revokedEntries;
+
+  private final List<File> tmpFiles = new LinkedList<>();
+
+  private SortedRecords<SetElement> crlCerts;
+
+  private long crlCertsLength;
+
+  private File revokedCertsFile;
+
+  private long revokedCertsLength;
+
+  private File crlCertsFile;
+
+  /**
+   * Constructor.
+   * @param maxEntriesInMemory
+   *          Maximal number of revoked certificates buffered in memory.
+   */
+  CrlStreamWriter(int maxEntriesInMemory) {
+    Args.positive(maxEntriesInMemory, "maxEntriesInMemory");
+    this.revokedEntries = new SortedRecords<>(RevokedEntry.READER, maxEntriesInMemory);
+  }
+
+  /**
+   * Adds the revoked certificate. The order does not matter.
+   *
+   * @param serial
+   *          Serial number of the certificate.
+   * @param reason
+   *          Revocation reason.
+   * @param revocationTime
+   *          Revocation time.
+   * @param invalidityTime
+   *          Invalidity time, may be {@code null}.
+   * @throws IOException
+   *           if error occurs while writing the temporary file.
+   */
+  void addRevokedCert(BigInteger serial, int reason, Date revocationTime, Date invalidityTime)
+      throws IOException {
+    Args.notNull(serial, "serial");
+    Args.notNull(revocationTime, "revocationTime");
+
+    revokedEntries.add(new RevokedEntry(serial, reason, revocationTime.getTime(),
+        invalidityTime == null ? 0 : invalidityTime.getTime()), 1);
+  } // method addRevokedCert
+
+  int getNumEntries() {
+    return revokedEntries.size();
+  }
+
+  /**
+   * Includes the XiPKI extension CrlCertSet, whose content is added via
+   * {@link #addCrlCert(BigInteger, byte[], String)}.
+   */
+  synchronized void includeCrlCertset() {
+    if (crlCerts == null) {
+      crlCerts = new SortedRecords<>(SetElement.READER, MAX_CRLCERT_BYTES_IN_MEMORY);
+      crlCertsLength = 0;
+    }
+  }
+
+  /**
+   * Removes the XiPKI extension CrlCertSet.
+   */
+  synchronized void excludeCrlCertset() {
+    if (crlCerts != null) {
+      crlCerts.clear();
+      crlCerts = null;
+      crlCertsLength = 0;
+    }
+  }
+
+  /**
+   * Adds an entry to the XiPKI extension CrlCertSet. This method is thread-safe.
+   *
+   * <pre>
+   * Xipki-CrlCert ::= SEQUENCE {
+   *   serial          INTEGER,
+   *   cert        [0] EXPLICIT    Certificate OPTIONAL,
+   *   info        [1] EXPLICIT    UTF8String  OPTIONAL
+   * }
+   * </pre>
+   *
+   * @param serial
+   *          Serial number of the certificate.
+   * @param encodedCert
+   *          DER-encoded certificate, may be {@code null}.
+   * @param info
+   *          Info, may be {@code null}.
+   * @throws IOException
+   *           if error occurs while writing the temporary file.
+   */
+  void addCrlCert(BigInteger serial, byte[] encodedCert, String info) throws IOException {
+    Args.notNull(serial, "serial");
+
+    byte[] serialBytes = new ASN1Integer(serial).getEncoded(ASN1Encoding.DER);
+    // the order [1] then [0] is same as in the previous versions
+    byte[] infoBytes = (info == null) ? EMPTY_BYTES
+        : new DERTaggedObject(1, new DERUTF8String(info)).getEncoded(ASN1Encoding.DER);
+    byte[] certHeader = (encodedCert == null) ? EMPTY_BYTES
+        : encodeHeader(TAG_CONTEXT_0, encodedCert.length);
+    int certLength = (encodedCert == null) ? 0 : encodedCert.length;
+
+    int contentLength = serialBytes.length + infoBytes.length + certHeader.length + certLength;
+    byte[] header = encodeHeader(TAG_SEQUENCE, contentLength);
+
+    byte[] encoded = new byte[header.length + contentLength];
+    int off = 0;
+    for (byte[] m : new byte[][]{header, serialBytes, infoBytes, certHeader}) {
+      System.arraycopy(m, 0, encoded, off, m.length);
+      off += m.length;
+    }
+    if (encodedCert != null) {
+      System.arraycopy(encodedCert, 0, encoded, off, certLength);
+    }
+
+    synchronized (this) {
+      if (crlCerts == null) {
+        throw new IllegalStateException("CrlCertSet is not included");
+      }
+      crlCerts.add(new SetElement(encoded), encoded.length);
+      crlCertsLength += encoded.length;
+    }
+  } // method addCrlCert
+
+  synchronized int getNumCrlCerts() {
+    return crlCerts == null ? 0 : crlCerts.size();
+  }
+
+  /**
+   * Builds and signs the CRL.
+   *
+   * @param issuer
+   *          Issuer of the CRL.
+   * @param thisUpdate
+   *          thisUpdate.
+   * @param nextUpdate
+   *          nextUpdate, may be {@code null}.
+   * @param certificateIssuer
+   *          If not {@code null}, the extension certificateIssuer will be added to the first
+   *          CRL entry (indirect CRL).
+   * @param crlExtensions
+   *          CRL extensions, may be {@code null}. The XiPKI extension CrlCertSet, if included,
+   *          will be appended.
+   * @param signer
+   *          Signer to sign the CRL.
+   * @return the signed CRL, valid until this writer is closed.
+   * @throws IOException
+   *           if error occurs while writing the temporary files or signing the CRL.
+   */
+  synchronized GeneratedCrl build(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer, Extensions crlExtensions, ContentSigner signer)
+      throws IOException {
+    Args.notNull(issuer, "issuer");
+    Args.notNull(thisUpdate, "thisUpdate");
+    Args.notNull(signer, "signer");
+
+    writeRevokedCerts(certificateIssuer);
+
+    byte[] sigAlg = signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER);
+
+    List<byte[]> tbsPrefix = new ArrayList<>(6);
+    // version v2
+    tbsPrefix.add(new ASN1Integer(1).getEncoded(ASN1Encoding.DER));
+    tbsPrefix.add(sigAlg);
+    tbsPrefix.add(issuer.getEncoded(ASN1Encoding.DER));
+    tbsPrefix.add(new Time(thisUpdate).getEncoded(ASN1Encoding.DER));
+    if (nextUpdate != null) {
+      tbsPrefix.add(new Time(nextUpdate).getEncoded(ASN1Encoding.DER));
+    }
+
+    // as in BouncyCastle, revokedCertificates is absent if there is no revoked certificates.
+    tbsPrefix.add(revokedCertsLength == 0
+        ? EMPTY_BYTES : encodeHeader(TAG_SEQUENCE, revokedCertsLength));
+
+    byte[] extns = encodeExtensionsPrefix(crlExtensions);
+
+    long tbsContentLength = revokedCertsLength + extns.length + crlCertsLength;
+    for (byte[] m : tbsPrefix) {
+      tbsContentLength += m.length;
+    }
+
+    byte[] tbsHeader = encodeHeader(TAG_SEQUENCE, tbsContentLength);
+
+    // sign the TBSCertList
+    try (OutputStream signerOut = signer.getOutputStream()) {
+      writeTbsCertList(signerOut, tbsHeader, tbsPrefix, extns);
+    }
+    byte[] signature = new DERBitString(signer.getSignature()).getEncoded(ASN1Encoding.DER);
+
+    long crlContentLength = tbsHeader.length + tbsContentLength + sigAlg.length
+        + signature.length;
+
+    File crlFile = newTmpFile();
+    try (OutputStream out = new BufferedOutputStream(
+        Files.newOutputStream(crlFile.toPath()), 64 * 1024)) {
+      out.write(encodeHeader(TAG_SEQUENCE, crlContentLength));
+      writeTbsCertList(out, tbsHeader, tbsPrefix, extns);
+      out.write(sigAlg);
+      out.write(signature);
+    }
+
+    return new GeneratedCrl(crlFile, getIntegerExtnValue(crlExtensions, Extension.cRLNumber),
+        getIntegerExtnValue(crlExtensions, Extension.deltaCRLIndicator), thisUpdate, nextUpdate);
+  } // method build
+
+  private static BigInteger getIntegerExtnValue(Extensions extensions,
+      ASN1ObjectIdentifier type) {
+    Extension extn = (extensions == null) ? null : extensions.getExtension(type);
+    return (extn == null) ? null
+        : ASN1Integer.getInstance(extn.getParsedValue()).getPositiveValue();
+  }
+
+  /**
+   * Encodes the crlExtensions. If CrlCertSet is included, the returned bytes end with the
+   * header of its extnValue, and the value itself is not contained.
+   */
+  private byte[] encodeExtensionsPrefix(Extensions crlExtensions) throws IOException {
+    if (crlCerts == null) {
+      return (crlExtensions == null) ? EMPTY_BYTES
+          : new DERTaggedObject(true, 0, crlExtensions).getEncoded(ASN1Encoding.DER);
+    }
+
+    // write the sorted elements of CrlCertSet to a temporary file
+    crlCertsFile = newTmpFile();
+    try (OutputStream out = new BufferedOutputStream(
+            Files.newOutputStream(crlCertsFile.toPath()), 64 * 1024);
+        CloseableIterator<SetElement> it = crlCerts.sorted()) {
+      while (it.hasNext()) {
+        out.write(it.next().encoded);
+      }
+    }
+
+    // Extension ::= SEQUENCE { extnID, critical DEFAULT FALSE, extnValue OCTET STRING }
+    byte[] setHeader = encodeHeader(TAG_SET, crlCertsLength);
+    long octetsLength = setHeader.length + crlCertsLength;
+    byte[] octetsHeader = encodeHeader(TAG_OCTET_STRING, octetsLength);
+    byte[] oid = ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset.getEncoded(ASN1Encoding.DER);
+    long extnLength = oid.length + octetsHeader.length + octetsLength;
+    byte[] extnHeader = encodeHeader(TAG_SEQUENCE, extnLength);
+
+    ByteArrayOutputStream otherExtns = new ByteArrayOutputStream();
+    if (crlExtensions != null) {
+      for (ASN1ObjectIdentifier type : crlExtensions.getExtensionOIDs()) {
+        otherExtns.write(crlExtensions.getExtension(type).getEncoded(ASN1Encoding.DER));
+      }
+    }
+
+    long extnsLength = otherExtns.size() + extnHeader.length + extnLength;
+    byte[] extnsHeader = encodeHeader(TAG_SEQUENCE, extnsLength);
+    byte[] taggedHeader = encodeHeader(TAG_CONTEXT_0, extnsHeader.length + extnsLength);
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    bout.write(taggedHeader);
+    bout.write(extnsHeader);
+    otherExtns.writeTo(bout);
+    bout.write(extnHeader);
+    bout.write(oid);
+    bout.write(octetsHeader);
+    bout.write(setHeader);
+    return bout.toByteArray();
+  } // method encodeExtensionsPrefix
+
+  private void writeTbsCertList(OutputStream out, byte[] tbsHeader, List<byte[]> tbsPrefix,
+      byte[] extns) throws IOException {
+    out.write(tbsHeader);
+    for (byte[] m : tbsPrefix) {
+      out.write(m);
+    }
+
+    if (revokedCertsLength > 0) {
+      copy(revokedCertsFile, out);
+    }
+
+    out.write(extns);
+
+    if (crlCertsLength > 0) {
+      copy(crlCertsFile, out);
+    }
+  } // method writeTbsCertList
+
+  /**
+   * Writes the encoded CRL entries, sorted by serial number, to a temporary file.
+   */
+  private void writeRevokedCerts(X500Name certificateIssuer) throws IOException {
+    revokedCertsFile = newTmpFile();
+    revokedCertsLength = 0;
+
+    try (OutputStream out = new BufferedOutputStream(
+            Files.newOutputStream(revokedCertsFile.toPath()), 64 * 1024);
+        CloseableIterator<RevokedEntry> it = revokedEntries.sorted()) {
+      boolean firstEntry = true;
+      while (it.hasNext()) {
+        byte[] encoded = encodeEntry(it.next(), firstEntry ? certificateIssuer : null);
+        firstEntry = false;
+        out.write(encoded);
+        revokedCertsLength += encoded.length;
+      }
+    }
+  } // method writeRevokedCerts
+
+  private File newTmpFile() throws IOException {
+    File file = File.createTempFile("xipki-crl-", ".tmp");
+    tmpFiles.add(file);
+    return file;
+  }
+
+  private static void copy(File file, OutputStream out) throws IOException {
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+  } // method copy
+
+  private static byte[] encodeEntry(RevokedEntry entry, X500Name certificateIssuer)
+      throws IOException {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(entry.serial));
+    vec.add(new Time(new Date(entry.revocationTime)));
+
+    List<Extension> extensions = new ArrayList<>(3);
+    if (entry.reason != CRLReason.unspecified) {
+      extensions.add(new Extension(Extension.reasonCode, false,
+          getEncoded(CRLReason.lookup(entry.reason))));
+    }
+
+    if (entry.invalidityTime != 0) {
+      extensions.add(new Extension(Extension.invalidityDate, false,
+          getEncoded(new ASN1GeneralizedTime(new Date(entry.invalidityTime)))));
+    }
+
+    if (certificateIssuer != null) {
+      extensions.add(new Extension(Extension.certificateIssuer, true,
+          getEncoded(new GeneralNames(new GeneralName(certificateIssuer)))));
+    }
+
+    if (!extensions.isEmpty()) {
+      vec.add(new Extensions(extensions.toArray(new Extension[0])));
+    }
+
+    return new DERSequence(vec).getEncoded(ASN1Encoding.DER);
+  } // method encodeEntry
+
+  private static byte[] getEncoded(ASN1Encodable obj) throws IOException {
+    return obj.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+  }
+
+  private static byte[] encodeHeader(byte tag, long length) {
+    if (length < 0x80) {
+      return new byte[]{tag, (byte) length};
+    }
+
+    int numBytes = 0;
+    for (long len = length; len > 0; len >>>= 8) {
+      numBytes++;
+    }
+
+    byte[] header = new byte[2 + numBytes];
+    header[0] = tag;
+    header[1] = (byte) (0x80 | numBytes);
+    for (int i = 0; i < numBytes; i++) {
+      header[header.length - 1 - i] = (byte) (length >>> (8 * i));
+    }
+    return header;
+  } // method encodeHeader
+
+  /**
+   * Deletes the temporary files.
+   */
+  @Override
+  public synchronized void close() {
+    revokedEntries.clear();
+    if (crlCerts != null) {
+      crlCerts.clear();
+    }
+
+    for (File file : tmpFiles) {
+      file.delete();
+    }
+    tmpFiles.clear();
+  }
+
+}
@@ -17,12 +17,35 @@
 
 package org.xipki.ca.server;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,20 +57,26 @@ import org.xipki.security.CtLog.SignedCertificateTimestamp;
 import org.xipki.security.CtLog.SignedCertificateTimestampList;
 import org.xipki.security.X509Cert;
 import org.xipki.util.Args;
-import org.xipki.util.Curl;
-import org.xipki.util.Curl.CurlResult;
-import org.xipki.util.DefaultCurl;
+import org.xipki.util.IoUtil;
+import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 import org.xipki.util.http.SslContextConf;
 
 import com.alibaba.fastjson.JSON;
 
 /**
- * Certificate transparency (CT) log client.
+ * Certificate transparency (CT) log client. The SCTs are requested from all CT log servers
+ * concurrently.
+ *
+ * <p>Each CT log server has its own bounded thread pool (bulkhead), so that a slow or hanging
+ * server cannot occupy the threads used to call the other servers. If all threads of a server
+ * are busy, the request waits in the queue of this server. A queued request is cancelled once
+ * the deadline of its certificate is exceeded, and fails without being sent if it is dequeued
+ * after the deadline, so the queue holds only the requests of the last deadline period.
  *
  * @author Lijun Liao
  */
-public class CtLogClient {
+public class CtLogClient implements Closeable {
 
   private static Logger LOG = LoggerFactory.getLogger(CtLogClient.class);
 
@@ -122,24 +151,225 @@ public class CtLogClient {
 
   } // class AddPreChainResponse
 
-  private final Curl curl;
+  /**
+   * Latency and error metrics of a CT log server.
+   */
+  public static class LogMetrics {
+
+    private final String url;
+
+    private final AtomicLong successCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private final AtomicLong cancelledCount = new AtomicLong();
+
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    private LogMetrics(String url) {
+      this.url = url;
+    }
+
+    private void success(long latencyMs) {
+      successCount.incrementAndGet();
+      totalLatencyMs.addAndGet(latencyMs);
+      long currentMax = maxLatencyMs.get();
+      while (latencyMs > currentMax) {
+        if (maxLatencyMs.compareAndSet(currentMax, latencyMs)) {
+          break;
+        }
+        currentMax = maxLatencyMs.get();
+      }
+    } // method success
+
+    public String getUrl() {
+      return url;
+    }
+
+    public long getSuccessCount() {
+      return successCount.get();
+    }
+
+    public long getFailureCount() {
+      return failureCount.get();
+    }
+
+    /**
+     * Returns the number of requests which have been cancelled since the quorum has been
+     * reached, or the deadline has been exceeded.
+     * @return the number of cancelled requests.
+     */
+    public long getCancelledCount() {
+      return cancelledCount.get();
+    }
+
+    public long getAverageLatencyMs() {
+      long num = successCount.get();
+      return (num == 0) ? 0 : totalLatencyMs.get() / num;
+    }
+
+    public long getMaxLatencyMs() {
+      return maxLatencyMs.get();
+    }
+
+  } // class LogMetrics
+
+  private class AddPreChainTask implements Callable<SignedCertificateTimestamp> {
+
+    private final int index;
+
+    private final byte[] content;
+
+    private final long deadline;
+
+    AddPreChainTask(int index, byte[] content, long deadline) {
+      this.index = index;
+      this.content = content;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public SignedCertificateTimestamp call() throws Exception {
+      String url = addPreChainUrls.get(index);
+      LogMetrics logMetrics = metrics.get(index);
+
+      long start = System.currentTimeMillis();
+      byte[] respContent;
+      try {
+        respContent = post(url, content, deadline);
+      } catch (Exception ex) {
+        // the cancelled requests are counted by the caller
+        if (!Thread.currentThread().isInterrupted()) {
+          logMetrics.failureCount.incrementAndGet();
+        }
+        throw ex;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("CTLog Response from {}: {}", url, StringUtil.toUtf8String(respContent));
+      }
+
+      SignedCertificateTimestamp sct;
+      try {
+        AddPreChainResponse resp = JSON.parseObject(respContent, AddPreChainResponse.class);
+        DigitallySigned ds =
+            DigitallySigned.getInstance(resp.getSignature(), new AtomicInteger(0));
+        sct = new SignedCertificateTimestamp(resp.getSct_version(), resp.getId(),
+            resp.getTimestamp(), resp.getExtensions(), ds);
+      } catch (RuntimeException ex) {
+        logMetrics.failureCount.incrementAndGet();
+        throw new IOException("invalid response from " + url + ": " + ex.getMessage(), ex);
+      }
+
+      logMetrics.success(System.currentTimeMillis() - start);
+      return sct;
+    } // method call
+
+  } // class AddPreChainTask
+
+  private static final int DEFAULT_TIMEOUT_MS = 10000;
+
+  private static final int DEFAULT_CONCURRENCY = 8;
 
   private final List<String> addPreChainUrls;
 
+  private final List<LogMetrics> metrics;
+
+  private final SslContextConf sslContextConf;
+
+  private final int quorum;
+
+  private final int timeoutMs;
+
+  private final List<ExecutorService> executors;
+
+  private SSLSocketFactory sslSocketFactory;
+
+  private HostnameVerifier hostnameVerifier;
+
+  private boolean sslInitialized;
+
   public CtLogClient(List<String> serverUrls, SslContextConf sslContextConf) {
+    this(serverUrls, sslContextConf, 0, 0, 0);
+  }
+
+  public CtLogClient(List<String> serverUrls, SslContextConf sslContextConf, int quorum,
+      int timeoutMs) {
+    this(serverUrls, sslContextConf, quorum, timeoutMs, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param serverUrls
+   *          URLs of the CT log servers.
+   * @param sslContextConf
+   *          SSL context configuration, may be {@code null}.
+   * @param quorum
+   *          Number of SCTs required for a certificate. Non-positive value for all servers.
+   * @param timeoutMs
+   *          Deadline in milliseconds to collect the SCTs of a certificate. Non-positive value
+   *          for 10 seconds.
+   * @param concurrency
+   *          Maximal number of concurrent requests to each server. Non-positive value for 8.
+   */
+  public CtLogClient(List<String> serverUrls, SslContextConf sslContextConf, int quorum,
+      int timeoutMs, int concurrency) {
     Args.notEmpty(serverUrls, "serverUrls");
 
-    DefaultCurl dfltCurl  = new DefaultCurl();
-    dfltCurl.setSslContextConf(sslContextConf);
-    this.curl = dfltCurl;
+    this.sslContextConf = sslContextConf;
     this.addPreChainUrls = new ArrayList<>(serverUrls.size());
+    this.metrics = new ArrayList<>(serverUrls.size());
     for (String m : serverUrls) {
       String addPreChainUrl = m.endsWith("/")
           ? m + "ct/v1/add-pre-chain" : m + "/ct/v1/add-pre-chain";
       this.addPreChainUrls.add(addPreChainUrl);
+      this.metrics.add(new LogMetrics(addPreChainUrl));
+    }
+
+    int numServers = serverUrls.size();
+    if (quorum > numServers) {
+      throw new IllegalArgumentException(
+          "quorum " + quorum + " is greater than the number of servers " + numServers);
+    }
+
+    this.quorum = (quorum < 1) ? numServers : quorum;
+    this.timeoutMs = (timeoutMs < 1) ? DEFAULT_TIMEOUT_MS : timeoutMs;
+    int numThreads = (concurrency < 1) ? DEFAULT_CONCURRENCY : concurrency;
+    this.executors = new ArrayList<>(numServers);
+    for (int i = 0; i < numServers; i++) {
+      final String threadName = "ctlog-" + (i + 1);
+      // the queue is bounded by the deadline, see AddPreChainTask and getCtLogScts().
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+          60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, threadName);
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      this.executors.add(executor);
     }
   } // constructor
 
+  /**
+   * Sends the precertificate chain to all CT log servers concurrently, and returns once
+   * {@code quorum} servers have returned their SCTs. The remaining requests are cancelled.
+   *
+   * @param precert
+   *          Encoded precertificate.
+   * @param caCert
+   *          CA certificate.
+   * @param certchain
+   *          Certificate chain of the CA, may be {@code null}.
+   * @return the SCTs.
+   * @throws OperationException
+   *           if the quorum could not be reached within the deadline.
+   */
   public SignedCertificateTimestampList getCtLogScts(
       byte[] precert, X509Cert caCert, List<X509Cert> certchain) throws OperationException {
     AddPreChainRequest request = new AddPreChainRequest();
@@ -159,37 +389,196 @@ public class CtLogClient {
       LOG.debug("CTLog Request: {}", StringUtil.toUtf8String(content));
     }
 
-    List<SignedCertificateTimestamp> scts = new ArrayList<>(addPreChainUrls.size());
-    Map<String, String> headers = new HashMap<>();
-    headers.put("content-type", "application/json");
-    for (String url : addPreChainUrls) {
-      CurlResult res;
+    return getCtLogScts(content);
+  } // method getCtLogScts
+
+  SignedCertificateTimestampList getCtLogScts(byte[] content) throws OperationException {
+    final int numServers = addPreChainUrls.size();
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+    SignedCertificateTimestamp[] scts = new SignedCertificateTimestamp[numServers];
+    int numSuccessful = 0;
+    int numFailed = 0;
+    StringBuilder errors = new StringBuilder();
+
+    // all completion services share the same queue
+    BlockingQueue<Future<SignedCertificateTimestamp>> completionQueue =
+        new LinkedBlockingQueue<>();
+    Map<Future<SignedCertificateTimestamp>, Integer> futures = new HashMap<>();
+    for (int i = 0; i < numServers; i++) {
+      ExecutorCompletionService<SignedCertificateTimestamp> completionService =
+          new ExecutorCompletionService<>(executors.get(i), completionQueue);
       try {
-        res = curl.curlPost(url, false, headers, null, content);
-      } catch (Exception ex) {
-        throw new OperationException(ErrorCode.SYSTEM_FAILURE,
-            "error while calling " + url + ": " + ex.getMessage());
+        futures.put(completionService.submit(new AddPreChainTask(i, content, deadline)), i);
+      } catch (RejectedExecutionException ex) {
+        numFailed++;
+        metrics.get(i).failureCount.incrementAndGet();
+        String msg = "could not send request to " + addPreChainUrls.get(i) + ", client closed";
+        LOG.warn(msg);
+        errors.append("; ").append(msg);
       }
+    }
 
-      byte[] respContent = res.getContent();
-      if (respContent == null) {
-        throw new OperationException(ErrorCode.SYSTEM_FAILURE,
-            "server does not return any content while responding " + url);
+    try {
+      while (numSuccessful < quorum && numServers - numFailed >= quorum) {
+        long remaining = deadline - System.nanoTime();
+        Future<SignedCertificateTimestamp> future = (remaining <= 0) ? null
+            : completionQueue.poll(remaining, TimeUnit.NANOSECONDS);
+        if (future == null) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+              "could not get " + quorum + " SCTs within " + timeoutMs + " ms, got "
+              + numSuccessful + errors);
+        }
+
+        int index = futures.remove(future);
+        try {
+          scts[index] = future.get();
+          numSuccessful++;
+        } catch (ExecutionException ex) {
+          numFailed++;
+          Throwable cause = ex.getCause();
+          String msg = "error while calling " + addPreChainUrls.get(index) + ": "
+              + cause.getMessage();
+          LOG.warn(msg);
+          errors.append("; ").append(msg);
+        }
       }
-
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("CTLog Response: {}", StringUtil.toUtf8String(respContent));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+          "interrupted while waiting for the SCTs");
+    } finally {
+      // cancel the outstanding requests
+      for (Map.Entry<Future<SignedCertificateTimestamp>, Integer> entry : futures.entrySet()) {
+        if (entry.getKey().cancel(true)) {
+          metrics.get(entry.getValue()).cancelledCount.incrementAndGet();
+        }
       }
+    }
 
-      AddPreChainResponse resp = JSON.parseObject(respContent, AddPreChainResponse.class);
+    if (numSuccessful < quorum) {
+      throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+          "could not get " + quorum + " SCTs, got " + numSuccessful + errors);
+    }
 
-      DigitallySigned ds = DigitallySigned.getInstance(resp.getSignature(), new AtomicInteger(0));
-      SignedCertificateTimestamp sct = new SignedCertificateTimestamp(resp.getSct_version(),
-          resp.getId(), resp.getTimestamp(), resp.getExtensions(), ds);
-      scts.add(sct);
+    // keep the order of the configured servers
+    List<SignedCertificateTimestamp> list = new ArrayList<>(numSuccessful);
+    for (SignedCertificateTimestamp sct : scts) {
+      if (sct != null) {
+        list.add(sct);
+      }
     }
 
-    return new SignedCertificateTimestampList(new SerializedSCT(scts));
+    return new SignedCertificateTimestampList(new SerializedSCT(list));
   } // method getCtLogScts
 
+  /**
+   * Sends the POST request. The connection is not disconnected explicitly, and the response
+   * is read completely, so that the underlying persistent connection can be reused for the
+   * next request to the same server.
+   *
+   * <p>The connect and read timeouts are limited to the time left before the deadline, since
+   * a cancelled task is not interrupted while it is blocked in the socket I/O.
+   */
+  private byte[] post(String url, byte[] content, long deadline) throws IOException {
+    initSslIfNotDone();
+
+    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    if (remainingMs < 1) {
+      throw new IOException("deadline exceeded before sending the request");
+    }
+    int timeout = (int) Math.min(timeoutMs, remainingMs);
+
+    HttpURLConnection httpConn = IoUtil.openHttpConn(new URL(url));
+    if (httpConn instanceof HttpsURLConnection) {
+      if (sslSocketFactory != null) {
+        ((HttpsURLConnection) httpConn).setSSLSocketFactory(sslSocketFactory);
+      }
+      if (hostnameVerifier != null) {
+        ((HttpsURLConnection) httpConn).setHostnameVerifier(hostnameVerifier);
+      }
+    }
+
+    httpConn.setConnectTimeout(timeout);
+    httpConn.setReadTimeout(timeout);
+    httpConn.setRequestMethod("POST");
+    httpConn.setUseCaches(false);
+    httpConn.setDoOutput(true);
+    httpConn.setRequestProperty("Content-Type", "application/json");
+    httpConn.setFixedLengthStreamingMode(content.length);
+
+    try (OutputStream os = httpConn.getOutputStream()) {
+      os.write(content);
+    }
+
+    int respCode = httpConn.getResponseCode();
+    if (respCode != HttpURLConnection.HTTP_OK) {
+      InputStream es = httpConn.getErrorStream();
+      if (es != null) {
+        // read the error content to keep the connection reusable
+        try (InputStream is = es) {
+          IoUtil.read(is);
+        }
+      }
+      throw new IOException("bad response: " + respCode + " " + httpConn.getResponseMessage());
+    }
+
+    byte[] respContent;
+    try (InputStream is = httpConn.getInputStream()) {
+      respContent = IoUtil.read(is);
+    }
+
+    if (respContent == null || respContent.length == 0) {
+      throw new IOException("server does not return any content");
+    }
+    return respContent;
+  } // method post
+
+  private synchronized void initSslIfNotDone() throws IOException {
+    if (sslInitialized) {
+      return;
+    }
+
+    if (sslContextConf != null && sslContextConf.isUseSslConf()) {
+      try {
+        sslSocketFactory = sslContextConf.getSslSocketFactory();
+        hostnameVerifier = sslContextConf.buildHostnameVerifier();
+      } catch (ObjectCreationException ex) {
+        throw new IOException("could not initialize SSL context: " + ex.getMessage(), ex);
+      }
+    }
+    sslInitialized = true;
+  } // method initSslIfNotDone
+
+  public int getQuorum() {
+    return quorum;
+  }
+
+  public int getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  public List<LogMetrics> getMetrics() {
+    return Collections.unmodifiableList(metrics);
+  }
+
+  /**
+   * Logs the latency and error metrics of each CT log server.
+   */
+  public void logMetrics() {
+    for (LogMetrics m : metrics) {
+      LOG.info("CT log {}: success={}, failure={}, cancelled={}, avgLatencyMs={}, "
+          + "maxLatencyMs={}", m.url, m.getSuccessCount(), m.getFailureCount(),
+          m.getCancelledCount(), m.getAverageLatencyMs(), m.getMaxLatencyMs());
+    }
+  } // method logMetrics
+
+  @Override
+  public void close() {
+    for (ExecutorService executor : executors) {
+      executor.shutdownNow();
+    }
+    logMetrics();
+  }
+
 }
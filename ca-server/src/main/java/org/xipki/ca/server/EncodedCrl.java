@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.xipki.util.Args;
+
+/**
+ * DER encoded CRL with the metadata required to answer conditional HTTP requests.
+ *
+ * <p>The encoded bytes are shared and must not be modified.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class EncodedCrl {
+
+  private final byte[] encoded;
+
+  private final BigInteger crlNumber;
+
+  private final long thisUpdate;
+
+  private final String etag;
+
+  /**
+   * Constructor.
+   *
+   * @param encoded
+   *          DER encoded CRL.
+   * @param crlNumber
+   *          CRL number, may be {@code null}.
+   * @param thisUpdate
+   *          thisUpdate of the CRL, seconds since January 1, 1970, 00:00:00 GMT.
+   */
+  EncodedCrl(byte[] encoded, BigInteger crlNumber, long thisUpdate) {
+    this.encoded = Args.notNull(encoded, "encoded");
+    this.crlNumber = crlNumber;
+    this.thisUpdate = thisUpdate;
+    this.etag = "\"" + (crlNumber == null ? "" : crlNumber.toString(16))
+        + "-" + Long.toHexString(thisUpdate) + "\"";
+  }
+
+  byte[] getEncoded() {
+    return encoded;
+  }
+
+  BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  /**
+   * Returns the thisUpdate.
+   * @return seconds since January 1, 1970, 00:00:00 GMT.
+   */
+  long getThisUpdate() {
+    return thisUpdate;
+  }
+
+  Date getThisUpdateDate() {
+    return new Date(thisUpdate * 1000);
+  }
+
+  /**
+   * Returns the entity tag, derived from the CRL number and thisUpdate.
+   * @return the quoted entity tag.
+   */
+  String getEtag() {
+    return etag;
+  }
+
+}
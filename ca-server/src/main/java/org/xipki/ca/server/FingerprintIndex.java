@@ -0,0 +1,207 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xipki.util.Args;
+
+/**
+ * In-memory probabilistic index of the public key and subject fingerprints (columns FP_K and
+ * FP_S of the table CERT) of a CA, implemented with Bloom filters.
+ *
+ * <p>A negative answer of {@link #mightContainKey(long)} and {@link #mightContainSubject(long)}
+ * is definite for the certificates loaded from the database and those added by this instance,
+ * a positive answer must be confirmed by the database. Certificates written by other processes
+ * are contained after the next refresh. The answers are only meaningful if the index is
+ * {@link #isReady() ready}, namely all certificates in the database have been loaded.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class FingerprintIndex {
+
+  /**
+   * Lock-free Bloom filter of 64-bit fingerprints.
+   */
+  private static class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+      long m = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+      // round up to multiple of 64
+      int numWords = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (m + 63) / 64));
+      this.bits = new AtomicLongArray(numWords);
+      this.numBits = numWords * 64L;
+      this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * LN2));
+    }
+
+    /**
+     * Adds the fingerprint.
+     * @param fp the fingerprint.
+     * @return true if at least one bit has been changed, namely the fingerprint is new.
+     */
+    boolean put(long fp) {
+      boolean changed = false;
+      long h1 = fp;
+      long h2 = mix(fp);
+      for (int i = 0; i < numHashes; i++) {
+        long index = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+
+        long current = bits.get(word);
+        while ((current & mask) == 0) {
+          if (bits.compareAndSet(word, current, current | mask)) {
+            changed = true;
+            break;
+          }
+          current = bits.get(word);
+        }
+      }
+      return changed;
+    } // method put
+
+    boolean mightContain(long fp) {
+      long h1 = fp;
+      long h2 = mix(fp);
+      for (int i = 0; i < numHashes; i++) {
+        long index = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+        if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    } // method mightContain
+
+    // the fingerprints are already hash values, derive the second hash by mixing.
+    private static long mix(long value) {
+      long h = value * 0x9E3779B97F4A7C15L;
+      h ^= (h >>> 32);
+      h *= 0xBF58476D1CE4E5B9L;
+      return (h ^ (h >>> 29)) | 1;
+    }
+
+  } // class BloomFilter
+
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+
+  private final int caId;
+
+  private final long capacity;
+
+  private final BloomFilter keys;
+
+  private final BloomFilter subjects;
+
+  private final AtomicLong keyCount = new AtomicLong();
+
+  private final AtomicLong subjectCount = new AtomicLong();
+
+  private final AtomicLong maxId = new AtomicLong();
+
+  private volatile boolean ready;
+
+  FingerprintIndex(int caId, long capacity) {
+    this.caId = caId;
+    this.capacity = Args.positive(capacity, "capacity");
+    this.keys = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+    this.subjects = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+  }
+
+  int getCaId() {
+    return caId;
+  }
+
+  void add(long id, long fpKey, long fpSubject) {
+    // count the new fingerprints, the certificates re-read in the overlapped ID range of
+    // the refresh and the reused keys and subjects set no new bit.
+    if (keys.put(fpKey)) {
+      keyCount.incrementAndGet();
+    }
+
+    if (subjects.put(fpSubject)) {
+      subjectCount.incrementAndGet();
+    }
+
+    long currentMax = maxId.get();
+    while (id > currentMax) {
+      if (maxId.compareAndSet(currentMax, id)) {
+        break;
+      }
+      currentMax = maxId.get();
+    }
+  } // method add
+
+  boolean mightContainKey(long fpKey) {
+    return keys.mightContain(fpKey);
+  }
+
+  boolean mightContainSubject(long fpSubject) {
+    return subjects.mightContain(fpSubject);
+  }
+
+  /**
+   * Returns the maximal ID of the loaded certificates.
+   * @return the maximal ID.
+   */
+  long getMaxId() {
+    return maxId.get();
+  }
+
+  boolean isReady() {
+    return ready;
+  }
+
+  void setReady(boolean ready) {
+    this.ready = ready;
+  }
+
+  /**
+   * Whether more fingerprints have been added than planned, so that the false positive rate
+   * is higher than expected.
+   * @return true if the index should be rebuilt with higher capacity.
+   */
+  boolean isSaturated() {
+    return getCount() > capacity;
+  }
+
+  /**
+   * Returns the number of the distinct fingerprints. Since the fingerprints which collide with
+   * the present ones are not counted, the returned value may be slightly lower than the
+   * real one.
+   * @return the number of the distinct key or subject fingerprints, whichever is higher.
+   */
+  long getCount() {
+    return Math.max(keyCount.get(), subjectCount.get());
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+
+}
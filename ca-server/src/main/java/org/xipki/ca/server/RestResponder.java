@@ -26,6 +26,11 @@ import java.io.EOFException;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -168,6 +173,8 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -182,6 +189,14 @@ public class RestResponder {
 
   private static final int SERVICE_UNAVAILABLE = 503;
 
+  private static final String HEADER_ETAG = "ETag";
+
+  private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+  private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+  private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
   private static final Logger LOG = LoggerFactory.getLogger(RestResponder.class);
 
   private final CaManagerImpl responderManager;
@@ -527,6 +542,10 @@ public class RestResponder {
           }
         }
 
+        if (crlNumber == null) {
+          return getCurrentCrl(ca, httpRetriever);
+        }
+
         X509CRL crl = ca.getCrl(crlNumber);
         if (crl == null) {
           String message = "could not get CRL";
@@ -670,6 +689,68 @@ public class RestResponder {
     }
   } // method service
 
+  private static RestResponse getCurrentCrl(X509Ca ca, HttpRequestMetadataRetriever httpRetriever)
+      throws OperationException, HttpRespAuditException {
+    EncodedCrl crl = ca.getEncodedCurrentCrl();
+    if (crl == null) {
+      String message = "could not get CRL";
+      LOG.warn(message);
+      throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
+    }
+
+    Map<String, String> headers = new HashMap<>();
+    headers.put(HEADER_ETAG, crl.getEtag());
+    headers.put(HEADER_LAST_MODIFIED, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        ZonedDateTime.ofInstant(Instant.ofEpochSecond(crl.getThisUpdate()), ZoneOffset.UTC)));
+
+    if (isNotModified(crl, httpRetriever)) {
+      return new RestResponse(NOT_MODIFIED, null, headers, null);
+    }
+
+    headers.put(RestAPIConstants.HEADER_PKISTATUS, RestAPIConstants.PKISTATUS_accepted);
+    // the cached encoded CRL is returned directly, without copying and re-encoding
+    return new RestResponse(OK, RestAPIConstants.CT_pkix_crl, headers, crl.getEncoded());
+  } // method getCurrentCrl
+
+  /**
+   * Evaluates the conditional request headers as specified in RFC 7232. If-Modified-Since is
+   * only considered if If-None-Match is absent.
+   */
+  private static boolean isNotModified(EncodedCrl crl,
+      HttpRequestMetadataRetriever httpRetriever) {
+    String ifNoneMatch = httpRetriever.getHeader(HEADER_IF_NONE_MATCH);
+    if (StringUtil.isNotBlank(ifNoneMatch)) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          // weak comparison
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || crl.getEtag().equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String ifModifiedSince = httpRetriever.getHeader(HEADER_IF_MODIFIED_SINCE);
+    if (StringUtil.isBlank(ifModifiedSince)) {
+      return false;
+    }
+
+    long since;
+    try {
+      since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toEpochSecond();
+    } catch (DateTimeParseException ex) {
+      LOG.debug("ignore invalid If-Modified-Since '{}'", ifModifiedSince);
+      return false;
+    }
+
+    return crl.getThisUpdate() <= since;
+  } // method isNotModified
+
   private static BigInteger toBigInt(String str) {
     String tmpStr = str.trim();
     if (tmpStr.startsWith("0x") || tmpStr.startsWith("0X")) {
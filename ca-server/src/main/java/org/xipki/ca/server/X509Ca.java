@@ -53,21 +53,25 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -75,9 +79,6 @@ import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERPrintableString;
 import org.bouncycastle.asn1.DERSequence;
-import org.bouncycastle.asn1.DERSet;
-import org.bouncycastle.asn1.DERTaggedObject;
-import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
@@ -87,22 +88,18 @@ import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.ReasonFlags;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.crypto.RuntimeCryptoException;
 import org.slf4j.Logger;
@@ -245,6 +242,28 @@ public class X509Ca implements Closeable {
 
   } // class ExpiredCertsRemover
 
+  private class FingerprintIndexUpdater implements Runnable {
+
+    private boolean inProcess;
+
+    @Override
+    public void run() {
+      if (inProcess) {
+        return;
+      }
+
+      inProcess = true;
+      try {
+        certstore.refreshFingerprintIndex(caIdent);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not refresh fingerprint index of CA " + caIdent.getName());
+      } finally {
+        inProcess = false;
+      }
+    } // method run
+
+  } // class FingerprintIndexUpdater
+
   private class CrlGenerationService implements Runnable {
 
     @Override
@@ -331,7 +350,8 @@ public class X509Ca implements Closeable {
       long maxIdOfDeltaCrlCache;
       try {
         maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
-        generateCrl(createDeltaCrlNow, now, nextUpdate, CaAuditConstants.MSGID_ca_routine);
+        generateCrl(createDeltaCrlNow, now, nextUpdate, false,
+            CaAuditConstants.MSGID_ca_routine);
       } catch (Throwable th) {
         LogUtil.error(LOG, th);
         return;
@@ -378,6 +398,132 @@ public class X509Ca implements Closeable {
 
   } // class SuspendedCertsRevoker
 
+  private class CrlCertsetFetcher implements Callable<Void> {
+
+    private static final int NUM_ENTRIES = 100;
+
+    private final CrlStreamWriter crlWriter;
+
+    private final boolean withCert;
+
+    private final Date notExpireAt;
+
+    private final boolean onlyCaCerts;
+
+    private final boolean onlyUserCerts;
+
+    private final long startId;
+
+    private final long endId;
+
+    private final int maxSize;
+
+    private final AtomicInteger size;
+
+    private final AtomicBoolean overflow;
+
+    CrlCertsetFetcher(CrlStreamWriter crlWriter, CrlControl control, Date notExpireAt,
+        boolean onlyCaCerts, boolean onlyUserCerts, long startId, long endId, int maxSize,
+        AtomicInteger size, AtomicBoolean overflow) {
+      this.crlWriter = crlWriter;
+      this.withCert = control.isXipkiCertsetCertIncluded();
+      this.notExpireAt = notExpireAt;
+      this.onlyCaCerts = onlyCaCerts;
+      this.onlyUserCerts = onlyUserCerts;
+      this.startId = startId;
+      this.endId = endId;
+      this.maxSize = maxSize;
+      this.size = size;
+      this.overflow = overflow;
+    }
+
+    @Override
+    public Void call() throws OperationException {
+      long nextId = startId;
+      List<CertStore.CertForCrlCertset> certs;
+      do {
+        if (overflow.get()) {
+          return null;
+        }
+
+        certs = certstore.getCertsForCrlCertset(caIdent, notExpireAt, nextId, endId,
+            NUM_ENTRIES, withCert, onlyCaCerts, onlyUserCerts);
+
+        for (CertStore.CertForCrlCertset cert : certs) {
+          nextId = Math.max(nextId, cert.getId() + 1);
+
+          if (maxSize > 0 && size.incrementAndGet() > maxSize) {
+            overflow.set(true);
+            return null;
+          }
+
+          String info = null;
+          if (withCert) {
+            String profileName = caIdNameMap.getCertprofileName(cert.getProfileId());
+            if (profileName != null) {
+              ConfPairs pairs = new ConfPairs();
+              pairs.putPair("profile", profileName);
+              info = pairs.getEncoded();
+            }
+          }
+
+          try {
+            crlWriter.addCrlCert(cert.getSerial(), cert.getEncodedCert(), info);
+          } catch (IOException ex) {
+            throw new OperationException(CRL_FAILURE, ex);
+          }
+        }
+      } while (certs.size() >= NUM_ENTRIES && nextId <= endId);
+
+      return null;
+    } // method call
+
+  } // class CrlCertsetFetcher
+
+  private class CertGenerator implements Callable<CertificateInfo> {
+
+    private final int index;
+
+    private final GrantedCertTemplate gct;
+
+    private final RequestorInfo requestor;
+
+    private final RequestType reqType;
+
+    private final byte[] transactionId;
+
+    private final String msgId;
+
+    private final AtomicBoolean failed;
+
+    CertGenerator(int index, GrantedCertTemplate gct, RequestorInfo requestor,
+        RequestType reqType, byte[] transactionId, String msgId, AtomicBoolean failed) {
+      this.index = index;
+      this.gct = gct;
+      this.requestor = requestor;
+      this.reqType = reqType;
+      this.transactionId = transactionId;
+      this.msgId = msgId;
+      this.failed = failed;
+    }
+
+    @Override
+    public CertificateInfo call() throws OperationExceptionWithIndex {
+      if (failed.get()) {
+        // another certificate could not be generated, all will be reverted.
+        return null;
+      }
+
+      try {
+        return generateCert(index, gct, requestor, reqType, transactionId, msgId);
+      } catch (OperationExceptionWithIndex ex) {
+        failed.set(true);
+        throw ex;
+      }
+    } // method call
+
+  } // class CertGenerator
+
   private static class OperationExceptionWithIndex extends OperationException {
 
     private static final long serialVersionUID = 1L;
@@ -409,10 +555,15 @@ public class X509Ca implements Closeable {
 
   private static final long MS_PER_DAY = MINUTE_PER_DAY * MS_PER_MINUTE;
 
+  private static final int MAX_CRL_ENTRIES_IN_MEMORY = 100000;
+
   private static final long MS_PER_WEEK = 7 * MS_PER_DAY;
 
   private static final long MAX_CERT_TIME_MS = 253402300799982L; //9999-12-31-23-59-59
 
+  // in slave mode, the CRLs are generated by the master
+  private static final long CURRENT_CRL_CHECK_INTERVAL_MS = 10 * MS_PER_SECOND;
+
   private static final Logger LOG = LoggerFactory.getLogger(X509Ca.class);
 
   private final CaInfo caInfo;
@@ -444,6 +595,22 @@ public class X509Ca implements Closeable {
 
   private ScheduledFuture<?> suspendedCertsRevoker;
 
+  private ScheduledFuture<?> fingerprintIndexUpdater;
+
+  /**
+   * Whether the fingerprint index is kept by {@link #close()}, since it is used by the X509Ca
+   * which replaces this one.
+   */
+  private volatile boolean keepFingerprintIndex;
+
+  private CertPublishingPipeline publishingPipeline;
+
+  private final Object currentCrlLock = new Object();
+
+  private volatile EncodedCrl currentCrl;
+
+  private volatile long currentCrlCheckTime;
+
   private final ConcurrentSkipListSet<Long> publicKeyCertsInProcess = new ConcurrentSkipListSet<>();
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
@@ -526,6 +693,10 @@ public class X509Ca implements Closeable {
       publisher.caAdded(caCert);
     }
 
+    CaServerConf caServerConf = caManager.getCaServerConf();
+    this.publishingPipeline = new CertPublishingPipeline(this, certstore,
+        caServerConf.getPublishQueueSize(), caServerConf.getPublishBatchSize());
+
     Random random = new Random();
     ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
     // CRL generation services
@@ -539,6 +710,13 @@ public class X509Ca implements Closeable {
 
     this.suspendedCertsRevoker = executor.scheduleAtFixedRate(
         new SuspendedCertsRevoker(), random.nextInt(60), 60, TimeUnit.MINUTES);
+
+    CaServerConf.CertFingerprintIndex fpIndexConf = caServerConf.getCertFingerprintIndex();
+    if (fpIndexConf != null && fpIndexConf.isEnabled()) {
+      int interval = fpIndexConf.getRefreshIntervalSeconds();
+      this.fingerprintIndexUpdater = executor.scheduleAtFixedRate(
+          new FingerprintIndexUpdater(), 0, interval, TimeUnit.SECONDS);
+    }
   } // constructor
 
   public CaInfo getCaInfo() {
@@ -616,12 +794,74 @@ public class X509Ca implements Closeable {
     return getCrl(null);
   }
 
+  /**
+   * Returns the current CRL, namely the one with the latest thisUpdate. The CRL is cached in
+   * memory, and the cache is invalidated when a new CRL is generated. In slave mode, where the
+   * CRLs are generated by the master, the cache is checked against the database at most every
+   * 10 seconds.
+   *
+   * @return the current CRL, or {@code null} if the CA has no CRL.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  EncodedCrl getEncodedCurrentCrl() throws OperationException {
+    EncodedCrl crl = currentCrl;
+    if (crl != null) {
+      if (masterMode) {
+        return crl;
+      }
+
+      long now = System.currentTimeMillis();
+      if (now - currentCrlCheckTime < CURRENT_CRL_CHECK_INTERVAL_MS) {
+        return crl;
+      }
+
+      currentCrlCheckTime = now;
+      if (certstore.getThisUpdateOfCurrentCrl(caIdent) == crl.getThisUpdate()) {
+        return crl;
+      }
+    }
+
+    synchronized (currentCrlLock) {
+      EncodedCrl cached = currentCrl;
+      if (cached != null && cached != crl) {
+        // loaded by other thread
+        return cached;
+      }
+
+      crl = certstore.getEncodedCurrentCrl(caIdent);
+      currentCrl = crl;
+      currentCrlCheckTime = System.currentTimeMillis();
+      if (crl != null) {
+        LOG.info("cached current CRL: ca={}, crlNumber={}, thisUpdate={}, size={}",
+            caIdent.getName(), crl.getCrlNumber(), crl.getThisUpdate(),
+            crl.getEncoded().length);
+      }
+      return crl;
+    }
+  } // method getEncodedCurrentCrl
+
+  private void invalidateCurrentCrl() {
+    synchronized (currentCrlLock) {
+      currentCrl = null;
+    }
+  }
+
+  private byte[] getEncodedCrl(BigInteger crlNumber) throws OperationException {
+    if (crlNumber == null) {
+      EncodedCrl crl = getEncodedCurrentCrl();
+      return (crl == null) ? null : crl.getEncoded();
+    } else {
+      return certstore.getEncodedCrl(caIdent, crlNumber);
+    }
+  }
+
   public X509CRL getCrl(BigInteger crlNumber) throws OperationException {
     LOG.info("     START getCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
     boolean successful = false;
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
+      byte[] encodedCrl = getEncodedCrl(crlNumber);
       if (encodedCrl == null) {
         return null;
       }
@@ -655,7 +895,7 @@ public class X509Ca implements Closeable {
     boolean successful = false;
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
+      byte[] encodedCrl = getEncodedCrl(crlNumber);
       if (encodedCrl == null) {
         return null;
       }
@@ -734,7 +974,7 @@ public class X509Ca implements Closeable {
           + intervals * MS_PER_DAY);
 
       long maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
-      X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
+      X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, true, msgId);
       if (crl == null) {
         return null;
       }
@@ -750,12 +990,19 @@ public class X509Ca implements Closeable {
     }
   } // method generateCrlOnDemand
 
-  private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
-      throws OperationException {
+  /**
+   * Generates the CRL.
+   *
+   * @param returnCrl
+   *          Whether the CRL is returned. The CRL will be parsed only if true.
+   * @return the generated CRL if returnCrl is true, {@code null} otherwise.
+   */
+  private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+      boolean returnCrl, String msgId) throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_crl, msgId);
     try {
-      X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
+      X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, returnCrl, event, msgId);
       successful = true;
       return crl;
     } finally {
@@ -764,7 +1011,7 @@ public class X509Ca implements Closeable {
   }
 
   private X509CRL generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
-      AuditEvent event, String msgId) throws OperationException {
+      boolean returnCrl, AuditEvent event, String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
       throw new OperationException(NOT_PERMITTED, "CRL generation is not allowed");
@@ -787,18 +1034,13 @@ public class X509Ca implements Closeable {
 
     boolean successful = false;
 
-    try {
+    try (CrlStreamWriter crlWriter = new CrlStreamWriter(MAX_CRL_ENTRIES_IN_MEMORY)) {
       SignerEntryWrapper crlSigner = getCrlSigner();
       PublicCaInfo pci = caInfo.getPublicCaInfo();
 
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubjectAsX500Name() : pci.getX500Subject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
-      }
-
       final int numEntries = 100;
 
       Date notExpireAt;
@@ -811,8 +1053,8 @@ public class X509Ca implements Closeable {
 
       long startId = 1;
 
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
+      // the entries will be sorted by the crlWriter
+      CrlControl crlControl = caInfo.getCrlControl();
 
       List<CertRevInfoWithSerial> revInfos;
 
@@ -824,84 +1066,48 @@ public class X509Ca implements Closeable {
           revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
               control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
         }
-        allRevInfos.addAll(revInfos);
 
         long maxId = 1;
         for (CertRevInfoWithSerial revInfo : revInfos) {
           if (revInfo.getId() > maxId) {
             maxId = revInfo.getId();
           }
-        } // end for
-        startId = maxId + 1;
-      } while (revInfos.size() >= numEntries); // end do
-
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
-      // sort the list by SerialNumber ASC
-      Collections.sort(allRevInfos);
-
-      boolean isFirstCrlEntry = true;
-      CrlControl crlControl = caInfo.getCrlControl();
-
-      for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
-
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
-
-        switch (crlControl.getInvalidityDateMode()) {
-          case forbidden:
-            invalidityTime = null;
-            break;
-          case optional:
-            break;
-          case required:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new IllegalStateException(
-                "unknown TripleState " + crlControl.getInvalidityDateMode());
-        }
 
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-        if (!indirectCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
+          CrlReason reason = revInfo.getReason();
+          if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+            reason = CrlReason.UNSPECIFIED;
           }
-          continue;
-        }
 
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
-
-        Extension ext = createCertificateIssuerExtension(pci.getX500Subject());
-        extensions.add(ext);
+          Date revocationTime = revInfo.getRevocationTime();
+          Date invalidityTime = revInfo.getInvalidityTime();
+
+          switch (crlControl.getInvalidityDateMode()) {
+            case forbidden:
+              invalidityTime = null;
+              break;
+            case optional:
+              break;
+            case required:
+              if (invalidityTime == null) {
+                invalidityTime = revocationTime;
+              }
+              break;
+            default:
+              throw new IllegalStateException(
+                  "unknown TripleState " + crlControl.getInvalidityDateMode());
+          }
 
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
-      }
+          BigInteger serial = revInfo.getSerial();
+          LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
 
-      allRevInfos.clear(); // free the memory
+          try {
+            crlWriter.addRevokedCert(serial, reason.getCode(), revocationTime, invalidityTime);
+          } catch (IOException ex) {
+            throw new OperationException(CRL_FAILURE, ex);
+          }
+        } // end for
+        startId = maxId + 1;
+      } while (revInfos.size() >= numEntries); // end do
 
       BigInteger crlNumber = caInfo.nextCrlNumber();
       event.addEventData(CaAuditConstants.NAME_crl_number, crlNumber);
@@ -913,16 +1119,17 @@ public class X509Ca implements Closeable {
             "should not reach here, onlyUserCerts and onlyCACerts are both true");
       }
 
+      ExtensionsGenerator extnGen = new ExtensionsGenerator();
       try {
         // AuthorityKeyIdentifier
         byte[] akiValues = indirectCrl
             ? X509Util.extractSki(crlSigner.getSigner().getCertificate())
             : pci.getSubjectKeyIdentifer();
         AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
-        crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
+        extnGen.addExtension(Extension.authorityKeyIdentifier, false, aki);
 
         // add extension CRL Number
-        crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+        extnGen.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
 
         // IssuingDistributionPoint
         if (onlyUserCerts || onlyCaCerts || indirectCrl) {
@@ -934,7 +1141,7 @@ public class X509Ca implements Closeable {
               indirectCrl, // indirectCRL,
               false); // onlyContainsAttributeCerts
 
-          crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
+          extnGen.addExtension(Extension.issuingDistributionPoint, true, idp);
         }
 
         // freshestCRL
@@ -942,14 +1149,14 @@ public class X509Ca implements Closeable {
         if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNotEmpty(deltaCrlUris)) {
           CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getX500Subject(),
               crlIssuer);
-          crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
+          extnGen.addExtension(Extension.freshestCRL, false, cdp);
         }
-      } catch (CertIOException | CertificateEncodingException ex) {
-        LogUtil.error(LOG, ex, "crlBuilder.addExtension");
+      } catch (IOException | CertificateEncodingException ex) {
+        LogUtil.error(LOG, ex, "extnGen.addExtension");
         throw new OperationException(INVALID_EXTENSION, ex);
       }
 
-      addXipkiCertset(crlBuilder, deltaCrl, control, notExpireAt, onlyCaCerts, onlyUserCerts);
+      addXipkiCertset(crlWriter, deltaCrl, control, notExpireAt, onlyCaCerts, onlyUserCerts);
 
       @SuppressWarnings("resource")
       ConcurrentContentSigner concurrentSigner = (crlSigner == null)
@@ -962,29 +1169,37 @@ public class X509Ca implements Closeable {
         throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
+      CrlStreamWriter.GeneratedCrl crl;
       try {
-        crlHolder = crlBuilder.build(signer0.value());
+        crl = crlWriter.build(crlIssuer, thisUpdate, nextUpdate,
+            indirectCrl ? pci.getX500Subject() : null,
+            extnGen.isEmpty() ? null : extnGen.generate(), signer0.value());
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
       } finally {
         concurrentSigner.requiteSigner(signer0);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      publishCrl(crl);
 
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-            crlNumber, crl.getThisUpdate());
+      successful = true;
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}, entries={}",
+          caIdent.getName(), crlNumber, crl.getThisUpdate(), crlWriter.getNumEntries());
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
+      }
+
+      if (!returnCrl) {
+        return null;
+      }
+
+      try {
+        return crl.toX509Crl();
+      } catch (IOException | CRLException | CertificateException ex) {
         throw new OperationException(CRL_FAILURE, ex);
       }
     } finally {
@@ -1006,67 +1221,65 @@ public class X509Ca implements Closeable {
    *   info        [1] EXPLICIT    UTF8String  OPTIONAL
    * }
    * </pre>
+   *
+   * <p>The certificates are read in ID ranges, each range by its own thread, and written
+   * to the crlWriter which sorts the elements of the SET OF on disk.
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
-      Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts) throws OperationException {
+  private void addXipkiCertset(CrlStreamWriter crlWriter, boolean deltaCrl,
+      CrlControl control, Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts)
+          throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
     }
 
-    ASN1EncodableVector vector = new ASN1EncodableVector();
-    final int numEntries = 100;
-    long startId = 1;
+    crlWriter.includeCrlCertset();
 
-    List<CertStore.SerialWithId> serials;
-    do {
-      serials = certstore.getSerialNumbers(caIdent, notExpireAt, startId, numEntries, false,
-          onlyCaCerts, onlyUserCerts);
+    final long maxId = certstore.getMaxCertId(caIdent);
+    final int maxSize = control.getXipkiCertsetMaxSize();
+    final AtomicInteger size = new AtomicInteger(0);
+    final AtomicBoolean overflow = new AtomicBoolean(false);
 
-      long maxId = 1;
-      for (CertStore.SerialWithId sid : serials) {
-        if (sid.getId() > maxId) {
-          maxId = sid.getId();
-        }
+    int numThreads = (int) Math.max(1, Math.min(control.getXipkiCertsetThreads(), maxId / 1000));
 
-        ASN1EncodableVector vec = new ASN1EncodableVector();
-        vec.add(new ASN1Integer(sid.getSerial()));
+    List<CrlCertsetFetcher> fetchers = new ArrayList<>(numThreads);
+    long rangeSize = (maxId + numThreads - 1) / numThreads;
+    for (int i = 0; i < numThreads; i++) {
+      long startId = 1 + i * rangeSize;
+      long endId = (i == numThreads - 1) ? maxId : startId + rangeSize - 1;
+      fetchers.add(new CrlCertsetFetcher(crlWriter, control, notExpireAt, onlyCaCerts,
+          onlyUserCerts, startId, endId, maxSize, size, overflow));
+    }
 
-        if (control.isXipkiCertsetCertIncluded()) {
-          CertificateInfo certInfo;
+    if (numThreads == 1) {
+      fetchers.get(0).call();
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+        for (Future<Void> future : executor.invokeAll(fetchers)) {
           try {
-            certInfo = certstore.getCertForId(caIdent, caCert, sid.getId(), caIdNameMap);
-          } catch (CertificateException ex) {
-            throw new OperationException(SYSTEM_FAILURE,
-                "CertificateException: " + ex.getMessage());
-          }
-
-          Certificate cert = Certificate.getInstance(certInfo.getCert().getEncodedCert());
-
-          NameId profileId = certInfo.getProfile();
-          if (profileId != null) {
-            String profileName = profileId.getName();
-            ConfPairs info = new ConfPairs();
-            info.putPair("profile", profileName);
-            vec.add(new DERTaggedObject(1, new DERUTF8String(info.getEncoded())));
+            future.get();
+          } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof OperationException) {
+              throw (OperationException) cause;
+            }
+            throw new OperationException(SYSTEM_FAILURE, cause);
           }
-
-          vec.add(new DERTaggedObject(true, 0, cert));
         }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new OperationException(SYSTEM_FAILURE, "interrupted: " + ex.getMessage());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
 
-        vector.add(new DERSequence(vec));
-      } // end for
-
-      startId = maxId + 1;
-    } while (serials.size() >= numEntries);
-    // end do
-
-    try {
-      crlBuilder.addExtension(ObjectIdentifiers.Xipki.id_xipki_ext_crlCertset,
-          false, new DERSet(vector));
-    } catch (CertIOException ex) {
-      throw new OperationException(INVALID_EXTENSION, "CertIOException: " + ex.getMessage());
+    if (overflow.get()) {
+      crlWriter.excludeCrlCertset();
+      LOG.warn("CA {}: more than {} certificates for the extension CrlCertSet, omit it",
+          caIdent.getName(), maxSize);
     }
-  }
+  } // method addXipkiCertset
 
   public CertificateInfo regenerateCert(CertTemplateData certTemplate,
       RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
@@ -1116,6 +1329,13 @@ public class X509Ca implements Closeable {
         if (successful) {
           continue;
         }
+      } else if (publishingPipeline != null) {
+        // the certificate will be put in PUBLISHQUEUE if it cannot be queued in memory
+        if (publishingPipeline.publish(publisher, certInfo)) {
+          continue;
+        } else {
+          return 2;
+        }
       } // end if
 
       Long certId = certInfo.getCert().getCertId();
@@ -1232,6 +1452,15 @@ public class X509Ca implements Closeable {
     }
   } // method clearPublishQueue
 
+  /**
+   * Logs the metrics of the asynchronous publishers, including the queue lag.
+   */
+  public void logPublishingMetrics() {
+    if (publishingPipeline != null) {
+      publishingPipeline.logMetrics();
+    }
+  }
+
   public boolean publishCertsInQueue() {
     boolean allSuccessful = true;
     for (IdentifiedCertPublisher publisher : publishers()) {
@@ -1289,7 +1518,7 @@ public class X509Ca implements Closeable {
     return true;
   } // method publishCertsInQueue
 
-  private boolean publishCrl(X509CRL crl) {
+  private boolean publishCrl(CrlStreamWriter.GeneratedCrl crl) {
     try {
       certstore.addCrl(caIdent, crl);
     } catch (Exception ex) {
@@ -1297,11 +1526,27 @@ public class X509Ca implements Closeable {
           caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
       LOG.debug("Exception", ex);
       return false;
+    } finally {
+      invalidateCurrentCrl();
     }
 
-    for (IdentifiedCertPublisher publisher : publishers()) {
+    List<IdentifiedCertPublisher> crlPublishers = publishers();
+    if (crlPublishers.isEmpty()) {
+      return true;
+    }
+
+    // the publisher API requires the parsed CRL
+    X509CRL x509Crl;
+    try {
+      x509Crl = crl.toX509Crl();
+    } catch (IOException | CRLException | CertificateException ex) {
+      LogUtil.error(LOG, ex, "could not parse CRL of CA " + caIdent.getName());
+      return false;
+    }
+
+    for (IdentifiedCertPublisher publisher : crlPublishers) {
       try {
-        publisher.crlAdded(caCert, crl);
+        publisher.crlAdded(caCert, x509Crl);
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
@@ -1400,7 +1645,12 @@ public class X509Ca implements Closeable {
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean singleSuccessful;
       try {
-        singleSuccessful = publisher.certificateRemoved(caCert, certToRemove);
+        if (publisher.isAsyn() && publishingPipeline != null) {
+          // keep the order with the queued events of the certificate
+          singleSuccessful = publishingPipeline.publishRemoved(publisher, certToRemove);
+        } else {
+          singleSuccessful = publisher.certificateRemoved(caCert, certToRemove);
+        }
       } catch (RuntimeException ex) {
         singleSuccessful = false;
         LogUtil.warn(LOG, ex,
@@ -1466,6 +1716,11 @@ public class X509Ca implements Closeable {
         if (successful) {
           continue;
         }
+      } else if (publishingPipeline != null) {
+        // keep the order with the queued events of the certificate
+        publishingPipeline.publishRevoked(publisher, revokedCert.getCert(),
+            revokedCert.getCertprofile(), revokedCert.getRevInfo());
+        continue;
       } // end if
 
       Long certId = revokedCert.getCert().getCertId();
@@ -1532,6 +1787,11 @@ public class X509Ca implements Closeable {
         if (successful) {
           continue;
         }
+      } else if (publishingPipeline != null) {
+        // keep the order with the queued events of the certificate
+        publishingPipeline.publishRevoked(publisher, revokedCert.getCert(),
+            revokedCert.getCertprofile(), revokedCert.getRevInfo());
+        continue;
       } // end if
 
       Long certId = revokedCert.getCert().getCertId();
@@ -1578,6 +1838,10 @@ public class X509Ca implements Closeable {
         if (successful) {
           continue;
         }
+      } else if (publishingPipeline != null) {
+        // keep the order with the queued events of the certificate
+        publishingPipeline.publishUnrevoked(publisher, unrevokedCert);
+        continue;
       } // end if
 
       Long certId = unrevokedCert.getCertId();
@@ -1686,6 +1950,15 @@ public class X509Ca implements Closeable {
     return caManager.getIdentifiedPublishersForCa(caIdent.getName());
   }
 
+  IdentifiedCertPublisher getPublisher(String publisherName) {
+    for (IdentifiedCertPublisher publisher : publishers()) {
+      if (publisher != null && publisher.getIdent().getName().equals(publisherName)) {
+        return publisher;
+      }
+    }
+    return null;
+  } // method getPublisher
+
   public List<CertificateInfo> generateCerts(List<CertTemplateData> certTemplates,
       RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
       throws OperationException {
@@ -1714,37 +1987,47 @@ public class X509Ca implements Closeable {
     List<CertificateInfo> certInfos = new ArrayList<>(n);
     OperationExceptionWithIndex exception = null;
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
+    ExecutorService executor = caManager.getCertGenExecutor();
+    if (n == 1 || executor == null || !isParallelizable(gcts)) {
+      for (int i = 0; i < n; i++) {
+        try {
+          certInfos.add(generateCert(i, gcts.get(i), requestor, reqType, transactionId, msgId));
+        } catch (OperationExceptionWithIndex ex) {
+          exception = ex;
+          break;
+        }
+      }
+    } else {
+      // generate the certificates in parallel, the results are in the order of the templates.
+      AtomicBoolean failed = new AtomicBoolean(false);
+      List<CertGenerator> tasks = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        tasks.add(new CertGenerator(i, gcts.get(i), requestor, reqType, transactionId, msgId,
+            failed));
       }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
 
-      boolean successful = false;
+      List<Future<CertificateInfo>> futures;
       try {
-        CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
+        futures = executor.invokeAll(tasks);
+      } catch (InterruptedException | RejectedExecutionException ex) {
+        // no task has been started
+        throw new OperationExceptionWithIndex(0,
+            new OperationException(SYSTEM_FAILURE, "could not generate certificates: " + ex));
+      }
 
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
-        }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+      for (int i = 0; i < n; i++) {
+        try {
+          CertificateInfo certInfo = futures.get(i).get();
+          if (certInfo != null) {
+            certInfos.add(certInfo);
+          }
+        } catch (ExecutionException | InterruptedException ex) {
+          if (exception == null) {
+            Throwable cause = (ex instanceof ExecutionException) ? ex.getCause() : ex;
+            exception = (cause instanceof OperationExceptionWithIndex)
+                ? (OperationExceptionWithIndex) cause
+                : new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, cause));
+          }
         }
       }
     }
@@ -1767,7 +2050,56 @@ public class X509Ca implements Closeable {
     }
 
     return certInfos;
-  }
+  } // method generateCerts
+
+  /**
+   * Checks whether the certificates can be generated in parallel. This is not the case if
+   * some templates have the same public key or granted subject, since the processing of one
+   * depends on the result of the other.
+   */
+  private static boolean isParallelizable(List<GrantedCertTemplate> gcts) {
+    Set<Long> fpPublicKeys = new HashSet<>();
+    Set<Long> fpSubjects = new HashSet<>();
+    for (GrantedCertTemplate gct : gcts) {
+      if (!fpPublicKeys.add(gct.fpPublicKey) || !fpSubjects.add(gct.fpSubject)) {
+        return false;
+      }
+    }
+    return true;
+  } // method isParallelizable
+
+  private CertificateInfo generateCert(int index, GrantedCertTemplate gct,
+      RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
+      throws OperationExceptionWithIndex {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), certprofilIdent.getName(), subjectText);
+
+    boolean successful = false;
+    try {
+      CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
+      successful = true;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
+            LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      }
+      return certInfo;
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      throw new OperationExceptionWithIndex(index, new OperationException(SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    }
+  } // method generateCert
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, String msgId) throws OperationException {
@@ -2695,6 +3027,10 @@ public class X509Ca implements Closeable {
     return caIdent;
   }
 
+  void setKeepFingerprintIndex(boolean keepFingerprintIndex) {
+    this.keepFingerprintIndex = keepFingerprintIndex;
+  }
+
   public String getHexSha1OfCert() {
     return caInfo.getCaEntry().getHexSha1OfCert();
   }
@@ -2716,36 +3052,26 @@ public class X509Ca implements Closeable {
       suspendedCertsRevoker = null;
     }
 
-    ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
-    if (executor != null) {
-      executor.purge();
+    if (fingerprintIndexUpdater != null) {
+      fingerprintIndexUpdater.cancel(false);
+      fingerprintIndexUpdater = null;
+      if (!keepFingerprintIndex) {
+        certstore.removeFingerprintIndex(caIdent);
+      }
     }
-  }
 
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (publishingPipeline != null) {
+      publishingPipeline.close();
+      publishingPipeline = null;
     }
-  }
 
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (ctlogClient != null) {
+      ctlogClient.close();
     }
-  }
 
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
+    if (executor != null) {
+      executor.purge();
     }
   }
 
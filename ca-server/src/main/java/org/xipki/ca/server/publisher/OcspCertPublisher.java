@@ -21,7 +21,9 @@ import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509CRL;
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -148,6 +150,24 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateAdded
 
+  @Override
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    if (certInfos.size() < 2) {
+      return super.certificatesAdded(certInfos);
+    }
+
+    try {
+      queryExecutor.addCerts(certInfos);
+      return Collections.emptyList();
+    } catch (Exception ex) {
+      // e.g. some certificates have been published before, add them one by one.
+      LOG.info("could not publish {} certificates in batch, publish them one by one: {}",
+          certInfos.size(), ex.getMessage());
+      LOG.debug("could not publish certificates in batch", ex);
+      return super.certificatesAdded(certInfos);
+    }
+  } // method certificatesAdded
+
   @Override
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo) {
@@ -20,6 +20,7 @@ package org.xipki.ca.server.publisher;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -35,6 +36,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
 import org.xipki.datasource.DataAccessException;
@@ -231,40 +233,10 @@ class OcspStoreQueryExecutor {
     final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
 
     long certId = certificate.getCertId();
-    byte[] encodedCert = certificate.getEncodedCert();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
-
-    X509Certificate cert = certificate.getCert();
-    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
-    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
-    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
-
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      // CERT
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, serialNumber.toString(16));
-      ps.setLong(idx++, notBeforeSeconds);
-      ps.setLong(idx++, notAfterSeconds);
-      setBoolean(ps, idx++, revoked);
-      ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
-      ps.setString(idx++, cuttedSubject);
-
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.BIGINT);
-        }
-        int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
-        ps.setInt(idx++, reasonCode);
-      }
+      setCertParams(ps, issuerId, certificate, revInfo);
 
       try {
         ps.executeUpdate();
@@ -288,6 +260,127 @@ class OcspStoreQueryExecutor {
     }
   } // method addOrUpdateCert
 
+  /**
+   * Adds the certificates in one transaction with JDBC batches. In contrast to
+   * {@link #addCert(X509Cert, CertWithDbId, CertRevocationInfo)}, it does not check whether the
+   * certificates are already registered. If the batch fails, nothing will be written, and
+   * the caller may fall back to add the certificates one by one.
+   *
+   * @param certInfos
+   *          Certificates to be added.
+   * @throws DataAccessException
+   *           if the certificates could not be added.
+   */
+  void addCerts(List<CertificateInfo> certInfos) throws DataAccessException {
+    Args.notNull(certInfos, "certInfos");
+    if (certInfos.isEmpty()) {
+      return;
+    }
+
+    Connection conn = datasource.getConnection();
+    PreparedStatement psGood = null;
+    PreparedStatement psRevoked = null;
+    String sql = null;
+    boolean autoCommit = true;
+
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      for (CertificateInfo certInfo : certInfos) {
+        CertRevocationInfo revInfo = certInfo.getRevocationInfo();
+        int issuerId = getIssuerId(certInfo.getIssuerCert());
+
+        PreparedStatement ps;
+        if (revInfo == null) {
+          if (psGood == null) {
+            sql = SQL_ADD_CERT;
+            psGood = datasource.prepareStatement(conn, sql);
+          }
+          ps = psGood;
+        } else {
+          if (psRevoked == null) {
+            sql = SQL_ADD_REVOKED_CERT;
+            psRevoked = datasource.prepareStatement(conn, sql);
+          }
+          ps = psRevoked;
+        }
+
+        setCertParams(ps, issuerId, certInfo.getCert(), revInfo);
+        ps.addBatch();
+      }
+
+      if (psGood != null) {
+        sql = SQL_ADD_CERT;
+        psGood.executeBatch();
+      }
+
+      if (psRevoked != null) {
+        sql = SQL_ADD_REVOKED_CERT;
+        psRevoked.executeBatch();
+      }
+
+      conn.commit();
+    } catch (SQLException ex) {
+      rollback(conn);
+      throw datasource.translate(sql, ex);
+    } catch (DataAccessException | RuntimeException ex) {
+      rollback(conn);
+      throw ex;
+    } finally {
+      datasource.releaseResources(psGood, null, false);
+      datasource.releaseResources(psRevoked, null, false);
+      try {
+        conn.setAutoCommit(autoCommit);
+      } catch (SQLException ex) {
+        LOG.warn("could not reset autoCommit of connection: {}", ex.getMessage());
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method addCerts
+
+  private void setCertParams(PreparedStatement ps, int issuerId, CertWithDbId certificate,
+      CertRevocationInfo revInfo) throws SQLException {
+    X509Certificate cert = certificate.getCert();
+    String certHash = certhashAlgo.base64Hash(certificate.getEncodedCert());
+    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
+    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
+    String cuttedSubject = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
+    boolean revoked = (revInfo != null);
+
+    // CERT
+    int idx = 1;
+    ps.setLong(idx++, certificate.getCertId());
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setLong(idx++, notBeforeSeconds);
+    ps.setLong(idx++, notAfterSeconds);
+    setBoolean(ps, idx++, revoked);
+    ps.setInt(idx++, issuerId);
+    ps.setString(idx++, certHash);
+    ps.setString(idx++, cuttedSubject);
+
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.BIGINT);
+      }
+      int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
+      ps.setInt(idx++, reasonCode);
+    }
+  } // method setCertParams
+
+  private static void rollback(Connection conn) {
+    try {
+      conn.rollback();
+    } catch (SQLException ex) {
+      LOG.warn("could not rollback connection: {}", ex.getMessage());
+    }
+  }
+
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
       throws DataAccessException {
     boolean revoked = (revInfo != null);
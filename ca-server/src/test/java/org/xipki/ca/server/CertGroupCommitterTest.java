@@ -0,0 +1,230 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+/**
+ * CertGroupCommitter test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class CertGroupCommitterTest {
+
+  private static final String SQL = "INSERT INTO TCERT (ID,NAME) VALUES (?,?)";
+
+  private DataSourceWrapper datasource;
+
+  private ExecutorService executor;
+
+  @Before
+  public void createTable() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("dataSourceClassName", "org.h2.jdbcx.JdbcDataSource");
+    props.setProperty("dataSource.url", "jdbc:h2:mem:groupcommit;DB_CLOSE_DELAY=-1");
+    props.setProperty("dataSource.user", "sa");
+    props.setProperty("dataSource.password", "");
+    props.setProperty("maximumPoolSize", "20");
+    datasource = new DataSourceFactory().createDataSource("groupcommit", props, null);
+    executeSql("CREATE TABLE TCERT (ID BIGINT NOT NULL, NAME VARCHAR(100), PRIMARY KEY (ID))");
+
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void dropTable() throws Exception {
+    executor.shutdownNow();
+    executeSql("DROP TABLE TCERT");
+    datasource.close();
+  }
+
+  @Test
+  public void testFlushOnSize() throws Exception {
+    // the window is much longer than the test, hence only the size can trigger the flush.
+    try (CertGroupCommitter committer = new CertGroupCommitter(datasource, SQL, 4, 60000)) {
+      committer.start();
+
+      long start = System.currentTimeMillis();
+      List<Future<Void>> futures = insert(committer, 1, 2, 3, 4);
+      for (Future<Void> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      long duration = System.currentTimeMillis() - start;
+
+      Assert.assertTrue("waited for the window: " + duration + " ms", duration < 10000);
+      Assert.assertEquals(1, committer.getCommitCount());
+      Assert.assertEquals(4, committer.getRowCount());
+    }
+
+    Assert.assertEquals(4, getCount());
+  }
+
+  @Test
+  public void testFlushOnTimeout() throws Exception {
+    final int windowMs = 300;
+    try (CertGroupCommitter committer = new CertGroupCommitter(datasource, SQL, 100, windowMs)) {
+      committer.start();
+
+      long start = System.nanoTime();
+      List<Future<Void>> futures = insert(committer, 1, 2, 3);
+      for (Future<Void> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // the batch is not full, it is written once the window has elapsed.
+      Assert.assertTrue("window not respected: " + duration + " ms", duration >= windowMs);
+      Assert.assertEquals(1, committer.getCommitCount());
+      Assert.assertEquals(3, committer.getRowCount());
+    }
+
+    Assert.assertEquals(3, getCount());
+  }
+
+  @Test
+  public void testRowFailure() throws Exception {
+    try (CertGroupCommitter committer = new CertGroupCommitter(datasource, SQL, 3, 60000)) {
+      // not started yet, the row is written directly.
+      committer.insert(new TestRow(2));
+      Assert.assertEquals(1, committer.getCommitCount());
+
+      committer.start();
+      List<Future<Void>> futures = insert(committer, 1, 2, 3);
+
+      // the batch fails because of the duplicated ID 2, only its own caller gets the error.
+      futures.get(0).get(10, TimeUnit.SECONDS);
+      futures.get(2).get(10, TimeUnit.SECONDS);
+      try {
+        futures.get(1).get(10, TimeUnit.SECONDS);
+        Assert.fail("DataAccessException expected");
+      } catch (ExecutionException ex) {
+        Assert.assertTrue("unexpected exception " + ex.getCause(),
+            ex.getCause() instanceof DataAccessException);
+      }
+
+      // the rows 1 and 3 are written one by one.
+      Assert.assertEquals(3, committer.getCommitCount());
+      Assert.assertEquals(3, committer.getRowCount());
+    }
+
+    Assert.assertEquals(3, getCount());
+  }
+
+  @Test
+  public void testInterruptWithPendingBatch() throws Exception {
+    try (CertGroupCommitter committer = new CertGroupCommitter(datasource, SQL, 100, 60000)) {
+      committer.start();
+
+      List<Future<Void>> futures = insert(committer, 1);
+      // the writer waits within the window for further rows.
+      Thread.sleep(500);
+      Thread writer = getWriterThread();
+      Assert.assertNotNull("writer thread not found", writer);
+      writer.interrupt();
+
+      // the drained row is written, and its caller does not wait for ever.
+      futures.get(0).get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(1, committer.getRowCount());
+    }
+
+    Assert.assertEquals(1, getCount());
+  }
+
+  private static Thread getWriterThread() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("cert-group-commit".equals(thread.getName()) && thread.isAlive()) {
+        return thread;
+      }
+    }
+    return null;
+  }
+
+  private static class TestRow implements CertGroupCommitter.Row {
+
+    private final long id;
+
+    TestRow(long id) {
+      this.id = id;
+    }
+
+    @Override
+    public void bind(PreparedStatement ps) throws SQLException {
+      ps.setLong(1, id);
+      ps.setString(2, "cert-" + id);
+    }
+
+  } // class TestRow
+
+  /**
+   * Inserts the rows concurrently, each in its own thread.
+   */
+  private List<Future<Void>> insert(final CertGroupCommitter committer, long... ids)
+      throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(ids.length);
+    List<Future<Void>> futures = new ArrayList<>(ids.length);
+    for (final long id : ids) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          started.countDown();
+          committer.insert(new TestRow(id));
+          return null;
+        }
+      }));
+    }
+    started.await();
+    return futures;
+  } // method insert
+
+  private void executeSql(String sql) throws DataAccessException, SQLException {
+    Statement stmt = null;
+    try {
+      stmt = datasource.createStatement();
+      stmt.execute(sql);
+    } finally {
+      datasource.releaseResources(stmt, null);
+    }
+  }
+
+  private int getCount() throws DataAccessException {
+    return datasource.getCount(null, "TCERT");
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.OperationException;
+import org.xipki.ca.server.CertStore.CertStatus;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Test of the duplicate key and subject checks of {@link CertStore} with fingerprint index.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class CertStoreFingerprintIndexTest {
+
+  private static final NameId CA = new NameId(1, "ca1");
+
+  private static final int NUM_CERTS = 100;
+
+  private static final X500Name ISSUED_SUBJECT = new X500Name("CN=issued");
+
+  private DataSourceWrapper datasource;
+
+  private CertStore certstore;
+
+  @Before
+  public void createCertStore() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("dataSourceClassName", "org.h2.jdbcx.JdbcDataSource");
+    props.setProperty("dataSource.url", "jdbc:h2:mem:fpindex;DB_CLOSE_DELAY=-1");
+    props.setProperty("dataSource.user", "sa");
+    props.setProperty("dataSource.password", "");
+    datasource = new DataSourceFactory().createDataSource("fpindex", props, null);
+
+    executeSql("CREATE TABLE DBSCHEMA (NAME VARCHAR(45) NOT NULL, VALUE2 VARCHAR(100),"
+        + " PRIMARY KEY (NAME))");
+    executeSql("INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('VERSION','6')");
+    executeSql("INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('X500NAME_MAXLEN','350')");
+    executeSql("CREATE TABLE CRL (ID INT NOT NULL, CA_ID INT, CRL VARCHAR(10000),"
+        + " PRIMARY KEY (ID))");
+    executeSql("CREATE TABLE CERT (ID BIGINT NOT NULL, CA_ID INT NOT NULL, FP_K BIGINT NOT NULL,"
+        + " FP_S BIGINT NOT NULL, REV SMALLINT NOT NULL, CERT VARCHAR(10000), PRIMARY KEY (ID))");
+
+    for (int i = 1; i < NUM_CERTS; i++) {
+      executeSql("INSERT INTO CERT (ID,CA_ID,FP_K,FP_S,REV) VALUES (" + i + ",1,"
+          + keyFp(i) + "," + subjectFp(i) + ",0)");
+    }
+    executeSql("INSERT INTO CERT (ID,CA_ID,FP_K,FP_S,REV) VALUES (" + NUM_CERTS + ",1,"
+        + keyFp(NUM_CERTS) + "," + X509Util.fpCanonicalizedName(ISSUED_SUBJECT) + ",0)");
+
+    certstore = new CertStore(datasource, new UniqueIdGenerator(0, 0));
+  }
+
+  @After
+  public void dropCertStore() throws Exception {
+    certstore.close();
+    executeSql("DROP ALL OBJECTS");
+    datasource.close();
+  }
+
+  @Test
+  public void testWithoutIndex() throws Exception {
+    Assert.assertTrue(certstore.isCertForKeyIssued(CA, keyFp(1)));
+    Assert.assertTrue(certstore.isCertForSubjectIssued(CA, subjectFp(1)));
+    Assert.assertFalse(certstore.isCertForKeyIssued(CA, keyFp(NUM_CERTS + 1)));
+    Assert.assertFalse(certstore.isCertForSubjectIssued(CA, subjectFp(NUM_CERTS + 1)));
+    Assert.assertEquals(CertStatus.GOOD, certstore.getCertStatusForSubject(CA, ISSUED_SUBJECT));
+  }
+
+  @Test
+  public void testNegativeAnswerWithoutDatabase() throws Exception {
+    certstore.refreshFingerprintIndex(CA);
+
+    Assert.assertTrue(certstore.isCertForKeyIssued(CA, keyFp(1)));
+    Assert.assertTrue(certstore.isCertForSubjectIssued(CA, subjectFp(1)));
+
+    // every statement on the table CERT fails from now on.
+    executeSql("ALTER TABLE CERT RENAME TO CERT_MOVED");
+
+    for (int i = NUM_CERTS + 1; i <= 2 * NUM_CERTS; i++) {
+      Assert.assertFalse(certstore.isCertForKeyIssued(CA, keyFp(i)));
+      Assert.assertFalse(certstore.isCertForSubjectIssued(CA, subjectFp(i)));
+    }
+    Assert.assertEquals(CertStatus.UNKNOWN,
+        certstore.getCertStatusForSubject(CA, new X500Name("CN=not issued")));
+
+    // a positive answer is still confirmed by the database.
+    try {
+      certstore.isCertForKeyIssued(CA, keyFp(1));
+      Assert.fail("OperationException expected");
+    } catch (OperationException ex) {
+      // expected
+    }
+
+    try {
+      certstore.getCertStatusForSubject(CA, ISSUED_SUBJECT);
+      Assert.fail("OperationException expected");
+    } catch (OperationException ex) {
+      // expected
+    }
+  }
+
+  private static long keyFp(int index) {
+    return 0x1000000000L + index;
+  }
+
+  private static long subjectFp(int index) {
+    return 0x2000000000L + index;
+  }
+
+  private void executeSql(String sql) throws DataAccessException, SQLException {
+    Statement stmt = null;
+    try {
+      stmt = datasource.createStatement();
+      stmt.execute(sql);
+    } finally {
+      datasource.releaseResources(stmt, null);
+    }
+  }
+
+}
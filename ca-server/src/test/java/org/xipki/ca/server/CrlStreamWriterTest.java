@@ -0,0 +1,273 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * CrlStreamWriter test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class CrlStreamWriterTest {
+
+  private static class Entry {
+
+    private final BigInteger serial;
+
+    private final int reason;
+
+    private final Date revocationTime;
+
+    private final Date invalidityTime;
+
+    Entry(BigInteger serial, int reason, Date revocationTime, Date invalidityTime) {
+      this.serial = serial;
+      this.reason = reason;
+      this.revocationTime = revocationTime;
+      this.invalidityTime = invalidityTime;
+    }
+
+  } // class Entry
+
+  /**
+   * Deterministic signer, the signature is the SHA-256 hash of the TBSCertList.
+   */
+  private static class DummySigner implements ContentSigner {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+      return new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+          DERNull.INSTANCE);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public byte[] getSignature() {
+      try {
+        return MessageDigest.getInstance("SHA-256").digest(out.toByteArray());
+      } catch (NoSuchAlgorithmException ex) {
+        throw new IllegalStateException(ex);
+      } finally {
+        out.reset();
+      }
+    }
+
+  } // class DummySigner
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Test CA,O=xipki.org,C=DE");
+
+  private static final Date THIS_UPDATE = new Date(1546300800000L); // 2019-01-01
+
+  private static final Date NEXT_UPDATE = new Date(THIS_UPDATE.getTime() + 86400000L);
+
+  private static final int[] REASONS = {CRLReason.unspecified, CRLReason.keyCompromise,
+    CRLReason.cACompromise, CRLReason.superseded, CRLReason.certificateHold};
+
+  @Test
+  public void testFullCrl() throws Exception {
+    List<Entry> entries = createEntries(100, false);
+    Extensions extns = createExtensions(BigInteger.valueOf(10), null);
+    assertIdentical(entries, extns, NEXT_UPDATE, null, 7);
+  }
+
+  @Test
+  public void testFullCrlInMemory() throws Exception {
+    List<Entry> entries = createEntries(100, false);
+    Extensions extns = createExtensions(BigInteger.valueOf(11), null);
+    assertIdentical(entries, extns, NEXT_UPDATE, null, 1000);
+  }
+
+  @Test
+  public void testDeltaCrl() throws Exception {
+    List<Entry> entries = createEntries(50, true);
+    Extensions extns = createExtensions(BigInteger.valueOf(12), BigInteger.valueOf(10));
+    CrlStreamWriter.GeneratedCrl crl = assertIdentical(entries, extns, NEXT_UPDATE, null, 5);
+    Assert.assertEquals(BigInteger.valueOf(12), crl.getCrlNumber());
+    Assert.assertEquals(BigInteger.valueOf(10), crl.getBaseCrlNumber());
+  }
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    Extensions extns = createExtensions(BigInteger.valueOf(13), null);
+    CrlStreamWriter.GeneratedCrl crl =
+        assertIdentical(new ArrayList<Entry>(), extns, null, null, 5);
+    Assert.assertEquals(BigInteger.valueOf(13), crl.getCrlNumber());
+    Assert.assertNull(crl.getBaseCrlNumber());
+    Assert.assertNull(crl.getNextUpdate());
+    Assert.assertEquals(THIS_UPDATE, crl.getThisUpdate());
+  }
+
+  @Test
+  public void testIndirectCrl() throws Exception {
+    List<Entry> entries = createEntries(20, false);
+    Extensions extns = createExtensions(BigInteger.valueOf(14), null);
+    X500Name certIssuer = new X500Name("CN=Indirect CA,O=xipki.org,C=DE");
+    assertIdentical(entries, extns, NEXT_UPDATE, certIssuer, 3);
+  }
+
+  private static List<Entry> createEntries(int num, boolean deltaCrl) {
+    Random random = new Random(num);
+    List<Entry> entries = new ArrayList<>(num);
+    Set<BigInteger> serials = new HashSet<>();
+    for (int i = 0; i < num; i++) {
+      BigInteger serial = new BigInteger(1 + random.nextInt(159), random);
+      if (!serials.add(serial)) {
+        i--;
+        continue;
+      }
+
+      int reason = (deltaCrl && i % 7 == 0) ? CRLReason.removeFromCRL
+          : REASONS[random.nextInt(REASONS.length)];
+      // whole seconds
+      Date revocationTime = new Date(THIS_UPDATE.getTime() - (1 + random.nextInt(1000)) * 1000L);
+      Date invalidityTime = (i % 3 == 0)
+          ? new Date(revocationTime.getTime() - (1 + random.nextInt(1000)) * 1000L) : null;
+      entries.add(new Entry(serial, reason, revocationTime, invalidityTime));
+    }
+    return entries;
+  }
+
+  private static Extensions createExtensions(BigInteger crlNumber, BigInteger baseCrlNumber)
+      throws IOException {
+    ExtensionsGenerator extnGen = new ExtensionsGenerator();
+    extnGen.addExtension(Extension.authorityKeyIdentifier, false,
+        new AuthorityKeyIdentifier(new byte[20]));
+    extnGen.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+    if (baseCrlNumber != null) {
+      extnGen.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(baseCrlNumber));
+    }
+    return extnGen.generate();
+  }
+
+  private static CrlStreamWriter.GeneratedCrl assertIdentical(List<Entry> entries,
+      Extensions extns, Date nextUpdate, X500Name certIssuer, int maxEntriesInMemory)
+      throws Exception {
+    // reference CRL, BouncyCastle keeps the order of the entries
+    List<Entry> sortedEntries = new ArrayList<>(entries);
+    Collections.sort(sortedEntries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry o1, Entry o2) {
+        return o1.serial.compareTo(o2.serial);
+      }
+    });
+
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+    if (nextUpdate != null) {
+      builder.setNextUpdate(nextUpdate);
+    }
+
+    boolean first = true;
+    for (Entry entry : sortedEntries) {
+      if (first && certIssuer != null) {
+        List<Extension> entryExtns = new ArrayList<>(3);
+        if (entry.reason != CRLReason.unspecified) {
+          entryExtns.add(new Extension(Extension.reasonCode, false,
+              CRLReason.lookup(entry.reason).getEncoded()));
+        }
+        if (entry.invalidityTime != null) {
+          entryExtns.add(new Extension(Extension.invalidityDate, false,
+              new ASN1GeneralizedTime(entry.invalidityTime).getEncoded()));
+        }
+        entryExtns.add(new Extension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(certIssuer)).getEncoded()));
+        builder.addCRLEntry(entry.serial, entry.revocationTime,
+            new Extensions(entryExtns.toArray(new Extension[0])));
+      } else if (entry.invalidityTime == null) {
+        builder.addCRLEntry(entry.serial, entry.revocationTime, entry.reason);
+      } else {
+        builder.addCRLEntry(entry.serial, entry.revocationTime, entry.reason,
+            entry.invalidityTime);
+      }
+      first = false;
+    }
+
+    for (ASN1ObjectIdentifier oid : extns.getExtensionOIDs()) {
+      Extension extn = extns.getExtension(oid);
+      builder.addExtension(oid, extn.isCritical(), extn.getParsedValue());
+    }
+
+    byte[] expected = builder.build(new DummySigner()).getEncoded();
+
+    try (CrlStreamWriter writer = new CrlStreamWriter(maxEntriesInMemory)) {
+      for (Entry entry : entries) {
+        writer.addRevokedCert(entry.serial, entry.reason, entry.revocationTime,
+            entry.invalidityTime);
+      }
+      Assert.assertEquals(entries.size(), writer.getNumEntries());
+
+      CrlStreamWriter.GeneratedCrl crl = writer.build(ISSUER, THIS_UPDATE, nextUpdate,
+          certIssuer, extns, new DummySigner());
+
+      byte[] actual = new byte[(int) crl.getLength()];
+      try (InputStream in = crl.newInputStream()) {
+        int off = 0;
+        int read;
+        while (off < actual.length && (read = in.read(actual, off, actual.length - off)) != -1) {
+          off += read;
+        }
+        Assert.assertEquals(-1, in.read());
+      }
+
+      Assert.assertArrayEquals("CRL differs from that of X509v2CRLBuilder", expected, actual);
+      return crl;
+    }
+  } // method assertIdentical
+
+}
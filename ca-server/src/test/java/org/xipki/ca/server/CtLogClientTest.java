@@ -0,0 +1,278 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.ca.api.OperationException;
+import org.xipki.security.CtLog.SignedCertificateTimestampList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * CtLogClient test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class CtLogClientTest {
+
+  // sct_version=0, id=32 zero bytes, signature: sha256, ecdsa, 2 bytes signature value
+  private static final byte[] SCT_RESPONSE = ("{\"sct_version\":0,"
+      + "\"id\":\"AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\","
+      + "\"timestamp\":1546300800000,\"extensions\":\"\",\"signature\":\"BAMAAgEC\"}")
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] REQUEST = "{\"chain\":[]}".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * CT log server which responds after the given delay.
+   */
+  private static class CtLogHandler implements HttpHandler {
+
+    private final long delayMs;
+
+    private final int statusCode;
+
+    CtLogHandler(long delayMs, int statusCode) {
+      this.delayMs = delayMs;
+      this.statusCode = statusCode;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try (InputStream is = exchange.getRequestBody()) {
+        byte[] buf = new byte[1024];
+        while (is.read(buf) != -1) {
+          // read the request completely
+        }
+      }
+
+      if (delayMs > 0) {
+        try {
+          Thread.sleep(delayMs);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      if (statusCode != 200) {
+        exchange.sendResponseHeaders(statusCode, -1);
+        exchange.close();
+        return;
+      }
+
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, SCT_RESPONSE.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(SCT_RESPONSE);
+      }
+    } // method handle
+
+  } // class CtLogHandler
+
+  private HttpServer server;
+
+  private ExecutorService serverExecutor;
+
+  private ExecutorService clientExecutor;
+
+  private final List<String> urls = new ArrayList<>();
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    clientExecutor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void stopServer() {
+    clientExecutor.shutdownNow();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  private void addLog(long delayMs, int statusCode) {
+    String path = "/log" + (urls.size() + 1);
+    server.createContext(path + "/ct/v1/add-pre-chain", new CtLogHandler(delayMs, statusCode));
+    urls.add("http://127.0.0.1:" + server.getAddress().getPort() + path);
+  }
+
+  @Test
+  public void testQuorumReached() throws Exception {
+    addLog(0, 200);
+    addLog(5000, 200);
+    addLog(0, 200);
+
+    try (CtLogClient client = new CtLogClient(urls, null, 2, 4000)) {
+      long start = System.currentTimeMillis();
+      SignedCertificateTimestampList scts = client.getCtLogScts(REQUEST);
+      long duration = System.currentTimeMillis() - start;
+
+      Assert.assertEquals(2, scts.getSctList().size());
+      Assert.assertTrue("waited for the slow log: " + duration + " ms", duration < 3000);
+
+      List<CtLogClient.LogMetrics> metrics = client.getMetrics();
+      Assert.assertEquals(1, metrics.get(0).getSuccessCount());
+      Assert.assertEquals(1, metrics.get(1).getCancelledCount());
+      Assert.assertEquals(1, metrics.get(2).getSuccessCount());
+    }
+  }
+
+  @Test
+  public void testQuorumImpossible() throws Exception {
+    addLog(0, 500);
+    addLog(5000, 200);
+    addLog(0, 500);
+
+    try (CtLogClient client = new CtLogClient(urls, null, 2, 4000)) {
+      long start = System.currentTimeMillis();
+      try {
+        client.getCtLogScts(REQUEST);
+        Assert.fail("OperationException expected");
+      } catch (OperationException ex) {
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue("waited for the slow log: " + duration + " ms", duration < 3000);
+        Assert.assertTrue(ex.getErrorMessage(), ex.getErrorMessage().contains("got 0"));
+      }
+
+      List<CtLogClient.LogMetrics> metrics = client.getMetrics();
+      Assert.assertEquals(1, metrics.get(0).getFailureCount());
+      Assert.assertEquals(1, metrics.get(1).getCancelledCount());
+      Assert.assertEquals(1, metrics.get(2).getFailureCount());
+    }
+  }
+
+  @Test
+  public void testDeadlineExceeded() throws Exception {
+    addLog(0, 200);
+    addLog(5000, 200);
+    addLog(5000, 200);
+
+    try (CtLogClient client = new CtLogClient(urls, null, 2, 500)) {
+      long start = System.currentTimeMillis();
+      try {
+        client.getCtLogScts(REQUEST);
+        Assert.fail("OperationException expected");
+      } catch (OperationException ex) {
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue("deadline not respected: " + duration + " ms", duration < 2000);
+        Assert.assertTrue(ex.getErrorMessage(), ex.getErrorMessage().contains("within 500 ms"));
+      }
+
+      List<CtLogClient.LogMetrics> metrics = client.getMetrics();
+      Assert.assertEquals(1, metrics.get(0).getSuccessCount());
+      // the read timeout is bounded by the deadline, the request fails or is cancelled
+      for (int i = 1; i < 3; i++) {
+        CtLogClient.LogMetrics m = metrics.get(i);
+        Assert.assertEquals(0, m.getSuccessCount());
+        Assert.assertEquals(1, m.getCancelledCount() + m.getFailureCount());
+      }
+    }
+  }
+
+  @Test
+  public void testQueuedRequests() throws Exception {
+    addLog(300, 200);
+
+    // more concurrent certificates than threads per log, the further requests wait
+    try (CtLogClient client = new CtLogClient(urls, null, 1, 4000, 2)) {
+      long start = System.currentTimeMillis();
+      List<Future<SignedCertificateTimestampList>> futures = getCtLogScts(client, 6);
+      for (Future<SignedCertificateTimestampList> future : futures) {
+        Assert.assertEquals(1, future.get(10, TimeUnit.SECONDS).getSctList().size());
+      }
+      long duration = System.currentTimeMillis() - start;
+
+      // 3 rounds of 2 concurrent requests
+      Assert.assertTrue("concurrency not limited: " + duration + " ms", duration >= 900);
+
+      CtLogClient.LogMetrics metrics = client.getMetrics().get(0);
+      Assert.assertEquals(6, metrics.getSuccessCount());
+      Assert.assertEquals(0, metrics.getFailureCount());
+    }
+  }
+
+  @Test
+  public void testQueuedRequestsDeadline() throws Exception {
+    addLog(1000, 200);
+
+    // the second and third requests cannot be answered within the deadline
+    try (CtLogClient client = new CtLogClient(urls, null, 1, 1500, 1)) {
+      long start = System.currentTimeMillis();
+      List<Future<SignedCertificateTimestampList>> futures = getCtLogScts(client, 3);
+
+      int numSuccessful = 0;
+      for (Future<SignedCertificateTimestampList> future : futures) {
+        try {
+          future.get(10, TimeUnit.SECONDS);
+          numSuccessful++;
+        } catch (ExecutionException ex) {
+          Assert.assertTrue("unexpected exception " + ex.getCause(),
+              ex.getCause() instanceof OperationException);
+        }
+      }
+      long duration = System.currentTimeMillis() - start;
+
+      Assert.assertEquals(1, numSuccessful);
+      Assert.assertTrue("deadline not respected: " + duration + " ms", duration < 3000);
+
+      CtLogClient.LogMetrics metrics = client.getMetrics().get(0);
+      Assert.assertEquals(1, metrics.getSuccessCount());
+      Assert.assertEquals(2, metrics.getCancelledCount() + metrics.getFailureCount());
+    }
+  }
+
+  private List<Future<SignedCertificateTimestampList>> getCtLogScts(final CtLogClient client,
+      int num) {
+    List<Future<SignedCertificateTimestampList>> futures = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      futures.add(clientExecutor.submit(new Callable<SignedCertificateTimestampList>() {
+        @Override
+        public SignedCertificateTimestampList call() throws Exception {
+          return client.getCtLogScts(REQUEST);
+        }
+      }));
+    }
+    return futures;
+  } // method getCtLogScts
+
+}
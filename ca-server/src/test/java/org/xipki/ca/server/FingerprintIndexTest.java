@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * FingerprintIndex test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class FingerprintIndexTest {
+
+  private static final int CAPACITY = 10000;
+
+  @Test
+  public void testNoFalseNegative() {
+    FingerprintIndex index = new FingerprintIndex(1, CAPACITY);
+    long[] keys = new long[CAPACITY];
+    long[] subjects = new long[CAPACITY];
+
+    Random random = new Random(1);
+    for (int i = 0; i < CAPACITY; i++) {
+      keys[i] = random.nextLong();
+      subjects[i] = random.nextLong();
+      index.add(i + 1, keys[i], subjects[i]);
+    }
+
+    for (int i = 0; i < CAPACITY; i++) {
+      Assert.assertTrue("key " + i + " not found", index.mightContainKey(keys[i]));
+      Assert.assertTrue("subject " + i + " not found", index.mightContainSubject(subjects[i]));
+    }
+    Assert.assertEquals(CAPACITY, index.getMaxId());
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    FingerprintIndex index = new FingerprintIndex(1, CAPACITY);
+    Random random = new Random(2);
+    for (int i = 0; i < CAPACITY; i++) {
+      index.add(i + 1, random.nextLong(), random.nextLong());
+    }
+
+    final int tries = 100000;
+    int keyHits = 0;
+    int subjectHits = 0;
+    for (int i = 0; i < tries; i++) {
+      if (index.mightContainKey(random.nextLong())) {
+        keyHits++;
+      }
+      if (index.mightContainSubject(random.nextLong())) {
+        subjectHits++;
+      }
+    }
+
+    // configured false positive rate is 1%, allow statistical deviation
+    Assert.assertTrue("false positive rate of keys too high: " + keyHits,
+        keyHits < tries * 2 / 100);
+    Assert.assertTrue("false positive rate of subjects too high: " + subjectHits,
+        subjectHits < tries * 2 / 100);
+  }
+
+  @Test
+  public void testRefreshOverlap() {
+    FingerprintIndex index = new FingerprintIndex(1, CAPACITY);
+    long[] keys = new long[CAPACITY];
+    long[] subjects = new long[CAPACITY];
+
+    Random random = new Random(3);
+    for (int i = 0; i < CAPACITY; i++) {
+      keys[i] = random.nextLong();
+      subjects[i] = random.nextLong();
+    }
+
+    // certificates added by this instance, with gaps for the ones of the other instances
+    for (int i = 0; i < CAPACITY / 2; i += 2) {
+      index.add(i + 1, keys[i], subjects[i]);
+    }
+    long count = index.getCount();
+    Assert.assertTrue(count > CAPACITY / 4 - 100 && count <= CAPACITY / 4);
+
+    // refresh reads all certificates of the range, including the already indexed ones
+    for (int i = 0; i < CAPACITY / 2; i++) {
+      index.add(i + 1, keys[i], subjects[i]);
+    }
+    count = index.getCount();
+    Assert.assertTrue("count " + count, count > CAPACITY / 2 - 100 && count <= CAPACITY / 2);
+    Assert.assertFalse(index.isSaturated());
+
+    // repeated refresh of the same range changes nothing
+    for (int i = 0; i < CAPACITY / 2; i++) {
+      index.add(i + 1, keys[i], subjects[i]);
+    }
+    Assert.assertEquals(count, index.getCount());
+
+    // certificates with ID lower than the maximal one, e.g. from instances with clock skew,
+    // are counted too
+    for (int i = CAPACITY / 2; i < CAPACITY; i++) {
+      index.add(CAPACITY - i, keys[i], subjects[i]);
+    }
+    Assert.assertEquals(CAPACITY / 2, index.getMaxId());
+    count = index.getCount();
+    Assert.assertTrue("count " + count, count > CAPACITY - 200 && count <= CAPACITY);
+
+    for (int i = 0; i < 200; i++) {
+      index.add(CAPACITY + i, random.nextLong(), random.nextLong());
+    }
+    Assert.assertTrue(index.isSaturated());
+  }
+
+  @Test
+  public void testReady() {
+    FingerprintIndex index = new FingerprintIndex(1, CAPACITY);
+    Assert.assertFalse(index.isReady());
+
+    index.add(100, 1, 2);
+    index.setReady(true);
+    Assert.assertTrue(index.isReady());
+  }
+
+}
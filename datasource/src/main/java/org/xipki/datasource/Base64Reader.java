@@ -0,0 +1,111 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+
+/**
+ * Reader of the Base64 encoding (without line separator) of a binary stream. The stream is
+ * encoded chunk by chunk, so that the whole data is never held in memory.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class Base64Reader extends Reader {
+
+  // must be multiple of 3, so that no padding is inserted between the chunks
+  private static final int CHUNK_SIZE = 3 * 4096;
+
+  private final InputStream in;
+
+  private final byte[] buffer = new byte[CHUNK_SIZE];
+
+  private char[] chars;
+
+  private int pos;
+
+  private boolean eof;
+
+  Base64Reader(InputStream in) {
+    this.in = Args.notNull(in, "in");
+  }
+
+  /**
+   * Returns the length of the Base64 encoding.
+   * @param binaryLength length of the binary data.
+   * @return the number of characters.
+   */
+  static long encodedLength(long binaryLength) {
+    return (binaryLength + 2) / 3 * 4;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (chars == null || pos == chars.length) {
+      if (eof) {
+        return -1;
+      }
+
+      int num = readChunk();
+      if (num < CHUNK_SIZE) {
+        eof = true;
+      }
+
+      if (num == 0) {
+        return -1;
+      }
+
+      chars = Base64.encodeToChar(num == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, num));
+      pos = 0;
+    }
+
+    int num = Math.min(len, chars.length - pos);
+    System.arraycopy(chars, pos, cbuf, off, num);
+    pos += num;
+    return num;
+  } // method read
+
+  private int readChunk() throws IOException {
+    int num = 0;
+    while (num < CHUNK_SIZE) {
+      int read = in.read(buffer, num, CHUNK_SIZE - num);
+      if (read == -1) {
+        break;
+      }
+      num += read;
+    }
+    return num;
+  } // method readChunk
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
@@ -18,13 +18,16 @@
 package org.xipki.datasource;
 
 import java.io.Closeable;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException.Reason;
 import org.xipki.util.Args;
+import org.xipki.util.Base64;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
@@ -131,6 +135,21 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("ALTER TABLE ", table, " DROP KEY ", constraintName);
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      appendInsertSql(sb, table, columns);
+      sb.append(" ON DUPLICATE KEY UPDATE ");
+      boolean first = true;
+      for (String column : columns) {
+        if (!column.equals(keyColumn)) {
+          sb.append(first ? "" : ",").append(column).append("=VALUES(").append(column).append(")");
+          first = false;
+        }
+      }
+      return sb.toString();
+    } // method buildUpsertSql
+
   } // class MySQL
 
   // CHECKSTYLE:SKIP
@@ -223,6 +242,21 @@ public abstract class DataSourceWrapper implements Closeable {
         "END $$;");
     } // method getSqlToDropPrimaryKey
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      appendInsertSql(sb, table, columns);
+      sb.append(" ON CONFLICT (").append(keyColumn).append(") DO UPDATE SET ");
+      boolean first = true;
+      for (String column : columns) {
+        if (!column.equals(keyColumn)) {
+          sb.append(first ? "" : ",").append(column).append("=EXCLUDED.").append(column);
+          first = false;
+        }
+      }
+      return sb.toString();
+    } // method buildUpsertSql
+
   } // class PostgreSQL
 
   private static class Oracle extends DataSourceWrapper {
@@ -300,6 +334,19 @@ public abstract class DataSourceWrapper implements Closeable {
       return sb.toString();
     } // method getSqlToAddPrimaryKey
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(300);
+      sb.append("MERGE INTO ").append(table).append(" T USING (SELECT ");
+      for (int i = 0; i < columns.length; i++) {
+        sb.append(i == 0 ? "" : ",").append("? ").append(columns[i]);
+      }
+      sb.append(" FROM DUAL) V ON (T.").append(keyColumn).append("=V.").append(keyColumn)
+        .append(")");
+      appendMergeActions(sb, keyColumn, columns);
+      return sb.toString();
+    } // method buildUpsertSql
+
   } // class Oracle
 
   private static class H2 extends DataSourceWrapper {
@@ -331,6 +378,17 @@ public abstract class DataSourceWrapper implements Closeable {
       return StringUtil.concat("SELECT NEXTVAL ('", sequenceName, "')");
     }
 
+    @Override
+    public String buildUpsertSql(String table, String keyColumn, String... columns) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append("MERGE INTO ").append(table).append(" (");
+      appendColumns(sb, null, columns);
+      sb.append(") KEY (").append(keyColumn).append(") VALUES (");
+      appendPlaceholders(sb, columns.length);
+      sb.append(")");
+      return sb.toString();
+    } // method buildUpsertSql
+
   } // class H2
 
   // CHECKSTYLE:SKIP
@@ -555,6 +613,80 @@ public abstract class DataSourceWrapper implements Closeable {
 
   public abstract String buildSelectFirstSql(int rows, String orderBy, String coreSql);
 
+  /**
+   * Builds the SQL statement which inserts a row, or updates the existing row with the same
+   * value of {@code keyColumn}. The values of all columns are bound to the placeholders in
+   * the order of {@code columns}.
+   *
+   * <p>The default implementation uses the standard MERGE statement, which is overridden by the
+   * databases with own syntax.
+   *
+   * @param table
+   *          Name of the table.
+   * @param keyColumn
+   *          Column of the primary key.
+   * @param columns
+   *          All columns, including the {@code keyColumn}.
+   * @return the upsert SQL statement.
+   */
+  public String buildUpsertSql(String table, String keyColumn, String... columns) {
+    Args.notBlank(table, "table");
+    Args.notBlank(keyColumn, "keyColumn");
+    Args.notNull(columns, "columns");
+
+    StringBuilder sb = new StringBuilder(300);
+    sb.append("MERGE INTO ").append(table).append(" T USING (VALUES (");
+    appendPlaceholders(sb, columns.length);
+    sb.append(")) AS V (");
+    appendColumns(sb, null, columns);
+    sb.append(") ON T.").append(keyColumn).append("=V.").append(keyColumn);
+    appendMergeActions(sb, keyColumn, columns);
+    return sb.toString();
+  } // method buildUpsertSql
+
+  private static void appendInsertSql(StringBuilder sb, String table, String... columns) {
+    sb.append("INSERT INTO ").append(table).append(" (");
+    appendColumns(sb, null, columns);
+    sb.append(") VALUES (");
+    appendPlaceholders(sb, columns.length);
+    sb.append(")");
+  }
+
+  private static void appendMergeActions(StringBuilder sb, String keyColumn, String... columns) {
+    sb.append(" WHEN MATCHED THEN UPDATE SET ");
+    boolean first = true;
+    for (String column : columns) {
+      if (!column.equals(keyColumn)) {
+        sb.append(first ? "" : ",").append(column).append("=V.").append(column);
+        first = false;
+      }
+    }
+
+    sb.append(" WHEN NOT MATCHED THEN INSERT (");
+    appendColumns(sb, null, columns);
+    sb.append(") VALUES (");
+    appendColumns(sb, "V.", columns);
+    sb.append(")");
+  } // method appendMergeActions
+
+  private static void appendColumns(StringBuilder sb, String prefix, String... columns) {
+    for (int i = 0; i < columns.length; i++) {
+      if (i != 0) {
+        sb.append(",");
+      }
+      if (prefix != null) {
+        sb.append(prefix);
+      }
+      sb.append(columns[i]);
+    }
+  }
+
+  private static void appendPlaceholders(StringBuilder sb, int num) {
+    for (int i = 0; i < num; i++) {
+      sb.append(i == 0 ? "?" : ",?");
+    }
+  }
+
   public <T> T getFirstValue(Connection conn, String table, String column, String criteria,
       Class<T> type) throws DataAccessException {
     final String sql = "SELECT " + column + " FROM " + table + " WHERE " + criteria;
@@ -725,6 +857,130 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   } // method tableHasColumn
 
+  /**
+   * Whether the column stores binary data (BLOB, BYTEA, VARBINARY, etc.). Otherwise the
+   * binary data is stored Base64 encoded in a text column.
+   *
+   * <p>The type is detected from the JDBC metadata of the column, so that the same code works
+   * with both database schemas, e.g. of the columns CERT.CERT and CRL.CRL. The detection
+   * executes a query, hence the result should be determined once and then passed to
+   * {@link #getBinary(ResultSet, String, boolean)} and
+   * {@link #setBinary(PreparedStatement, int, byte[], boolean)}.
+   *
+   * @param conn
+   *          Database connection. If {@code null}, a connection will be borrowed.
+   * @param table
+   *          Table name.
+   * @param column
+   *          Column name.
+   * @return whether the column is a binary column.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public boolean isBinaryColumn(Connection conn, String table, String column)
+      throws DataAccessException {
+    Args.notBlank(table, "table");
+    Args.notBlank(column, "column");
+
+    final String sql = StringUtil.concat("SELECT ", column, " FROM ", table, " WHERE 1=0");
+
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = conn == null ? createStatement() : createStatement(conn);
+      rs = stmt.executeQuery(sql);
+      ResultSetMetaData metadata = rs.getMetaData();
+      switch (metadata.getColumnType(1)) {
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+        case Types.BLOB:
+          return true;
+        default:
+          return false;
+      }
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(stmt, rs, conn == null);
+    }
+  } // method isBinaryColumn
+
+  /**
+   * Reads the binary data from a column detected by {@link #isBinaryColumn(Connection, String,
+   * String)}.
+   *
+   * @param rs
+   *          Result set.
+   * @param column
+   *          Column name.
+   * @param binary
+   *          Whether the column is a binary column, otherwise a Base64 encoded text column.
+   * @return the binary data, may be {@code null}.
+   * @throws SQLException
+   *           if database error occurs.
+   */
+  public byte[] getBinary(ResultSet rs, String column, boolean binary) throws SQLException {
+    if (binary) {
+      return rs.getBytes(column);
+    } else {
+      String b64 = rs.getString(column);
+      return (b64 == null) ? null : Base64.decodeFast(b64);
+    }
+  } // method getBinary
+
+  /**
+   * Sets the binary data of a column detected by {@link #isBinaryColumn(Connection, String,
+   * String)}.
+   *
+   * @param ps
+   *          Prepared statement.
+   * @param index
+   *          Parameter index.
+   * @param value
+   *          Binary data, may be {@code null}.
+   * @param binary
+   *          Whether the column is a binary column, otherwise a Base64 encoded text column.
+   * @throws SQLException
+   *           if database error occurs.
+   */
+  public void setBinary(PreparedStatement ps, int index, byte[] value, boolean binary)
+      throws SQLException {
+    if (binary) {
+      ps.setBytes(index, value);
+    } else {
+      ps.setString(index, (value == null) ? null : Base64.encodeToString(value));
+    }
+  } // method setBinary
+
+  /**
+   * Sets the binary data of a column detected by {@link #isBinaryColumn(Connection, String,
+   * String)} from a stream. For text column, the data is Base64-encoded while being read.
+   *
+   * @param ps
+   *          Prepared statement.
+   * @param index
+   *          Parameter index.
+   * @param value
+   *          Stream of the binary data. The caller must close it after the statement has been
+   *          executed.
+   * @param length
+   *          Number of bytes in the stream.
+   * @param binary
+   *          Whether the column is a binary column, otherwise a Base64 encoded text column.
+   * @throws SQLException
+   *           if database error occurs.
+   */
+  public void setBinaryStream(PreparedStatement ps, int index, InputStream value, long length,
+      boolean binary) throws SQLException {
+    Args.notNull(value, "value");
+    if (binary) {
+      ps.setBinaryStream(index, value, length);
+    } else {
+      ps.setCharacterStream(index, new Base64Reader(value), Base64Reader.encodedLength(length));
+    }
+  } // method setBinaryStream
+
   public boolean tableExists(Connection conn, String table) throws DataAccessException {
     Args.notBlank(table, "table");
 
@@ -38,11 +38,30 @@ public abstract class CtLogServlet extends HttpServlet {
 
   private final SecureRandom random = new SecureRandom();
 
+  // artificial latency, to test the concurrent SCT collection of the CA.
+  private long delayMs;
+
   protected abstract String getLogId();
 
+  @Override
+  public void init() throws ServletException {
+    String str = getInitParameter("delayMs");
+    if (str != null && !str.trim().isEmpty()) {
+      delayMs = Long.parseLong(str.trim());
+    }
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    if (delayMs > 0) {
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
     StringBuilder sb = new StringBuilder();
     sb.append("{\n");
     sb.append("\t\"sct_version\":0,\n");
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.server.OcspMetrics.Stage;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * {@link OcspMetricsExporter} which writes the metrics to the log. Used for the type
+ * {@code log}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class LogOcspMetricsExporter implements OcspMetricsExporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogOcspMetricsExporter.class);
+
+  @Override
+  public void init(String conf) {
+  }
+
+  @Override
+  public void export(OcspMetrics metrics) {
+    if (!LOG.isInfoEnabled()) {
+      return;
+    }
+
+    StringBuilder sb = new StringBuilder(500);
+    sb.append("OCSP metrics (latency in us):");
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram hist = metrics.getHistogram(stage);
+      if (hist.getCount() == 0) {
+        continue;
+      }
+
+      sb.append("\n  ").append(stage.name())
+        .append(": count=").append(hist.getCount())
+        .append(", mean=").append(hist.getMean())
+        .append(", p50=").append(hist.getValueAtPercentile(50))
+        .append(", p99=").append(hist.getValueAtPercentile(99))
+        .append(", max=").append(hist.getMax());
+    }
+
+    sb.append("\n  responseStatus:");
+    for (OcspResponseStatus status : OcspResponseStatus.values()) {
+      sb.append(" ").append(status.name()).append("=").append(metrics.getStatusCount(status));
+    }
+
+    sb.append("\n  cache: preSignedHits=").append(metrics.getPreSignedHits())
+      .append(", cacheHits=").append(metrics.getCacheHits())
+      .append(", singleResponseCacheHits=").append(metrics.getSingleResponseCacheHits());
+
+    LOG.info(sb.toString());
+  } // method export
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -24,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.bouncycastle.cert.ocsp.OCSPException;
+import org.xipki.ocsp.server.OcspMetrics.Stage;
 import org.xipki.ocsp.server.type.ASN1Type;
 import org.xipki.ocsp.server.type.CertID;
 import org.xipki.ocsp.server.type.Extensions;
@@ -34,6 +35,7 @@ import org.xipki.ocsp.server.type.TaggedCertSequence;
 import org.xipki.security.ConcurrentBagEntrySigner;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.NoIdleSignerException;
+import org.xipki.security.XiBatchContentSigner;
 import org.xipki.security.XiContentSigner;
 import org.xipki.util.Hex;
 
@@ -90,33 +92,137 @@ public class OCSPRespBuilder {
   public byte[] buildOCSPResponse(ConcurrentContentSigner signer,
       TaggedCertSequence taggedCertSequence, Date producedAt)
       throws OCSPException, NoIdleSignerException {
-    ResponseData responseData = new ResponseData(0,
-        responderId, producedAt, list, responseExtensions);
+    return buildOCSPResponse(signer, taggedCertSequence, producedAt, null);
+  }
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
-    responseData.write(tbs, 0);
+  /**
+   * Builds the OCSP response.
+   *
+   * @param signer signer.
+   * @param taggedCertSequence certificates to be embedded in the response, may be null.
+   * @param producedAt producedAt of the response.
+   * @param metrics metrics to record the latencies of the encoding and signing, may be null.
+   * @return the encoded OCSP response.
+   * @throws OCSPException if error occurs while signing the response.
+   * @throws NoIdleSignerException if no signer is idle.
+   */
+  // CHECKSTYLE:SKIP
+  public byte[] buildOCSPResponse(ConcurrentContentSigner signer,
+      TaggedCertSequence taggedCertSequence, Date producedAt, OcspMetrics metrics)
+      throws OCSPException, NoIdleSignerException {
+    long start = (metrics == null) ? 0 : System.nanoTime();
+    byte[] tbs = encodeTbs(producedAt);
+
+    long encodeDuration = 0;
+    if (metrics != null) {
+      long now = System.nanoTime();
+      encodeDuration = now - start;
+      start = now;
+    }
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
 
+    if (metrics != null) {
+      long now = System.nanoTime();
+      metrics.record(Stage.signerWait, now - start);
+      start = now;
+    }
+
     byte[] signature;
     byte[] sigAlgId;
 
     try {
       XiContentSigner csigner0 = signer0.value();
-      OutputStream sigOut = csigner0.getOutputStream();
-      try {
-        sigOut.write(tbs);
-        sigOut.close();
-      } catch (IOException ex) {
-        throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
-      }
+      signature = sign(csigner0, tbs);
+      sigAlgId = csigner0.getEncodedAlgorithmIdentifier();
+    } finally {
+      signer.requiteSigner(signer0);
+    }
 
-      signature = csigner0.getSignature();
+    if (metrics == null) {
+      return encodeOCSPResponse(tbs, sigAlgId, signature, taggedCertSequence);
+    }
+
+    long now = System.nanoTime();
+    metrics.record(Stage.sign, now - start);
+
+    byte[] encoded = encodeOCSPResponse(tbs, sigAlgId, signature, taggedCertSequence);
+    metrics.record(Stage.encode, encodeDuration + System.nanoTime() - now);
+    return encoded;
+  } // method buildOCSPResponse
+
+  /**
+   * Builds the OCSP responses of all builders. All responses are signed with one signer
+   * borrowed from the pool.
+   *
+   * @param builders builders of the responses.
+   * @param signer signer.
+   * @param taggedCertSequence certificates to be embedded in the responses, may be null.
+   * @param producedAt producedAt of the responses.
+   * @return the encoded OCSP responses, in the same order as the builders.
+   * @throws OCSPException if error occurs while signing the responses.
+   * @throws NoIdleSignerException if no signer is idle.
+   */
+  // CHECKSTYLE:SKIP
+  public static byte[][] buildOCSPResponses(List<OCSPRespBuilder> builders,
+      ConcurrentContentSigner signer, TaggedCertSequence taggedCertSequence, Date producedAt)
+      throws OCSPException, NoIdleSignerException {
+    final int n = builders.size();
+    byte[][] tbsList = new byte[n][];
+    for (int i = 0; i < n; i++) {
+      tbsList[i] = builders.get(i).encodeTbs(producedAt);
+    }
+
+    byte[][] signatures = new byte[n][];
+    byte[] sigAlgId;
+
+    ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
+    try {
+      XiContentSigner csigner0 = signer0.value();
+      if (csigner0 instanceof XiBatchContentSigner) {
+        // e.g. PKCS#11 signer, all responses are signed in one call to the token
+        signatures = ((XiBatchContentSigner) csigner0).getSignatures(tbsList);
+      } else {
+        for (int i = 0; i < n; i++) {
+          signatures[i] = sign(csigner0, tbsList[i]);
+        }
+      }
       sigAlgId = csigner0.getEncodedAlgorithmIdentifier();
     } finally {
       signer.requiteSigner(signer0);
     }
 
+    byte[][] responses = new byte[n][];
+    for (int i = 0; i < n; i++) {
+      responses[i] = encodeOCSPResponse(tbsList[i], sigAlgId, signatures[i], taggedCertSequence);
+    }
+    return responses;
+  } // method buildOCSPResponses
+
+  private byte[] encodeTbs(Date producedAt) {
+    ResponseData responseData = new ResponseData(0,
+        responderId, producedAt, list, responseExtensions);
+
+    byte[] tbs = new byte[responseData.getEncodedLength()];
+    responseData.write(tbs, 0);
+    return tbs;
+  } // method encodeTbs
+
+  private static byte[] sign(XiContentSigner signer, byte[] tbs) throws OCSPException {
+    OutputStream sigOut = signer.getOutputStream();
+    try {
+      sigOut.write(tbs);
+      sigOut.close();
+    } catch (IOException ex) {
+      throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
+    }
+
+    return signer.getSignature();
+  } // method sign
+
+  // CHECKSTYLE:SKIP
+  private static byte[] encodeOCSPResponse(byte[] tbs, byte[] sigAlgId, byte[] signature,
+      TaggedCertSequence taggedCertSequence) {
     // ----- Get the length -----
     // BasicOCSPResponse.signature
     int signatureBodyLen = signature.length + 1;
@@ -177,7 +283,7 @@ public class OCSPRespBuilder {
       offset += taggedCertSequence.write(out, offset);
     }
     return out;
-  } // method buildOCSPResponse
+  } // method encodeOCSPResponse
 
   private static int getLen(int bodyLen) {
     return ASN1Type.getHeaderLen(bodyLen) + bodyLen;
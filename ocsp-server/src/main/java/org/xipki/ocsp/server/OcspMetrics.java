@@ -0,0 +1,260 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * Metrics of the OCSP request path: latency histograms of the processing stages, and
+ * counters of the response status, the store lookups and the cache hits.
+ *
+ * <p>If the metrics are not enabled, no instance of this class exists and no timestamps
+ * will be taken on the request path.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class OcspMetrics {
+
+  public enum Stage {
+
+    /**
+     * Whole processing of the request.
+     */
+    total,
+
+    /**
+     * Parsing of the request whose signature is not validated.
+     */
+    parse,
+
+    /**
+     * Parsing of the request and validation of its signature.
+     */
+    checkSignature,
+
+    /**
+     * Lookup of the pre-signed and cached responses.
+     */
+    cacheLookup,
+
+    /**
+     * Retrieval of the certificate status from the stores, per query.
+     */
+    storeLookup,
+
+    /**
+     * Waiting for an idle signer in the pool.
+     */
+    signerWait,
+
+    /**
+     * Signing of the response.
+     */
+    sign,
+
+    /**
+     * Encoding of the ResponseData and the OCSPResponse.
+     */
+    encode
+
+  } // class Stage
+
+  private static class StoreCounter {
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+  } // class StoreCounter
+
+  private final long startTime = System.currentTimeMillis();
+
+  private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+  private final AtomicLongArray statusCounts =
+      new AtomicLongArray(OcspResponseStatus.values().length);
+
+  private final Map<String, StoreCounter> storeCounters = new ConcurrentHashMap<>();
+
+  private final AtomicLong preSignedHits = new AtomicLong();
+
+  private final AtomicLong cacheHits = new AtomicLong();
+
+  private final AtomicLong singleResponseCacheHits = new AtomicLong();
+
+  public OcspMetrics() {
+    for (Stage stage : Stage.values()) {
+      histograms.put(stage, new LatencyHistogram());
+    }
+  }
+
+  public void record(Stage stage, long nanos) {
+    histograms.get(stage).record(nanos);
+  }
+
+  /**
+   * Records the response.
+   *
+   * @param encodedResponse
+   *          DER-encoded OCSPResponse.
+   * @param nanos
+   *          Processing time in nanoseconds.
+   */
+  public void recordResponse(byte[] encodedResponse, long nanos) {
+    histograms.get(Stage.total).record(nanos);
+    OcspResponseStatus status = getResponseStatus(encodedResponse);
+    if (status != null) {
+      statusCounts.incrementAndGet(status.ordinal());
+    }
+  } // method recordResponse
+
+  public void countStoreLookup(String storeType, boolean error) {
+    StoreCounter counter = storeCounters.get(storeType);
+    if (counter == null) {
+      storeCounters.putIfAbsent(storeType, new StoreCounter());
+      counter = storeCounters.get(storeType);
+    }
+
+    counter.lookups.incrementAndGet();
+    if (error) {
+      counter.errors.incrementAndGet();
+    }
+  } // method countStoreLookup
+
+  public void countPreSignedHit() {
+    preSignedHits.incrementAndGet();
+  }
+
+  public void countCacheHit() {
+    cacheHits.incrementAndGet();
+  }
+
+  public void countSingleResponseCacheHit() {
+    singleResponseCacheHits.incrementAndGet();
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms.get(stage);
+  }
+
+  public long getStatusCount(OcspResponseStatus status) {
+    return statusCounts.get(status.ordinal());
+  }
+
+  public long getPreSignedHits() {
+    return preSignedHits.get();
+  }
+
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  public long getSingleResponseCacheHits() {
+    return singleResponseCacheHits.get();
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Returns the metrics as a map, which can be serialized to JSON. All latencies are
+   * in microseconds.
+   *
+   * @return the metrics as a map.
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> ret = new LinkedHashMap<>();
+    ret.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000);
+
+    Map<String, Object> stages = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram hist = histograms.get(stage);
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("count", hist.getCount());
+      map.put("mean", hist.getMean());
+      map.put("p50", hist.getValueAtPercentile(50));
+      map.put("p90", hist.getValueAtPercentile(90));
+      map.put("p99", hist.getValueAtPercentile(99));
+      map.put("p999", hist.getValueAtPercentile(99.9));
+      map.put("max", hist.getMax());
+      stages.put(stage.name(), map);
+    }
+    ret.put("stages", stages);
+
+    Map<String, Object> statuses = new LinkedHashMap<>();
+    for (OcspResponseStatus status : OcspResponseStatus.values()) {
+      statuses.put(status.name(), statusCounts.get(status.ordinal()));
+    }
+    ret.put("responseStatus", statuses);
+
+    Map<String, Object> stores = new LinkedHashMap<>();
+    for (Map.Entry<String, StoreCounter> entry : storeCounters.entrySet()) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("lookups", entry.getValue().lookups.get());
+      map.put("errors", entry.getValue().errors.get());
+      stores.put(entry.getKey(), map);
+    }
+    ret.put("storeTypes", stores);
+
+    Map<String, Object> caches = new LinkedHashMap<>();
+    caches.put("preSignedHits", preSignedHits.get());
+    caches.put("cacheHits", cacheHits.get());
+    caches.put("singleResponseCacheHits", singleResponseCacheHits.get());
+    ret.put("cache", caches);
+
+    return ret;
+  } // method toMap
+
+  /**
+   * Extracts the responseStatus of the OCSPResponse.
+   * <pre>
+   * OCSPResponse ::= SEQUENCE {
+   *    responseStatus         OCSPResponseStatus,
+   *    responseBytes          [0] EXPLICIT ResponseBytes OPTIONAL }
+   * </pre>
+   */
+  private static OcspResponseStatus getResponseStatus(byte[] encoded) {
+    if (encoded == null || encoded.length < 5) {
+      return null;
+    }
+
+    int len0 = 0xFF & encoded[1];
+    int off = (len0 < 0x80) ? 2 : 2 + (len0 & 0x7F);
+    // ENUMERATED with one byte
+    if (encoded.length < off + 3 || encoded[off] != 0x0a || encoded[off + 1] != 1) {
+      return null;
+    }
+
+    try {
+      return OcspResponseStatus.forValue(0xFF & encoded[off + 2]);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  } // method getResponseStatus
+
+}
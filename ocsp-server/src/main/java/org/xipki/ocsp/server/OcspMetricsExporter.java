@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+
+import org.xipki.util.InvalidConfException;
+
+/**
+ * Exporter of the {@link OcspMetrics}. It is called periodically with the
+ * interval specified in the configuration.
+ *
+ * <p>An implementation must have a public no-argument constructor, and is configured via
+ * the type {@code java:<class name>}.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public interface OcspMetricsExporter extends Closeable {
+
+  /**
+   * Initializes the exporter.
+   *
+   * @param conf
+   *          Configuration, may be {@code null}.
+   * @throws InvalidConfException
+   *           if the configuration is invalid.
+   */
+  void init(String conf) throws InvalidConfException;
+
+  /**
+   * Exports the metrics.
+   *
+   * @param metrics
+   *          Metrics of the OCSP server.
+   */
+  void export(OcspMetrics metrics);
+
+}
@@ -323,6 +323,11 @@ public class OcspServerConf extends ValidatableConf {
 
     private String name;
 
+    /**
+     * If present and enabled, the responses are signed in advance.
+     */
+    private PreSigning preSigning;
+
     public List<String> getServletPaths() {
       if (servletPaths == null) {
         servletPaths = new LinkedList<>();
@@ -393,6 +398,14 @@ public class OcspServerConf extends ValidatableConf {
       this.name = name;
     }
 
+    public PreSigning getPreSigning() {
+      return preSigning;
+    }
+
+    public void setPreSigning(PreSigning preSigning) {
+      this.preSigning = preSigning;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(servletPaths, "servletPaths");
@@ -401,16 +414,441 @@ public class OcspServerConf extends ValidatableConf {
       notEmpty(response, "response");
       notEmpty(stores, "stores");
       notEmpty(name, "name");
+      validate(preSigning);
     }
 
   } // class Responder
 
+  public static class WriteBehind extends ValidatableConf {
+
+    public enum OverflowPolicy {
+
+      /**
+       * Wait at most {@code maxBlockMs} milliseconds for free space, drop the response if
+       * the queue is still full.
+       */
+      BLOCK,
+
+      /**
+       * Drop the new response.
+       */
+      DROP,
+
+      /**
+       * Drop the oldest queued response to make space for the new one.
+       */
+      DROP_OLDEST;
+
+      public static OverflowPolicy forName(String text) {
+        for (OverflowPolicy value : values()) {
+          if (value.name().equalsIgnoreCase(text)) {
+            return value;
+          }
+        }
+
+        throw new IllegalArgumentException("invalid OverflowPolicy " + text);
+      } // method forName
+
+    } // class OverflowPolicy
+
+    private boolean enabled = true;
+
+    private int queueSize = 10000;
+
+    private int batchSize = 100;
+
+    /**
+     * Maximal interval in milliseconds between two flushes.
+     */
+    private int flushIntervalMs = 1000;
+
+    /**
+     * One of BLOCK, DROP and DROP_OLDEST, case-insensitive.
+     */
+    private String overflowPolicy = OverflowPolicy.DROP.name();
+
+    private int maxBlockMs = 100;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getFlushIntervalMs() {
+      return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(int flushIntervalMs) {
+      this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public String getOverflowPolicy() {
+      return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getMaxBlockMs() {
+      return maxBlockMs;
+    }
+
+    public void setMaxBlockMs(int maxBlockMs) {
+      this.maxBlockMs = maxBlockMs;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (queueSize < 1) {
+        throw new InvalidConfException("queueSize must be positive");
+      }
+
+      if (batchSize < 1) {
+        throw new InvalidConfException("batchSize must be positive");
+      }
+
+      if (flushIntervalMs < 1) {
+        throw new InvalidConfException("flushIntervalMs must be positive");
+      }
+
+      if (overflowPolicy != null) {
+        try {
+          OverflowPolicy.forName(overflowPolicy);
+        } catch (IllegalArgumentException ex) {
+          throw new InvalidConfException(ex.getMessage());
+        }
+      }
+    }
+
+  } // class WriteBehind
+
+  /**
+   * Configuration of the pre-signed responses. Only the certificates in the stores of type
+   * xipki-db, crl and crl-mmap are considered.
+   */
+  public static class PreSigning extends ValidatableConf {
+
+    private boolean enabled = true;
+
+    /**
+     * Hash algorithm of the CertID in the pre-signed responses. Requests with other
+     * hash algorithms are answered on demand.
+     */
+    private String hashAlgo = "SHA1";
+
+    /**
+     * Interval in seconds to check the changes of the certificate status.
+     */
+    private int scanIntervalSeconds = 60;
+
+    /**
+     * Maximal period in seconds between the start of the last completed scan of an issuer and
+     * the serving of its pre-signed responses. If the scan of an issuer is delayed longer,
+     * e.g. due to database failure, its pre-signed responses are not served, so that the
+     * status change of a certificate, e.g. revocation, is served at the latest after this
+     * period. Must not be less than scanIntervalSeconds. The default is 180.
+     */
+    private int maxStalenessSeconds = 180;
+
+    /**
+     * The response will be signed again if its nextUpdate is within this period in seconds.
+     */
+    private int refreshBeforeSeconds = 3600;
+
+    /**
+     * Maximal age in seconds of the responses without nextUpdate.
+     */
+    private int maxAgeSeconds = 86400;
+
+    /**
+     * Number of responses signed with one borrowed signer.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Number of signing threads, 0 for the number of available processors.
+     */
+    private int threads;
+
+    /**
+     * Maximal number of pre-signed responses.
+     */
+    private int maxSize = 1000000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public String getHashAlgo() {
+      return hashAlgo;
+    }
+
+    public void setHashAlgo(String hashAlgo) {
+      this.hashAlgo = hashAlgo;
+    }
+
+    public int getScanIntervalSeconds() {
+      return scanIntervalSeconds;
+    }
+
+    public void setScanIntervalSeconds(int scanIntervalSeconds) {
+      this.scanIntervalSeconds = scanIntervalSeconds;
+    }
+
+    public int getMaxStalenessSeconds() {
+      return maxStalenessSeconds;
+    }
+
+    public void setMaxStalenessSeconds(int maxStalenessSeconds) {
+      this.maxStalenessSeconds = maxStalenessSeconds;
+    }
+
+    public int getRefreshBeforeSeconds() {
+      return refreshBeforeSeconds;
+    }
+
+    public void setRefreshBeforeSeconds(int refreshBeforeSeconds) {
+      this.refreshBeforeSeconds = refreshBeforeSeconds;
+    }
+
+    public int getMaxAgeSeconds() {
+      return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+      this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      notEmpty(hashAlgo, "hashAlgo");
+
+      if (scanIntervalSeconds < 1) {
+        throw new InvalidConfException("scanIntervalSeconds must be positive");
+      }
+
+      if (maxStalenessSeconds < scanIntervalSeconds) {
+        throw new InvalidConfException("maxStalenessSeconds must not be less than "
+            + "scanIntervalSeconds");
+      }
+
+      if (refreshBeforeSeconds < 0) {
+        throw new InvalidConfException("refreshBeforeSeconds must not be negative");
+      }
+
+      if (maxAgeSeconds < 1) {
+        throw new InvalidConfException("maxAgeSeconds must be positive");
+      }
+
+      if (batchSize < 1) {
+        throw new InvalidConfException("batchSize must be positive");
+      }
+
+      if (threads < 0) {
+        throw new InvalidConfException("threads must not be negative");
+      }
+
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must be positive");
+      }
+    }
+
+  } // class PreSigning
+
+  /**
+   * Configuration of the metrics of the request path.
+   */
+  public static class Metrics extends ValidatableConf {
+
+    private boolean enabled;
+
+    /**
+     * Interval in seconds to call the exporters.
+     */
+    private int exportIntervalSeconds = 60;
+
+    private List<MetricsExporter> exporters;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getExportIntervalSeconds() {
+      return exportIntervalSeconds;
+    }
+
+    public void setExportIntervalSeconds(int exportIntervalSeconds) {
+      this.exportIntervalSeconds = exportIntervalSeconds;
+    }
+
+    public List<MetricsExporter> getExporters() {
+      if (exporters == null) {
+        exporters = new LinkedList<>();
+      }
+      return exporters;
+    }
+
+    public void setExporters(List<MetricsExporter> exporters) {
+      this.exporters = exporters;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (exportIntervalSeconds < 1) {
+        throw new InvalidConfException("exportIntervalSeconds must be positive");
+      }
+      validate(exporters);
+    }
+
+  } // class Metrics
+
+  public static class MetricsExporter extends ValidatableConf {
+
+    /**
+     * Type of the exporter, 'log' or 'java:{class name}'.
+     */
+    private String type;
+
+    private String conf;
+
+    public String getType() {
+      return type;
+    }
+
+    public void setType(String type) {
+      this.type = type;
+    }
+
+    public String getConf() {
+      return conf;
+    }
+
+    public void setConf(String conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      notEmpty(type, "type");
+    }
+
+  } // class MetricsExporter
+
+  /**
+   * Configuration of the in-memory cache of the SingleResponses.
+   */
+  public static class SingleResponseCache extends ValidatableConf {
+
+    /**
+     * Maximal number of cached SingleResponses.
+     */
+    private int maxSize = 100000;
+
+    /**
+     * Validity of a cached SingleResponse in seconds. A changed certificate status will be
+     * reflected in the responses after at most this period.
+     */
+    private int validitySeconds = 60;
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public int getValiditySeconds() {
+      return validitySeconds;
+    }
+
+    public void setValiditySeconds(int validitySeconds) {
+      this.validitySeconds = validitySeconds;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must be positive");
+      }
+
+      if (validitySeconds < 1) {
+        throw new InvalidConfException("validitySeconds must be positive");
+      }
+    }
+
+  } // class SingleResponseCache
+
   public static class ResponseCache extends ValidatableConf {
 
     private DataSourceConf datasource;
 
     private String validity;
 
+    /**
+     * Maximal number of responses cached in memory in front of the cache database.
+     * Non-positive value disables the in-memory cache.
+     */
+    private int memoryCacheSize;
+
+    /**
+     * If present and enabled, the responses are written to the cache database by a background
+     * writer in batches.
+     */
+    private WriteBehind writeBehind;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -427,6 +865,22 @@ public class OcspServerConf extends ValidatableConf {
       this.validity = validity;
     }
 
+    public int getMemoryCacheSize() {
+      return memoryCacheSize;
+    }
+
+    public void setMemoryCacheSize(int memoryCacheSize) {
+      this.memoryCacheSize = memoryCacheSize;
+    }
+
+    public WriteBehind getWriteBehind() {
+      return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehind writeBehind) {
+      this.writeBehind = writeBehind;
+    }
+
     public Validity validity() {
       return validity == null ? new Validity(1, Unit.DAY) : Validity.getInstance(validity);
     }
@@ -434,6 +888,7 @@ public class OcspServerConf extends ValidatableConf {
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
+      validate(writeBehind);
     }
 
   } // class ResponseCache
@@ -785,6 +1240,10 @@ public class OcspServerConf extends ValidatableConf {
 
   private ResponseCache responseCache;
 
+  private Metrics metrics;
+
+  private SingleResponseCache singleResponseCache;
+
   private List<Responder> responders;
 
   private List<Signer> signers;
@@ -821,6 +1280,22 @@ public class OcspServerConf extends ValidatableConf {
     this.responseCache = responseCache;
   }
 
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public SingleResponseCache getSingleResponseCache() {
+    return singleResponseCache;
+  }
+
+  public void setSingleResponseCache(SingleResponseCache singleResponseCache) {
+    this.singleResponseCache = singleResponseCache;
+  }
+
   public List<Responder> getResponders() {
     if (responders == null) {
       responders = new LinkedList<>();
@@ -921,6 +1396,9 @@ public class OcspServerConf extends ValidatableConf {
 
     notEmpty(responseOptions, "responseOptions");
     validate(responseOptions);
+
+    validate(metrics);
+    validate(singleResponseCache);
   } // method validate
 
 }
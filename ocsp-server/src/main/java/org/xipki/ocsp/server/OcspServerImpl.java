@@ -42,6 +42,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bouncycastle.asn1.ASN1InputStream;
@@ -70,11 +72,13 @@ import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.ocsp.server.OcspMetrics.Stage;
 import org.xipki.ocsp.server.OcspServerConf.EmbedCertsMode;
 import org.xipki.ocsp.server.OcspServerConf.Source;
 import org.xipki.ocsp.server.ResponderOption.OcspMode;
 import org.xipki.ocsp.server.store.CaDbCertStatusStore;
 import org.xipki.ocsp.server.store.CrlDbCertStatusStore;
+import org.xipki.ocsp.server.store.CrlMmapCertStatusStore;
 import org.xipki.ocsp.server.store.DbCertStatusStore;
 import org.xipki.ocsp.server.store.ResponseCacher;
 import org.xipki.ocsp.server.store.ejbca.EjbcaCertStatusStore;
@@ -155,6 +159,22 @@ public class OcspServerImpl implements OcspServer {
     }
   } // class OcspRespControl
 
+  /**
+   * Certificate status retrieved in advance by a batch query.
+   */
+  private static class PrefetchedStatus {
+
+    private final OcspStore store;
+
+    private final CertStatusInfo info;
+
+    PrefetchedStatus(OcspStore store, CertStatusInfo info) {
+      this.store = store;
+      this.info = info;
+    }
+
+  } // class PrefetchedStatus
+
   public static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
 
   private static final String STORE_TYPE_XIPKI_DB = "xipki-db";
@@ -163,6 +183,8 @@ public class OcspServerImpl implements OcspServer {
 
   private static final String STORE_TYPE_CRL = "crl";
 
+  private static final String STORE_TYPE_CRL_MMAP = "crl-mmap";
+
   private static final String STORE_TYPE_EJBCA_DB = "ejbca-db";
 
   private static final byte[] DERNullBytes = new byte[]{0x05, 0x00};
@@ -192,6 +214,8 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private SingleResponseCache singleResponseCache;
+
   private Map<String, ResponderImpl> responders = new HashMap<>();
 
   private Map<String, ResponseSigner> signers = new HashMap<>();
@@ -202,6 +226,14 @@ public class OcspServerImpl implements OcspServer {
 
   private Map<String, OcspStore> stores = new HashMap<>();
 
+  private Map<String, String> storeTypes = new HashMap<>();
+
+  private OcspMetrics metrics;
+
+  private List<OcspMetricsExporter> metricsExporters = new LinkedList<>();
+
+  private ScheduledThreadPoolExecutor metricsExecutor;
+
   private List<String> servletPaths = new ArrayList<>();
 
   private Map<String, ResponderImpl> path2responderMap = new HashMap<>();
@@ -260,6 +292,15 @@ public class OcspServerImpl implements OcspServer {
     return responders.get(name);
   }
 
+  /**
+   * Returns the metrics of the request path.
+   *
+   * @return the metrics, or {@code null} if the metrics are not enabled.
+   */
+  public OcspMetrics getMetrics() {
+    return metrics;
+  }
+
   public boolean isInitialized() {
     return initialized.get();
   }
@@ -311,6 +352,9 @@ public class OcspServerImpl implements OcspServer {
 
     // reset
     responseCacher = null;
+    singleResponseCache = null;
+    closePreSigners();
+    closeMetrics();
     responders.clear();
     signers.clear();
 
@@ -325,6 +369,7 @@ public class OcspServerImpl implements OcspServer {
       }
     }
     stores.clear();
+    storeTypes.clear();
 
     servletPaths.clear();
     path2responderMap.clear();
@@ -338,7 +383,8 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Responder m : conf.getResponders()) {
       String name = m.getName();
 
-      if ("health".equalsIgnoreCase(name) || "mgmt".equalsIgnoreCase(name)) {
+      if ("health".equalsIgnoreCase(name) || "mgmt".equalsIgnoreCase(name)
+          || "metrics".equalsIgnoreCase(name)) {
         throw new InvalidConfException("responder name '" + name + "' is not permitted");
       }
 
@@ -419,7 +465,8 @@ public class OcspServerImpl implements OcspServer {
     Set<String> crlsDirs = new HashSet<>();
     for (OcspServerConf.Store m : conf.getStores()) {
       Source source = m.getSource();
-      if ("crl".equalsIgnoreCase(source.getType())) {
+      if (STORE_TYPE_CRL.equalsIgnoreCase(source.getType())
+          || STORE_TYPE_CRL_MMAP.equalsIgnoreCase(source.getType())) {
         Object obj = source.getConf().get("dir");
         if (!(obj instanceof String)) {
           continue;
@@ -463,8 +510,21 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.validity());
-      responseCacher.init();
+      responseCacher = new ResponseCacher(datasource, master, cacheType);
+      try {
+        responseCacher.init();
+      } catch (DataAccessException ex) {
+        responseCacher.close();
+        responseCacher = null;
+        throw new InvalidConfException("could not initialize the response cache: "
+            + ex.getMessage(), ex);
+      }
+    }
+
+    OcspServerConf.SingleResponseCache singleCacheConf = conf.getSingleResponseCache();
+    if (singleCacheConf != null) {
+      singleResponseCache = new SingleResponseCache(singleCacheConf.getMaxSize(),
+          singleCacheConf.getValiditySeconds());
     }
 
     //-- initializes the responders
@@ -540,6 +600,7 @@ public class OcspServerImpl implements OcspServer {
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
       stores.put(m.getName(), store);
+      storeTypes.put(m.getName(), m.getSource().getType().toLowerCase());
     }
 
     // responders
@@ -570,6 +631,13 @@ public class OcspServerImpl implements OcspServer {
           requestOptions.get(option.getRequestOptionName()),
           responseOption, signer, statusStores);
       responders.put(name, responder);
+
+      OcspServerConf.PreSigning preSigning = option.getPreSigning();
+      if (preSigning != null && preSigning.isEnabled()) {
+        ResponsePreSigner preSigner = new ResponsePreSigner(name, this, responder, preSigning);
+        responder.setPreSigner(preSigner);
+        preSigner.start();
+      }
     } // end for
 
     // servlet paths
@@ -592,11 +660,86 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    initMetrics(conf.getMetrics());
   } // method init0
 
+  private void initMetrics(OcspServerConf.Metrics conf) throws InvalidConfException {
+    if (conf == null || !conf.isEnabled()) {
+      return;
+    }
+
+    for (OcspServerConf.MetricsExporter m : conf.getExporters()) {
+      String type = m.getType();
+      OcspMetricsExporter exporter;
+      if ("log".equalsIgnoreCase(type)) {
+        exporter = new LogOcspMetricsExporter();
+      } else if (type.startsWith("java:")) {
+        String className = type.substring("java:".length()).trim();
+        try {
+          Class<?> clazz = Class.forName(className, false, getClass().getClassLoader());
+          exporter = (OcspMetricsExporter) clazz.newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException
+                | IllegalAccessException ex) {
+          throw new InvalidConfException("could not create metrics exporter " + type
+              + ":" + ex.getMessage(), ex);
+        }
+      } else {
+        throw new InvalidConfException("unknown metrics exporter type " + type);
+      }
+
+      exporter.init(m.getConf());
+      metricsExporters.add(exporter);
+    }
+
+    final OcspMetrics newMetrics = new OcspMetrics();
+    if (!metricsExporters.isEmpty()) {
+      metricsExecutor = new ScheduledThreadPoolExecutor(1);
+      metricsExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      final List<OcspMetricsExporter> exporters = metricsExporters;
+      long interval = conf.getExportIntervalSeconds();
+      metricsExecutor.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          for (OcspMetricsExporter exporter : exporters) {
+            try {
+              exporter.export(newMetrics);
+            } catch (RuntimeException ex) {
+              LogUtil.error(LOG, ex, "could not export OCSP metrics");
+            }
+          }
+        }
+      }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    this.metrics = newMetrics;
+    LOG.info("enabled OCSP metrics with {} exporters", metricsExporters.size());
+  } // method initMetrics
+
+  private void closeMetrics() {
+    metrics = null;
+
+    if (metricsExecutor != null) {
+      metricsExecutor.shutdown();
+      metricsExecutor = null;
+    }
+
+    for (OcspMetricsExporter exporter : metricsExporters) {
+      try {
+        exporter.close();
+      } catch (Exception ex) {
+        LogUtil.warn(LOG, ex, "could not close metrics exporter");
+      }
+    }
+    metricsExporters = new LinkedList<>();
+  } // method closeMetrics
+
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    closePreSigners();
+    closeMetrics();
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -610,8 +753,31 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method close
 
+  private void closePreSigners() {
+    for (ResponderImpl responder : responders.values()) {
+      ResponsePreSigner preSigner = responder.getPreSigner();
+      if (preSigner != null) {
+        preSigner.close();
+        responder.setPreSigner(null);
+      }
+    }
+  } // method closePreSigners
+
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
+    OcspMetrics m = metrics;
+    if (m == null) {
+      return answer0(responder2, request, viaGet, null);
+    }
+
+    long start = System.nanoTime();
+    OcspRespWithCacheInfo resp = answer0(responder2, request, viaGet, m);
+    m.recordResponse(resp == null ? null : resp.getResponse(), System.nanoTime() - start);
+    return resp;
+  } // method answer
+
+  private OcspRespWithCacheInfo answer0(Responder responder2, byte[] request, boolean viaGet,
+      OcspMetrics metrics) {
     ResponderImpl responder = (ResponderImpl) responder2;
     RequestOption reqOpt = responder.getRequestOption();
 
@@ -634,7 +800,12 @@ public class OcspServerImpl implements OcspServer {
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
 
     try {
+      long start = (metrics == null) ? 0 : System.nanoTime();
       Object reqOrRrrorResp = checkSignature(request, reqOpt);
+      if (metrics != null) {
+        metrics.record(reqOpt.isValidateSignature() ? Stage.checkSignature : Stage.parse,
+            System.nanoTime() - start);
+      }
       if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
         return (OcspRespWithCacheInfo) reqOrRrrorResp;
       }
@@ -734,6 +905,24 @@ public class OcspServerImpl implements OcspServer {
         concurrentSigner = signer.getFirstSigner();
       }
 
+      // the responses are pre-signed only with the first signer
+      ResponsePreSigner preSigner = responder.getPreSigner();
+      if (preSigner != null && requestsSize == 1 && nonceExtn == null
+          && concurrentSigner == signer.getFirstSigner()) {
+        start = (metrics == null) ? 0 : System.nanoTime();
+        OcspRespWithCacheInfo preSignedResp = preSigner.getResponse(requestList.get(0), viaGet);
+        if (metrics != null) {
+          metrics.record(Stage.cacheLookup, System.nanoTime() - start);
+          if (preSignedResp != null) {
+            metrics.countPreSignedHit();
+          }
+        }
+
+        if (preSignedResp != null) {
+          return preSignedResp;
+        }
+      }
+
       AlgorithmCode cacheDbSigAlgCode = null;
       BigInteger cacheDbSerialNumber = null;
       Integer cacheDbIssuerId = null;
@@ -756,8 +945,16 @@ public class OcspServerImpl implements OcspServer {
         cacheDbSerialNumber = certId.getSerialNumber();
 
         if (cacheDbIssuerId != null) {
+          start = (metrics == null) ? 0 : System.nanoTime();
           OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
               cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode);
+          if (metrics != null) {
+            metrics.record(Stage.cacheLookup, System.nanoTime() - start);
+            if (cachedResp != null) {
+              metrics.countCacheHit();
+            }
+          }
+
           if (cachedResp != null) {
             return cachedResp;
           }
@@ -784,9 +981,13 @@ public class OcspServerImpl implements OcspServer {
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
+      PrefetchedStatus[] prefetched = (requestsSize > 1)
+          ? prefetchCertStatuses(requestList, responder, reqOpt, repOpt, metrics) : null;
+
       for (int i = 0; i < requestsSize; i++) {
         OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
-            builder, responder, reqOpt, repOpt, repControl);
+            (prefetched == null) ? null : prefetched[i], builder, responder, reqOpt, repOpt,
+            repControl, singleResponseCache, metrics);
 
         if (failureOcspResp != null) {
           return failureOcspResp;
@@ -802,20 +1003,12 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(extns);
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResponse(signer, repOpt.getEmbedCertsMode());
 
       byte[] encodeOcspResponse;
       try {
-        encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
+        encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date(),
+            metrics);
       } catch (NoIdleSignerException ex) {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
       } catch (OCSPException ex) {
@@ -845,17 +1038,175 @@ public class OcspServerImpl implements OcspServer {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
     }
-  } // method ask
+  } // method answer0
+
+  static TaggedCertSequence getCertsInResponse(ResponseSigner signer,
+      EmbedCertsMode certsMode) {
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  } // method getCertsInResponse
+
+  /**
+   * Builds the unsigned response for the given CertID, used to pre-sign the responses.
+   *
+   * @param responder
+   *          Responder.
+   * @param certId
+   *          CertID of the target certificate.
+   * @return the unsigned response, or {@code null} if the response cannot be cached.
+   * @throws IOException
+   *           If error occurs while building the response.
+   */
+  ResponsePreSigner.UnsignedResponse prepareResponse(ResponderImpl responder, CertID certId)
+      throws IOException {
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    ResponderID responderId = responder.getSigner().getResponderId(repOpt.isResponderIdByName());
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+
+    // the pre-signed responses are refreshed on change, so the cache must not be used here
+    OcspRespWithCacheInfo failureOcspResp = processCertReq(certId, null, builder, responder,
+        responder.getRequestOption(), repOpt, repControl, null, null);
+    if (failureOcspResp != null || !repControl.canCacheInfo) {
+      return null;
+    }
 
-  private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
+    if (repControl.includeExtendedRevokeExtension) {
+      List<Extension> respExtensions = new LinkedList<>();
+      respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+      builder.setResponseExtensions(new Extensions(respExtensions));
+    }
+
+    return new ResponsePreSigner.UnsignedResponse(builder,
+        repControl.cacheThisUpdate, repControl.cacheNextUpdate);
+  } // method prepareResponse
+
+  /**
+   * Retrieves the status of the certificates with one batch query per issuer. CertIDs
+   * answered from the cache of SingleResponses and issuers with only one CertID are skipped.
+   * If the batch query fails, the status will be retrieved for each CertID separately.
+   */
+  private PrefetchedStatus[] prefetchCertStatuses(List<CertID> requestList,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
-      OcspRespControl repControl) throws IOException {
+      OcspMetrics metrics) {
+    final int size = requestList.size();
+
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      CertID certId = requestList.get(i);
+      RequestIssuer reqIssuer = certId.getIssuer();
+      if (!reqOpt.allows(reqIssuer.hashAlgorithm())) {
+        continue;
+      }
+
+      if (singleResponseCache != null
+          && singleResponseCache.get(responder, reqIssuer, certId.getSerialNumber()) != null) {
+        continue;
+      }
+
+      List<Integer> indexes = issuerIndexes.get(reqIssuer);
+      if (indexes == null) {
+        indexes = new ArrayList<>(size);
+        issuerIndexes.put(reqIssuer, indexes);
+      }
+      indexes.add(i);
+    }
+
+    PrefetchedStatus[] ret = new PrefetchedStatus[size];
+    Date now = new Date();
+    for (Map.Entry<RequestIssuer, List<Integer>> entry : issuerIndexes.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      if (indexes.size() < 2) {
+        continue;
+      }
+
+      RequestIssuer reqIssuer = entry.getKey();
+      OcspStore store = null;
+      for (OcspStore m : responder.getStores()) {
+        if (m.knowsIssuer(reqIssuer)) {
+          store = m;
+          break;
+        }
+      }
+
+      if (store == null) {
+        continue;
+      }
+
+      List<BigInteger> serials = new ArrayList<>(indexes.size());
+      for (Integer idx : indexes) {
+        serials.add(requestList.get(idx).getSerialNumber());
+      }
+
+      long start = (metrics == null) ? 0 : System.nanoTime();
+      List<CertStatusInfo> infos;
+      try {
+        infos = store.getCertStatuses(now, reqIssuer, serials,
+            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+            responder.getResponderOption().isInheritCaRevocation());
+      } catch (OcspStoreException ex) {
+        if (metrics != null) {
+          metrics.countStoreLookup(storeTypes.get(store.getName()), true);
+        }
+        LogUtil.warn(LOG, ex, "getCertStatuses() of CertStatusStore " + store.getName());
+        continue;
+      }
+
+      if (metrics != null) {
+        metrics.record(Stage.storeLookup, System.nanoTime() - start);
+        metrics.countStoreLookup(storeTypes.get(store.getName()), false);
+      }
+
+      for (int i = 0; i < indexes.size(); i++) {
+        ret[indexes.get(i)] = new PrefetchedStatus(store, infos.get(i));
+      }
+    }
+
+    return ret;
+  } // method prefetchCertStatuses
+
+  private OcspRespWithCacheInfo processCertReq(CertID certId, PrefetchedStatus prefetched,
+      OCSPRespBuilder builder, ResponderImpl responder, RequestOption reqOpt,
+      OcspServerConf.ResponseOption repOpt, OcspRespControl repControl,
+      SingleResponseCache cache, OcspMetrics metrics) throws IOException {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
     if (!reqOpt.allows(reqHashAlgo)) {
       LOG.warn("CertID.hashAlgorithm {} not allowed", reqHashAlgo);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
+    if (cache != null) {
+      SingleResponseCache.Entry cached =
+          cache.get(responder, certId.getIssuer(), certId.getSerialNumber());
+      if (cached != null) {
+        if (metrics != null) {
+          metrics.countSingleResponseCacheHit();
+        }
+
+        builder.addResponse(certId, cached.getCertStatus(), cached.getThisUpdate(),
+            cached.getNextUpdate(), cached.getExtensions());
+        if (responder.getResponderOption().getMode() != OcspMode.RFC2560) {
+          repControl.includeExtendedRevokeExtension = true;
+        }
+
+        repControl.cacheThisUpdate =
+            Math.max(repControl.cacheThisUpdate, cached.getThisUpdate().getTime());
+        if (cached.getNextUpdate() != null) {
+          repControl.cacheNextUpdate =
+              Math.min(repControl.cacheNextUpdate, cached.getNextUpdate().getTime());
+        }
+        return null;
+      }
+    }
+
     CertStatusInfo certStatusInfo = null;
     boolean exceptionOccurs = false;
 
@@ -868,10 +1219,19 @@ public class OcspServerImpl implements OcspServer {
         continue;
       }
 
+      long start = (metrics == null) ? 0 : System.nanoTime();
       try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
+        if (prefetched != null && prefetched.store == store) {
+          certStatusInfo = prefetched.info;
+        } else {
+          certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+          if (metrics != null) {
+            metrics.record(Stage.storeLookup, System.nanoTime() - start);
+            metrics.countStoreLookup(storeTypes.get(store.getName()), false);
+          }
+        }
         if (certStatusInfo != null) {
           CertStatus status = certStatusInfo.getCertStatus();
           if (status == CertStatus.UNKNOWN || status == CertStatus.IGNORE) {
@@ -900,6 +1260,9 @@ public class OcspServerImpl implements OcspServer {
           break;
         }
       } catch (OcspStoreException ex) {
+        if (metrics != null) {
+          metrics.countStoreLookup(storeTypes.get(store.getName()), true);
+        }
         exceptionOccurs = true;
         LogUtil.error(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName());
       }
@@ -1012,10 +1375,18 @@ public class OcspServerImpl implements OcspServer {
       LOG.debug(sb.toString());
     }
 
-    if (CollectionUtil.isEmpty(extensions)) {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, null);
-    } else {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, new Extensions(extensions));
+    Extensions singleExtensions =
+        CollectionUtil.isEmpty(extensions) ? null : new Extensions(extensions);
+    builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, singleExtensions);
+
+    // Don't cache the response with status UNKNOWN, since this may result in DDoS
+    // of storage
+    if (cache != null) {
+      CertStatus status = certStatusInfo.getCertStatus();
+      if (status == CertStatus.GOOD || status == CertStatus.REVOKED) {
+        cache.put(responder, certId.getIssuer(), serial, certStatus, thisUpdate, nextUpdate,
+            singleExtensions);
+      }
     }
 
     repControl.cacheThisUpdate = Math.max(repControl.cacheThisUpdate, thisUpdate.getTime());
@@ -1118,6 +1489,8 @@ public class OcspServerImpl implements OcspServer {
         store = new DbCertStatusStore();
       } else if (STORE_TYPE_CRL.equalsIgnoreCase(type)) {
         store = new CrlDbCertStatusStore();
+      } else if (STORE_TYPE_CRL_MMAP.equalsIgnoreCase(type)) {
+        store = new CrlMmapCertStatusStore();
       } else if (STORE_TYPE_XIPKI_CA_DB.equalsIgnoreCase(type)) {
         store = new CaDbCertStatusStore();
       } else if (STORE_TYPE_EJBCA_DB.equalsIgnoreCase(type)) {
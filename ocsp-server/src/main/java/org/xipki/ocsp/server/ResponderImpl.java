@@ -43,6 +43,8 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
+  private ResponsePreSigner preSigner;
+
   ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponseSigner signer, List<OcspStore> stores) {
     this.responderOption = Args.notNull(responderOption, "responderOption");
@@ -72,6 +74,14 @@ public class ResponderImpl implements Responder {
     return stores;
   }
 
+  ResponsePreSigner getPreSigner() {
+    return preSigner;
+  }
+
+  void setPreSigner(ResponsePreSigner preSigner) {
+    this.preSigner = preSigner;
+  }
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
@@ -0,0 +1,583 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.CrlInfo;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.ocsp.server.type.TaggedCertSequence;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.NoIdleSignerException;
+import org.xipki.util.Args;
+import org.xipki.util.CompareUtil;
+import org.xipki.util.InvalidConfException;
+import org.xipki.util.LogUtil;
+
+/**
+ * Signs the OCSP responses in advance. For each issuer in the stores of type xipki-db, crl
+ * and crl-mmap, a signed response is kept for every certificate. The response is signed
+ * again if the database entry of the certificate has been updated (e.g. the CA has published
+ * the revocation), or before its nextUpdate is reached. The responses of deleted certificates
+ * are evicted in each scan, and all responses of an issuer are discarded if the issuer has
+ * been revoked or a new CRL of the issuer has been imported.
+ *
+ * <p>A status change is served at the latest after the period maxStalenessSeconds: if the
+ * last completed scan of an issuer started before this period, its pre-signed responses are
+ * not served.
+ *
+ * <p>The responses are signed in the background in batches. Each batch is signed with one
+ * signer borrowed from the pool, and the batches are processed by several threads, so that
+ * all idle signers are used.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class ResponsePreSigner implements Closeable {
+
+  static class UnsignedResponse {
+
+    private final OCSPRespBuilder builder;
+
+    // in milliseconds
+    private final long thisUpdate;
+
+    // in milliseconds, Long.MAX_VALUE if absent
+    private final long nextUpdate;
+
+    UnsignedResponse(OCSPRespBuilder builder, long thisUpdate, long nextUpdate) {
+      this.builder = builder;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+  } // class UnsignedResponse
+
+  private static class PreSignedResponse {
+
+    private final byte[] encoded;
+
+    // in milliseconds
+    private final long thisUpdate;
+
+    // in milliseconds, Long.MAX_VALUE if absent
+    private final long nextUpdate;
+
+    // in milliseconds
+    private final long producedAt;
+
+    PreSignedResponse(byte[] encoded, long thisUpdate, long nextUpdate, long producedAt) {
+      this.encoded = encoded;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.producedAt = producedAt;
+    }
+
+  } // class PreSignedResponse
+
+  private static class IssuerState {
+
+    private final DbCertStatusStore store;
+
+    private final int issuerId;
+
+    private final CertRevocationInfo revInfo;
+
+    private final Map<Integer, CrlInfo> crlInfos;
+
+    private final RequestIssuer reqIssuer;
+
+    private final Map<BigInteger, PreSignedResponse> responses = new ConcurrentHashMap<>();
+
+    // in seconds, 0 if not scanned yet
+    private long lastScan;
+
+    // in milliseconds, start of the last completed scan, or creation time if not scanned yet
+    private volatile long validatedAt;
+
+    IssuerState(DbCertStatusStore store, int issuerId, CertRevocationInfo revInfo,
+        Map<Integer, CrlInfo> crlInfos, RequestIssuer reqIssuer) {
+      this.store = store;
+      this.issuerId = issuerId;
+      this.revInfo = revInfo;
+      this.crlInfos = crlInfos;
+      this.reqIssuer = reqIssuer;
+      this.validatedAt = System.currentTimeMillis();
+    }
+
+    boolean match(DbCertStatusStore store, int issuerId, CertRevocationInfo revInfo,
+        Map<Integer, CrlInfo> crlInfos) {
+      return this.store == store && this.issuerId == issuerId
+          && CompareUtil.equalsObject(this.revInfo, revInfo)
+          && this.crlInfos.equals(crlInfos);
+    }
+
+  } // class IssuerState
+
+  private class Scanner implements Runnable {
+
+    @Override
+    public void run() {
+      if (inProcess.getAndSet(true)) {
+        return;
+      }
+
+      try {
+        scan();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "responder " + name + ": could not pre-sign OCSP responses");
+      } finally {
+        inProcess.set(false);
+      }
+    } // method run
+
+  } // class Scanner
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePreSigner.class);
+
+  // nextUpdate of the served response must be at least in 600 seconds
+  private static final long MIN_REMAINING_MS = 600L * 1000;
+
+  private final String name;
+
+  private final OcspServerImpl server;
+
+  private final ResponderImpl responder;
+
+  private final HashAlgo hashAlgo;
+
+  private final int scanIntervalSeconds;
+
+  private final long maxStalenessMs;
+
+  private final long refreshBeforeMs;
+
+  private final long maxAgeMs;
+
+  private final int batchSize;
+
+  private final int threads;
+
+  private final int maxSize;
+
+  private final Map<RequestIssuer, IssuerState> issuers = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private final AtomicLong signedCount = new AtomicLong(0);
+
+  private ScheduledThreadPoolExecutor scanExecutor;
+
+  private ExecutorService signExecutor;
+
+  ResponsePreSigner(String name, OcspServerImpl server, ResponderImpl responder,
+      OcspServerConf.PreSigning conf) throws InvalidConfException {
+    this.name = Args.notBlank(name, "name");
+    this.server = Args.notNull(server, "server");
+    this.responder = Args.notNull(responder, "responder");
+    Args.notNull(conf, "conf");
+
+    this.hashAlgo = HashAlgo.getInstance(conf.getHashAlgo());
+    if (hashAlgo == null) {
+      throw new InvalidConfException("unknown hashAlgo " + conf.getHashAlgo());
+    }
+
+    this.scanIntervalSeconds = conf.getScanIntervalSeconds();
+    this.maxStalenessMs = conf.getMaxStalenessSeconds() * 1000L;
+    this.refreshBeforeMs = conf.getRefreshBeforeSeconds() * 1000L;
+    this.maxAgeMs = conf.getMaxAgeSeconds() * 1000L;
+    this.batchSize = conf.getBatchSize();
+    this.threads = (conf.getThreads() > 0)
+        ? conf.getThreads() : Runtime.getRuntime().availableProcessors();
+    this.maxSize = conf.getMaxSize();
+
+    boolean supported = false;
+    for (OcspStore store : responder.getStores()) {
+      if (store instanceof DbCertStatusStore) {
+        supported = true;
+      } else {
+        LOG.warn("responder {}: responses of store {} will not be pre-signed",
+            name, store.getName());
+      }
+    }
+
+    if (!supported) {
+      LOG.warn("responder {}: no store supports the pre-signing", name);
+    }
+  }
+
+  void start() {
+    signExecutor = Executors.newFixedThreadPool(threads);
+
+    scanExecutor = new ScheduledThreadPoolExecutor(1);
+    scanExecutor.setRemoveOnCancelPolicy(true);
+    scanExecutor.scheduleWithFixedDelay(new Scanner(), 0, scanIntervalSeconds, TimeUnit.SECONDS);
+  } // method start
+
+  /**
+   * Returns the pre-signed response.
+   *
+   * @param certId
+   *          CertID in the request.
+   * @param viaGet
+   *          Whether the request is sent via HTTP GET.
+   * @return the pre-signed response, or {@code null} if not available.
+   */
+  OcspRespWithCacheInfo getResponse(CertID certId, boolean viaGet) {
+    RequestIssuer reqIssuer = certId.getIssuer();
+    IssuerState state = (reqIssuer.hashAlgorithm() == hashAlgo) ? issuers.get(reqIssuer) : null;
+    PreSignedResponse resp = (state == null) ? null
+        : state.responses.get(certId.getSerialNumber());
+
+    long now = System.currentTimeMillis();
+    if (resp == null || now - state.validatedAt > maxStalenessMs || !isServable(resp, now)) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    if (!viaGet) {
+      return new OcspRespWithCacheInfo(resp.encoded, null);
+    }
+
+    ResponseCacheInfo cacheInfo = new ResponseCacheInfo(resp.thisUpdate);
+    if (resp.nextUpdate != Long.MAX_VALUE) {
+      cacheInfo.setNextUpdate(resp.nextUpdate);
+    }
+    return new OcspRespWithCacheInfo(resp.encoded, cacheInfo);
+  } // method getResponse
+
+  private boolean isServable(PreSignedResponse resp, long now) {
+    if (resp.nextUpdate != Long.MAX_VALUE) {
+      return resp.nextUpdate >= now + MIN_REMAINING_MS;
+    } else {
+      return now - resp.producedAt <= maxAgeMs;
+    }
+  }
+
+  private boolean needsRefresh(PreSignedResponse resp, long now) {
+    if (resp.nextUpdate != Long.MAX_VALUE) {
+      return resp.nextUpdate - now < refreshBeforeMs;
+    } else {
+      return now - resp.producedAt > maxAgeMs - refreshBeforeMs;
+    }
+  }
+
+  private void scan() throws OcspStoreException, InterruptedException {
+    final long start = System.currentTimeMillis();
+    final long startSignedCount = signedCount.get();
+
+    Set<RequestIssuer> currentIssuers = new HashSet<>();
+    for (OcspStore store : responder.getStores()) {
+      if (!(store instanceof DbCertStatusStore)) {
+        continue;
+      }
+
+      DbCertStatusStore dbStore = (DbCertStatusStore) store;
+      for (Map.Entry<Integer, RequestIssuer> entry
+          : dbStore.getRequestIssuers(hashAlgo).entrySet()) {
+        int issuerId = entry.getKey();
+        RequestIssuer reqIssuer = entry.getValue();
+        // the first store knowing the issuer is used to answer the requests.
+        if (!currentIssuers.add(reqIssuer)) {
+          continue;
+        }
+
+        CertRevocationInfo revInfo = dbStore.getIssuerRevocationInfo(issuerId);
+        Map<Integer, CrlInfo> crlInfos = dbStore.getIssuerCrlInfos(issuerId);
+        IssuerState state = issuers.get(reqIssuer);
+        // sign all responses again if the issuer has been changed, e.g. revoked, or a new
+        // CRL has been imported, which may also have deleted certificates.
+        if (state == null || !state.match(dbStore, issuerId, revInfo, crlInfos)) {
+          IssuerState newState =
+              new IssuerState(dbStore, issuerId, revInfo, crlInfos, reqIssuer);
+          IssuerState oldState = issuers.put(reqIssuer, newState);
+          if (oldState != null) {
+            size.addAndGet(-oldState.responses.size());
+          }
+          state = newState;
+        }
+
+        scanIssuer(state);
+      }
+    }
+
+    // remove the issuers which are no more known
+    for (RequestIssuer reqIssuer : new ArrayList<>(issuers.keySet())) {
+      if (!currentIssuers.contains(reqIssuer)) {
+        IssuerState oldState = issuers.remove(reqIssuer);
+        if (oldState != null) {
+          size.addAndGet(-oldState.responses.size());
+        }
+      }
+    }
+
+    LOG.info("responder {}: pre-signed {} OCSP responses in {} ms, {}", name,
+        signedCount.get() - startSignedCount, System.currentTimeMillis() - start, this);
+  } // method scan
+
+  private void scanIssuer(IssuerState state) throws OcspStoreException, InterruptedException {
+    final long scanStart = System.currentTimeMillis();
+    final long scanTime = scanStart / 1000;
+    // tolerate the delay between the update of an entry and the commit of the transaction
+    final long since = (state.lastScan == 0) ? 0 : state.lastScan - scanIntervalSeconds;
+    final int pageSize = batchSize * threads;
+    final int issuerId = state.issuerId;
+
+    Set<BigInteger> signedSerials = new HashSet<>();
+
+    // the updated certificates
+    long startId = 1;
+    while (true) {
+      List<BigInteger> serials = new ArrayList<>(pageSize);
+      long maxId = state.store.getUpdatedSerialNumbers(issuerId, since, startId, pageSize,
+          serials);
+
+      if (since != 0) {
+        // do not serve the outdated responses during the signing
+        for (BigInteger serial : serials) {
+          if (state.responses.remove(serial) != null) {
+            size.decrementAndGet();
+          }
+        }
+      }
+
+      signAll(state, serials);
+      signedSerials.addAll(serials);
+
+      if (serials.size() < pageSize) {
+        break;
+      }
+      startId = maxId + 1;
+    }
+
+    if (since != 0 && !state.responses.isEmpty()) {
+      evictDeleted(state, pageSize);
+    }
+
+    // the responses to be refreshed
+    long now = System.currentTimeMillis();
+    List<BigInteger> serials = new ArrayList<>(pageSize);
+    for (Map.Entry<BigInteger, PreSignedResponse> entry : state.responses.entrySet()) {
+      if (!signedSerials.contains(entry.getKey()) && needsRefresh(entry.getValue(), now)) {
+        serials.add(entry.getKey());
+        if (serials.size() >= pageSize) {
+          signAll(state, serials);
+          serials = new ArrayList<>(pageSize);
+        }
+      }
+    }
+
+    if (!serials.isEmpty()) {
+      signAll(state, serials);
+    }
+
+    state.lastScan = scanTime;
+    state.validatedAt = scanStart;
+  } // method scanIssuer
+
+  /**
+   * Evicts the responses of the certificates which have been deleted from the database, e.g.
+   * by the CRL import or by the CA.
+   */
+  private void evictDeleted(IssuerState state, int pageSize) throws OcspStoreException {
+    Set<BigInteger> existingSerials = new HashSet<>();
+    long startId = 1;
+    while (true) {
+      List<BigInteger> serials = new ArrayList<>(pageSize);
+      long maxId = state.store.getUpdatedSerialNumbers(state.issuerId, 0, startId, pageSize,
+          serials);
+      for (BigInteger serial : serials) {
+        if (state.responses.containsKey(serial)) {
+          existingSerials.add(serial);
+        }
+      }
+
+      if (serials.size() < pageSize) {
+        break;
+      }
+      startId = maxId + 1;
+    }
+
+    int evicted = 0;
+    for (BigInteger serial : new ArrayList<>(state.responses.keySet())) {
+      if (!existingSerials.contains(serial) && state.responses.remove(serial) != null) {
+        size.decrementAndGet();
+        evicted++;
+      }
+    }
+
+    if (evicted > 0) {
+      LOG.info("responder {}: evicted {} pre-signed responses of deleted certificates",
+          name, evicted);
+    }
+  } // method evictDeleted
+
+  private void signAll(final IssuerState state, List<BigInteger> serials)
+      throws InterruptedException {
+    if (serials.isEmpty()) {
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<>((serials.size() + batchSize - 1) / batchSize);
+    for (int from = 0; from < serials.size(); from += batchSize) {
+      final List<BigInteger> batch =
+          serials.subList(from, Math.min(serials.size(), from + batchSize));
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          signBatch(state, batch);
+          return null;
+        }
+      });
+    }
+
+    for (Future<Void> future : signExecutor.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (ExecutionException ex) {
+        LogUtil.error(LOG, ex.getCause(),
+            "responder " + name + ": could not pre-sign OCSP responses");
+      }
+    }
+  } // method signAll
+
+  private void signBatch(IssuerState state, List<BigInteger> serials)
+      throws IOException, OCSPException, NoIdleSignerException {
+    List<BigInteger> batchSerials = new ArrayList<>(serials.size());
+    List<UnsignedResponse> unsignedResps = new ArrayList<>(serials.size());
+    List<OCSPRespBuilder> builders = new ArrayList<>(serials.size());
+
+    for (BigInteger serial : serials) {
+      UnsignedResponse unsignedResp =
+          server.prepareResponse(responder, new CertID(state.reqIssuer, serial));
+      if (unsignedResp == null) {
+        // status unknown, or the response cannot be cached
+        if (state.responses.remove(serial) != null) {
+          size.decrementAndGet();
+        }
+        continue;
+      }
+
+      if (size.get() >= maxSize && !state.responses.containsKey(serial)) {
+        continue;
+      }
+
+      batchSerials.add(serial);
+      unsignedResps.add(unsignedResp);
+      builders.add(unsignedResp.builder);
+    }
+
+    if (builders.isEmpty()) {
+      return;
+    }
+
+    ResponseSigner signer = responder.getSigner();
+    TaggedCertSequence certsInResp = OcspServerImpl.getCertsInResponse(signer,
+        responder.getResponseOption().getEmbedCertsMode());
+
+    Date producedAt = new Date();
+    byte[][] encodedResps = OCSPRespBuilder.buildOCSPResponses(builders,
+        signer.getFirstSigner(), certsInResp, producedAt);
+
+    for (int i = 0; i < encodedResps.length; i++) {
+      UnsignedResponse unsignedResp = unsignedResps.get(i);
+      PreSignedResponse resp = new PreSignedResponse(encodedResps[i],
+          unsignedResp.thisUpdate, unsignedResp.nextUpdate, producedAt.getTime());
+      if (state.responses.put(batchSerials.get(i), resp) == null) {
+        size.incrementAndGet();
+      }
+    }
+    signedCount.addAndGet(encodedResps.length);
+  } // method signBatch
+
+  @Override
+  public void close() {
+    if (scanExecutor != null) {
+      scanExecutor.shutdownNow();
+      scanExecutor = null;
+    }
+
+    if (signExecutor != null) {
+      signExecutor.shutdownNow();
+      signExecutor = null;
+    }
+
+    issuers.clear();
+    size.set(0);
+  } // method close
+
+  public int size() {
+    return size.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getSignedCount() {
+    return signedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ResponsePreSigner[size=" + size.get() + ",hits=" + hits.get()
+        + ",misses=" + misses.get() + ",signed=" + signedCount.get() + "]";
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.type.Extensions;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * In-memory cache of the unsigned SingleResponses, keyed by (responder, CertID). In contrast
+ * to the cache of the whole OCSP responses, it is also applied to requests with more than one
+ * CertID or with nonce.
+ *
+ * <p>Only the responses with status good and revoked are cached.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class SingleResponseCache {
+
+  static final class Entry {
+
+    private final byte[] certStatus;
+
+    private final Date thisUpdate;
+
+    private final Date nextUpdate;
+
+    private final Extensions extensions;
+
+    private final long expiresAt;
+
+    Entry(byte[] certStatus, Date thisUpdate, Date nextUpdate, Extensions extensions,
+        long expiresAt) {
+      this.certStatus = certStatus;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.extensions = extensions;
+      this.expiresAt = expiresAt;
+    }
+
+    byte[] getCertStatus() {
+      return certStatus;
+    }
+
+    Date getThisUpdate() {
+      return thisUpdate;
+    }
+
+    Date getNextUpdate() {
+      return nextUpdate;
+    }
+
+    Extensions getExtensions() {
+      return extensions;
+    }
+
+  } // class Entry
+
+  private static final class CacheKey {
+
+    private final ResponderImpl responder;
+
+    private final RequestIssuer issuer;
+
+    private final BigInteger serialNumber;
+
+    private final int hashCode;
+
+    CacheKey(ResponderImpl responder, RequestIssuer issuer, BigInteger serialNumber) {
+      this.responder = responder;
+      this.issuer = issuer;
+      this.serialNumber = serialNumber;
+      this.hashCode = 31 * (31 * System.identityHashCode(responder) + issuer.hashCode())
+          + serialNumber.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      } else if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+
+      CacheKey other = (CacheKey) obj;
+      return serialNumber.equals(other.serialNumber) && issuer.equals(other.issuer)
+          && responder == other.responder;
+    }
+
+  } // class CacheKey
+
+  private static final int NUM_SEGMENTS = 16;
+
+  private final LruCache<CacheKey, Entry>[] segments;
+
+  private final long validityMs;
+
+  @SuppressWarnings("unchecked")
+  SingleResponseCache(int maxSize, int validitySeconds) {
+    Args.positive(maxSize, "maxSize");
+    this.validityMs = Args.positive(validitySeconds, "validitySeconds") * 1000L;
+
+    int numSegments = Math.min(NUM_SEGMENTS, maxSize);
+    int segmentSize = (maxSize + numSegments - 1) / numSegments;
+    this.segments = new LruCache[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      segments[i] = new LruCache<>(segmentSize);
+    }
+  }
+
+  /**
+   * Returns the cached SingleResponse.
+   *
+   * @param responder
+   *          Responder.
+   * @param issuer
+   *          Issuer of the CertID.
+   * @param serialNumber
+   *          Serial number of the CertID.
+   * @return the fresh cached entry, or {@code null} if no fresh entry is cached.
+   */
+  Entry get(ResponderImpl responder, RequestIssuer issuer, BigInteger serialNumber) {
+    CacheKey key = new CacheKey(responder, issuer, serialNumber);
+    LruCache<CacheKey, Entry> segment = segment(key);
+    Entry entry = segment.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.expiresAt <= System.currentTimeMillis()) {
+      segment.remove(key);
+      return null;
+    }
+
+    return entry;
+  } // method get
+
+  /**
+   * Caches the SingleResponse. The entry expires after the configured validity, but not
+   * later than its nextUpdate.
+   *
+   * @param responder
+   *          Responder.
+   * @param issuer
+   *          Issuer of the CertID.
+   * @param serialNumber
+   *          Serial number of the CertID.
+   * @param certStatus
+   *          Encoded CertStatus.
+   * @param thisUpdate
+   *          thisUpdate of the SingleResponse.
+   * @param nextUpdate
+   *          nextUpdate of the SingleResponse, may be {@code null}.
+   * @param extensions
+   *          singleExtensions, may be {@code null}.
+   */
+  void put(ResponderImpl responder, RequestIssuer issuer, BigInteger serialNumber,
+      byte[] certStatus, Date thisUpdate, Date nextUpdate, Extensions extensions) {
+    long now = System.currentTimeMillis();
+    long expiresAt = now + validityMs;
+    if (nextUpdate != null) {
+      expiresAt = Math.min(expiresAt, nextUpdate.getTime());
+    }
+
+    if (expiresAt <= now) {
+      return;
+    }
+
+    CacheKey key = new CacheKey(responder, issuer, serialNumber);
+    segment(key).put(key, new Entry(certStatus, thisUpdate, nextUpdate, extensions, expiresAt));
+  } // method put
+
+  void clear() {
+    for (LruCache<CacheKey, Entry> segment : segments) {
+      segment.evictAll();
+    }
+  }
+
+  private LruCache<CacheKey, Entry> segment(CacheKey key) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[(hash & 0x7FFFFFFF) % segments.length];
+  }
+
+}
@@ -0,0 +1,436 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.Args;
+
+/**
+ * Read-only, memory-mapped index of the certificate status of one issuer. The index file
+ * consists of a header followed by fixed-size records sorted by the serial number.
+ *
+ * <pre>
+ * header:  magic (4), version (4), issuerId (4), keyLen (4), count (4)
+ * record:  serial (keyLen, unsigned big-endian, left-padded with 0x00),
+ *          flags (1), reason (1), revTime (8), invalidityTime (8),
+ *          notBefore (8), notAfter (8), crlId (4)
+ * </pre>
+ *
+ * <p>All times are in seconds since January 1, 1970, 00:00:00 GMT.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class CertStatusIndex {
+
+  private static class Entry {
+
+    private final byte[] serial;
+
+    private final boolean revoked;
+
+    private final int reason;
+
+    private final long revTime;
+
+    private final long invalTime;
+
+    private final long notBefore;
+
+    private final long notAfter;
+
+    private final int crlId;
+
+    Entry(byte[] serial, boolean revoked, int reason, long revTime, long invalTime,
+        long notBefore, long notAfter, int crlId) {
+      this.serial = serial;
+      this.revoked = revoked;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalTime = invalTime;
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.crlId = crlId;
+    }
+
+  } // class Entry
+
+  private static final Comparator<Entry> SERIAL_COMPARATOR = new Comparator<Entry>() {
+
+    @Override
+    public int compare(Entry o1, Entry o2) {
+      byte[] a = o1.serial;
+      byte[] b = o2.serial;
+      if (a.length != b.length) {
+        return a.length < b.length ? -1 : 1;
+      }
+
+      for (int i = 0; i < a.length; i++) {
+        int diff = (0xFF & a[i]) - (0xFF & b[i]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return 0;
+    }
+
+  };
+
+  private static final int MAGIC = 0x58494458; // XIDX
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 20;
+
+  // flags, reason, revTime, invalTime, notBefore, notAfter, crlId
+  private static final int VALUE_SIZE = 1 + 1 + 8 + 8 + 8 + 8 + 4;
+
+  private static final int FLAG_REVOKED = 1;
+
+  /**
+   * Buffer of the serial number being searched, to avoid the allocation per lookup.
+   */
+  private static final ThreadLocal<byte[]> SERIAL_BUFFER = new ThreadLocal<byte[]>() {
+
+    @Override
+    protected byte[] initialValue() {
+      return new byte[20];
+    }
+
+  };
+
+  private static final String SQL_CERT_STATUS =
+      "SELECT SN,REV,RR,RT,RIT,NBEFORE,NAFTER,CRL_ID FROM CERT WHERE IID=?";
+
+  private final File file;
+
+  private final MappedByteBuffer buffer;
+
+  private final int issuerId;
+
+  private final int keyLen;
+
+  private final int recordSize;
+
+  private final int count;
+
+  private CertStatusIndex(File file, MappedByteBuffer buffer) throws IOException {
+    this.file = file;
+    this.buffer = buffer;
+
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("invalid index file " + file.getPath());
+    }
+
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("unsupported version " + version + " of index file " + file.getPath());
+    }
+
+    this.issuerId = buffer.getInt(8);
+    this.keyLen = buffer.getInt(12);
+    this.count = buffer.getInt(16);
+    this.recordSize = keyLen + VALUE_SIZE;
+
+    if ((long) HEADER_SIZE + (long) count * recordSize != buffer.capacity()) {
+      throw new IOException("corrupted index file " + file.getPath());
+    }
+  }
+
+  /**
+   * Maps the index file into memory.
+   *
+   * @param file
+   *          the index file.
+   * @return the index.
+   * @throws IOException
+   *           if the file cannot be read or is invalid.
+   */
+  static CertStatusIndex open(File file) throws IOException {
+    Args.notNull(file, "file");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      // the mapping remains valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new CertStatusIndex(file, buffer);
+    }
+  }
+
+  /**
+   * Writes the index file of the given issuer from the table CERT.
+   *
+   * @param datasource
+   *          Datasource of the OCSP database.
+   * @param issuerId
+   *          Issuer id.
+   * @param file
+   *          the target file. It will be replaced atomically.
+   * @throws DataAccessException
+   *           if database error occurs.
+   * @throws IOException
+   *           if the file cannot be written.
+   */
+  static void build(DataSourceWrapper datasource, int issuerId, File file)
+      throws DataAccessException, IOException {
+    Args.notNull(datasource, "datasource");
+    Args.notNull(file, "file");
+
+    List<Entry> entries = new ArrayList<>();
+    int keyLen = 1;
+
+    final String sql = SQL_CERT_STATUS;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setFetchSize(1000);
+      ps.setInt(1, issuerId);
+      rs = ps.executeQuery();
+
+      while (rs.next()) {
+        byte[] serial = toMagnitude(new BigInteger(rs.getString("SN"), 16));
+        keyLen = Math.max(keyLen, serial.length);
+
+        boolean revoked = rs.getBoolean("REV");
+        int reason = 0;
+        long revTime = 0;
+        long invalTime = 0;
+        if (revoked) {
+          reason = rs.getInt("RR");
+          revTime = rs.getLong("RT");
+          invalTime = rs.getLong("RIT");
+        }
+
+        entries.add(new Entry(serial, revoked, reason, revTime, invalTime,
+            rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getInt("CRL_ID")));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    if ((long) HEADER_SIZE + (long) entries.size() * (keyLen + VALUE_SIZE) > Integer.MAX_VALUE) {
+      throw new IOException("too many certificates for issuer " + issuerId + ": "
+          + entries.size());
+    }
+
+    Collections.sort(entries, SERIAL_COMPARATOR);
+
+    File parent = file.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    File tmpFile = new File(parent, file.getName() + ".tmp");
+
+    try (OutputStream os = Files.newOutputStream(tmpFile.toPath());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(issuerId);
+      out.writeInt(keyLen);
+      out.writeInt(entries.size());
+
+      byte[] padding = new byte[keyLen];
+      for (Entry m : entries) {
+        out.write(padding, 0, keyLen - m.serial.length);
+        out.write(m.serial);
+        out.writeByte(m.revoked ? FLAG_REVOKED : 0);
+        out.writeByte(m.reason);
+        out.writeLong(m.revTime);
+        out.writeLong(m.invalTime);
+        out.writeLong(m.notBefore);
+        out.writeLong(m.notAfter);
+        out.writeInt(m.crlId);
+      }
+    }
+
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  } // method build
+
+  File getFile() {
+    return file;
+  }
+
+  int getIssuerId() {
+    return issuerId;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * Searches the record of the given serial number.
+   *
+   * @param serialNumber
+   *          Serial number.
+   * @return the index of the record, or -1 if not found.
+   */
+  int find(BigInteger serialNumber) {
+    if (serialNumber.signum() != 1) {
+      return -1;
+    }
+
+    int bitLen = serialNumber.bitLength();
+    if (bitLen > keyLen * 8) {
+      return -1;
+    }
+
+    // serial numbers shorter than 64 bits are compared as long, others as padded key.
+    long value = serialNumber.longValue();
+    byte[] key = (bitLen < 64) ? null : toKey(serialNumber, bitLen, value);
+
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareKey(HEADER_SIZE + mid * recordSize, value, key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  } // method find
+
+  boolean isRevoked(int index) {
+    return (buffer.get(valueOffset(index)) & FLAG_REVOKED) != 0;
+  }
+
+  int getReason(int index) {
+    return 0xFF & buffer.get(valueOffset(index) + 1);
+  }
+
+  long getRevTime(int index) {
+    return buffer.getLong(valueOffset(index) + 2);
+  }
+
+  long getInvalidityTime(int index) {
+    return buffer.getLong(valueOffset(index) + 10);
+  }
+
+  long getNotBefore(int index) {
+    return buffer.getLong(valueOffset(index) + 18);
+  }
+
+  long getNotAfter(int index) {
+    return buffer.getLong(valueOffset(index) + 26);
+  }
+
+  int getCrlId(int index) {
+    return buffer.getInt(valueOffset(index) + 34);
+  }
+
+  private int valueOffset(int index) {
+    return HEADER_SIZE + index * recordSize + keyLen;
+  }
+
+  /**
+   * Compares the key of the record with the serial number.
+   *
+   * @param recordOffset
+   *          Offset of the record.
+   * @param value
+   *          Serial number, used if {@code key} is {@code null}.
+   * @param key
+   *          Serial number as key of the length {@code keyLen}, may be {@code null}.
+   * @return negative, zero or positive, if the key of the record is less than, equal to or
+   *         greater than the serial number.
+   */
+  private int compareKey(int recordOffset, long value, byte[] key) {
+    for (int i = 0; i < keyLen; i++) {
+      int a = 0xFF & buffer.get(recordOffset + i);
+      int b;
+      if (key != null) {
+        b = 0xFF & key[i];
+      } else {
+        int shift = (keyLen - 1 - i) * 8;
+        b = (shift < 64) ? 0xFF & (int) (value >>> shift) : 0;
+      }
+
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return 0;
+  } // method compareKey
+
+  /**
+   * Writes the serial number, unsigned big-endian and left-padded with 0x00, into the
+   * thread-local buffer without allocating a new array.
+   */
+  private byte[] toKey(BigInteger serialNumber, int bitLen, long lowBits) {
+    byte[] key = SERIAL_BUFFER.get();
+    if (key.length < keyLen) {
+      key = new byte[keyLen];
+      SERIAL_BUFFER.set(key);
+    }
+
+    for (int i = 0; i < keyLen; i++) {
+      // index of the byte, counted from the least significant one
+      int byteIndex = keyLen - 1 - i;
+      int bitOffset = byteIndex * 8;
+      int b = 0;
+      if (byteIndex < 8) {
+        b = 0xFF & (int) (lowBits >>> bitOffset);
+      } else if (bitOffset < bitLen) {
+        for (int j = 0; j < 8; j++) {
+          if (serialNumber.testBit(bitOffset + j)) {
+            b |= 1 << j;
+          }
+        }
+      }
+      key[i] = (byte) b;
+    }
+    return key;
+  } // method toKey
+
+  private static byte[] toMagnitude(BigInteger serialNumber) {
+    byte[] bytes = serialNumber.toByteArray();
+    if (bytes.length > 1 && bytes[0] == 0) {
+      byte[] tmp = new byte[bytes.length - 1];
+      System.arraycopy(bytes, 1, tmp, 0, tmp.length);
+      return tmp;
+    }
+    return bytes;
+  } // method toMagnitude
+
+}
@@ -68,6 +68,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   private boolean ignoreExpiredCrls;
 
+  private boolean bulkImport;
+
   private boolean crlUpdated;
 
   /**
@@ -85,6 +87,10 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
    * <li>ignoreExpiredCrls:
    *   <p>
    *   Whether expired CRLs are ignored, default to true.</li>
+   * <li>bulkImport:
+   *   <p>
+   *   Whether the revoked certificates are imported in JDBC batches, default to false.
+   *   The existing entries of the CA will be loaded into memory.</li>
    * </ul>
    * @param datasource DataSource.
    */
@@ -99,12 +105,15 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     value = getStrValue(sourceConf, "ignoreExpiredCrls", false);
     this.ignoreExpiredCrls = StringUtil.isBlank(value) ? true : Boolean.parseBoolean(value);
 
+    value = getStrValue(sourceConf, "bulkImport", false);
+    this.bulkImport = StringUtil.isBlank(value) ? false : Boolean.parseBoolean(value);
+
     super.datasource = datasource;
     updateStore(true);
     super.init(sourceConf, datasource);
   } // method init
 
-  private static String getStrValue(Map<String, ? extends Object> sourceConf,
+  static String getStrValue(Map<String, ? extends Object> sourceConf,
       String confName, boolean mandatory) {
     Object objVal = sourceConf.get(confName);
     if (objVal == null) {
@@ -123,6 +132,17 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     }
   } // method getStrValue
 
+  protected String getDir() {
+    return dir;
+  }
+
+  /**
+   * Called after new CRLs have been imported and the issuers have been reloaded.
+   * The default implementation does nothing.
+   */
+  protected void onCrlsImported() {
+  }
+
   @Override
   protected boolean isIgnoreExpiredCrls() {
     return ignoreExpiredCrls;
@@ -169,7 +189,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
           return;
         }
 
-        ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit, ignoreExpiredCrls);
+        ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit,
+            ignoreExpiredCrls, bulkImport);
 
         if (importCrl.importCrlToOcspDb()) {
           LOG.info("updated CertStore {} successfully", name);
@@ -179,6 +200,7 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
         if (!firstTime) {
           super.updateIssuerStore(true);
+          onCrlsImported();
         }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "error while executing updateStore()");
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.util.IoUtil;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
+
+/**
+ * OcspStore for CRLs. The CRLs will be imported to XiPKI OCSP database as in
+ * {@link CrlDbCertStatusStore}. After each import, the status of the certificates
+ * of each issuer is written to a sorted, memory-mapped index file, so that the status can
+ * be retrieved via binary search without accessing the database.
+ *
+ * <p>The database is still used if the hash of certificate is requested.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class CrlMmapCertStatusStore extends CrlDbCertStatusStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlMmapCertStatusStore.class);
+
+  private final Object indexLock = new Object();
+
+  private File indexDir;
+
+  private volatile Map<Integer, CertStatusIndex> indexes = Collections.emptyMap();
+
+  /**
+   * Initialize the store.
+   *
+   * @param sourceConf
+   * the store source configuration. In addition to the key-value pairs of
+   * {@link CrlDbCertStatusStore}, it contains following key-value pairs:
+   * <ul>
+   * <li>indexDir:
+   *   <p>
+   *   Directory of the index files, default to be the sub-directory 'index' of dir.</li>
+   * </ul>
+   * @param datasource DataSource.
+   */
+  @Override
+  public void init(Map<String, ? extends Object> sourceConf, DataSourceWrapper datasource)
+      throws OcspStoreException {
+    super.init(sourceConf, datasource);
+
+    String value = getStrValue(sourceConf, "indexDir", false);
+    this.indexDir = StringUtil.isBlank(value)
+        ? new File(getDir(), "index") : new File(IoUtil.expandFilepath(value));
+
+    // remove the index files of previous runs
+    File[] oldFiles = indexDir.listFiles();
+    if (oldFiles != null) {
+      for (File file : oldFiles) {
+        String fn = file.getName();
+        if (fn.startsWith("issuer-") && (fn.endsWith(".idx") || fn.endsWith(".idx.tmp"))) {
+          file.delete();
+        }
+      }
+    }
+
+    rebuildIndexes();
+  } // method init
+
+  @Override
+  protected void onCrlsImported() {
+    rebuildIndexes();
+  }
+
+  @Override
+  protected void retrieveCertStatus(IssuerEntry issuer, BigInteger serialNumber, Date time,
+      boolean includeCertHash, boolean includeRit, CertStatusRecord record)
+      throws DataAccessException {
+    CertStatusIndex index = includeCertHash ? null : indexes.get(issuer.getId());
+    if (index == null) {
+      super.retrieveCertStatus(issuer, serialNumber, time, includeCertHash, includeRit, record);
+      return;
+    }
+
+    int idx = index.find(serialNumber);
+    if (idx == -1) {
+      return;
+    }
+
+    record.unknown = false;
+    record.crlId = index.getCrlId(idx);
+    record.ignore = isIgnored(time.getTime() / 1000, index.getNotBefore(idx),
+        index.getNotAfter(idx));
+    if (record.ignore) {
+      return;
+    }
+
+    record.revoked = index.isRevoked(idx);
+    if (record.revoked) {
+      record.reason = index.getReason(idx);
+      record.revTime = index.getRevTime(idx);
+      if (includeRit) {
+        record.invalTime = index.getInvalidityTime(idx);
+      }
+    }
+  } // method retrieveCertStatus
+
+  @Override
+  protected void retrieveCertStatuses(IssuerEntry issuer, List<BigInteger> serialNumbers,
+      Date time, boolean includeCertHash, boolean includeRit,
+      Map<BigInteger, CertStatusRecord> records) throws DataAccessException {
+    CertStatusIndex index = includeCertHash ? null : indexes.get(issuer.getId());
+    if (index == null) {
+      super.retrieveCertStatuses(issuer, serialNumbers, time, includeCertHash, includeRit,
+          records);
+      return;
+    }
+
+    // the index lookup is cheap, no need to batch
+    for (BigInteger serialNumber : serialNumbers) {
+      CertStatusRecord record = new CertStatusRecord();
+      retrieveCertStatus(issuer, serialNumber, time, includeCertHash, includeRit, record);
+      if (!record.unknown) {
+        records.put(serialNumber, record);
+      }
+    }
+  } // method retrieveCertStatuses
+
+  @Override
+  public void close() {
+    indexes = Collections.emptyMap();
+    super.close();
+  }
+
+  private void rebuildIndexes() {
+    synchronized (indexLock) {
+      long start = System.currentTimeMillis();
+      Map<Integer, CertStatusIndex> newIndexes = new HashMap<>();
+      for (Integer issuerId : getIssuerStore().getIds()) {
+        // use new file name for each build, the old file may still be mapped.
+        File file = new File(indexDir, "issuer-" + issuerId + "-" + start + ".idx");
+        try {
+          CertStatusIndex.build(datasource, issuerId, file);
+          CertStatusIndex index = CertStatusIndex.open(file);
+          newIndexes.put(issuerId, index);
+          LOG.info("store {}: built index of issuer {} with {} entries", name, issuerId,
+              index.size());
+        } catch (Exception ex) {
+          LogUtil.error(LOG, ex, "store " + name + ": could not build index of issuer "
+              + issuerId + ", use database instead");
+          file.delete();
+        }
+      }
+
+      Map<Integer, CertStatusIndex> oldIndexes = indexes;
+      // atomic switch
+      indexes = Collections.unmodifiableMap(newIndexes);
+
+      for (CertStatusIndex m : oldIndexes.values()) {
+        // the content remains accessible while mapped
+        if (!m.getFile().delete()) {
+          LOG.warn("could not delete the old index file {}", m.getFile().getPath());
+        }
+      }
+
+      LOG.info("store {}: built indexes of {} issuers in {} ms", name, newIndexes.size(),
+          System.currentTimeMillis() - start);
+    }
+  } // method rebuildIndexes
+
+}
@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -83,12 +84,42 @@ public class DbCertStatusStore extends OcspStore {
 
   } // class StoreUpdateService
 
+  /**
+   * Status of a certificate as stored in the CERT table.
+   */
+  protected static class CertStatusRecord {
+
+    protected boolean unknown = true;
+
+    protected boolean ignore;
+
+    protected String b64CertHash;
+
+    protected boolean revoked;
+
+    protected int reason;
+
+    // revocation time in seconds
+    protected long revTime;
+
+    // invalidity time in seconds
+    protected long invalTime;
+
+    protected int crlId;
+
+  } // class CertStatusRecord
+
   protected DataSourceWrapper datasource;
 
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
   private static final long MS_PER_5MIN = 300L * 1000;
 
+  /**
+   * Maximal number of serial numbers in one {@code SN IN (...)} query.
+   */
+  protected static final int MAX_SERIALS_PER_QUERY = 100;
+
   private final Object lock = new Object();
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
@@ -295,195 +326,473 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException("initialization of CertStore is still in process");
     }
 
-    String sql;
-
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
       if (issuer == null) {
         return null;
       }
 
-      CrlInfo crlInfo = null;
-      if (issuer.getCrlId() != 0) {
-        crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
-        // check whether CRL is expired
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
-          }
-        }
+      if (isIssuerCrlExpired(issuer, time)) {
+        return CertStatusInfo.getCrlExpiredStatusInfo();
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
+      CertStatusRecord record = new CertStatusRecord();
+      retrieveCertStatus(issuer, serialNumber, time, includeCertHash, includeRit, record);
+      return buildCertStatusInfo(issuer, record, time, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatus0
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
+  @Override
+  protected List<CertStatusInfo> getCertStatuses0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-      int crlId = 0;
+    final int size = serialNumbers.size();
+    List<CertStatusInfo> ret = new ArrayList<>(size);
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+    try {
+      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      if (issuer == null || isIssuerCrlExpired(issuer, time)) {
+        CertStatusInfo info = (issuer == null) ? null : CertStatusInfo.getCrlExpiredStatusInfo();
+        for (int i = 0; i < size; i++) {
+          ret.add(info);
+        }
+        return ret;
+      }
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+      List<BigInteger> positiveSerials = new ArrayList<>(size);
+      Set<BigInteger> addedSerials = new HashSet<>(size * 2);
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() == 1 && addedSerials.add(serialNumber)) {
+          positiveSerials.add(serialNumber);
+        }
+      }
 
-        if (rs.next()) {
-          unknown = false;
-          crlId = rs.getInt("CRL_ID");
+      Map<BigInteger, CertStatusRecord> records = new HashMap<>();
+      if (!positiveSerials.isEmpty()) {
+        retrieveCertStatuses(issuer, positiveSerials, time, includeCertHash, includeRit, records);
+      }
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          ret.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+          continue;
+        }
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+        CertStatusRecord record = records.get(serialNumber);
+        if (record == null) {
+          record = new CertStatusRecord();
+        }
+        ret.add(buildCertStatusInfo(issuer, record, time, inheritCaRevocation));
+      }
+      return ret;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatuses0
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+  /**
+   * Whether the CRL of the issuer expires in 5 minutes. Only applied if
+   * {@link #isIgnoreExpiredCrls()} returns {@code true}.
+   */
+  private boolean isIssuerCrlExpired(IssuerEntry issuer, Date time) {
+    if (issuer.getCrlId() == 0 || !isIgnoreExpiredCrls()) {
+      return false;
+    }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+    CrlInfo crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
+    return crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN;
+  } // method isIssuerCrlExpired
+
+  private CertStatusInfo buildCertStatusInfo(IssuerEntry issuer, CertStatusRecord record,
+      Date time, boolean inheritCaRevocation) {
+    final boolean unknown = record.unknown;
+    final boolean ignore = record.ignore;
+    final String b64CertHash = record.b64CertHash;
+    final boolean revoked = record.revoked;
+    final int reason = record.reason;
+    final long revTime = record.revTime;
+    final long invalTime = record.invalTime;
+
+    // the CRL of the issuer has precedence over the CRL of the certificate
+    int crlId = (issuer.getCrlId() != 0) ? issuer.getCrlId() : record.crlId;
+    CrlInfo crlInfo = (crlId == 0) ? null : issuerStore.getCrlInfo(crlId);
+
+    CertStatusInfo certStatusInfo;
+    Date thisUpdate;
+    Date nextUpdate;
+    if (crlInfo == null) {
+      thisUpdate = new Date();
+      nextUpdate = null;
+    } else {
+      thisUpdate = crlInfo.getThisUpdate();
+      nextUpdate = crlInfo.getNextUpdate();
+
+      if (isIgnoreExpiredCrls()) {
+        // CRL will expire in 5 minutes
+        if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
+          return CertStatusInfo.getCrlExpiredStatusInfo();
+        }
       }
+    }
 
-      if (crlId == 0) {
-        crlId = issuer.getCrlId();
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      if (revoked) {
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
       }
+    }
 
-      if (crlInfo == null && crlId != 0) {
-        crlInfo = issuerStore.getCrlInfo(crlId);
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
+        } else {
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
+        }
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
 
-      Date thisUpdate;
-      Date nextUpdate;
-      if (crlInfo == null) {
-        thisUpdate = new Date();
-        nextUpdate = null;
-      } else {
-        thisUpdate = crlInfo.getThisUpdate();
-        nextUpdate = crlInfo.getNextUpdate();
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
+      return certStatusInfo;
+    }
 
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
-          }
-        }
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
       }
+    }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
       } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
-        }
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
       }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+  /**
+   * Retrieves the status of the certificate from the database.
+   *
+   * @param issuer
+   *          Issuer of the certificate.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param time
+   *          Time of the certificate status.
+   * @param includeCertHash
+   *          Whether to retrieve the hash of the certificate.
+   * @param includeRit
+   *          Whether to retrieve the revocation invalidity time.
+   * @param record
+   *          Record to be filled with the status.
+   * @throws DataAccessException
+   *           If database error occurs.
+   */
+  protected void retrieveCertStatus(IssuerEntry issuer, BigInteger serialNumber, Date time,
+      boolean includeCertHash, boolean includeRit, CertStatusRecord record)
+      throws DataAccessException {
+    String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCs : sqlCsNoRit;
+    }
+
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      ps.setInt(1, issuer.getId());
+      ps.setString(2, serialNumber.toString(16));
+      rs = ps.executeQuery();
+
+      if (rs.next()) {
+        readCertStatus(rs, time.getTime() / 1000, includeCertHash, includeRit, record);
       }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method retrieveCertStatus
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+  /**
+   * Retrieves the status of the certificates from the database, with at most
+   * {@link #MAX_SERIALS_PER_QUERY} serial numbers per query.
+   *
+   * @param issuer
+   *          Issuer of the certificates.
+   * @param serialNumbers
+   *          Distinct serial numbers of the certificates.
+   * @param time
+   *          Time of the certificate status.
+   * @param includeCertHash
+   *          Whether to retrieve the hash of the certificates.
+   * @param includeRit
+   *          Whether to retrieve the revocation invalidity time.
+   * @param records
+   *          Map to which the records of the known certificates will be added.
+   * @throws DataAccessException
+   *           If database error occurs.
+   */
+  protected void retrieveCertStatuses(IssuerEntry issuer, List<BigInteger> serialNumbers,
+      Date time, boolean includeCertHash, boolean includeRit,
+      Map<BigInteger, CertStatusRecord> records) throws DataAccessException {
+    final long timeInSec = time.getTime() / 1000;
+    final int size = serialNumbers.size();
+
+    for (int off = 0; off < size; off += MAX_SERIALS_PER_QUERY) {
+      List<BigInteger> chunk = serialNumbers.subList(off,
+          Math.min(size, off + MAX_SERIALS_PER_QUERY));
+      final int n = chunk.size();
+
+      StringBuilder sb = new StringBuilder(100 + 2 * n);
+      sb.append("SN,NBEFORE,NAFTER,REV,RR,RT,");
+      if (includeRit) {
+        sb.append("RIT,");
+      }
+      if (includeCertHash) {
+        sb.append("HASH,");
+      }
+      sb.append("CRL_ID FROM CERT WHERE IID=? AND SN IN (?");
+      for (int i = 1; i < n; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+      final String sql = "SELECT " + sb.toString();
 
-          certStatusInfo.setArchiveCutOff(date);
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(sql);
+
+      try {
+        int idx = 1;
+        ps.setInt(idx++, issuer.getId());
+        for (BigInteger serialNumber : chunk) {
+          ps.setString(idx++, serialNumber.toString(16));
         }
+        rs = ps.executeQuery();
+
+        while (rs.next()) {
+          CertStatusRecord record = new CertStatusRecord();
+          readCertStatus(rs, timeInSec, includeCertHash, includeRit, record);
+          records.put(new BigInteger(rs.getString("SN"), 16), record);
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
       }
+    }
+  } // method retrieveCertStatuses
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+  private void readCertStatus(ResultSet rs, long timeInSec, boolean includeCertHash,
+      boolean includeRit, CertStatusRecord record) throws SQLException {
+    record.unknown = false;
+    record.crlId = rs.getInt("CRL_ID");
+    record.ignore = isIgnored(timeInSec, rs.getLong("NBEFORE"), rs.getLong("NAFTER"));
+
+    if (!record.ignore) {
+      if (includeCertHash) {
+        record.b64CertHash = rs.getString("HASH");
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
-        }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      record.revoked = rs.getBoolean("REV");
+      if (record.revoked) {
+        record.reason = rs.getInt("RR");
+        record.revTime = rs.getLong("RT");
+        if (includeRit) {
+          record.invalTime = rs.getLong("RIT");
         }
       }
+    }
+  } // method readCertStatus
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
-        } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+  /**
+   * Returns the issuers of this store.
+   *
+   * @param hashAlgo
+   *          Hash algorithm of the {@link RequestIssuer}.
+   * @return the issuers, keyed by the issuer id.
+   */
+  public Map<Integer, RequestIssuer> getRequestIssuers(HashAlgo hashAlgo) {
+    Args.notNull(hashAlgo, "hashAlgo");
+    Map<Integer, RequestIssuer> ret = new HashMap<>();
+    for (Integer id : issuerStore.getIds()) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(id);
+      if (issuer != null) {
+        ret.put(id, new RequestIssuer(hashAlgo, issuer.getEncodedHash(hashAlgo)));
+      }
+    }
+    return ret;
+  } // method getRequestIssuers
+
+  /**
+   * Returns the revocation information of the issuer.
+   *
+   * @param issuerId
+   *          Issuer id.
+   * @return the revocation information, or {@code null} if the issuer is not revoked or unknown.
+   */
+  public CertRevocationInfo getIssuerRevocationInfo(int issuerId) {
+    IssuerEntry issuer = issuerStore.getIssuerForId(issuerId);
+    return (issuer == null) ? null : issuer.getRevocationInfo();
+  }
+
+  /**
+   * Returns the information of the CRLs from which the certificate status of the issuer may
+   * have been imported.
+   *
+   * @param issuerId
+   *          Issuer id.
+   * @return the CRL information, keyed by the CRL id. Empty map if the issuer is unknown or
+   *     its certificate status is not imported from CRLs.
+   */
+  public Map<Integer, CrlInfo> getIssuerCrlInfos(int issuerId) {
+    IssuerEntry issuer = issuerStore.getIssuerForId(issuerId);
+    if (issuer == null) {
+      return Collections.emptyMap();
+    }
+
+    Map<Integer, CrlInfo> ret = new HashMap<>();
+    if (issuer.getCrlId() != 0) {
+      CrlInfo crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
+      if (crlInfo != null) {
+        ret.put(issuer.getCrlId(), crlInfo);
+      }
+    } else {
+      // the CRL_ID is 0 if the issuer has more than one CRL
+      for (Integer crlId : issuerStore.getCrlIds()) {
+        ret.put(crlId, issuerStore.getCrlInfo(crlId));
+      }
+    }
+    return ret;
+  } // method getIssuerCrlInfos
+
+  /**
+   * Retrieves the serial numbers of the certificates whose entry has been updated
+   * since the given time.
+   *
+   * @param issuerId
+   *          Issuer id.
+   * @param sinceSec
+   *          Only the entries updated at or after this time (in seconds since
+   *          January 1, 1970, 00:00:00 GMT) are considered. 0 for all entries.
+   * @param startId
+   *          The minimal ID of the entries (inclusive).
+   * @param numEntries
+   *          Maximal number of entries to be returned.
+   * @param serials
+   *          List to which the serial numbers will be added.
+   * @return the maximal ID of the returned entries, or 0 if no entry is returned.
+   * @throws OcspStoreException
+   *          If database error occurs.
+   */
+  public long getUpdatedSerialNumbers(int issuerId, long sinceSec, long startId,
+      int numEntries, List<BigInteger> serials) throws OcspStoreException {
+    Args.positive(numEntries, "numEntries");
+    Args.notNull(serials, "serials");
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>? AND LUPDATE>=?");
+
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      try {
+        ps.setInt(1, issuerId);
+        ps.setLong(2, startId - 1);
+        ps.setLong(3, sinceSec);
+        rs = ps.executeQuery();
+
+        long maxId = 0;
+        while (rs.next()) {
+          maxId = Math.max(maxId, rs.getLong("ID"));
+          serials.add(new BigInteger(rs.getString("SN"), 16));
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+        return maxId;
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
       }
-      return certStatusInfo;
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
+  } // method getUpdatedSerialNumbers
 
-  } // method getCertStatus0
+  /**
+   * Whether the certificate is ignored because it is not yet valid or expired.
+   *
+   * @param timeInSec
+   *          Time of the certificate status, in seconds since January 1, 1970, 00:00:00 GMT.
+   * @param notBeforeInSec
+   *          notBefore of the certificate in seconds, 0 if unknown.
+   * @param notAfterInSec
+   *          notAfter of the certificate in seconds, 0 if unknown.
+   * @return whether the certificate is ignored.
+   */
+  protected boolean isIgnored(long timeInSec, long notBeforeInSec, long notAfterInSec) {
+    if (ignoreNotYetValidCert) {
+      if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+        return true;
+      }
+    }
+
+    if (ignoreExpiredCert) {
+      if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+        return true;
+      }
+    }
+
+    return false;
+  } // method isIgnored
 
   /**
    * Borrow Prepared Statement.
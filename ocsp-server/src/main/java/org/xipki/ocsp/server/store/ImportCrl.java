@@ -34,11 +34,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -115,6 +124,15 @@ class ImportCrl {
       }
     }
 
+    void setRevocation(int crlId, int revocationReason, long revocationTime,
+        long invalidityTime) {
+      this.crlId = crlId;
+      this.revoked = true;
+      this.revocationReason = revocationReason;
+      this.revocationTime = revocationTime;
+      this.invalidityTime = invalidityTime;
+    }
+
   } // class CertInfo
 
   private static class CrlDirInfo {
@@ -193,8 +211,81 @@ class ImportCrl {
 
   } // class ImportCrlException
 
+  /**
+   * Parses the revoked certificates from the CRL and puts them in chunks into the queue.
+   * The end is marked by {@link ImportCrl#END_OF_REVOKED_CERTS}.
+   */
+  private static class RevokedCertsProducer implements Runnable {
+
+    private final CrlStreamParser crl;
+
+    private final X500Name caSubject;
+
+    private final BlockingQueue<List<RevokedCert>> queue;
+
+    private final AtomicBoolean stopMe = new AtomicBoolean(false);
+
+    private volatile Exception exception;
+
+    RevokedCertsProducer(CrlStreamParser crl, X500Name caSubject,
+        BlockingQueue<List<RevokedCert>> queue) {
+      this.crl = crl;
+      this.caSubject = caSubject;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
+        List<RevokedCert> chunk = new ArrayList<>(REVOKED_CERTS_CHUNK_SIZE);
+        while (revokedCertList.hasNext() && !stopMe.get()) {
+          RevokedCert revCert = revokedCertList.next();
+          X500Name issuer = revCert.getCertificateIssuer();
+          if (issuer != null && !issuer.equals(caSubject)) {
+            throw new ImportCrlException(
+                "invalid CRLEntry for certificate number " + revCert.getSerialNumber());
+          }
+
+          chunk.add(revCert);
+          if (chunk.size() >= REVOKED_CERTS_CHUNK_SIZE) {
+            put(chunk);
+            chunk = new ArrayList<>(REVOKED_CERTS_CHUNK_SIZE);
+          }
+        }
+
+        if (!chunk.isEmpty()) {
+          put(chunk);
+        }
+      } catch (Exception ex) {
+        exception = ex;
+      } finally {
+        try {
+          put(END_OF_REVOKED_CERTS);
+        } catch (InterruptedException ex) {
+          LOG.warn("interrupted while putting END_OF_REVOKED_CERTS");
+        }
+      }
+    } // method run
+
+    private void put(List<RevokedCert> chunk) throws InterruptedException {
+      while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+        if (stopMe.get()) {
+          // consumer has stopped
+          return;
+        }
+      }
+    }
+
+  } // class RevokedCertsProducer
+
   private static final Logger LOG = LoggerFactory.getLogger(ImportCrl.class);
 
+  private static final List<RevokedCert> END_OF_REVOKED_CERTS = Collections.emptyList();
+
+  private static final int REVOKED_CERTS_CHUNK_SIZE = 1000;
+
+  private static final int REVOKED_CERTS_QUEUE_SIZE = 16;
+
   private static final String KEY_CA_REVOCATION_TIME = "ca.revocation.time";
 
   private static final String KEY_CA_INVALIDITY_TIME = "ca.invalidity.time";
@@ -237,6 +328,8 @@ class ImportCrl {
 
   private final boolean ignoreExpiredCrls;
 
+  private final boolean bulkImport;
+
   private PreparedStatement psDeleteCert;
 
   private PreparedStatement psInsertCert;
@@ -252,9 +345,10 @@ class ImportCrl {
   private PreparedStatement psUpdateCertLastupdate;
 
   public ImportCrl(DataSourceWrapper datasource, String basedir, int sqlBatchCommit,
-      boolean ignoreExpiredCrls) throws DataAccessException {
+      boolean ignoreExpiredCrls, boolean bulkImport) throws DataAccessException {
     this.sqlBatchCommit = Args.min(sqlBatchCommit, "sqlBatchCommit", 1);
     this.ignoreExpiredCrls = ignoreExpiredCrls;
+    this.bulkImport = bulkImport;
     this.datasource = Args.notNull(datasource, "datasource");
     this.basedir = Args.notNull(basedir, "basedir");
     this.certhashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
@@ -784,104 +878,11 @@ class ImportCrl {
     int caId = caCert.databaseId.intValue();
     AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
 
-    boolean isDeltaCrl = crl.isDeltaCrl();
-
     // import the revoked information
-    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
-      int num = 0;
-      while (revokedCertList.hasNext()) {
-        num++;
-
-        // If the system time is adjusted to a previous time point during the
-        // import process, System.currentTime...() may be before startTime.
-        // Since all entries in the database whose Last-Update is before
-        // startTime will be deleted, we must ensure that the Last-Update is
-        // not before startTime.
-        long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
-
-        RevokedCert revCert = revokedCertList.next();
-        BigInteger serial = revCert.getSerialNumber();
-        long rt = revCert.getRevocationDate();
-        long rit = revCert.getInvalidityDate();
-        int reason = revCert.getReason();
-        X500Name issuer = revCert.getCertificateIssuer();
-        if (issuer != null && !issuer.equals(caCert.subject)) {
-          throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-        }
-
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
-            if (isDeltaCrl) {
-              // delete the entry
-              sql = SQL_DELETE_CERT;
-              psDeleteCert.setInt(1, caId);
-              psDeleteCert.setString(2, serial.toString(16));
-              psDeleteCert.executeUpdate();
-            } else {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-            continue;
-          }
-
-          CertInfo existingCertInfo = getCertInfo(caId, serial);
-          PreparedStatement ps;
-
-          if (existingCertInfo == null) {
-            sql = SQL_INSERT_CERT_REV;
-            long id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            int offset = 1;
-
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-            ps.setInt(offset++, 1);
-            ps.setInt(offset++, reason);
-            ps.setLong(offset++, rt);
-            if (rit != 0) {
-              ps.setLong(offset++, rit);
-            } else {
-              ps.setNull(offset++, Types.BIGINT);
-            }
-            ps.setLong(offset++, updateTimeSec);
-            ps.setInt(offset++, crlInfoId);
-          } else {
-            if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
-              sql = SQL_UPDATE_CERT_REV;
-              ps = psUpdateCertRev;
-              int offset = 1;
-
-              ps.setInt(offset++, 1);
-              ps.setInt(offset++, reason);
-              ps.setLong(offset++, rt);
-              if (rit != 0) {
-                ps.setLong(offset++, rit);
-              } else {
-                ps.setNull(offset++, Types.BIGINT);
-              }
-              ps.setLong(offset++, updateTimeSec);
-              ps.setInt(offset++, crlInfoId);
-              ps.setLong(offset++, existingCertInfo.id);
-            } else {
-              sql = SQL_UPDATE_CERT_LUPDATE;
-              ps = psUpdateCertLastupdate;
-              ps.setLong(1, updateTimeSec);
-              ps.setLong(2, existingCertInfo.id);
-            }
-          }
-
-          ps.executeUpdate();
-
-          if (num % sqlBatchCommit == 0) {
-            commit(conn);
-          }
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
-      }
-
-      LOG.info("imported {} revoked certificates", num);
+    if (bulkImport) {
+      importRevokedCertsInBatch(conn, crlInfoId, caCert, crl, startTimeSec, maxId);
+    } else {
+      importRevokedCerts(conn, crlInfoId, caCert, crl, startTimeSec, maxId);
     }
 
     commit(conn);
@@ -1017,6 +1018,340 @@ class ImportCrl {
     }
   } // method importCrlRevokedCertificates
 
+  private void importRevokedCerts(Connection conn, int crlInfoId, CertWrapper caCert,
+      CrlStreamParser crl, long startTimeSec, AtomicLong maxId)
+          throws DataAccessException, ImportCrlException, IOException {
+    int caId = caCert.databaseId.intValue();
+    boolean isDeltaCrl = crl.isDeltaCrl();
+
+    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
+      int num = 0;
+      while (revokedCertList.hasNext()) {
+        num++;
+
+        // If the system time is adjusted to a previous time point during the
+        // import process, System.currentTime...() may be before startTime.
+        // Since all entries in the database whose Last-Update is before
+        // startTime will be deleted, we must ensure that the Last-Update is
+        // not before startTime.
+        long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
+
+        RevokedCert revCert = revokedCertList.next();
+        BigInteger serial = revCert.getSerialNumber();
+        long rt = revCert.getRevocationDate();
+        long rit = revCert.getInvalidityDate();
+        int reason = revCert.getReason();
+        X500Name issuer = revCert.getCertificateIssuer();
+        if (issuer != null && !issuer.equals(caCert.subject)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
+        }
+
+        String sql = null;
+        try {
+          if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
+            if (isDeltaCrl) {
+              // delete the entry
+              sql = SQL_DELETE_CERT;
+              psDeleteCert.setInt(1, caId);
+              psDeleteCert.setString(2, serial.toString(16));
+              psDeleteCert.executeUpdate();
+            } else {
+              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+            }
+            continue;
+          }
+
+          CertInfo existingCertInfo = getCertInfo(caId, serial);
+          PreparedStatement ps;
+
+          if (existingCertInfo == null) {
+            sql = SQL_INSERT_CERT_REV;
+            long id = maxId.incrementAndGet();
+            ps = psInsertCertRev;
+            int offset = 1;
+
+            ps.setLong(offset++, id);
+            ps.setInt(offset++, caId);
+            ps.setString(offset++, serial.toString(16));
+            ps.setInt(offset++, 1);
+            ps.setInt(offset++, reason);
+            ps.setLong(offset++, rt);
+            if (rit != 0) {
+              ps.setLong(offset++, rit);
+            } else {
+              ps.setNull(offset++, Types.BIGINT);
+            }
+            ps.setLong(offset++, updateTimeSec);
+            ps.setInt(offset++, crlInfoId);
+          } else {
+            if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
+              sql = SQL_UPDATE_CERT_REV;
+              ps = psUpdateCertRev;
+              int offset = 1;
+
+              ps.setInt(offset++, 1);
+              ps.setInt(offset++, reason);
+              ps.setLong(offset++, rt);
+              if (rit != 0) {
+                ps.setLong(offset++, rit);
+              } else {
+                ps.setNull(offset++, Types.BIGINT);
+              }
+              ps.setLong(offset++, updateTimeSec);
+              ps.setInt(offset++, crlInfoId);
+              ps.setLong(offset++, existingCertInfo.id);
+            } else {
+              sql = SQL_UPDATE_CERT_LUPDATE;
+              ps = psUpdateCertLastupdate;
+              ps.setLong(1, updateTimeSec);
+              ps.setLong(2, existingCertInfo.id);
+            }
+          }
+
+          ps.executeUpdate();
+
+          if (num % sqlBatchCommit == 0) {
+            commit(conn);
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        }
+      }
+
+      LOG.info("imported {} revoked certificates", num);
+    }
+  } // method importRevokedCerts
+
+  /**
+   * Imports the revoked certificates in JDBC batches. The existing entries of the CA are
+   * loaded in advance, and the CRL is parsed in a separate thread while the entries are
+   * written to the database.
+   *
+   * @param conn The database connection.
+   * @param crlInfoId CRL id.
+   * @param caCert CA certificate.
+   * @param crl The CRL.
+   * @param startTimeSec Start time of the import process, in seconds.
+   * @param maxId The maximal ID in the table CERT.
+   * @throws DataAccessException
+   *         If database exception occurs.
+   * @throws ImportCrlException
+   *         If other exception occurs.
+   */
+  private void importRevokedCertsInBatch(Connection conn, int crlInfoId, CertWrapper caCert,
+      CrlStreamParser crl, long startTimeSec, AtomicLong maxId)
+          throws DataAccessException, ImportCrlException {
+    int caId = caCert.databaseId.intValue();
+    boolean isDeltaCrl = crl.isDeltaCrl();
+
+    long start = System.currentTimeMillis();
+    Map<String, CertInfo> existingCerts = loadCertInfos(conn, caId);
+    LOG.info("loaded {} existing certificates of issuer {} in {} ms",
+        existingCerts.size(), caId, System.currentTimeMillis() - start);
+
+    BlockingQueue<List<RevokedCert>> queue = new ArrayBlockingQueue<>(REVOKED_CERTS_QUEUE_SIZE);
+    RevokedCertsProducer producer = new RevokedCertsProducer(crl, caCert.subject, queue);
+    Thread producerThread = new Thread(producer, "import-crl-parser");
+    producerThread.setDaemon(true);
+    producerThread.start();
+
+    int num = 0;
+    int numInserts = 0;
+    int numUpdates = 0;
+    int numLastupdates = 0;
+
+    String sql = null;
+    try {
+      while (true) {
+        List<RevokedCert> revokedCerts;
+        try {
+          revokedCerts = queue.take();
+        } catch (InterruptedException ex) {
+          throw new ImportCrlException("interrupted while waiting for revoked certificates", ex);
+        }
+
+        if (revokedCerts == END_OF_REVOKED_CERTS) {
+          break;
+        }
+
+        for (RevokedCert revCert : revokedCerts) {
+          num++;
+
+          // See importRevokedCerts() for the reason.
+          long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
+
+          String serial = revCert.getSerialNumber().toString(16);
+          long rt = revCert.getRevocationDate();
+          long rit = revCert.getInvalidityDate();
+          int reason = revCert.getReason();
+
+          if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
+            if (isDeltaCrl) {
+              // execute the pending statements first to keep the order
+              executeBatch(psInsertCertRev, SQL_INSERT_CERT_REV, numInserts);
+              executeBatch(psUpdateCertRev, SQL_UPDATE_CERT_REV, numUpdates);
+              executeBatch(psUpdateCertLastupdate, SQL_UPDATE_CERT_LUPDATE, numLastupdates);
+              numInserts = 0;
+              numUpdates = 0;
+              numLastupdates = 0;
+
+              // delete the entry
+              sql = SQL_DELETE_CERT;
+              psDeleteCert.setInt(1, caId);
+              psDeleteCert.setString(2, serial);
+              psDeleteCert.executeUpdate();
+              existingCerts.remove(serial);
+            } else {
+              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+            }
+            continue;
+          }
+
+          CertInfo existingCertInfo = existingCerts.get(serial);
+          if (existingCertInfo == null) {
+            sql = SQL_INSERT_CERT_REV;
+            CertInfo certInfo = new CertInfo();
+            certInfo.id = maxId.incrementAndGet();
+
+            PreparedStatement ps = psInsertCertRev;
+            int offset = 1;
+            ps.setLong(offset++, certInfo.id);
+            ps.setInt(offset++, caId);
+            ps.setString(offset++, serial);
+            ps.setInt(offset++, 1);
+            ps.setInt(offset++, reason);
+            ps.setLong(offset++, rt);
+            if (rit != 0) {
+              ps.setLong(offset++, rit);
+            } else {
+              ps.setNull(offset++, Types.BIGINT);
+            }
+            ps.setLong(offset++, updateTimeSec);
+            ps.setInt(offset++, crlInfoId);
+            ps.addBatch();
+            numInserts++;
+
+            // the same serial number may appear more than once in the CRL
+            certInfo.setRevocation(crlInfoId, reason, rt, rit);
+            existingCerts.put(serial, certInfo);
+          } else if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
+            sql = SQL_UPDATE_CERT_REV;
+            PreparedStatement ps = psUpdateCertRev;
+            int offset = 1;
+            ps.setInt(offset++, 1);
+            ps.setInt(offset++, reason);
+            ps.setLong(offset++, rt);
+            if (rit != 0) {
+              ps.setLong(offset++, rit);
+            } else {
+              ps.setNull(offset++, Types.BIGINT);
+            }
+            ps.setLong(offset++, updateTimeSec);
+            ps.setInt(offset++, crlInfoId);
+            ps.setLong(offset++, existingCertInfo.id);
+            ps.addBatch();
+            numUpdates++;
+
+            existingCertInfo.setRevocation(crlInfoId, reason, rt, rit);
+          } else {
+            sql = SQL_UPDATE_CERT_LUPDATE;
+            psUpdateCertLastupdate.setLong(1, updateTimeSec);
+            psUpdateCertLastupdate.setLong(2, existingCertInfo.id);
+            psUpdateCertLastupdate.addBatch();
+            numLastupdates++;
+          }
+
+          if (numInserts + numUpdates + numLastupdates >= sqlBatchCommit) {
+            executeBatch(psInsertCertRev, SQL_INSERT_CERT_REV, numInserts);
+            executeBatch(psUpdateCertRev, SQL_UPDATE_CERT_REV, numUpdates);
+            executeBatch(psUpdateCertLastupdate, SQL_UPDATE_CERT_LUPDATE, numLastupdates);
+            numInserts = 0;
+            numUpdates = 0;
+            numLastupdates = 0;
+            commit(conn);
+          }
+        }
+      }
+
+      executeBatch(psInsertCertRev, SQL_INSERT_CERT_REV, numInserts);
+      executeBatch(psUpdateCertRev, SQL_UPDATE_CERT_REV, numUpdates);
+      executeBatch(psUpdateCertLastupdate, SQL_UPDATE_CERT_LUPDATE, numLastupdates);
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      producer.stopMe.set(true);
+      try {
+        producerThread.join();
+      } catch (InterruptedException ex) {
+        LOG.warn("interrupted while waiting for the CRL parser");
+      }
+    }
+
+    if (producer.exception != null) {
+      throw new ImportCrlException("error parsing the revoked certificates: "
+          + producer.exception.getMessage(), producer.exception);
+    }
+
+    LOG.info("imported {} revoked certificates in {} ms", num,
+        System.currentTimeMillis() - start);
+  } // method importRevokedCertsInBatch
+
+  private Map<String, CertInfo> loadCertInfos(Connection conn, int caId)
+      throws DataAccessException {
+    final int numEntries = 50000;
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND ID>?");
+
+    Map<String, CertInfo> certInfos = new HashMap<>();
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+    ResultSet rs = null;
+
+    try {
+      ps.setFetchSize(1000);
+      long startId = 0;
+      int num;
+      do {
+        num = 0;
+        ps.setInt(1, caId);
+        ps.setLong(2, startId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          num++;
+          CertInfo ci = new CertInfo();
+          ci.id = rs.getLong("ID");
+          ci.crlId = rs.getInt("CRL_ID");
+          ci.invalidityTime = rs.getLong("RIT");
+          ci.revocationReason = rs.getInt("RR");
+          ci.revocationTime = rs.getLong("RT");
+          ci.revoked = rs.getBoolean("REV");
+          certInfos.put(rs.getString("SN"), ci);
+          startId = ci.id;
+        }
+        rs.close();
+        rs = null;
+      } while (num == numEntries);
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(ps, rs);
+    }
+
+    return certInfos;
+  } // method loadCertInfos
+
+  private void executeBatch(PreparedStatement ps, String sql, int batchSize)
+      throws DataAccessException {
+    if (batchSize == 0) {
+      return;
+    }
+
+    try {
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    }
+  } // method executeBatch
+
   private static Certificate parseCert(File certFile) throws ImportCrlException {
     try {
       return X509Util.parseBcCert(certFile);
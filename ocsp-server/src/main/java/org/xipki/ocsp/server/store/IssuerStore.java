@@ -26,48 +26,129 @@ import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.CompareUtil;
 
 /**
  * Issuer store.
  *
+ * <p>The issuers are indexed by the id and by the (hash algorithm, issuer name hash,
+ * issuer key hash), so that the lookups are O(1). Modifications replace the whole index
+ * (copy-on-write), hence the lookups are lock-free.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 class IssuerStore {
 
-  private List<IssuerEntry> issuers = new ArrayList<>();
+  /**
+   * Key of the hash index. It references the bytes of the request without copying them.
+   */
+  private static final class HashKey {
 
-  private Set<Integer> ids = Collections.emptySet();
+    private final HashAlgo hashAlgo;
 
-  private Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+    private final byte[] data;
 
-  public IssuerStore() {
-  }
+    private final int from;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(HashAlgo hashAlgo, byte[] data, int from, int length) {
+      this.hashAlgo = hashAlgo;
+      this.data = data;
+      this.from = from;
+      this.length = length;
+
+      int hash = hashAlgo.hashCode();
+      for (int i = from; i < from + length; i++) {
+        hash = 31 * hash + data[i];
+      }
+      this.hashCode = hash;
+    }
 
-  public void setIssuers(List<IssuerEntry> issuers) {
-    Set<Integer> newIds = new HashSet<>();
-    for (IssuerEntry issuer : issuers) {
-      int id = issuer.getId();
-      if (newIds.contains(id)) {
-        throw new IllegalArgumentException(
-            "issuer with the same id " + id + " duplicated");
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
       }
-      newIds.add(id);
+
+      HashKey other = (HashKey) obj;
+      return hashAlgo == other.hashAlgo && length == other.length
+          && CompareUtil.areEqual(data, from, other.data, other.from, length);
     }
 
-    // to accelerate the switch
-    List<IssuerEntry> copy = new ArrayList<IssuerEntry>(issuers);
-    this.ids = Collections.unmodifiableSet(newIds);
-    this.issuers = copy;
-  } // method setIssuers
+  } // class HashKey
+
+  /**
+   * Immutable snapshot of the issuers.
+   */
+  private static final class Index {
+
+    private final List<IssuerEntry> issuers;
+
+    private final Set<Integer> ids;
+
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final Map<HashKey, IssuerEntry> hashMap;
+
+    Index(List<IssuerEntry> issuers) {
+      Map<Integer, IssuerEntry> newIdMap = new HashMap<>();
+      Map<HashKey, IssuerEntry> newHashMap = new HashMap<>();
+
+      for (IssuerEntry issuer : issuers) {
+        int id = issuer.getId();
+        if (newIdMap.containsKey(id)) {
+          throw new IllegalArgumentException("issuer with the same id " + id + " duplicated");
+        }
+        newIdMap.put(id, issuer);
+
+        for (HashAlgo hashAlgo : HashAlgo.values()) {
+          byte[] hash = issuer.getEncodedHash(hashAlgo);
+          // the first issuer wins, as in the linear search before
+          HashKey key = new HashKey(hashAlgo, hash, 0, hash.length);
+          if (!newHashMap.containsKey(key)) {
+            newHashMap.put(key, issuer);
+          }
+        }
+      }
+
+      this.issuers = Collections.unmodifiableList(new ArrayList<>(issuers));
+      this.ids = Collections.unmodifiableSet(new HashSet<>(newIdMap.keySet()));
+      this.idMap = newIdMap;
+      this.hashMap = newHashMap;
+    } // constructor
+
+  } // class Index
+
+  private volatile Index index = new Index(Collections.emptyList());
+
+  private volatile Map<Integer, CrlInfo> crlInfos = new HashMap<>();
+
+  public IssuerStore() {
+  }
+
+  public synchronized void setIssuers(List<IssuerEntry> issuers) {
+    this.index = new Index(issuers);
+  }
 
   public int size() {
-    return ids.size();
+    return index.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return index.ids;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -76,31 +157,24 @@ class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.idMap.get(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : issuers) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
     }
 
-    return null;
+    int from = reqIssuer.getNameHashFrom();
+    int length = reqIssuer.getFrom() + reqIssuer.getLength() - from;
+    return index.hashMap.get(new HashKey(hashAlgo, reqIssuer.getData(), from, length));
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.issuers.add(issuer);
-
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> newIssuers = new ArrayList<>(index.issuers);
+    newIssuers.add(issuer);
+    this.index = new Index(newIssuers);
   }
 
   public void setCrlInfos(Map<Integer, CrlInfo> crlInfos) {
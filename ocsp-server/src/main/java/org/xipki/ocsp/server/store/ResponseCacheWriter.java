@@ -0,0 +1,365 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.server.OcspServerConf.WriteBehind;
+import org.xipki.ocsp.server.OcspServerConf.WriteBehind.OverflowPolicy;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Writes the OCSP responses to the cache database asynchronously. The responses are
+ * put in a bounded queue, and flushed by a background thread in JDBC batches.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class ResponseCacheWriter implements Closeable {
+
+  static final class PendingResponse {
+
+    private final long id;
+
+    private final int issuerId;
+
+    private final String ident;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    private final byte[] response;
+
+    PendingResponse(long id, int issuerId, String ident, long thisUpdate, long nextUpdate,
+        byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  private class Flusher implements Runnable {
+
+    @Override
+    public void run() {
+      List<PendingResponse> batch = new ArrayList<>(batchSize);
+      while (running.get() || !queue.isEmpty()) {
+        try {
+          PendingResponse first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          flush(batch);
+        } catch (InterruptedException ex) {
+          if (running.get()) {
+            LOG.warn("interrupted while waiting for OCSP responses");
+          }
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "error while writing OCSP responses to cache database");
+        } finally {
+          batch.clear();
+        }
+      }
+    } // method run
+
+  } // class Flusher
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseCacheWriter.class);
+
+  private static final String[] OCSP_COLUMNS =
+      {"ID", "IID", "IDENT", "THIS_UPDATE", "NEXT_UPDATE", "RESP"};
+
+  private final DataSourceWrapper datasource;
+
+  private final String sqlUpsert;
+
+  private final BlockingQueue<PendingResponse> queue;
+
+  private final int batchSize;
+
+  private final int flushIntervalMs;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final int maxBlockMs;
+
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  private final AtomicLong enqueuedCount = new AtomicLong();
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private final AtomicLong writtenCount = new AtomicLong();
+
+  private final AtomicLong failedCount = new AtomicLong();
+
+  private final AtomicLong flushCount = new AtomicLong();
+
+  private final AtomicLong flushTimeMs = new AtomicLong();
+
+  private final AtomicLong maxFlushTimeMs = new AtomicLong();
+
+  private Thread flusherThread;
+
+  private boolean binaryResponse;
+
+  ResponseCacheWriter(DataSourceWrapper datasource, WriteBehind conf) {
+    this.datasource = Args.notNull(datasource, "datasource");
+    Args.notNull(conf, "conf");
+    this.queue = new ArrayBlockingQueue<>(Args.positive(conf.getQueueSize(), "queueSize"));
+    this.batchSize = Args.positive(conf.getBatchSize(), "batchSize");
+    this.flushIntervalMs = Args.positive(conf.getFlushIntervalMs(), "flushIntervalMs");
+    this.overflowPolicy = conf.getOverflowPolicy() == null
+        ? OverflowPolicy.DROP : OverflowPolicy.forName(conf.getOverflowPolicy());
+    this.maxBlockMs = Args.notNegative(conf.getMaxBlockMs(), "maxBlockMs");
+    this.sqlUpsert = datasource.buildUpsertSql("OCSP", "ID", OCSP_COLUMNS);
+  }
+
+  /**
+   * Sets whether the column OCSP.RESP is a binary column. Must be called before
+   * {@link #start()}.
+   * @param binaryResponse
+   *          true for binary column, false for Base64 text column.
+   */
+  void setBinaryResponse(boolean binaryResponse) {
+    this.binaryResponse = binaryResponse;
+  }
+
+  void start() {
+    if (running.getAndSet(true)) {
+      return;
+    }
+
+    flusherThread = new Thread(new Flusher(), "ocsp-response-cache-writer");
+    flusherThread.setDaemon(true);
+    flusherThread.start();
+  }
+
+  /**
+   * Puts the response in the queue.
+   * @param response
+   *          the response to be written.
+   * @return whether the response has been accepted.
+   */
+  boolean enqueue(PendingResponse response) {
+    if (!running.get()) {
+      droppedCount.incrementAndGet();
+      return false;
+    }
+
+    boolean accepted = queue.offer(response);
+    if (!accepted) {
+      switch (overflowPolicy) {
+        case BLOCK:
+          try {
+            accepted = queue.offer(response, maxBlockMs, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          break;
+        case DROP_OLDEST:
+          while (!accepted) {
+            if (queue.poll() != null) {
+              droppedCount.incrementAndGet();
+            }
+            accepted = queue.offer(response);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (accepted) {
+      enqueuedCount.incrementAndGet();
+    } else {
+      droppedCount.incrementAndGet();
+      LOG.debug("dropped OCSP response iid={}, ident={}: queue is full",
+          response.issuerId, response.ident);
+    }
+    return accepted;
+  } // method enqueue
+
+  private void flush(List<PendingResponse> batch) {
+    // only the last response with the same ID needs to be written
+    Map<Long, PendingResponse> responses = new LinkedHashMap<>();
+    for (PendingResponse m : batch) {
+      responses.put(m.id, m);
+    }
+
+    final long start = System.currentTimeMillis();
+    final String sql = sqlUpsert;
+    Connection conn = null;
+    PreparedStatement ps = null;
+    boolean autoCommit = true;
+    try {
+      conn = datasource.getConnection();
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      ps = datasource.prepareStatement(conn, sql);
+
+      for (PendingResponse m : responses.values()) {
+        int idx = 1;
+        ps.setLong(idx++, m.id);
+        ps.setInt(idx++, m.issuerId);
+        ps.setString(idx++, m.ident);
+        ps.setLong(idx++, m.thisUpdate);
+        ps.setLong(idx++, m.nextUpdate);
+        datasource.setBinary(ps, idx++, m.response, binaryResponse);
+        ps.addBatch();
+      }
+
+      ps.executeBatch();
+      conn.commit();
+      writtenCount.addAndGet(responses.size());
+    } catch (SQLException ex) {
+      rollback(conn);
+      failedCount.addAndGet(responses.size());
+      LogUtil.error(LOG, datasource.translate(sql, ex),
+          "could not write " + responses.size() + " OCSP responses to cache database");
+    } catch (DataAccessException ex) {
+      rollback(conn);
+      failedCount.addAndGet(responses.size());
+      LogUtil.error(LOG, ex,
+          "could not write " + responses.size() + " OCSP responses to cache database");
+    } finally {
+      datasource.releaseResources(ps, null, false);
+      if (conn != null) {
+        try {
+          conn.setAutoCommit(autoCommit);
+        } catch (SQLException ex) {
+          LOG.warn("could not reset autoCommit of connection: {}", ex.getMessage());
+        }
+        datasource.returnConnection(conn);
+      }
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    flushCount.incrementAndGet();
+    flushTimeMs.addAndGet(duration);
+    if (duration > maxFlushTimeMs.get()) {
+      maxFlushTimeMs.set(duration);
+    }
+    LOG.debug("flushed {} OCSP responses in {} ms", responses.size(), duration);
+  } // method flush
+
+  private static void rollback(Connection conn) {
+    if (conn == null) {
+      return;
+    }
+
+    try {
+      conn.rollback();
+    } catch (SQLException ex) {
+      LOG.warn("could not rollback connection: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Stops accepting new responses, and writes the queued ones.
+   */
+  @Override
+  public void close() {
+    if (!running.getAndSet(false)) {
+      return;
+    }
+
+    if (flusherThread != null) {
+      try {
+        flusherThread.join(flushIntervalMs * 10L);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (flusherThread.isAlive()) {
+        LOG.warn("could not write all queued OCSP responses, {} remaining", queue.size());
+        flusherThread.interrupt();
+      }
+      flusherThread = null;
+    }
+  } // method close
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  public long getEnqueuedCount() {
+    return enqueuedCount.get();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public long getWrittenCount() {
+    return writtenCount.get();
+  }
+
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  public long getFlushCount() {
+    return flushCount.get();
+  }
+
+  public long getAverageFlushTimeMs() {
+    long count = flushCount.get();
+    return count == 0 ? 0 : flushTimeMs.get() / count;
+  }
+
+  public long getMaxFlushTimeMs() {
+    return maxFlushTimeMs.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ResponseCacheWriter[queueDepth=" + queue.size() + ",enqueued=" + enqueuedCount.get()
+        + ",dropped=" + droppedCount.get() + ",written=" + writtenCount.get()
+        + ",failed=" + failedCount.get() + ",flushes=" + flushCount.get()
+        + ",avgFlushTimeMs=" + getAverageFlushTimeMs()
+        + ",maxFlushTimeMs=" + maxFlushTimeMs.get() + "]";
+  }
+
+}
@@ -43,6 +43,7 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
 import org.xipki.security.AlgorithmCode;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
@@ -117,6 +118,12 @@ public class ResponseCacher implements Closeable {
         try {
           int num = removeExpiredResponses(maxThisUpdate);
           LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+          if (memoryCache != null) {
+            LOG.info("{}", memoryCache);
+          }
+          if (writer != null) {
+            LOG.info("{}", writer);
+          }
         } catch (Throwable th) {
           LogUtil.error(LOG, th, "could not remove expired responses");
         } finally {
@@ -138,6 +145,10 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicBoolean onService;
 
+  private final ResponseMemoryCache memoryCache;
+
+  private final ResponseCacheWriter writer;
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore = new IssuerStore();
@@ -148,7 +159,36 @@ public class ResponseCacher implements Closeable {
 
   private ScheduledFuture<?> issuerUpdater;
 
+  // whether the column OCSP.RESP is a binary column instead of Base64 text
+  private boolean binaryResponse;
+
   public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity) {
+    this(datasource, master, validity, 0, null);
+  }
+
+  public ResponseCacher(DataSourceWrapper datasource, boolean master,
+      OcspServerConf.ResponseCache conf) {
+    this(datasource, master, Args.notNull(conf, "conf").validity(), conf.getMemoryCacheSize(),
+        conf.getWriteBehind());
+  }
+
+  /**
+   * Constructor.
+   * @param datasource
+   *          Datasource of the cache database.
+   * @param master
+   *          Whether this instance is master.
+   * @param validity
+   *          Validity of the cached responses.
+   * @param memoryCacheSize
+   *          Maximal number of responses cached in memory in front of the database.
+   *          Non-positive value disables the in-memory cache.
+   * @param writeBehind
+   *          Configuration of the asynchronous writer. {@code null} or disabled to write
+   *          the responses on the caller's thread.
+   */
+  public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity,
+      int memoryCacheSize, OcspServerConf.WriteBehind writeBehind) {
     this.datasource = Args.notNull(datasource, "datasource");
     this.master = master;
     this.validity = (int) (Args.notNull(validity, "validity").approxMinutes() * 60);
@@ -156,6 +196,10 @@ public class ResponseCacher implements Closeable {
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
     this.onService = new AtomicBoolean(false);
+    this.memoryCache = (memoryCacheSize > 0)
+        ? new ResponseMemoryCache(memoryCacheSize, this.validity) : null;
+    this.writer = (writeBehind != null && writeBehind.isEnabled())
+        ? new ResponseCacheWriter(datasource, writeBehind) : null;
 
     this.idDigesters = new ConcurrentBag<>();
     for (int i = 0; i < 20; i++) {
@@ -164,13 +208,44 @@ public class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Returns the in-memory cache.
+   * @return the in-memory cache, or {@code null} if not enabled.
+   */
+  public ResponseMemoryCache getMemoryCache() {
+    return memoryCache;
+  }
+
+  /**
+   * Returns the asynchronous writer.
+   * @return the asynchronous writer, or {@code null} if the responses are written synchronously.
+   */
+  public ResponseCacheWriter getWriter() {
+    return writer;
+  }
+
   public boolean isOnService() {
     return onService.get() && issuerStore != null;
   }
 
-  public void init() {
+  /**
+   * Initializes the cacher.
+   *
+   * @throws DataAccessException
+   *           if the type of the column OCSP.RESP could not be detected. Assuming a wrong type
+   *           would corrupt the cached responses.
+   */
+  public void init() throws DataAccessException {
+    binaryResponse = datasource.isBinaryColumn(null, "OCSP", "RESP");
+    LOG.info("column OCSP.RESP is binary: {}", binaryResponse);
+
     updateCacheStore();
 
+    if (writer != null) {
+      writer.setBinaryResponse(binaryResponse);
+      writer.start();
+    }
+
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
@@ -185,11 +260,19 @@ public class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (writer != null) {
+      writer.close();
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
     }
 
+    if (memoryCache != null) {
+      memoryCache.clear();
+    }
+
     if (responseCleaner != null) {
       responseCleaner.cancel(false);
       responseCleaner = null;
@@ -267,6 +350,16 @@ public class ResponseCacher implements Closeable {
       AlgorithmCode sigAlg) throws DataAccessException {
     final String sql = sqlSelectOcsp;
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
+
+    ResponseMemoryCache.CacheKey cacheKey = null;
+    if (memoryCache != null) {
+      cacheKey = new ResponseMemoryCache.CacheKey(issuerId, identBytes);
+      OcspRespWithCacheInfo resp = memoryCache.get(cacheKey);
+      if (resp != null) {
+        return resp;
+      }
+    }
+
     long id = deriveId(issuerId, identBytes);
     PreparedStatement ps = datasource.prepareStatement(sql);
     ResultSet rs = null;
@@ -300,12 +393,15 @@ public class ResponseCacher implements Closeable {
       }
 
       long thisUpdate = rs.getLong("THIS_UPDATE");
-      String b64Resp = rs.getString("RESP");
-      byte[] resp = Base64.decodeFast(b64Resp);
+      byte[] resp = datasource.getBinary(rs, "RESP", binaryResponse);
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
       }
+
+      if (cacheKey != null) {
+        memoryCache.put(cacheKey, thisUpdate, nextUpdate, resp);
+      }
       return new OcspRespWithCacheInfo(resp, cacheInfo);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
@@ -316,6 +412,9 @@ public class ResponseCacher implements Closeable {
 
   public void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate,
       Long nextUpdate, AlgorithmCode sigAlgCode, byte[] response) {
+    // nextUpdate of the response, 0 if absent
+    final long respNextUpdate =
+        (nextUpdate == null || nextUpdate == Long.MAX_VALUE) ? 0 : nextUpdate;
     long nowInSec = System.currentTimeMillis() / 1000;
     if (nextUpdate == null) {
       nextUpdate = nowInSec + SEC_PER_WEEK;
@@ -326,7 +425,18 @@ public class ResponseCacher implements Closeable {
     }
 
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
+    if (memoryCache != null) {
+      memoryCache.put(new ResponseMemoryCache.CacheKey(issuerId, identBytes), thisUpdate,
+          respNextUpdate, response);
+    }
+
     String ident = Base64.encodeToString(identBytes);
+    if (writer != null) {
+      writer.enqueue(new ResponseCacheWriter.PendingResponse(deriveId(issuerId, identBytes),
+          issuerId, ident, thisUpdate, nextUpdate, response));
+      return;
+    }
+
     try {
       long id = deriveId(issuerId, identBytes);
 
@@ -335,7 +445,6 @@ public class ResponseCacher implements Closeable {
         String sql = SQL_ADD_RESP;
         PreparedStatement ps = datasource.prepareStatement(conn, sql);
 
-        String b64Response = Base64.encodeToString(response);
         Boolean dataIntegrityViolationException = null;
         try {
           int idx = 1;
@@ -344,7 +453,7 @@ public class ResponseCacher implements Closeable {
           ps.setString(idx++, ident);
           ps.setLong(idx++, thisUpdate);
           ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
+          datasource.setBinary(ps, idx++, response, binaryResponse);
           ps.execute();
         } catch (SQLException ex) {
           DataAccessException dex = datasource.translate(sql, ex);
@@ -368,7 +477,7 @@ public class ResponseCacher implements Closeable {
           int idx = 1;
           ps.setLong(idx++, thisUpdate);
           ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
+          datasource.setBinary(ps, idx++, response, binaryResponse);
           ps.setLong(idx++, id);
           ps.executeUpdate();
         } catch (SQLException ex) {
@@ -0,0 +1,237 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * In-memory (L1) cache of OCSP responses in front of the database based
+ * {@link ResponseCacher}. The entries are keyed by (issuerId, serialNumber, sigAlg),
+ * and are distributed over several LRU segments to reduce the lock contention.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class ResponseMemoryCache {
+
+  static final class CacheKey {
+
+    private final int issuerId;
+
+    /**
+     * sigAlg code followed by the serial number, see ResponseCacher#buildIdent.
+     */
+    private final byte[] ident;
+
+    private final int hashCode;
+
+    CacheKey(int issuerId, byte[] ident) {
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.hashCode = 31 * issuerId + Arrays.hashCode(ident);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      } else if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+
+      CacheKey other = (CacheKey) obj;
+      return issuerId == other.issuerId && Arrays.equals(ident, other.ident);
+    }
+
+  } // class CacheKey
+
+  private static final class CacheEntry {
+
+    private final byte[] response;
+
+    private final long thisUpdate;
+
+    private final long nextUpdate;
+
+    CacheEntry(byte[] response, long thisUpdate, long nextUpdate) {
+      this.response = response;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+  } // class CacheEntry
+
+  private static final int NUM_SEGMENTS = 16;
+
+  // nextUpdate must be at least in 600 seconds, same as in the database cache.
+  private static final long MIN_REMAINING_MS = 600L * 1000;
+
+  private final LruCache<CacheKey, CacheEntry>[] segments;
+
+  private final long validityMs;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong expirations = new AtomicLong();
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached responses.
+   * @param validity
+   *          Validity of a cached response after its thisUpdate, in seconds.
+   */
+  @SuppressWarnings("unchecked")
+  public ResponseMemoryCache(int maxSize, int validity) {
+    Args.positive(maxSize, "maxSize");
+    this.validityMs = Args.positive(validity, "validity") * 1000L;
+
+    int numSegments = Math.min(NUM_SEGMENTS, maxSize);
+    int segmentSize = (maxSize + numSegments - 1) / numSegments;
+    this.segments = new LruCache[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      segments[i] = new LruCache<>(segmentSize);
+    }
+  }
+
+  /**
+   * Returns the cached response.
+   * @param key
+   *          Cache key.
+   * @return the cached fresh response, or {@code null} if no fresh response is cached.
+   */
+  OcspRespWithCacheInfo get(CacheKey key) {
+    LruCache<CacheKey, CacheEntry> segment = segment(key);
+    CacheEntry entry = segment.get(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    long now = System.currentTimeMillis();
+    if (!isFresh(entry, now)) {
+      segment.remove(key);
+      expirations.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    ResponseCacheInfo cacheInfo = new ResponseCacheInfo(entry.thisUpdate);
+    if (entry.nextUpdate != 0) {
+      cacheInfo.setNextUpdate(entry.nextUpdate);
+    }
+    return new OcspRespWithCacheInfo(entry.response, cacheInfo);
+  } // method get
+
+  /**
+   * Caches the response.
+   * @param key
+   *          Cache key.
+   * @param thisUpdate
+   *          thisUpdate in milliseconds.
+   * @param nextUpdate
+   *          nextUpdate in milliseconds, 0 if not present.
+   * @param response
+   *          Encoded OCSP response.
+   */
+  void put(CacheKey key, long thisUpdate, long nextUpdate, byte[] response) {
+    CacheEntry entry = new CacheEntry(response, thisUpdate, nextUpdate);
+    if (isFresh(entry, System.currentTimeMillis())) {
+      segment(key).put(key, entry);
+    }
+  }
+
+  public void clear() {
+    for (LruCache<CacheKey, CacheEntry> segment : segments) {
+      segment.evictAll();
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (LruCache<CacheKey, CacheEntry> segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of entries removed because they are no more fresh.
+   * @return the number of expired entries.
+   */
+  public long getExpirationCount() {
+    return expirations.get();
+  }
+
+  /**
+   * Returns the number of entries evicted to make space.
+   * @return the number of evicted entries.
+   */
+  public long getEvictionCount() {
+    long count = 0;
+    for (LruCache<CacheKey, CacheEntry> segment : segments) {
+      count += segment.evictionCount();
+    }
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "ResponseMemoryCache[size=" + size() + ",hits=" + hits.get() + ",misses="
+        + misses.get() + ",evictions=" + getEvictionCount() + ",expirations="
+        + expirations.get() + "]";
+  }
+
+  private LruCache<CacheKey, CacheEntry> segment(CacheKey key) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[(hash & 0x7FFFFFFF) % segments.length];
+  }
+
+  private boolean isFresh(CacheEntry entry, long now) {
+    if (entry.thisUpdate + validityMs < now) {
+      return false;
+    }
+
+    return entry.nextUpdate == 0 || entry.nextUpdate >= now + MIN_REMAINING_MS;
+  }
+
+}
@@ -72,6 +72,12 @@ public class OcspConf extends ValidatableConf {
 
   private RemoteMgmt remoteMgmt;
 
+  /**
+   * Whether the metrics are served under /metrics. Defaults to false, since the path is
+   * accessible without authentication.
+   */
+  private boolean metricsEndpointEnabled;
+
   private SecurityConf security;
 
   public static OcspConf readConfFromFile(String fileName)
@@ -102,6 +108,14 @@ public class OcspConf extends ValidatableConf {
     this.remoteMgmt = remoteMgmt;
   }
 
+  public boolean isMetricsEndpointEnabled() {
+    return metricsEndpointEnabled;
+  }
+
+  public void setMetricsEndpointEnabled(boolean metricsEndpointEnabled) {
+    this.metricsEndpointEnabled = metricsEndpointEnabled;
+  }
+
   public SecurityConf getSecurity() {
     return security == null ? SecurityConf.DEFAULT : security;
   }
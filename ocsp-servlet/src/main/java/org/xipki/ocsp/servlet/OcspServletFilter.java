@@ -64,6 +64,10 @@ public class OcspServletFilter implements Filter {
 
   private HealthCheckServlet healthServlet;
 
+  private MetricsServlet metricsServlet;
+
+  private boolean metricsEndpointEnabled;
+
   private OcspServlet ocspServlet;
 
   private boolean remoteMgmtEnabled;
@@ -109,6 +113,13 @@ public class OcspServletFilter implements Filter {
     this.healthServlet = new HealthCheckServlet();
     this.healthServlet.setServer(this.server);
 
+    this.metricsEndpointEnabled = conf.isMetricsEndpointEnabled();
+    LOG.info("metrics endpoint is {}", metricsEndpointEnabled ? "enabled" : "disabled");
+    if (metricsEndpointEnabled) {
+      this.metricsServlet = new MetricsServlet();
+      this.metricsServlet.setServer(this.server);
+    }
+
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
     this.ocspServlet.setLogReqResp(logReqResp);
@@ -185,6 +196,12 @@ public class OcspServletFilter implements Filter {
       String servletPath = path.substring(7); // 7 = "/health".length()
       req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, servletPath);
       healthServlet.service(req, resp);
+    } else if ("/metrics".equals(path) || "/metrics/".equals(path)) {
+      if (metricsEndpointEnabled) {
+        metricsServlet.service(req, resp);
+      } else {
+        resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+      }
     } else if (path.startsWith("/mgmt/")) {
       if (remoteMgmtEnabled) {
         req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(5)); // 5 = "/mgmt".length()
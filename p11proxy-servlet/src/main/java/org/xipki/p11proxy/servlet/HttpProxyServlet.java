@@ -60,6 +60,10 @@ public class HttpProxyServlet extends HttpServlet {
     this.logReqResp = logReqResp;
   }
 
+  public void setMaxSignBatchSize(int maxSignBatchSize) {
+    responder.setMaxSignBatchSize(maxSignBatchSize);
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
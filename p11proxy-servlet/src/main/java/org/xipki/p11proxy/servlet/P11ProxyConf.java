@@ -23,6 +23,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import org.xipki.security.Securities.SecurityConf;
+import org.xipki.security.pkcs11.proxy.P11ProxyConstants;
 import org.xipki.util.Args;
 import org.xipki.util.InvalidConfException;
 import org.xipki.util.ValidatableConf;
@@ -38,6 +39,13 @@ public class P11ProxyConf extends ValidatableConf {
 
   private SecurityConf security;
 
+  /**
+   * Maximal number of messages in one batch sign request. Larger batches are rejected, and
+   * the clients retry them in smaller batches. The default is
+   * {@link P11ProxyConstants#MAX_SIGN_BATCH_SIZE}.
+   */
+  private Integer maxSignBatchSize;
+
   public static P11ProxyConf readConfFromFile(String fileName)
       throws IOException, InvalidConfException {
     Args.notBlank(fileName, "fileName");
@@ -58,9 +66,20 @@ public class P11ProxyConf extends ValidatableConf {
     this.security = security;
   }
 
+  public int getMaxSignBatchSize() {
+    return maxSignBatchSize == null ? P11ProxyConstants.MAX_SIGN_BATCH_SIZE : maxSignBatchSize;
+  }
+
+  public void setMaxSignBatchSize(Integer maxSignBatchSize) {
+    this.maxSignBatchSize = maxSignBatchSize;
+  }
+
   @Override
   public void validate() throws InvalidConfException {
     validate(security);
+    if (maxSignBatchSize != null && maxSignBatchSize < 1) {
+      throw new InvalidConfException("maxSignBatchSize must be positive: " + maxSignBatchSize);
+    }
   }
 
 }
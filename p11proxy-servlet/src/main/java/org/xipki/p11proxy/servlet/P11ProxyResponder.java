@@ -54,6 +54,7 @@ import org.xipki.security.pkcs11.proxy.P11ProxyConstants;
 import org.xipki.security.pkcs11.proxy.ProxyMessage;
 import org.xipki.security.util.KeyUtil;
 import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
 import org.xipki.util.Hex;
 import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
@@ -74,6 +75,8 @@ public class P11ProxyResponder {
 
   private final Set<Short> versions;
 
+  private int maxSignBatchSize = P11ProxyConstants.MAX_SIGN_BATCH_SIZE;
+
   static {
     Set<Short> actions = new HashSet<>();
     actions.add(P11ProxyConstants.ACTION_GET_SERVER_CAPS);
@@ -100,6 +103,7 @@ public class P11ProxyResponder {
     actions.add(P11ProxyConstants.ACTION_REMOVE_IDENTITY);
     actions.add(P11ProxyConstants.ACTION_REMOVE_OBJECTS);
     actions.add(P11ProxyConstants.ACTION_SIGN);
+    actions.add(P11ProxyConstants.ACTION_SIGN_BATCH);
     actions.add(P11ProxyConstants.ACTION_UPDATE_CERT);
     actions.add(P11ProxyConstants.ACTION_DIGEST_SECRETKEY);
     actions.add(P11ProxyConstants.ACTION_IMPORT_SECRET_KEY);
@@ -117,6 +121,10 @@ public class P11ProxyResponder {
     return versions;
   }
 
+  public void setMaxSignBatchSize(int maxSignBatchSize) {
+    this.maxSignBatchSize = Args.positive(maxSignBatchSize, "maxSignBatchSize");
+  }
+
   /**
    * The request is constructed as follows.
    * <pre>
@@ -396,27 +404,7 @@ public class P11ProxyResponder {
         case P11ProxyConstants.ACTION_SIGN: {
           ProxyMessage.SignTemplate signTemplate = ProxyMessage.SignTemplate.getInstance(content);
           long mechanism = signTemplate.getMechanism().getMechanism();
-          ProxyMessage.P11Params asn1Params = signTemplate.getMechanism().getParams();
-
-          P11Params params = null;
-
-          if (asn1Params != null) {
-            switch (asn1Params.getTagNo()) {
-              case ProxyMessage.P11Params.TAG_RSA_PKCS_PSS:
-                params = ProxyMessage.RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
-                break;
-              case ProxyMessage.P11Params.TAG_OPAQUE:
-                params = new P11ByteArrayParams(
-                    ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              case ProxyMessage.P11Params.TAG_IV:
-                params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              default:
-                throw new BadAsn1ObjectException(
-                    "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
-            }
-          }
+          P11Params params = getP11Params(signTemplate.getMechanism().getParams());
 
           byte[] message = signTemplate.getMessage();
           P11Identity identity = p11CryptService.getIdentity(signTemplate.getSlotId().getValue(),
@@ -429,6 +417,28 @@ public class P11ProxyResponder {
           ASN1Object obj = new DEROctetString(signature);
           return getSuccessResp(version, transactionId, action, obj);
         }
+        case P11ProxyConstants.ACTION_SIGN_BATCH: {
+          ProxyMessage.SignBatchTemplate signTemplate =
+              ProxyMessage.SignBatchTemplate.getInstance(content);
+          int batchSize = signTemplate.getMessages().size();
+          if (batchSize > maxSignBatchSize) {
+            LOG.warn("batch size {} exceeds the maximal allowed {}", batchSize, maxSignBatchSize);
+            return getResp(version, transactionId, P11ProxyConstants.RC_BAD_REQUEST, action);
+          }
+
+          long mechanism = signTemplate.getMechanism().getMechanism();
+          P11Params params = getP11Params(signTemplate.getMechanism().getParams());
+
+          P11Identity identity = p11CryptService.getIdentity(signTemplate.getSlotId().getValue(),
+              signTemplate.getObjectId().getValue());
+          if (identity == null) {
+            return getResp(version, transactionId, P11ProxyConstants.RC_UNKNOWN_ENTITY, action);
+          }
+
+          List<byte[]> signatures = identity.sign(mechanism, params, signTemplate.getMessages());
+          ASN1Object obj = ProxyMessage.encodeOctetStrings(signatures);
+          return getSuccessResp(version, transactionId, action, obj);
+        }
         case P11ProxyConstants.ACTION_UPDATE_CERT: {
           ProxyMessage.ObjectIdAndCert asn1 = ProxyMessage.ObjectIdAndCert.getInstance(content);
           P11Slot slot = getSlot(p11CryptService, asn1.getSlotId().getValue());
@@ -468,6 +478,25 @@ public class P11ProxyResponder {
     }
   } // method processRequest
 
+  private static P11Params getP11Params(ProxyMessage.P11Params asn1Params)
+      throws BadAsn1ObjectException {
+    if (asn1Params == null) {
+      return null;
+    }
+
+    switch (asn1Params.getTagNo()) {
+      case ProxyMessage.P11Params.TAG_RSA_PKCS_PSS:
+        return ProxyMessage.RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
+      case ProxyMessage.P11Params.TAG_OPAQUE:
+        return new P11ByteArrayParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+      case ProxyMessage.P11Params.TAG_IV:
+        return new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+      default:
+        throw new BadAsn1ObjectException(
+            "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
+    }
+  } // method getP11Params
+
   private static String buildErrorMsg(short action, byte[] transactionId) {
     return "could not process action " + P11ProxyConstants.getActionName(action)
         + " (tid=" + Hex.encode(transactionId) + ")";
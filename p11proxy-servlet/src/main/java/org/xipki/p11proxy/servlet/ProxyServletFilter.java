@@ -88,6 +88,8 @@ public class ProxyServletFilter implements Filter {
 
     servlet = new HttpProxyServlet();
     servlet.setLogReqResp(logReqResp);
+    servlet.setMaxSignBatchSize(conf.getMaxSignBatchSize());
+    LOG.info("maxSignBatchSize: {}", conf.getMaxSignBatchSize());
     servlet.setLocalP11CryptServicePool(pool);
   } // method init
 
@@ -29,6 +29,8 @@ import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -211,7 +213,16 @@ public class BenchmarkHttpClient {
 
   public static interface ResponseHandler {
 
-    void onComplete(FullHttpResponse response);
+    /**
+     * Handles the response.
+     *
+     * @param response
+     *          The response.
+     * @param startNanos
+     *          The start time of the request, as passed to
+     *          {@link BenchmarkHttpClient#send(FullHttpRequest, long)}.
+     */
+    void onComplete(FullHttpResponse response, long startNanos);
 
     void onError();
 
@@ -231,6 +242,16 @@ public class BenchmarkHttpClient {
 
   } // class HttpClientException
 
+  private static class InflightRequest {
+
+    private final long startNanos;
+
+    InflightRequest(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+  } // class InflightRequest
+
   private class HttpClientInitializer extends ChannelInitializer<SocketChannel> {
 
     private SslContext sslContext;
@@ -260,19 +281,32 @@ public class BenchmarkHttpClient {
     @Override
     public void channelRead0(ChannelHandlerContext ctx, FullHttpResponse resp) {
       try {
+        // the responses are received in the order of the requests
+        InflightRequest request = inflightRequests.poll();
+        if (request == null) {
+          LOG.warn("received response without request");
+          return;
+        }
+
         decrementPendingRequests();
-        responseHandler.onComplete(resp);
+        responseHandler.onComplete(resp, request.startNanos);
       } catch (Throwable th) {
         LOG.error("unexpected error", th);
       }
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      failInflightRequests();
+      super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-      decrementPendingRequests();
-      ctx.close();
       LOG.warn("error", cause);
-      responseHandler.onError();
+      ctx.close();
+      // no response will be received for the requests sent over this channel
+      failInflightRequests();
     }
   } // method HttpClientHandler
 
@@ -282,6 +316,11 @@ public class BenchmarkHttpClient {
 
   private final CountLatch latch = new CountLatch(0, 0);
 
+  /**
+   * Requests sent but not answered yet, in the order in which they have been written.
+   */
+  private final Queue<InflightRequest> inflightRequests = new ConcurrentLinkedQueue<>();
+
   private int queueSize = 1000;
 
   private ResponseHandler responseHandler;
@@ -404,7 +443,18 @@ public class BenchmarkHttpClient {
     this.channel = bootstrap.connect(host, port).syncUninterruptibly().channel();
   } // method start
 
-  public void send(FullHttpRequest request) throws HttpClientException {
+  /**
+   * Sends the request.
+   *
+   * @param request
+   *          The request.
+   * @param startNanos
+   *          The start time of the request, which will be passed to the
+   *          {@link ResponseHandler}.
+   * @throws HttpClientException
+   *           if the request could not be sent.
+   */
+  public void send(FullHttpRequest request, long startNanos) throws HttpClientException {
     request.headers().add(HttpHeaderNames.HOST, hostHeader);
     if (!channel.isActive()) {
       throw new HttpClientException("channel is not active");
@@ -415,10 +465,25 @@ public class BenchmarkHttpClient {
     } catch (InterruptedException ex) {
       throw new HttpClientException("sending poll is full");
     }
-    incrementPendingRequests();
-    ChannelFuture future = this.channel.writeAndFlush(request);
+
+    InflightRequest inflightRequest = new InflightRequest(startNanos);
+    ChannelFuture future;
+    // the order of inflightRequests must be the same as that of the written requests
+    synchronized (inflightRequests) {
+      incrementPendingRequests();
+      inflightRequests.add(inflightRequest);
+      future = this.channel.writeAndFlush(request);
+    }
+
     future.awaitUninterruptibly();
-  }
+    if (!future.isSuccess()) {
+      // if not removed, it has already been reported by ResponseHandler.onError()
+      if (inflightRequests.remove(inflightRequest)) {
+        decrementPendingRequests();
+        throw new HttpClientException("could not send the request", future.cause());
+      }
+    }
+  } // method send
 
   public void shutdown() {
     if (channel != null) {
@@ -427,6 +492,17 @@ public class BenchmarkHttpClient {
     this.workerGroup.shutdownGracefully();
   }
 
+  private void failInflightRequests() {
+    while (inflightRequests.poll() != null) {
+      decrementPendingRequests();
+      try {
+        responseHandler.onError();
+      } catch (Throwable th) {
+        LOG.error("unexpected error", th);
+      }
+    }
+  } // method failInflightRequests
+
   private void incrementPendingRequests() {
     synchronized (latch) {
       if (++pendingRequests >= queueSize) {
@@ -183,7 +183,7 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
             break;
           }
 
-          testNext(certReq);
+          testNext(certReq, startRequest());
         } catch (HttpClientException | CertificateException | IOException ex) {
           LOG.warn("exception", ex);
           account(1, 1);
@@ -200,14 +200,15 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
       }
     }
 
-    private void testNext(PKIMessage certReq) throws HttpClientException, IOException {
+    private void testNext(PKIMessage certReq, long startNanos)
+        throws HttpClientException, IOException {
       byte[] encoded = certReq.getEncoded();
       ByteBuf content = Unpooled.wrappedBuffer(encoded);
       FullHttpRequest httpReq = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
           HttpMethod.POST, conf.caUrl, content);
       httpReq.headers().addInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes())
         .add(HttpHeaderNames.CONTENT_TYPE, REQUEST_MIMETYPE);
-      httpClient.send(httpReq);
+      httpClient.send(httpReq, startNanos);
     } // method testNext
 
   } // class Testor
@@ -335,7 +336,7 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
   } // method nextCertRequest
 
   @Override
-  public void onComplete(FullHttpResponse response) {
+  public void onComplete(FullHttpResponse response, long startNanos) {
     boolean success;
     try {
       success = onComplete0(response);
@@ -344,6 +345,10 @@ public class CaEnrollBenchmark extends BenchmarkExecutor implements ResponseHand
       success = false;
     }
 
+    if (success) {
+      recordLatency(startNanos);
+    }
+
     account(1, success ? 0 : 1);
   } // method onComplete
 
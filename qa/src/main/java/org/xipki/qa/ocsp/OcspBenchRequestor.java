@@ -163,7 +163,8 @@ class OcspBenchRequestor {
     httpClient.shutdown();
   }
 
-  public void ask(BigInteger[] serialNumbers) throws OcspRequestorException, HttpClientException {
+  public void ask(BigInteger[] serialNumbers, long startNanos)
+      throws OcspRequestorException, HttpClientException {
     byte[] ocspReq = buildRequest(serialNumbers);
     int size = ocspReq.length;
 
@@ -188,7 +189,7 @@ class OcspBenchRequestor {
     }
     request.headers().add("Content-Type", "application/ocsp-request");
 
-    httpClient.send(request);
+    httpClient.send(request, startNanos);
   } // method ask
 
   private byte[] buildRequest(BigInteger[] serialNumbers) throws OcspRequestorException {
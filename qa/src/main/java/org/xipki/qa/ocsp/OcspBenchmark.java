@@ -65,7 +65,7 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
         }
 
         try {
-          requestor.ask(new BigInteger[]{sn});
+          requestor.ask(new BigInteger[]{sn}, startRequest());
         } catch (Throwable th) {
           LOG.warn("{}: {}", th.getClass().getName(), th.getMessage());
           account(1, 1);
@@ -130,7 +130,7 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
   }
 
   @Override
-  public void onComplete(FullHttpResponse response) {
+  public void onComplete(FullHttpResponse response, long startNanos) {
     boolean success;
     try {
       success = onComplete0(response);
@@ -139,6 +139,10 @@ public class OcspBenchmark extends BenchmarkExecutor implements ResponseHandler
       success = false;
     }
 
+    if (success) {
+      recordLatency(startNanos);
+    }
+
     account(1, success ? 0 : 1);
   }
 
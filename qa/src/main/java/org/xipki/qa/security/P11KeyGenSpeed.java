@@ -119,8 +119,10 @@ public abstract class P11KeyGenSpeed extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long startNanos = startRequest();
         try {
           genKeypair();
+          recordLatency(startNanos);
           account(1, 0);
         } catch (Exception ex) {
           LOG.error("P11KeyGenSpeed.Testor.run()", ex);
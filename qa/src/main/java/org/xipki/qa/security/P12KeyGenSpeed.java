@@ -106,8 +106,10 @@ public abstract class P12KeyGenSpeed extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long startNanos = startRequest();
         try {
           generateKeypair(securityFactory.getRandom4Key());
+          recordLatency(startNanos);
           account(1, 0);
         } catch (Exception ex) {
           LOG.error("P12KeyGenSpeed.Testor.run()", ex);
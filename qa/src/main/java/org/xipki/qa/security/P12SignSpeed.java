@@ -237,8 +237,10 @@ public abstract class P12SignSpeed extends BenchmarkExecutor {
     @Override
     public void run() {
       while (!stop() && getErrorAccout() < 1) {
+        long startNanos = startRequest();
         try {
           signer.sign(data);
+          recordLatency(startNanos);
           account(batch, 0);
         } catch (Exception ex) {
           LOG.error("P12SignSpeed.Testor.run()", ex);
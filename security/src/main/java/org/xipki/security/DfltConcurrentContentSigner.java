@@ -291,6 +291,9 @@ public class DfltConcurrentContentSigner implements ConcurrentContentSigner {
 
     try {
       XiContentSigner xiSigner = signer.value();
+      if (xiSigner instanceof XiBatchContentSigner) {
+        return ((XiBatchContentSigner) xiSigner).getSignatures(data);
+      }
 
       for (int i = 0; i < data.length; i++) {
         OutputStream signatureStream = xiSigner.getOutputStream();
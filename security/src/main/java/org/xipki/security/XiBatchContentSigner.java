@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security;
+
+/**
+ * {@link XiContentSigner} which can sign several messages at once, e.g. with one request to
+ * the PKCS#11 proxy.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public interface XiBatchContentSigner extends XiContentSigner {
+
+  /**
+   * Signs the messages. Like {@link #getSignature()}, errors are thrown as
+   * {@link org.bouncycastle.crypto.RuntimeCryptoException}.
+   *
+   * @param messages
+   *          Messages to be signed. Must not be {@code null} or empty.
+   * @return the signatures, in the same order as the messages.
+   */
+  byte[][] getSignatures(byte[][] messages);
+
+}
@@ -24,8 +24,10 @@ import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.SecureRandom;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -47,6 +49,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.security.EdECConstants;
 import org.xipki.security.HashAlgo;
+import org.xipki.security.XiBatchContentSigner;
 import org.xipki.security.XiContentSigner;
 import org.xipki.security.XiSecurityException;
 import org.xipki.security.util.GMUtil;
@@ -59,10 +62,13 @@ import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
 /**
  * PKCS#11 {@link XiContentSigner}.
  *
+ * <p>Except RSASSA-PSS computed with the raw RSA mechanism, {@link #getSignatures(byte[][])}
+ * signs all messages with one call of {@link P11Identity#sign(long, P11Params, List)}.
+ *
  * @author Lijun Liao
  *
  */
-abstract class P11ContentSigner implements XiContentSigner {
+abstract class P11ContentSigner implements XiBatchContentSigner {
 
   private static final Logger LOG = LoggerFactory.getLogger(P11ContentSigner.class);
 
@@ -97,6 +103,50 @@ abstract class P11ContentSigner implements XiContentSigner {
     return Arrays.copyOf(encodedAlgorithmIdentifier, encodedAlgorithmIdentifier.length);
   }
 
+  /**
+   * Signs the messages one by one. Overridden by the signers which can sign all messages with
+   * one call to the token.
+   */
+  @Override
+  public byte[][] getSignatures(byte[][] messages) {
+    byte[][] signatures = new byte[messages.length][];
+    for (int i = 0; i < messages.length; i++) {
+      write(getOutputStream(), messages[i]);
+      signatures[i] = getSignature();
+    }
+    return signatures;
+  } // method getSignatures
+
+  protected List<byte[]> sign(long mechanism, P11Params parameters, List<byte[]> dataToSign) {
+    try {
+      return cryptService.getIdentity(identityId).sign(mechanism, parameters, dataToSign);
+    } catch (P11TokenException ex) {
+      LogUtil.warn(LOG, ex, "could not sign");
+      throw new RuntimeCryptoException("P11TokenException: " + ex.getMessage());
+    }
+  } // method sign
+
+  protected static void write(OutputStream out, byte[] message) {
+    try {
+      out.write(message);
+    } catch (IOException ex) {
+      throw new RuntimeCryptoException("IOException: " + ex.getMessage());
+    }
+  }
+
+  protected static byte[][] toX962Signatures(List<byte[]> plainSignatures) {
+    byte[][] signatures = new byte[plainSignatures.size()][];
+    for (int i = 0; i < signatures.length; i++) {
+      try {
+        signatures[i] = SignerUtil.dsaSigPlainToX962(plainSignatures.get(i));
+      } catch (XiSecurityException ex) {
+        LogUtil.warn(LOG, ex);
+        throw new RuntimeCryptoException("XiSecurityException: " + ex.getMessage());
+      }
+    }
+    return signatures;
+  } // method toX962Signatures
+
   // CHECKSTYLE:SKIP
   static class DSA extends P11ContentSigner {
 
@@ -185,7 +235,23 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      List<byte[]> dataToSign = new ArrayList<>(messages.length);
+      for (byte[] message : messages) {
+        write(getOutputStream(), message);
+        dataToSign.add(getDataToSign());
+      }
+
+      List<byte[]> plainSignatures = sign(mechanism, null, dataToSign);
+      return plain ? plainSignatures.toArray(new byte[0][]) : toX962Signatures(plainSignatures);
+    }
+
     private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
+    }
+
+    private byte[] getDataToSign() {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -194,8 +260,7 @@ abstract class P11ContentSigner implements XiContentSigner {
         dataToSign = ((DigestOutputStream) outputStream).digest();
         ((DigestOutputStream) outputStream).reset();
       }
-
-      return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
+      return dataToSign;
     }
 
   } // class DSA
@@ -292,7 +357,23 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      List<byte[]> dataToSign = new ArrayList<>(messages.length);
+      for (byte[] message : messages) {
+        write(getOutputStream(), message);
+        dataToSign.add(getDataToSign());
+      }
+
+      List<byte[]> plainSignatures = sign(mechanism, null, dataToSign);
+      return plain ? plainSignatures.toArray(new byte[0][]) : toX962Signatures(plainSignatures);
+    }
+
     private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
+    }
+
+    private byte[] getDataToSign() {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -301,8 +382,7 @@ abstract class P11ContentSigner implements XiContentSigner {
         dataToSign = ((DigestOutputStream) outputStream).digest();
         ((DigestOutputStream) outputStream).reset();
       }
-
-      return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
+      return dataToSign;
     }
   } // method ECDSA
 
@@ -342,6 +422,12 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      return sign(PKCS11Constants.CKM_EDDSA, null, Arrays.asList(messages))
+          .toArray(new byte[0][]);
+    }
+
   } // class EdDSA
 
   static class Mac extends P11ContentSigner {
@@ -401,6 +487,11 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      return sign(mechanism, null, Arrays.asList(messages)).toArray(new byte[0][]);
+    }
+
   } // class Mac
 
   // CHECKSTYLE:SKIP
@@ -496,6 +587,31 @@ abstract class P11ContentSigner implements XiContentSigner {
 
     @Override
     public byte[] getSignature() {
+      try {
+        return cryptService.getIdentity(identityId).sign(mechanism, null, getDataToSign());
+      } catch (XiSecurityException | P11TokenException ex) {
+        LogUtil.error(LOG, ex, "could not sign");
+        throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
+      }
+    } // method getSignature
+
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      List<byte[]> dataToSign = new ArrayList<>(messages.length);
+      try {
+        for (byte[] message : messages) {
+          write(getOutputStream(), message);
+          dataToSign.add(getDataToSign());
+        }
+      } catch (XiSecurityException ex) {
+        LogUtil.error(LOG, ex, "could not sign");
+        throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
+      }
+
+      return sign(mechanism, null, dataToSign).toArray(new byte[0][]);
+    } // method getSignatures
+
+    private byte[] getDataToSign() throws XiSecurityException {
       byte[] dataToSign;
       if (outputStream instanceof ByteArrayOutputStream) {
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
@@ -508,17 +624,11 @@ abstract class P11ContentSigner implements XiContentSigner {
         System.arraycopy(hashValue, 0, dataToSign, digestPkcsPrefix.length, hashValue.length);
       }
 
-      try {
-        if (mechanism == PKCS11Constants.CKM_RSA_X_509) {
-          dataToSign = SignerUtil.EMSA_PKCS1_v1_5_encoding(dataToSign, modulusBitLen);
-        }
-
-        return cryptService.getIdentity(identityId).sign(mechanism, null, dataToSign);
-      } catch (XiSecurityException | P11TokenException ex) {
-        LogUtil.error(LOG, ex, "could not sign");
-        throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
+      if (mechanism == PKCS11Constants.CKM_RSA_X_509) {
+        dataToSign = SignerUtil.EMSA_PKCS1_v1_5_encoding(dataToSign, modulusBitLen);
       }
-    } // method getSignature
+      return dataToSign;
+    } // method getDataToSign
 
   } // class RSA
 
@@ -666,15 +776,8 @@ abstract class P11ContentSigner implements XiContentSigner {
         }
       }
 
-      byte[] dataToSign;
-      if (outputStream instanceof ByteArrayOutputStream) {
-        dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
-      } else {
-        dataToSign = ((DigestOutputStream) outputStream).digest();
-      }
-
       try {
-        return cryptService.getIdentity(identityId).sign(mechanism, parameters, dataToSign);
+        return cryptService.getIdentity(identityId).sign(mechanism, parameters, getDataToSign());
       } catch (P11TokenException ex) {
         LogUtil.warn(LOG, ex, "could not sign");
         throw new RuntimeCryptoException("SignerException: " + ex.getMessage());
@@ -682,6 +785,28 @@ abstract class P11ContentSigner implements XiContentSigner {
 
     } // method getSignature
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      if (outputStream instanceof PSSSignerOutputStream) {
+        // the PSS encoding is computed locally, sign one by one
+        return super.getSignatures(messages);
+      }
+
+      List<byte[]> dataToSign = new ArrayList<>(messages.length);
+      for (byte[] message : messages) {
+        write(getOutputStream(), message);
+        dataToSign.add(getDataToSign());
+      }
+
+      return sign(mechanism, parameters, dataToSign).toArray(new byte[0][]);
+    } // method getSignatures
+
+    private byte[] getDataToSign() {
+      return (outputStream instanceof ByteArrayOutputStream)
+          ? ((ByteArrayOutputStream) outputStream).toByteArray()
+          : ((DigestOutputStream) outputStream).digest();
+    }
+
   } // class RSAPSS
 
   static class SM2 extends P11ContentSigner {
@@ -768,22 +893,40 @@ abstract class P11ContentSigner implements XiContentSigner {
       }
     }
 
+    @Override
+    public byte[][] getSignatures(byte[][] messages) {
+      List<byte[]> dataToSign = new ArrayList<>(messages.length);
+      for (byte[] message : messages) {
+        write(getOutputStream(), message);
+        dataToSign.add(getDataToSign());
+      }
+
+      return toX962Signatures(sign(mechanism, getParams(), dataToSign));
+    }
+
     private byte[] getPlainSignature() throws XiSecurityException, P11TokenException {
+      P11Params params = getParams();
+      return cryptService.getIdentity(identityId).sign(mechanism, params, getDataToSign());
+    }
+
+    private P11Params getParams() {
+      // if the data to sign is the real message, the default ID is used to compute Z
+      return (outputStream instanceof ByteArrayOutputStream)
+          ? new P11Params.P11ByteArrayParams(GMUtil.getDefaultIDA()) : null;
+    }
+
+    private byte[] getDataToSign() {
       byte[] dataToSign;
-      P11Params.P11ByteArrayParams params;
       if (outputStream instanceof ByteArrayOutputStream) {
         // dataToSign is the real message
-        params = new P11Params.P11ByteArrayParams(GMUtil.getDefaultIDA());
         dataToSign = ((ByteArrayOutputStream) outputStream).toByteArray();
       } else {
         // dataToSign is Hash(Z||Real Message)
-        params = null;
         dataToSign = ((DigestOutputStream) outputStream).digest();
       }
 
       reset();
-
-      return cryptService.getIdentity(identityId).sign(mechanism, params, dataToSign);
+      return dataToSign;
     }
   } // class SM2
 
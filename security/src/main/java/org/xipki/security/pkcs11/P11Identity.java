@@ -22,7 +22,9 @@ import java.security.cert.X509Certificate;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.bouncycastle.jcajce.interfaces.EdDSAKey;
 import org.bouncycastle.jcajce.interfaces.XDHKey;
@@ -131,6 +133,66 @@ public abstract class P11Identity implements Comparable<P11Identity> {
   protected abstract byte[] sign0(long mechanism, P11Params parameters, byte[] content)
       throws P11TokenException;
 
+  /**
+   * Signs the contents with the same mechanism and parameters.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Must not be {@code null} or empty.
+   * @return the signatures, in the same order as the contents.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   * @since 5.3.6
+   */
+  public List<byte[]> sign(long mechanism, P11Params parameters, List<byte[]> contents)
+      throws P11TokenException {
+    if (publicKey instanceof XDHKey) {
+      throw new P11TokenException("this identity is not suitable for sign");
+    }
+
+    Args.notEmpty(contents, "contents");
+    for (byte[] content : contents) {
+      Args.notNull(content, "content");
+    }
+
+    slot.assertMechanismSupported(mechanism);
+    if (!supportsMechanism(mechanism, parameters)) {
+      throw new P11UnsupportedMechanismException(mechanism, id);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("sign {} contents with mechanism {}", contents.size(),
+          Functions.getMechanismDescription(mechanism));
+    }
+    return sign0(mechanism, parameters, contents);
+  } // method sign
+
+  /**
+   * Signs the contents. The default implementation signs the contents one by one, it should be
+   * overridden if the token can sign several contents more efficiently.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Must not be {@code null} or empty.
+   * @return the signatures, in the same order as the contents.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   * @since 5.3.6
+   */
+  protected List<byte[]> sign0(long mechanism, P11Params parameters, List<byte[]> contents)
+      throws P11TokenException {
+    List<byte[]> signatures = new ArrayList<>(contents.size());
+    for (byte[] content : contents) {
+      signatures.add(sign0(mechanism, parameters, content));
+    }
+    return signatures;
+  } // method sign0
+
   public byte[] digestSecretKey(long mechanism) throws P11TokenException, XiSecurityException {
     slot.assertMechanismSupported(mechanism);
     if (LOG.isDebugEnabled()) {
@@ -305,6 +305,8 @@ public class P11ModuleConf {
 
   private final int maxMessageSize;
 
+  private final boolean prewarmSessions;
+
   private final long userType;
 
   private final P11NewObjectConf newObjectConf;
@@ -336,6 +338,7 @@ public class P11ModuleConf {
     }
 
     this.maxMessageSize = moduleType.getMaxMessageSize();
+    this.prewarmSessions = moduleType.isPrewarmSessions();
     this.type = moduleType.getType();
     if (maxMessageSize < 128) {
       throw new InvalidConfException("invalid maxMessageSize (< 128): " + maxMessageSize);
@@ -475,6 +478,10 @@ public class P11ModuleConf {
     return readOnly;
   }
 
+  public boolean isPrewarmSessions() {
+    return prewarmSessions;
+  }
+
   public long getUserType() {
     return userType;
   }
@@ -147,6 +147,12 @@ public class Pkcs11conf extends ValidatableConf {
      */
     private Integer maxMessageSize;
 
+    /**
+     * Whether to open all sessions, up to the maximal number of sessions, at startup.
+     * Only used by the native PKCS#11 module.
+     */
+    private boolean prewarmSessions;
+
     private List<PasswordSet> passwordSets;
 
     private List<MechanimFilter> mechanismFilters;
@@ -246,6 +252,14 @@ public class Pkcs11conf extends ValidatableConf {
       this.maxMessageSize = maxMessageSize;
     }
 
+    public boolean isPrewarmSessions() {
+      return prewarmSessions;
+    }
+
+    public void setPrewarmSessions(boolean prewarmSessions) {
+      this.prewarmSessions = prewarmSessions;
+    }
+
     public String getUser() {
       return user == null ? "CKU_USER" : user;
     }
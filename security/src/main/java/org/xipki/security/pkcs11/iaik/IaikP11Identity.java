@@ -22,6 +22,7 @@ import java.security.cert.X509Certificate;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.List;
 
 import org.bouncycastle.jcajce.interfaces.EdDSAKey;
 import org.bouncycastle.jcajce.interfaces.XDHKey;
@@ -112,6 +113,12 @@ class IaikP11Identity extends P11Identity {
     return ((IaikP11Slot) slot).sign(mechanism, parameters, content, this);
   }
 
+  @Override
+  protected List<byte[]> sign0(long mechanism, P11Params parameters, List<byte[]> contents)
+      throws P11TokenException {
+    return ((IaikP11Slot) slot).sign(mechanism, parameters, contents, this);
+  }
+
   Key getSigningKey() {
     return signingKey;
   }
@@ -107,6 +107,15 @@ import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
  */
 class IaikP11Slot extends P11Slot {
 
+  /**
+   * Operation executed with a borrowed session.
+   */
+  private interface SessionOperation<T> {
+
+    T execute(Session session) throws TokenException, P11TokenException;
+
+  } // interface SessionOperation
+
   private static final Logger LOG = LoggerFactory.getLogger(IaikP11Slot.class);
 
   private static final long DEFAULT_MAX_COUNT_SESSION = 32;
@@ -133,11 +142,19 @@ class IaikP11Slot extends P11Slot {
 
   private final ConcurrentBag<ConcurrentBagEntry<Session>> sessions = new ConcurrentBag<>();
 
+  /**
+   * Whether the user is logged in. In PKCS#11 the login state is shared by all sessions of
+   * the application with the token, so it is tracked once for the slot. It is reset if the
+   * sessions are closed or an operation fails with CKR_USER_NOT_LOGGED_IN.
+   */
+  private volatile boolean loggedIn;
+
   private final Vendor vendor;
 
   IaikP11Slot(String moduleName, P11SlotIdentifier slotId, Slot slot, boolean readOnly,
       long userType, List<char[]> password, int maxMessageSize, P11MechanismFilter mechanismFilter,
-      P11NewObjectConf newObjectConf, Vendor vendor) throws P11TokenException {
+      P11NewObjectConf newObjectConf, Vendor vendor, boolean prewarmSessions)
+      throws P11TokenException {
     super(moduleName, slotId, readOnly, mechanismFilter);
 
     this.newObjectConf = Args.notNull(newObjectConf, "newObjectConf");
@@ -169,6 +186,7 @@ class IaikP11Slot extends P11Slot {
         LogUtil.error(LOG, ex, "openSession");
         throw ex;
       }
+      countSessions.incrementAndGet();
 
       try {
         firstLogin(session, password);
@@ -201,6 +219,9 @@ class IaikP11Slot extends P11Slot {
       LOG.info("maxSessionCount: {}", this.maxSessionCount);
 
       sessions.add(new ConcurrentBagEntry<Session>(session));
+      if (prewarmSessions) {
+        prewarmSessions();
+      }
       refresh();
       successful = true;
     } finally {
@@ -303,6 +324,7 @@ class IaikP11Slot extends P11Slot {
     // clear the session pool
     sessions.close();
     countSessions.lazySet(0);
+    loggedIn = false;
   } // method close
 
   private void analyseSingleKey(SecretKey secretKey, P11SlotRefreshResult refreshResult) {
@@ -386,32 +408,14 @@ class IaikP11Slot extends P11Slot {
       throw new P11TokenException("unsupported mechnism " + mechanism);
     }
 
-    ConcurrentBagEntry<Session> session0 = borrowSession();
-    Mechanism mechanismObj = Mechanism.get(mechanism);
-
-    try {
-      Session session = session0.value();
-      try {
-        return digestKey0(session, digestLen, mechanismObj, (SecretKey) key);
-      } catch (PKCS11Exception ex) {
-        if (ex.getErrorCode() != PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
-          throw new P11TokenException(ex.getMessage(), ex);
-        }
-
-        LOG.info("digestKey ended with ERROR CKR_USER_NOT_LOGGED_IN, login and then retry it");
-        // force the login
-        forceLogin(session);
-        try {
-          return digestKey0(session, digestLen, mechanismObj, (SecretKey) key);
-        } catch (TokenException ex2) {
-          throw new P11TokenException(ex2.getMessage(), ex2);
-        }
-      } catch (TokenException ex) {
-        throw new P11TokenException(ex.getMessage(), ex);
+    final Mechanism mechanismObj = Mechanism.get(mechanism);
+    final SecretKey secretKey = (SecretKey) key;
+    return execute("digestKey", new SessionOperation<byte[]>() {
+      @Override
+      public byte[] execute(Session session) throws TokenException {
+        return digestKey0(session, digestLen, mechanismObj, secretKey);
       }
-    } finally {
-      sessions.requite(session0);
-    }
+    });
   } // method digestKey
 
   private byte[] digestKey0(Session session, int digestLen, Mechanism mechanism, SecretKey key)
@@ -426,55 +430,56 @@ class IaikP11Slot extends P11Slot {
   byte[] sign(long mechanism, P11Params parameters, byte[] content, IaikP11Identity identity)
       throws P11TokenException {
     Args.notNull(content, "content");
+    return sign(mechanism, parameters, Collections.singletonList(content), identity).get(0);
+  } // method sign
+
+  /**
+   * Signs the contents with one borrowed session.
+   */
+  List<byte[]> sign(long mechanism, P11Params parameters, List<byte[]> contents,
+      IaikP11Identity identity) throws P11TokenException {
+    Args.notEmpty(contents, "contents");
     assertMechanismSupported(mechanism);
 
-    int expectedSignatureLen;
+    final int expectedSignatureLen = getExpectedSignatureLen(mechanism, identity);
+    final Mechanism mechanismObj = getMechanism(mechanism, parameters);
+    final Key signingKey = identity.getSigningKey();
+
+    return execute("sign", new SessionOperation<List<byte[]>>() {
+      @Override
+      public List<byte[]> execute(Session session) throws TokenException {
+        List<byte[]> signatures = new ArrayList<>(contents.size());
+        for (byte[] content : contents) {
+          signatures.add(
+              sign0(session, expectedSignatureLen, mechanismObj, content, signingKey));
+        }
+        return signatures;
+      }
+    });
+  } // method sign
+
+  private static int getExpectedSignatureLen(long mechanism, IaikP11Identity identity) {
     if (mechanism == PKCS11Constants.CKM_SHA_1_HMAC) {
-      expectedSignatureLen = 20;
+      return 20;
     } else if (mechanism == PKCS11Constants.CKM_SHA224_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_224) {
-      expectedSignatureLen = 28;
+      return 28;
     } else if (mechanism == PKCS11Constants.CKM_SHA256_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_256) {
-      expectedSignatureLen = 32;
+      return 32;
     } else if (mechanism == PKCS11Constants.CKM_SHA384_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_384) {
-      expectedSignatureLen = 48;
+      return 48;
     } else if (mechanism == PKCS11Constants.CKM_SHA512_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_512) {
-      expectedSignatureLen = 64;
+      return 64;
     } else if (mechanism == PKCS11Constants.CKM_VENDOR_SM2
         || mechanism == PKCS11Constants.CKM_VENDOR_SM2_SM3) {
-      expectedSignatureLen = 32;
+      return 32;
     } else {
-      expectedSignatureLen = identity.getExpectedSignatureLen();
-    }
-
-    Mechanism mechanismObj = getMechanism(mechanism, parameters);
-    Key signingKey = identity.getSigningKey();
-
-    ConcurrentBagEntry<Session> session0 = borrowSession();
-    try {
-      Session session = session0.value();
-      try {
-        return sign0(session, expectedSignatureLen, mechanismObj, content, signingKey);
-      } catch (PKCS11Exception ex) {
-        long errorCode = ex.getErrorCode();
-        if (errorCode == PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
-          LOG.info("sign ended with ERROR CKR_USER_NOT_LOGGED_IN, login and then retry it");
-          // force the login
-          forceLogin(session);
-          return sign0(session, expectedSignatureLen, mechanismObj, content, signingKey);
-        } else {
-          throw ex;
-        }
-      } finally {
-        sessions.requite(session0);
-      }
-    } catch (TokenException ex) {
-      throw new P11TokenException(ex.getMessage(), ex);
+      return identity.getExpectedSignatureLen();
     }
-  } // method sign
+  } // method getExpectedSignatureLen
 
   private byte[] sign0(Session session, int expectedSignatureLen, Mechanism mechanism,
       byte[] content, Key signingKey) throws TokenException {
@@ -531,6 +536,9 @@ class IaikP11Slot extends P11Slot {
     return ret;
   } // method getMechanism
 
+  /**
+   * Opens a new session. The caller is responsible to count the session.
+   */
   private Session openSession() throws P11TokenException {
     Session session;
     try {
@@ -539,27 +547,115 @@ class IaikP11Slot extends P11Slot {
     } catch (TokenException ex) {
       throw new P11TokenException(ex.getMessage(), ex);
     }
-    countSessions.incrementAndGet();
     return session;
   } // method openSession
 
-  private ConcurrentBagEntry<Session> borrowSession() throws P11TokenException {
-    ConcurrentBagEntry<Session> session = null;
-    synchronized (sessions) {
-      if (countSessions.get() < maxSessionCount) {
-        try {
-          session = sessions.borrow(1, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
-        }
+  /**
+   * Reserves the count for a new session without lock.
+   *
+   * @return whether the count is reserved, namely the maximal number of sessions is not reached.
+   */
+  private boolean reserveSessionCount() {
+    while (true) {
+      long count = countSessions.get();
+      if (count >= maxSessionCount) {
+        return false;
+      }
+
+      if (countSessions.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  } // method reserveSessionCount
+
+  private boolean addNewSession() throws P11TokenException {
+    if (!reserveSessionCount()) {
+      return false;
+    }
+
+    Session session;
+    try {
+      session = openSession();
+    } catch (P11TokenException ex) {
+      countSessions.decrementAndGet();
+      throw ex;
+    }
+
+    sessions.add(new ConcurrentBagEntry<>(session));
+    return true;
+  } // method addNewSession
 
-        if (session == null) {
-          // create new session
-          sessions.add(new ConcurrentBagEntry<>(openSession()));
+  private void prewarmSessions() {
+    try {
+      while (addNewSession()) {
+        // open the next session
+      }
+    } catch (P11TokenException ex) {
+      LogUtil.warn(LOG, ex, "could not prewarm sessions");
+    }
+    LOG.info("prewarmed {} sessions", countSessions.get());
+  } // method prewarmSessions
+
+  /**
+   * Executes the operation with a borrowed session. If the operation fails with
+   * CKR_USER_NOT_LOGGED_IN, e.g. because the token has been reset or another application has
+   * logged out, the user is logged in again and the operation is retried once.
+   *
+   * @param operationName
+   *          Name of the operation, used in the log.
+   * @param operation
+   *          The operation.
+   * @return the result of the operation.
+   * @throws P11TokenException
+   *           if the operation failed.
+   */
+  private <T> T execute(String operationName, SessionOperation<T> operation)
+      throws P11TokenException {
+    ConcurrentBagEntry<Session> bagEntry = borrowSession();
+    try {
+      Session session = bagEntry.value();
+      try {
+        return operation.execute(session);
+      } catch (TokenException | P11TokenException ex) {
+        if (!isUserNotLoggedIn(ex)) {
+          throw ex;
         }
+
+        LOG.info("{} ended with ERROR CKR_USER_NOT_LOGGED_IN, login and then retry it",
+            operationName);
+        // force the login
+        loggedIn = false;
+        forceLogin(session);
+        return operation.execute(session);
+      }
+    } catch (TokenException ex) {
+      throw new P11TokenException(ex.getMessage(), ex);
+    } finally {
+      sessions.requite(bagEntry);
+    }
+  } // method execute
+
+  private static boolean isUserNotLoggedIn(Throwable th) {
+    for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+      if (cause instanceof PKCS11Exception && ((PKCS11Exception) cause).getErrorCode()
+          == PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
+        return true;
       }
     }
+    return false;
+  } // method isUserNotLoggedIn
+
+  private ConcurrentBagEntry<Session> borrowSession() throws P11TokenException {
+    ConcurrentBagEntry<Session> session = null;
+    try {
+      session = sessions.borrow(1, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
+    }
 
     if (session == null) {
+      // no idle session, create a new one if the maximal number is not reached yet.
+      addNewSession();
+
       try {
         session = sessions.borrow(timeOutWaitNewSession, TimeUnit.MILLISECONDS);
       } catch (InterruptedException ex) { // CHECKSTYLE:SKIP
@@ -570,7 +666,14 @@ class IaikP11Slot extends P11Slot {
       throw new P11TokenException("no idle session");
     }
 
-    login(session.value());
+    if (!loggedIn) {
+      try {
+        login(session.value());
+      } catch (P11TokenException ex) {
+        sessions.requite(session);
+        throw ex;
+      }
+    }
     return session;
   } // method borrowSession
 
@@ -589,19 +692,27 @@ class IaikP11Slot extends P11Slot {
         }
         this.password = password;
       }
+      loggedIn = true;
     } catch (PKCS11Exception ex) {
       // 0x100: user already logged in
       if (ex.getErrorCode() != 0x100) {
         throw new P11TokenException(ex.getMessage(), ex);
       }
+      loggedIn = true;
     } catch (TokenException ex) {
       throw new P11TokenException(ex.getMessage(), ex);
     }
   } // method firstLogin
 
-  private void login(Session session) throws P11TokenException {
+  private synchronized void login(Session session) throws P11TokenException {
+    if (loggedIn) {
+      // logged in by another thread
+      return;
+    }
+
     boolean isSessionLoggedIn = checkSessionLoggedIn(session);
     if (isSessionLoggedIn) {
+      loggedIn = true;
       return;
     }
 
@@ -615,6 +726,7 @@ class IaikP11Slot extends P11Slot {
 
     LOG.debug("loginRequired: {}", loginRequired);
     if (!loginRequired) {
+      loggedIn = true;
       return;
     }
 
@@ -625,9 +737,10 @@ class IaikP11Slot extends P11Slot {
         singleLogin(session, singlePwd);
       }
     }
+    loggedIn = true;
   } // method login
 
-  private void forceLogin(Session session) throws P11TokenException {
+  private synchronized void forceLogin(Session session) throws P11TokenException {
     if (CollectionUtil.isEmpty(password)) {
       LOG.info("verify on PKCS11Module with NULL PIN");
       singleLogin(session, null);
@@ -637,6 +750,7 @@ class IaikP11Slot extends P11Slot {
         singleLogin(session, singlePwd);
       }
     }
+    loggedIn = true;
   } // method forceLogin
 
   private void singleLogin(Session session, char[] pin) throws P11TokenException {
@@ -950,82 +1064,81 @@ class IaikP11Slot extends P11Slot {
     return num;
   } // method removeObjects
 
-  private int removeObjects(Storage template, String desc) throws P11TokenException {
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
+  private int removeObjects(final Storage template, String desc) throws P11TokenException {
     try {
-      Session session = bagEntry.value();
-      List<Storage> objects = getObjects(session, template);
-      for (Storage obj : objects) {
-        if (vendor == Vendor.YUBIKEY) {
-          if (obj instanceof X509PublicKeyCertificate) {
-            throw new P11TokenException("cannot delete certificates in Yubikey token");
-          } else if (obj instanceof PrivateKey
-              || obj instanceof PublicKey) {
-            // do nothing: In yubikey, the triple (private key, public key, certificate) will be
-            // deleted only be deleting the certificate.
+      return execute("removeObjects", new SessionOperation<Integer>() {
+        @Override
+        public Integer execute(Session session) throws TokenException, P11TokenException {
+          List<Storage> objects = getObjects(session, template);
+          for (Storage obj : objects) {
+            if (vendor == Vendor.YUBIKEY) {
+              if (obj instanceof X509PublicKeyCertificate) {
+                throw new P11TokenException("cannot delete certificates in Yubikey token");
+              } else if (obj instanceof PrivateKey
+                  || obj instanceof PublicKey) {
+                // do nothing: In yubikey, the triple (private key, public key, certificate)
+                // will be deleted only be deleting the certificate.
+              }
+            }
+
+            session.destroyObject(obj);
           }
+          return objects.size();
         }
-
-        session.destroyObject(obj);
+      });
+    } catch (P11TokenException ex) {
+      if (ex.getCause() instanceof TokenException) {
+        LogUtil.error(LOG, ex.getCause(), "could not remove " + desc);
       }
-      return objects.size();
-    } catch (TokenException ex) {
-      LogUtil.error(LOG, ex, "could not remove " + desc);
-      throw new P11TokenException(ex.getMessage(), ex);
-    } finally {
-      sessions.requite(bagEntry);
+      throw ex;
     }
   } // method removeObjects
 
   @Override
-  protected void removeCerts0(P11ObjectIdentifier objectId) throws P11TokenException {
+  protected void removeCerts0(final P11ObjectIdentifier objectId) throws P11TokenException {
     if (vendor == Vendor.YUBIKEY) {
       throw new P11TokenException("Unsupported operation removeCerts() in yubikey token");
     }
 
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
-    try {
-      Session session = bagEntry.value();
-      X509PublicKeyCertificate[] existingCerts = getCertificateObjects(session, objectId.getId(),
-          objectId.getLabelChars());
-      if (existingCerts == null || existingCerts.length == 0) {
-        LOG.warn("could not find certificates " + objectId);
-        return;
-      }
+    execute("removeCerts", new SessionOperation<Void>() {
+      @Override
+      public Void execute(Session session) throws TokenException, P11TokenException {
+        X509PublicKeyCertificate[] existingCerts = getCertificateObjects(session,
+            objectId.getId(), objectId.getLabelChars());
+        if (existingCerts == null || existingCerts.length == 0) {
+          LOG.warn("could not find certificates " + objectId);
+          return null;
+        }
 
-      for (X509PublicKeyCertificate cert : existingCerts) {
-        session.destroyObject(cert);
+        for (X509PublicKeyCertificate cert : existingCerts) {
+          session.destroyObject(cert);
+        }
+        return null;
       }
-    } catch (TokenException ex) {
-      throw new P11TokenException(ex.getMessage(), ex);
-    } finally {
-      sessions.requite(bagEntry);
-    }
+    });
   } // method removeCerts0
 
   @Override
-  protected P11ObjectIdentifier addCert0(X509Certificate cert, P11NewObjectControl control)
-      throws P11TokenException {
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
-    try {
-      Session session = bagEntry.value();
-      X509PublicKeyCertificate newCertTemp =
-          createPkcs11Template(session, new X509Cert(cert), control);
-      X509PublicKeyCertificate newCert =
-          (X509PublicKeyCertificate) session.createObject(newCertTemp);
-
-      return new P11ObjectIdentifier(newCert.getId().getByteArrayValue(),
-          new String(newCert.getLabel().getCharArrayValue()));
-    } catch (TokenException ex) {
-      throw new P11TokenException(ex.getMessage(), ex);
-    } finally {
-      sessions.requite(bagEntry);
-    }
+  protected P11ObjectIdentifier addCert0(final X509Certificate cert,
+      final P11NewObjectControl control) throws P11TokenException {
+    return execute("addCert", new SessionOperation<P11ObjectIdentifier>() {
+      @Override
+      public P11ObjectIdentifier execute(Session session)
+          throws TokenException, P11TokenException {
+        X509PublicKeyCertificate newCertTemp =
+            createPkcs11Template(session, new X509Cert(cert), control);
+        X509PublicKeyCertificate newCert =
+            (X509PublicKeyCertificate) session.createObject(newCertTemp);
+
+        return new P11ObjectIdentifier(newCert.getId().getByteArrayValue(),
+            new String(newCert.getLabel().getCharArrayValue()));
+      }
+    });
   } // method addCert0
 
   @Override
-  protected P11Identity generateSecretKey0(long keyType, int keysize, P11NewKeyControl control)
-      throws P11TokenException {
+  protected P11Identity generateSecretKey0(long keyType, int keysize,
+      final P11NewKeyControl control) throws P11TokenException {
     if (keysize % 8 != 0) {
       throw new IllegalArgumentException("keysize is not multiple of 8: " + keysize);
     }
@@ -1054,10 +1167,11 @@ class IaikP11Slot extends P11Slot {
 
     assertMechanismSupported(mech);
 
-    char[] labelChars = newObjectConf.isIgnoreLabel() ? null : control.getLabel().toCharArray();
-    byte[] id = control.getId();
+    final char[] labelChars =
+        newObjectConf.isIgnoreLabel() ? null : control.getLabel().toCharArray();
+    final byte[] id = control.getId();
 
-    ValuedSecretKey template = new ValuedSecretKey(keyType);
+    final ValuedSecretKey template = new ValuedSecretKey(keyType);
 
     template.getToken().setBooleanValue(true);
     if (labelChars != null) {
@@ -1098,48 +1212,45 @@ class IaikP11Slot extends P11Slot {
 
     template.getValueLen().setLongValue((long) (keysize / 8));
 
-    Mechanism mechanism = Mechanism.get(mech);
-    SecretKey key;
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
-    try {
-      Session session = bagEntry.value();
-      if (labelChars != null && labelExists(session, labelChars)) {
-        throw new IllegalArgumentException(
-            "label " + control.getLabel() + " exists, please specify another one");
-      }
-
-      if (id == null) {
-        id = generateId(session);
-      }
+    final Mechanism mechanism = Mechanism.get(mech);
+    return execute("generateSecretKey", new SessionOperation<P11Identity>() {
+      @Override
+      public P11Identity execute(Session session) throws P11TokenException {
+        if (labelChars != null && labelExists(session, labelChars)) {
+          throw new IllegalArgumentException(
+              "label " + control.getLabel() + " exists, please specify another one");
+        }
 
-      template.getId().setByteArrayValue(id);
+        byte[] keyId = (id == null) ? generateId(session) : id;
+        template.getId().setByteArrayValue(keyId);
 
-      try {
-        key = (SecretKey) session.generateKey(mechanism, template);
-      } catch (TokenException ex) {
-        throw new P11TokenException("could not generate generic secret key using "
-            + mechanism.getName(), ex);
-      }
+        SecretKey key;
+        try {
+          key = (SecretKey) session.generateKey(mechanism, template);
+        } catch (TokenException ex) {
+          throw new P11TokenException("could not generate generic secret key using "
+              + mechanism.getName(), ex);
+        }
 
-      labelChars = key.getLabel().getCharArrayValue();
+        char[] keyLabel = key.getLabel().getCharArrayValue();
 
-      P11ObjectIdentifier objId = new P11ObjectIdentifier(id, new String(labelChars));
-      P11IdentityId entityId = new P11IdentityId(slotId, objId, null, null);
+        P11ObjectIdentifier objId = new P11ObjectIdentifier(keyId, new String(keyLabel));
+        P11IdentityId entityId = new P11IdentityId(slotId, objId, null, null);
 
-      return new IaikP11Identity(this, entityId, key);
-    } finally {
-      sessions.requite(bagEntry);
-    }
+        return new IaikP11Identity(IaikP11Slot.this, entityId, key);
+      }
+    });
   } // method generateSecretKey0
 
   @Override
-  protected P11Identity importSecretKey0(long keyType, byte[] keyValue, P11NewKeyControl control)
-      throws P11TokenException {
+  protected P11Identity importSecretKey0(long keyType, byte[] keyValue,
+      final P11NewKeyControl control) throws P11TokenException {
 
-    ValuedSecretKey template = new ValuedSecretKey(keyType);
+    final ValuedSecretKey template = new ValuedSecretKey(keyType);
     template.getToken().setBooleanValue(true);
 
-    char[] labelChars = newObjectConf.isIgnoreLabel() ? null : control.getLabel().toCharArray();
+    final char[] labelChars =
+        newObjectConf.isIgnoreLabel() ? null : control.getLabel().toCharArray();
     if (labelChars != null) {
       template.getLabel().setCharArrayValue(labelChars);
     }
@@ -1178,39 +1289,38 @@ class IaikP11Slot extends P11Slot {
       }
     }
 
-    SecretKey key;
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
-    try {
-      Session session = bagEntry.value();
-      if (labelChars != null && labelExists(session, labelChars)) {
-        throw new IllegalArgumentException(
-            "label " + control.getLabel() + " exists, please specify another one");
-      }
+    return execute("importSecretKey", new SessionOperation<P11Identity>() {
+      @Override
+      public P11Identity execute(Session session) throws P11TokenException {
+        if (labelChars != null && labelExists(session, labelChars)) {
+          throw new IllegalArgumentException(
+              "label " + control.getLabel() + " exists, please specify another one");
+        }
 
-      byte[] id = control.getId();
-      if (id == null) {
-        id = generateId(session);
-      }
+        byte[] keyId = control.getId();
+        if (keyId == null) {
+          keyId = generateId(session);
+        }
 
-      if (id != null) {
-        template.getId().setByteArrayValue(id);
-      }
+        if (keyId != null) {
+          template.getId().setByteArrayValue(keyId);
+        }
 
-      try {
-        key = (SecretKey) session.createObject(template);
-      } catch (TokenException ex) {
-        throw new P11TokenException("could not create secret key", ex);
-      }
+        SecretKey key;
+        try {
+          key = (SecretKey) session.createObject(template);
+        } catch (TokenException ex) {
+          throw new P11TokenException("could not create secret key", ex);
+        }
 
-      labelChars = key.getLabel().getCharArrayValue();
+        char[] keyLabel = key.getLabel().getCharArrayValue();
 
-      P11ObjectIdentifier objId = new P11ObjectIdentifier(id, new String(labelChars));
-      P11IdentityId entityId = new P11IdentityId(slotId, objId, null, null);
+        P11ObjectIdentifier objId = new P11ObjectIdentifier(keyId, new String(keyLabel));
+        P11IdentityId entityId = new P11IdentityId(slotId, objId, null, null);
 
-      return new IaikP11Identity(this, entityId, key);
-    } finally {
-      sessions.requite(bagEntry);
-    }
+        return new IaikP11Identity(IaikP11Slot.this, entityId, key);
+      }
+    });
   } // method importSecretKey0
 
   @Override
@@ -1529,7 +1639,7 @@ class IaikP11Slot extends P11Slot {
   } // method setKeyAttributes
 
   @Override
-  protected void updateCertificate0(P11ObjectIdentifier keyId, X509Certificate newCert)
+  protected void updateCertificate0(P11ObjectIdentifier keyId, final X509Certificate newCert)
       throws P11TokenException {
     try {
       removeCerts(keyId);
@@ -1543,17 +1653,23 @@ class IaikP11Slot extends P11Slot {
       // CHECKSTYLE:SKIP
     }
 
-    P11NewObjectControl control = new P11NewObjectControl(keyId.getId(), keyId.getLabel());
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
+    final P11NewObjectControl control =
+        new P11NewObjectControl(keyId.getId(), keyId.getLabel());
     try {
-      Session session = bagEntry.value();
-      X509PublicKeyCertificate newCertTemp =
-          createPkcs11Template(session, new X509Cert(newCert), control);
-      session.createObject(newCertTemp);
-    } catch (TokenException ex) {
-      throw new P11TokenException("could not createObject: " + ex.getMessage(), ex);
-    } finally {
-      sessions.requite(bagEntry);
+      execute("updateCertificate", new SessionOperation<Void>() {
+        @Override
+        public Void execute(Session session) throws TokenException, P11TokenException {
+          X509PublicKeyCertificate newCertTemp =
+              createPkcs11Template(session, new X509Cert(newCert), control);
+          session.createObject(newCertTemp);
+          return null;
+        }
+      });
+    } catch (P11TokenException ex) {
+      if (ex.getCause() instanceof TokenException) {
+        throw new P11TokenException("could not createObject: " + ex.getMessage(), ex.getCause());
+      }
+      throw ex;
     }
   } // method updateCertificate0
 
@@ -1583,72 +1699,72 @@ class IaikP11Slot extends P11Slot {
   } // method getCertificateObjects
 
   @Override
-  protected void removeIdentity0(P11IdentityId identityId) throws P11TokenException {
-    ConcurrentBagEntry<Session> bagEntry = borrowSession();
-    try {
-      Session session = bagEntry.value();
-      P11ObjectIdentifier keyId = identityId.getKeyId();
-      byte[] id = keyId.getId();
-      char[] label = keyId.getLabelChars();
-      SecretKey secretKey = getSecretKeyObject(session, id, label);
-      if (secretKey != null) {
-        try {
-          session.destroyObject(secretKey);
-        } catch (TokenException ex) {
-          String msg = "could not delete secret key " + keyId;
-          LogUtil.error(LOG, ex, msg);
-          throw new P11TokenException(msg);
-        }
-      }
-
-      if (vendor != Vendor.YUBIKEY) {
-        // Yubico: deletion of certificate implies the deletion of key pairs.
-        PrivateKey privKey = getPrivateKeyObject(session, id, label);
-        if (privKey != null) {
+  protected void removeIdentity0(final P11IdentityId identityId) throws P11TokenException {
+    execute("removeIdentity", new SessionOperation<Void>() {
+      @Override
+      public Void execute(Session session) throws P11TokenException {
+        P11ObjectIdentifier keyId = identityId.getKeyId();
+        byte[] id = keyId.getId();
+        char[] label = keyId.getLabelChars();
+        SecretKey secretKey = getSecretKeyObject(session, id, label);
+        if (secretKey != null) {
           try {
-            session.destroyObject(privKey);
+            session.destroyObject(secretKey);
           } catch (TokenException ex) {
-            String msg = "could not delete private key " + keyId;
+            String msg = "could not delete secret key " + keyId;
             LogUtil.error(LOG, ex, msg);
-            throw new P11TokenException(msg);
+            throw new P11TokenException(msg, ex);
           }
         }
 
-        P11ObjectIdentifier pubKeyId = identityId.getPublicKeyId();
-        if (pubKeyId != null) {
-          PublicKey pubKey = getPublicKeyObject(session,
-              pubKeyId.getId(), pubKeyId.getLabelChars());
-          if (pubKey != null) {
+        if (vendor != Vendor.YUBIKEY) {
+          // Yubico: deletion of certificate implies the deletion of key pairs.
+          PrivateKey privKey = getPrivateKeyObject(session, id, label);
+          if (privKey != null) {
             try {
-              session.destroyObject(pubKey);
+              session.destroyObject(privKey);
             } catch (TokenException ex) {
-              String msg = "could not delete public key " + pubKeyId;
+              String msg = "could not delete private key " + keyId;
               LogUtil.error(LOG, ex, msg);
-              throw new P11TokenException(msg);
+              throw new P11TokenException(msg, ex);
+            }
+          }
+
+          P11ObjectIdentifier pubKeyId = identityId.getPublicKeyId();
+          if (pubKeyId != null) {
+            PublicKey pubKey = getPublicKeyObject(session,
+                pubKeyId.getId(), pubKeyId.getLabelChars());
+            if (pubKey != null) {
+              try {
+                session.destroyObject(pubKey);
+              } catch (TokenException ex) {
+                String msg = "could not delete public key " + pubKeyId;
+                LogUtil.error(LOG, ex, msg);
+                throw new P11TokenException(msg, ex);
+              }
             }
           }
         }
-      }
 
-      P11ObjectIdentifier certId = identityId.getCertId();
-      if (certId != null) {
-        X509PublicKeyCertificate[] certs =
-            getCertificateObjects(session, certId.getId(), certId.getLabelChars());
-        if (certs != null && certs.length > 0) {
-          for (int i = 0; i < certs.length; i++) {
-            try {
-              session.destroyObject(certs[i]);
-            } catch (TokenException ex) {
-              String msg = "could not delete certificate " + certId;
-              LogUtil.error(LOG, ex, msg);
-              throw new P11TokenException(msg);
+        P11ObjectIdentifier certId = identityId.getCertId();
+        if (certId != null) {
+          X509PublicKeyCertificate[] certs =
+              getCertificateObjects(session, certId.getId(), certId.getLabelChars());
+          if (certs != null && certs.length > 0) {
+            for (int i = 0; i < certs.length; i++) {
+              try {
+                session.destroyObject(certs[i]);
+              } catch (TokenException ex) {
+                String msg = "could not delete certificate " + certId;
+                LogUtil.error(LOG, ex, msg);
+                throw new P11TokenException(msg, ex);
+              }
             }
           }
         }
+        return null;
       }
-    } finally {
-      sessions.requite(bagEntry);
-    }
+    });
   } // method removeIdentity0
 
   private byte[] generateId(Session session) throws P11TokenException {
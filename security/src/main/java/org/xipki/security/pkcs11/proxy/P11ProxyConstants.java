@@ -76,6 +76,20 @@ public class P11ProxyConstants {
 
   public static final short ACTION_SIGN              = 0x0120;
 
+  /**
+   * Signs several messages with the same key and mechanism in one request.
+   * @since 5.3.6
+   */
+  public static final short ACTION_SIGN_BATCH        = 0x0121;
+
+  /**
+   * Default maximal number of messages in one ACTION_SIGN_BATCH request. The client splits
+   * larger batches, and the server rejects them by default. If the server is configured with
+   * a lower limit, the client halves the batch size until it is accepted.
+   * @since 5.3.6
+   */
+  public static final int MAX_SIGN_BATCH_SIZE        = 100;
+
   public static final short ACTION_GEN_KEYPAIR_RSA   = 0x0130;
 
   public static final short ACTION_GEN_KEYPAIR_DSA   = 0x0131;
@@ -133,6 +147,7 @@ public class P11ProxyConstants {
     actionMap.put(ACTION_GET_CERT_IDS,      "ACTION_GET_CERT_IDS");
     actionMap.put(ACTION_GET_MECHANISMS,    "ACTION_GET_MECHANISMS");
     actionMap.put(ACTION_SIGN,              "ACTION_SIGN");
+    actionMap.put(ACTION_SIGN_BATCH,        "ACTION_SIGN_BATCH");
     actionMap.put(ACTION_GEN_KEYPAIR_RSA,   "ACTION_GEN_KEYPAIR_RSA");
     actionMap.put(ACTION_GEN_KEYPAIR_DSA,   "ACTION_GEN_KEYPAIR_DSA");
     actionMap.put(ACTION_GEN_KEYPAIR_EC,    "ACTION_GEN_KEYPAIR_EC");
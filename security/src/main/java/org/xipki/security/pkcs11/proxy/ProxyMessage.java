@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -1893,6 +1894,136 @@ public abstract class ProxyMessage extends ASN1Object {
     }
   } // class SignTemplate
 
+  /**
+   * Definition of SignBatchTemplate.
+   *
+   * <pre>
+   * SignBatchTemplate ::= SEQUENCE {
+   *     slotId         SlotIdentifier,
+   *     objectId       ObjectIdentifier,
+   *     mechanism      Mechanism,
+   *     messages       SEQUENCE OF OCTET STRING }
+   * </pre>
+   *
+   * <p>The response is SEQUENCE OF OCTET STRING, containing the signatures in the same order
+   * as the messages.
+   *
+   * @since 5.3.6
+   */
+  public static class SignBatchTemplate extends ProxyMessage {
+
+    private final SlotIdentifier slotId;
+
+    private final ObjectIdentifier objectId;
+
+    private final Mechanism mechanism;
+
+    private final List<byte[]> messages;
+
+    private SignBatchTemplate(ASN1Sequence seq) throws BadAsn1ObjectException {
+      requireRange(seq, 4, 4);
+      int idx = 0;
+      this.slotId = SlotIdentifier.getInstance(seq.getObjectAt(idx++));
+      this.objectId = ObjectIdentifier.getInstance(seq.getObjectAt(idx++));
+      this.mechanism = Mechanism.getInstance(seq.getObjectAt(idx++));
+      this.messages = getOctetStrings(seq.getObjectAt(idx++));
+    }
+
+    public SignBatchTemplate(SlotIdentifier slotId, ObjectIdentifier objectId,
+        long mechanism, P11Params parameter, List<byte[]> messages) {
+      this.slotId = Args.notNull(slotId, "slotId");
+      this.objectId = Args.notNull(objectId, "objectId");
+      this.messages = Args.notEmpty(messages, "messages");
+      this.mechanism = new Mechanism(mechanism, parameter);
+    }
+
+    public static SignBatchTemplate getInstance(Object obj) throws BadAsn1ObjectException {
+      if (obj == null || obj instanceof SignBatchTemplate) {
+        return (SignBatchTemplate) obj;
+      }
+
+      try {
+        if (obj instanceof ASN1Sequence) {
+          return new SignBatchTemplate((ASN1Sequence) obj);
+        } else if (obj instanceof byte[]) {
+          return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+        } else {
+          throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+        }
+      } catch (IOException | IllegalArgumentException ex) {
+        throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(),
+            ex);
+      }
+    }
+
+    @Override
+    public ASN1Primitive toASN1Primitive() {
+      ASN1EncodableVector vector = new ASN1EncodableVector();
+      vector.add(slotId);
+      vector.add(objectId);
+      vector.add(mechanism);
+      vector.add(encodeOctetStrings(messages));
+      return new DERSequence(vector);
+    }
+
+    public List<byte[]> getMessages() {
+      return messages;
+    }
+
+    public SlotIdentifier getSlotId() {
+      return slotId;
+    }
+
+    public ObjectIdentifier getObjectId() {
+      return objectId;
+    }
+
+    public Mechanism getMechanism() {
+      return mechanism;
+    }
+  } // class SignBatchTemplate
+
+  /**
+   * Encodes the byte arrays as SEQUENCE OF OCTET STRING.
+   *
+   * @param octetStrings
+   *          Content of the OCTET STRINGs.
+   * @return the encoded ASN.1 object.
+   */
+  public static ASN1Sequence encodeOctetStrings(List<byte[]> octetStrings) {
+    ASN1EncodableVector vector = new ASN1EncodableVector();
+    for (byte[] bytes : octetStrings) {
+      vector.add(new DEROctetString(bytes));
+    }
+    return new DERSequence(vector);
+  }
+
+  /**
+   * Parses the SEQUENCE OF OCTET STRING.
+   *
+   * @param object
+   *          SEQUENCE OF OCTET STRING.
+   * @return the content of the OCTET STRINGs.
+   * @throws BadAsn1ObjectException
+   *           if the object is not SEQUENCE OF OCTET STRING.
+   */
+  public static List<byte[]> getOctetStrings(ASN1Encodable object)
+      throws BadAsn1ObjectException {
+    ASN1Sequence seq;
+    try {
+      seq = ASN1Sequence.getInstance(object);
+    } catch (IllegalArgumentException ex) {
+      throw new BadAsn1ObjectException("invalid object Sequence: " + ex.getMessage(), ex);
+    }
+
+    final int n = seq.size();
+    List<byte[]> ret = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      ret.add(getOctetStringBytes(seq.getObjectAt(i)));
+    }
+    return ret;
+  } // method getOctetStrings
+
   private static void requireRange(ASN1Sequence seq, int minSize, int maxSize)
       throws BadAsn1ObjectException {
     int size = seq.size();
@@ -0,0 +1,253 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.security.pkcs11.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * HTTP client of the PKCS#11 proxy based on {@link HttpURLConnection}.
+ *
+ * <p>The response body is always read completely and closed, also for failed requests, so that
+ * the JDK can reuse the persistent (keep-alive) connection for further requests, and the TCP
+ * and TLS handshakes are not repeated for every request. The JDK keeps at most
+ * {@code http.maxConnections} (default 5) idle connections per server. The system property
+ * should be not less than the maximal number of concurrent requests.
+ *
+ * <p>The concurrency is limited by the maximal number of connections. The HTTP proxy configured
+ * in the JVM is applied.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+class ProxyP11Connector implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Connector.class);
+
+  private static final String MIMETYPE = "application/x-xipki-pkcs11";
+
+  private final URL serverUrl;
+
+  private final SSLSocketFactory sslSocketFactory;
+
+  private final HostnameVerifier hostnameVerifier;
+
+  private final int connectTimeout;
+
+  private final int readTimeout;
+
+  private final Semaphore permits;
+
+  private volatile boolean closed;
+
+  /**
+   * Constructor.
+   *
+   * @param serverUrl
+   *          URL of the PKCS#11 proxy.
+   * @param sslSocketFactory
+   *          SSL socket factory, only used for the URL with scheme https. If {@code null}, the
+   *          default of the JDK is used.
+   * @param hostnameVerifier
+   *          Hostname verifier. If {@code null}, the default of the JDK is used.
+   * @param maxConnections
+   *          Maximal number of concurrent requests.
+   * @param connectTimeout
+   *          Timeout to connect the server in milliseconds.
+   * @param readTimeout
+   *          Timeout to read the response in milliseconds.
+   */
+  ProxyP11Connector(URL serverUrl, SSLSocketFactory sslSocketFactory,
+      HostnameVerifier hostnameVerifier, int maxConnections, int connectTimeout,
+      int readTimeout) {
+    this.serverUrl = Args.notNull(serverUrl, "serverUrl");
+    String protocol = serverUrl.getProtocol().toLowerCase(Locale.ROOT);
+    if (!("https".equals(protocol) || "http".equals(protocol))) {
+      throw new IllegalArgumentException("unsupported protocol " + protocol);
+    }
+
+    this.sslSocketFactory = sslSocketFactory;
+    this.hostnameVerifier = hostnameVerifier;
+    this.connectTimeout = Args.notNegative(connectTimeout, "connectTimeout");
+    this.readTimeout = Args.notNegative(readTimeout, "readTimeout");
+    this.permits = new Semaphore(Args.positive(maxConnections, "maxConnections"), true);
+  } // constructor
+
+  /**
+   * Sends the request and returns the response.
+   *
+   * @param request
+   *          Request.
+   * @param idempotent
+   *          Whether the request can be resent safely. If true, the request is resent once if
+   *          the connection has been closed or reset by the server before the response is
+   *          received.
+   * @return the response.
+   * @throws IOException
+   *           if error occurs while sending the request or receiving the response.
+   */
+  byte[] send(byte[] request, boolean idempotent) throws IOException {
+    if (closed) {
+      throw new IOException("connector closed");
+    }
+
+    try {
+      if (!permits.tryAcquire(readTimeout == 0 ? Long.MAX_VALUE : readTimeout,
+          TimeUnit.MILLISECONDS)) {
+        throw new IOException("too many concurrent requests to the PKCS#11 proxy");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for the PKCS#11 proxy");
+    }
+
+    try {
+      try {
+        return exchange(request);
+      } catch (IOException ex) {
+        if (!(idempotent && isStaleConnection(ex))) {
+          throw ex;
+        }
+
+        LOG.debug("connection closed by the server ({}), resend the request", ex.getMessage());
+        return exchange(request);
+      }
+    } finally {
+      permits.release();
+    }
+  } // method send
+
+  /**
+   * Whether the exception indicates that the server has closed the connection, e.g. an idle
+   * persistent connection. Timeouts are not included, since the server may still process the
+   * request.
+   */
+  private static boolean isStaleConnection(IOException ex) {
+    return ex instanceof EOFException || ex instanceof SSLException
+        || (ex instanceof SocketException && !(ex instanceof ConnectException));
+  } // method isStaleConnection
+
+  private byte[] exchange(byte[] request) throws IOException {
+    HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
+
+    if (httpUrlConnection instanceof HttpsURLConnection) {
+      if (sslSocketFactory != null) {
+        ((HttpsURLConnection) httpUrlConnection).setSSLSocketFactory(sslSocketFactory);
+      }
+
+      if (hostnameVerifier != null) {
+        ((HttpsURLConnection) httpUrlConnection).setHostnameVerifier(hostnameVerifier);
+      }
+    }
+
+    httpUrlConnection.setConnectTimeout(connectTimeout);
+    httpUrlConnection.setReadTimeout(readTimeout);
+    httpUrlConnection.setDoOutput(true);
+    httpUrlConnection.setUseCaches(false);
+    // the request is not resent by the JDK, see send(byte[], boolean).
+    httpUrlConnection.setFixedLengthStreamingMode(request.length);
+    httpUrlConnection.setRequestMethod("POST");
+    httpUrlConnection.setRequestProperty("Content-Type", MIMETYPE);
+
+    try {
+      OutputStream outputstream = httpUrlConnection.getOutputStream();
+      outputstream.write(request);
+      outputstream.flush();
+      outputstream.close();
+
+      int responseCode = httpUrlConnection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        drainAndClose(httpUrlConnection.getErrorStream());
+        throw new IOException("bad response: code=" + responseCode
+            + ", message=" + httpUrlConnection.getResponseMessage());
+      }
+
+      InputStream inputstream = httpUrlConnection.getInputStream();
+      byte[] response = readAndClose(inputstream);
+
+      String responseContentType = httpUrlConnection.getContentType();
+      if (responseContentType == null || !responseContentType.equalsIgnoreCase(MIMETYPE)) {
+        throw new IOException("bad response: mime type " + responseContentType
+            + " is not supported!");
+      }
+
+      return response;
+    } catch (IOException ex) {
+      // free the connection, the broken one will not be reused by the JDK
+      drainAndClose(httpUrlConnection.getErrorStream());
+      throw ex;
+    }
+  } // method exchange
+
+  private static byte[] readAndClose(InputStream inputstream) throws IOException {
+    try {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int read;
+      while ((read = inputstream.read(buf)) != -1) {
+        bout.write(buf, 0, read);
+      }
+      return bout.toByteArray();
+    } finally {
+      inputstream.close();
+    }
+  } // method readAndClose
+
+  /**
+   * Reads the remaining body completely and closes the stream, so that the connection can be
+   * reused by the JDK.
+   */
+  private static void drainAndClose(InputStream inputstream) {
+    if (inputstream == null) {
+      return;
+    }
+
+    try {
+      readAndClose(inputstream);
+    } catch (IOException ex) {
+      LOG.debug("could not read the response body: {}", ex.getMessage());
+    }
+  } // method drainAndClose
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+}
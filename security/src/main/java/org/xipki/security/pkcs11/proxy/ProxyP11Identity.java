@@ -19,9 +19,13 @@ package org.xipki.security.pkcs11.proxy;
 
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.DEROctetString;
+import org.xipki.security.BadAsn1ObjectException;
 import org.xipki.security.pkcs11.P11Identity;
 import org.xipki.security.pkcs11.P11IdentityId;
 import org.xipki.security.pkcs11.P11Params;
@@ -55,6 +59,83 @@ class ProxyP11Identity extends P11Identity {
   @Override
   protected byte[] sign0(long mechanism, P11Params parameters, byte[] content)
       throws P11TokenException {
+    ProxyMessage.SignTemplate signTemplate = new ProxyMessage.SignTemplate(
+        ((ProxyP11Slot) slot).getAsn1SlotId(), asn1KeyId, mechanism, toAsn1Params(parameters),
+        content);
+    byte[] result = ((ProxyP11Slot) slot).getModule().send(P11ProxyConstants.ACTION_SIGN,
+        signTemplate);
+
+    ASN1OctetString octetString;
+    try {
+      octetString = DEROctetString.getInstance(result);
+    } catch (IllegalArgumentException ex) {
+      throw new P11TokenException("the returned result is not OCTET STRING");
+    }
+
+    return (octetString == null) ? null : octetString.getOctets();
+  } // method sign0
+
+  /**
+   * Signs the contents in requests of at most {@link ProxyP11Module#getMaxSignBatchSize()}
+   * contents. If the server rejects a batch as too large, the batch size is halved. If the
+   * server does not support the batch sign, the contents are signed one by one.
+   */
+  @Override
+  protected List<byte[]> sign0(long mechanism, P11Params parameters, List<byte[]> contents)
+      throws P11TokenException {
+    ProxyP11Module module = ((ProxyP11Slot) slot).getModule();
+    if (contents.size() == 1 || !module.isSignBatchSupported()) {
+      return super.sign0(mechanism, parameters, contents);
+    }
+
+    final int maxSize = module.getMaxSignBatchSize();
+    if (contents.size() > maxSize) {
+      List<byte[]> signatures = new ArrayList<>(contents.size());
+      for (int from = 0; from < contents.size(); from += maxSize) {
+        List<byte[]> batch = contents.subList(from, Math.min(contents.size(), from + maxSize));
+        signatures.addAll(sign0(mechanism, parameters, batch));
+      }
+      return signatures;
+    }
+
+    ProxyMessage.SignBatchTemplate template = new ProxyMessage.SignBatchTemplate(
+        ((ProxyP11Slot) slot).getAsn1SlotId(), asn1KeyId, mechanism, toAsn1Params(parameters),
+        contents);
+
+    byte[] result;
+    try {
+      result = module.send(P11ProxyConstants.ACTION_SIGN_BATCH, template);
+    } catch (P11TokenException ex) {
+      if (!module.isSignBatchSupported()) {
+        // server does not support the batch sign
+        return super.sign0(mechanism, parameters, contents);
+      }
+
+      if (ex instanceof ProxyP11Module.ErrorResponseException
+          && ((ProxyP11Module.ErrorResponseException) ex).getRc()
+              == P11ProxyConstants.RC_BAD_REQUEST) {
+        // server is configured with a lower maximal batch size
+        module.signBatchRejected(contents.size());
+        return sign0(mechanism, parameters, contents);
+      }
+      throw ex;
+    }
+
+    List<byte[]> signatures;
+    try {
+      signatures = ProxyMessage.getOctetStrings(ASN1Sequence.getInstance(result));
+    } catch (IllegalArgumentException | BadAsn1ObjectException ex) {
+      throw new P11TokenException("the returned result is not SEQUENCE OF OCTET STRING");
+    }
+
+    if (signatures.size() != contents.size()) {
+      throw new P11TokenException("expected " + contents.size() + " signatures, but received "
+          + signatures.size());
+    }
+    return signatures;
+  } // method sign0
+
+  private static ProxyMessage.P11Params toAsn1Params(P11Params parameters) {
     ProxyMessage.P11Params p11Param = null;
     if (parameters != null) {
       if (parameters instanceof P11RSAPkcsPssParams) {
@@ -71,21 +152,8 @@ class ProxyP11Identity extends P11Identity {
         throw new IllegalArgumentException("unkown parameter 'parameters'");
       }
     }
-
-    ProxyMessage.SignTemplate signTemplate = new ProxyMessage.SignTemplate(
-        ((ProxyP11Slot) slot).getAsn1SlotId(), asn1KeyId, mechanism, p11Param, content);
-    byte[] result = ((ProxyP11Slot) slot).getModule().send(P11ProxyConstants.ACTION_SIGN,
-        signTemplate);
-
-    ASN1OctetString octetString;
-    try {
-      octetString = DEROctetString.getInstance(result);
-    } catch (IllegalArgumentException ex) {
-      throw new P11TokenException("the returned result is not OCTET STRING");
-    }
-
-    return (octetString == null) ? null : octetString.getOctets();
-  } // method sign0
+    return p11Param;
+  } // method toAsn1Params
 
   @Override
   protected byte[] digestSecretKey0(long mechanism) throws P11TokenException {
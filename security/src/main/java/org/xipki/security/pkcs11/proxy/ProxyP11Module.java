@@ -17,12 +17,8 @@
 
 package org.xipki.security.pkcs11.proxy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyManagementException;
@@ -30,12 +26,12 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
 
 import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
 import org.bouncycastle.asn1.ASN1Encodable;
@@ -85,11 +81,51 @@ public class ProxyP11Module extends P11Module {
 
   private static final String PROP_SSL_HOStNAMEVERIFIER = "ssl.hostnameVerifier";
 
-  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
+  private static final String PROP_MAX_CONNECTIONS = "maxConnections";
+
+  private static final String PROP_CONNECT_TIMEOUT = "connectTimeout";
+
+  private static final String PROP_READ_TIMEOUT = "readTimeout";
+
+  // the same as the default of the system property http.maxConnections
+  private static final int DFLT_MAX_CONNECTIONS = 5;
+
+  private static final int DFLT_CONNECT_TIMEOUT = 10000; // 10 seconds
+
+  private static final int DFLT_READ_TIMEOUT = 60000; // 60 seconds
 
-  private static final String REQUEST_MIMETYPE = "application/x-xipki-pkcs11";
+  /**
+   * Actions which do not change the token and can be resent safely.
+   */
+  private static final Set<Short> IDEMPOTENT_ACTIONS = new HashSet<>(Arrays.asList(
+      P11ProxyConstants.ACTION_NOPE, P11ProxyConstants.ACTION_GET_SERVER_CAPS,
+      P11ProxyConstants.ACTION_GET_MECHANISMS, P11ProxyConstants.ACTION_GET_PUBLICKEY,
+      P11ProxyConstants.ACTION_GET_CERT, P11ProxyConstants.ACTION_GET_SLOT_IDS,
+      P11ProxyConstants.ACTION_GET_IDENTITY_IDS, P11ProxyConstants.ACTION_GET_CERT_IDS,
+      P11ProxyConstants.ACTION_GET_PUBLICKEY_IDS, P11ProxyConstants.ACTION_SIGN,
+      P11ProxyConstants.ACTION_SIGN_BATCH, P11ProxyConstants.ACTION_DIGEST_SECRETKEY));
+
+  /**
+   * Exception thrown if the server returns an error code.
+   */
+  static class ErrorResponseException extends P11TokenException {
 
-  private static final String RESPONSE_MIMETYPE = "application/x-xipki-pkcs11";
+    private static final long serialVersionUID = 1L;
+
+    private final short rc;
+
+    ErrorResponseException(short rc) {
+      super("server returned RC " + P11ProxyConstants.getReturnCodeName(rc));
+      this.rc = rc;
+    }
+
+    short getRc() {
+      return rc;
+    }
+
+  } // class ErrorResponseException
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
 
   private final Random random = new Random();
 
@@ -103,9 +139,19 @@ public class ProxyP11Module extends P11Module {
 
   private boolean readOnly;
 
-  private SSLSocketFactory sslSocketFactory;
+  /**
+   * Whether the server supports ACTION_SIGN_BATCH. Will be set to false if the server
+   * returns RC_UNSUPPORTED_ACTION for it.
+   */
+  private volatile boolean signBatchSupported = true;
+
+  /**
+   * Maximal number of messages in one ACTION_SIGN_BATCH request. Will be reduced if the
+   * server rejects a batch with RC_BAD_REQUEST.
+   */
+  private volatile int maxSignBatchSize = P11ProxyConstants.MAX_SIGN_BATCH_SIZE;
 
-  private HostnameVerifier hostnameVerifier;
+  private final ProxyP11Connector connector;
 
   private ProxyP11Module(P11ModuleConf moduleConf) throws P11TokenException {
     super(moduleConf);
@@ -171,20 +217,56 @@ public class ProxyP11Module extends P11Module {
       }
     }
 
+    SSLSocketFactory sslSocketFactory;
     try {
-      this.sslSocketFactory = builder.build().getSocketFactory();
+      sslSocketFactory = builder.build().getSocketFactory();
     } catch (KeyManagementException | NoSuchAlgorithmException ex) {
       throw new P11TokenException("could not build SSLSocketFactroy", ex);
     }
+
+    HostnameVerifier hostnameVerifier;
     try {
-      this.hostnameVerifier = HostnameVerifiers.createHostnameVerifier(sslHostnameVerifier);
+      hostnameVerifier = HostnameVerifiers.createHostnameVerifier(sslHostnameVerifier);
     } catch (ObjectCreationException ex) {
       throw new P11TokenException("could not create HostnameVerifier", ex);
     }
 
-    refresh();
+    int maxConnections = intValue(confPairs, PROP_MAX_CONNECTIONS, DFLT_MAX_CONNECTIONS);
+    int connectTimeout = intValue(confPairs, PROP_CONNECT_TIMEOUT, DFLT_CONNECT_TIMEOUT);
+    int readTimeout = intValue(confPairs, PROP_READ_TIMEOUT, DFLT_READ_TIMEOUT);
+
+    try {
+      this.connector = new ProxyP11Connector(serverUrl, sslSocketFactory, hostnameVerifier,
+          maxConnections, connectTimeout, readTimeout);
+    } catch (IllegalArgumentException ex) {
+      throw new P11TokenException("invalid configuration: " + ex.getMessage(), ex);
+    }
+
+    boolean successful = false;
+    try {
+      refresh();
+      successful = true;
+    } finally {
+      if (!successful) {
+        connector.close();
+      }
+    }
   } // constructor
 
+  private static int intValue(ConfPairs confPairs, String name, int defaultValue)
+      throws P11TokenException {
+    String str = confPairs.value(name);
+    if (str == null) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new P11TokenException("invalid " + name + ": " + str);
+    }
+  } // method intValue
+
   public static P11Module getInstance(P11ModuleConf moduleConf) throws P11TokenException {
     Args.notNull(moduleConf, "moduleConf");
     return new ProxyP11Module(moduleConf);
@@ -195,6 +277,27 @@ public class ProxyP11Module extends P11Module {
     return readOnly || super.isReadOnly();
   }
 
+  boolean isSignBatchSupported() {
+    return signBatchSupported;
+  }
+
+  int getMaxSignBatchSize() {
+    return maxSignBatchSize;
+  }
+
+  /**
+   * Reduces the maximal number of messages in one ACTION_SIGN_BATCH request after the server
+   * has rejected a batch of the given size.
+   */
+  synchronized void signBatchRejected(int batchSize) {
+    int newSize = Math.max(1, batchSize / 2);
+    if (newSize < maxSignBatchSize) {
+      LOG.info("server rejected ACTION_SIGN_BATCH with {} messages, reduce the batch size to {}",
+          batchSize, newSize);
+      maxSignBatchSize = newSize;
+    }
+  }
+
   public void refresh() throws P11TokenException {
     byte[] resp = send(P11ProxyConstants.ACTION_GET_SERVER_CAPS, null);
 
@@ -262,93 +365,28 @@ public class ProxyP11Module extends P11Module {
         LogUtil.error(LOG, th, "could not close PKCS#11 slot " + slotId);
       }
     }
-  }
 
-  protected byte[] send(byte[] request) throws IOException {
-    Args.notNull(request, "request");
-    HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
+    connector.close();
+  } // method close
 
-    if (httpUrlConnection instanceof HttpsURLConnection) {
-      if (sslSocketFactory != null) {
-        ((HttpsURLConnection) httpUrlConnection).setSSLSocketFactory(sslSocketFactory);
-      }
-
-      if (hostnameVerifier != null) {
-        ((HttpsURLConnection) httpUrlConnection).setHostnameVerifier(hostnameVerifier);
-      }
-    }
-
-    httpUrlConnection.setDoOutput(true);
-    httpUrlConnection.setUseCaches(false);
-
-    int size = request.length;
-
-    httpUrlConnection.setRequestMethod("POST");
-    httpUrlConnection.setRequestProperty("Content-Type", REQUEST_MIMETYPE);
-    httpUrlConnection.setRequestProperty("Content-Length", Integer.toString(size));
-    OutputStream outputstream = httpUrlConnection.getOutputStream();
-    outputstream.write(request);
-    outputstream.flush();
-
-    if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      try {
-        try {
-          InputStream is = httpUrlConnection.getInputStream();
-          if (is != null) {
-            is.close();
-          }
-        } catch (IOException ex) {
-          InputStream errStream = httpUrlConnection.getErrorStream();
-          if (errStream != null) {
-            errStream.close();
-          }
-        }
-      } catch (Throwable th) {
-        // ignore it
-      }
-
-      throw new IOException("bad response: code=" + httpUrlConnection.getResponseCode()
-          + ", message=" + httpUrlConnection.getResponseMessage());
-    }
-
-    InputStream inputstream = null;
-    try {
-      inputstream = httpUrlConnection.getInputStream();
-    } catch (IOException ex) {
-      InputStream errStream = httpUrlConnection.getErrorStream();
-      if (errStream != null) {
-        errStream.close();
-      }
-      throw ex;
-    }
-
-    try {
-      String responseContentType = httpUrlConnection.getContentType();
-      boolean isValidContentType = false;
-      if (responseContentType != null) {
-        if (responseContentType.equalsIgnoreCase(RESPONSE_MIMETYPE)) {
-          isValidContentType = true;
-        }
-      }
-      if (!isValidContentType) {
-        throw new IOException("bad response: mime type " + responseContentType
-            + " is not supported!");
-      }
+  protected byte[] send(byte[] request) throws IOException {
+    return send(request, false);
+  }
 
-      byte[] buf = new byte[4096];
-      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
-      do {
-        int readedByte = inputstream.read(buf);
-        if (readedByte == -1) {
-          break;
-        }
-        bytearrayoutputstream.write(buf, 0, readedByte);
-      } while (true);
-
-      return bytearrayoutputstream.toByteArray();
-    } finally {
-      inputstream.close();
-    }
+  /**
+   * Sends the request to the PKCS#11 proxy.
+   *
+   * @param request
+   *          Request.
+   * @param idempotent
+   *          Whether the request can be resent safely.
+   * @return the response.
+   * @throws IOException
+   *           if error occurs while sending the request or receiving the response.
+   */
+  protected byte[] send(byte[] request, boolean idempotent) throws IOException {
+    Args.notNull(request, "request");
+    return connector.send(request, idempotent);
   } // method send
 
   /**
@@ -407,7 +445,7 @@ public class ProxyP11Module extends P11Module {
 
     byte[] response;
     try {
-      response = send(request);
+      response = send(request, IDEMPOTENT_ACTIONS.contains(action));
     } catch (IOException ex) {
       final String msg = "could not send the request";
       LOG.error(msg + " {}", request);
@@ -428,7 +466,12 @@ public class ProxyP11Module extends P11Module {
     // RC
     short rc = IoUtil.parseShort(response, 10);
     if (rc != 0) {
-      throw new P11TokenException("server returned RC " + P11ProxyConstants.getReturnCodeName(rc));
+      if (rc == P11ProxyConstants.RC_UNSUPPORTED_ACTION
+          && action == P11ProxyConstants.ACTION_SIGN_BATCH) {
+        LOG.info("server does not support ACTION_SIGN_BATCH, sign the messages one by one");
+        signBatchSupported = false;
+      }
+      throw new ErrorResponseException(rc);
     }
 
     // Version
@@ -0,0 +1,355 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ProxyP11Connector test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class ProxyP11ConnectorTest {
+
+  private static final String MIMETYPE = "application/x-xipki-pkcs11";
+
+  /**
+   * Minimal HTTP/1.1 server, responds with the request body.
+   */
+  private static class EchoServer implements Runnable, Closeable {
+
+    private final ServerSocket serverSocket;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Number of requests answered per connection. The next request on the same connection is
+     * read and then the connection is closed without response.
+     */
+    private int requestsPerConnection = Integer.MAX_VALUE;
+
+    /**
+     * Whether to reset the connection (RST) instead of closing it normally (FIN).
+     */
+    private boolean reset;
+
+    private boolean chunked;
+
+    /**
+     * Number of requests answered with the HTTP status 500.
+     */
+    private int errors;
+
+    EchoServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread thread = new Thread(this, "p11proxy-test-server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    URL getUrl() throws IOException {
+      return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/p11proxy");
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (IOException ex) {
+          return;
+        }
+
+        connections.incrementAndGet();
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            serve(socket);
+          }
+        });
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } // method run
+
+    private void serve(Socket socket) {
+      try {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        int numRequests = 0;
+        while (true) {
+          byte[] request = readRequest(in);
+          if (request == null) {
+            return;
+          }
+
+          if (++numRequests > requestsPerConnection) {
+            if (reset) {
+              socket.setSoLinger(true, 0);
+            }
+            return;
+          }
+
+          out.write(buildResponse(request));
+          out.flush();
+        }
+      } catch (IOException ex) {
+        // connection closed by the client
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException ex) {
+          // ignore
+        }
+      }
+    } // method serve
+
+    private byte[] buildResponse(byte[] body) throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      StringBuilder sb = new StringBuilder();
+      synchronized (this) {
+        if (errors > 0) {
+          errors--;
+          byte[] error = "internal error".getBytes(StandardCharsets.US_ASCII);
+          sb.append("HTTP/1.1 500 Internal Server Error\r\nContent-Type: text/plain\r\n")
+            .append("Content-Length: ").append(error.length).append("\r\n\r\n");
+          bout.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+          bout.write(error);
+          return bout.toByteArray();
+        }
+      }
+
+      sb.append("HTTP/1.1 200 OK\r\nContent-Type: ").append(MIMETYPE).append("\r\n");
+      if (chunked) {
+        sb.append("Transfer-Encoding: chunked\r\n\r\n");
+        bout.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        int half = body.length / 2;
+        writeChunk(bout, body, 0, half);
+        writeChunk(bout, body, half, body.length - half);
+        bout.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      } else {
+        sb.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        bout.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        bout.write(body);
+      }
+      return bout.toByteArray();
+    } // method buildResponse
+
+    private static void writeChunk(OutputStream out, byte[] bytes, int off, int len)
+        throws IOException {
+      out.write((Integer.toHexString(len) + ";ext=1\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.write(bytes, off, len);
+      out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] readRequest(InputStream in) throws IOException {
+      String line = readLine(in);
+      if (line == null) {
+        return null;
+      }
+
+      int len = 0;
+      while (!(line = readLine(in)).isEmpty()) {
+        if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+          len = Integer.parseInt(line.substring("content-length:".length()).trim());
+        }
+      }
+
+      byte[] body = new byte[len];
+      int off = 0;
+      while (off < len) {
+        int read = in.read(body, off, len - off);
+        if (read == -1) {
+          throw new IOException("unexpected end of stream");
+        }
+        off += read;
+      }
+      return body;
+    } // method readRequest
+
+    private static String readLine(InputStream in) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      int ch;
+      while ((ch = in.read()) != -1) {
+        if (ch == '\n') {
+          return sb.toString().trim();
+        }
+        sb.append((char) ch);
+      }
+      return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+
+  } // class EchoServer
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      for (int i = 0; i < 5; i++) {
+        assertEcho(connector, "request " + i, false);
+      }
+      Assert.assertEquals(1, server.connections.get());
+    }
+  }
+
+  @Test
+  public void testChunked() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      server.chunked = true;
+      assertEcho(connector, "chunked request", false);
+      assertEcho(connector, "second chunked request", false);
+      Assert.assertEquals(1, server.connections.get());
+    }
+  }
+
+  @Test
+  public void testErrorResponse() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      server.errors = 1;
+      try {
+        connector.send(bytes("request 1"), true);
+        Assert.fail("IOException expected");
+      } catch (IOException ex) {
+        Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("code=500"));
+      }
+
+      // the error body has been read, the connection is reused
+      assertEcho(connector, "request 2", false);
+      Assert.assertEquals(1, server.connections.get());
+    }
+  }
+
+  @Test
+  public void testHttpProxy() throws Exception {
+    ProxySelector defaultSelector = ProxySelector.getDefault();
+    try (final EchoServer server = new EchoServer()) {
+      ProxySelector.setDefault(new ProxySelector() {
+        @Override
+        public List<Proxy> select(URI uri) {
+          return Collections.singletonList(new Proxy(Proxy.Type.HTTP,
+              new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                  server.serverSocket.getLocalPort())));
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress sa, IOException ex) {
+        }
+      });
+
+      // the host is not resolvable, the request is sent via the HTTP proxy
+      URL url = new URL("http://p11proxy.invalid/p11proxy");
+      try (ProxyP11Connector connector = new ProxyP11Connector(url, null, null, 2, 5000, 5000)) {
+        assertEcho(connector, "request", false);
+      }
+      Assert.assertEquals(1, server.connections.get());
+    } finally {
+      ProxySelector.setDefault(defaultSelector);
+    }
+  }
+
+  @Test
+  public void testReconnectAfterClose() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      server.requestsPerConnection = 1;
+      assertEcho(connector, "request 1", true);
+      // reused connection is closed by the server, the request is resent
+      assertEcho(connector, "request 2", true);
+      Assert.assertEquals(2, server.connections.get());
+    }
+  }
+
+  @Test
+  public void testReconnectAfterReset() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      server.requestsPerConnection = 1;
+      server.reset = true;
+      assertEcho(connector, "request 1", true);
+      // reused connection is reset by the server, the request is resent
+      assertEcho(connector, "request 2", true);
+      Assert.assertEquals(2, server.connections.get());
+    }
+  }
+
+  @Test
+  public void testNoResendOfNonIdempotentRequest() throws Exception {
+    try (EchoServer server = new EchoServer();
+        ProxyP11Connector connector = createConnector(server)) {
+      server.requestsPerConnection = 1;
+      assertEcho(connector, "request 1", false);
+      try {
+        connector.send(bytes("request 2"), false);
+        Assert.fail("IOException expected");
+      } catch (IOException ex) {
+        // expected, the request may have been processed by the server
+      }
+      Assert.assertEquals(1, server.connections.get());
+
+      // the broken connection is discarded
+      assertEcho(connector, "request 3", false);
+      Assert.assertEquals(2, server.connections.get());
+    }
+  }
+
+  private static ProxyP11Connector createConnector(EchoServer server) throws IOException {
+    return new ProxyP11Connector(server.getUrl(), null, null, 2, 5000, 5000);
+  }
+
+  private static void assertEcho(ProxyP11Connector connector, String text, boolean idempotent)
+      throws IOException {
+    Assert.assertArrayEquals(bytes(text), connector.send(bytes(text), idempotent));
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.security.BadAsn1ObjectException;
+import org.xipki.security.pkcs11.P11ObjectIdentifier;
+import org.xipki.security.pkcs11.P11SlotIdentifier;
+
+/**
+ * SignBatchTemplate test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class SignBatchTemplateTest {
+
+  private static final long CKM_ECDSA = 0x1041;
+
+  private static final long CKM_AES_CMAC = 0x108A;
+
+  private static final P11SlotIdentifier SLOT_ID = new P11SlotIdentifier(1, 0x1234);
+
+  private static final P11ObjectIdentifier OBJECT_ID =
+      new P11ObjectIdentifier(new byte[] {1, 2, 3, 4}, "batch-key");
+
+  @Test
+  public void testRoundtripWithoutParams() throws Exception {
+    List<byte[]> messages = createMessages(10);
+    ProxyMessage.SignBatchTemplate template = new ProxyMessage.SignBatchTemplate(
+        new ProxyMessage.SlotIdentifier(SLOT_ID), new ProxyMessage.ObjectIdentifier(OBJECT_ID),
+        CKM_ECDSA, null, messages);
+
+    ProxyMessage.SignBatchTemplate parsed =
+        ProxyMessage.SignBatchTemplate.getInstance(template.getEncoded());
+
+    Assert.assertEquals(SLOT_ID, parsed.getSlotId().getValue());
+    Assert.assertEquals(OBJECT_ID, parsed.getObjectId().getValue());
+    Assert.assertEquals(CKM_ECDSA, parsed.getMechanism().getMechanism());
+    Assert.assertNull(parsed.getMechanism().getParams());
+    assertEquals(messages, parsed.getMessages());
+    Assert.assertArrayEquals(template.getEncoded(), parsed.getEncoded());
+  }
+
+  @Test
+  public void testRoundtripWithParams() throws Exception {
+    byte[] iv = new byte[16];
+    Arrays.fill(iv, (byte) 0x5A);
+    ProxyMessage.P11Params params =
+        new ProxyMessage.P11Params(ProxyMessage.P11Params.TAG_IV, new DEROctetString(iv));
+
+    // includes an empty message
+    List<byte[]> messages = createMessages(3);
+    messages.add(new byte[0]);
+
+    ProxyMessage.SignBatchTemplate template = new ProxyMessage.SignBatchTemplate(
+        new ProxyMessage.SlotIdentifier(SLOT_ID), new ProxyMessage.ObjectIdentifier(OBJECT_ID),
+        CKM_AES_CMAC, params, messages);
+
+    ProxyMessage.SignBatchTemplate parsed =
+        ProxyMessage.SignBatchTemplate.getInstance(template.getEncoded());
+
+    Assert.assertEquals(CKM_AES_CMAC, parsed.getMechanism().getMechanism());
+    ProxyMessage.P11Params parsedParams = parsed.getMechanism().getParams();
+    Assert.assertEquals(ProxyMessage.P11Params.TAG_IV, parsedParams.getTagNo());
+    Assert.assertArrayEquals(iv,
+        DEROctetString.getInstance(parsedParams.getP11Params()).getOctets());
+    assertEquals(messages, parsed.getMessages());
+  }
+
+  @Test
+  public void testOctetStrings() throws Exception {
+    List<byte[]> signatures = createMessages(5);
+    byte[] encoded = ProxyMessage.encodeOctetStrings(signatures).getEncoded();
+    assertEquals(signatures, ProxyMessage.getOctetStrings(ASN1Sequence.getInstance(encoded)));
+  }
+
+  @Test
+  public void testInvalidEncoding() throws Exception {
+    // messages is not SEQUENCE OF OCTET STRING
+    ASN1EncodableVector messages = new ASN1EncodableVector();
+    messages.add(new DEROctetString(new byte[] {1}));
+    messages.add(new ASN1Integer(2));
+
+    ASN1EncodableVector vector = new ASN1EncodableVector();
+    vector.add(new ProxyMessage.SlotIdentifier(SLOT_ID));
+    vector.add(new ProxyMessage.ObjectIdentifier(OBJECT_ID));
+    vector.add(new ProxyMessage.Mechanism(CKM_ECDSA, null));
+    vector.add(new DERSequence(messages));
+    assertInvalid(new DERSequence(vector).getEncoded());
+
+    // messages is absent
+    vector = new ASN1EncodableVector();
+    vector.add(new ProxyMessage.SlotIdentifier(SLOT_ID));
+    vector.add(new ProxyMessage.ObjectIdentifier(OBJECT_ID));
+    vector.add(new ProxyMessage.Mechanism(CKM_ECDSA, null));
+    assertInvalid(new DERSequence(vector).getEncoded());
+  }
+
+  private static void assertInvalid(byte[] encoded) {
+    try {
+      ProxyMessage.SignBatchTemplate.getInstance(encoded);
+      Assert.fail("BadAsn1ObjectException expected");
+    } catch (BadAsn1ObjectException ex) {
+      // expected
+    }
+  }
+
+  private static List<byte[]> createMessages(int num) {
+    List<byte[]> messages = new ArrayList<>(num);
+    for (int i = 0; i < num; i++) {
+      byte[] message = new byte[20 + i * 7];
+      for (int j = 0; j < message.length; j++) {
+        message[j] = (byte) (i + j);
+      }
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  private static void assertEquals(List<byte[]> expected, List<byte[]> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertArrayEquals("message " + i, expected.get(i), actual.get(i));
+    }
+  }
+
+}
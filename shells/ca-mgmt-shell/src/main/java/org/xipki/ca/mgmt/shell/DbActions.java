@@ -157,10 +157,14 @@ public class DbActions {
     @Option(name = "--resume", description = "resume from the last successful point")
     private Boolean resume = Boolean.FALSE;
 
+    @Option(name = "--threads",
+        description = "number of threads to export the certificates, each with own connection")
+    private Integer numThreads = 1;
+
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
       return new DbPortWorker.ExportCaDb(datasourceFactory, passwordResolver, dbconfFile, outdir,
-          resume, numCertsInBundle, numCertsPerCommit);
+          resume, numCertsInBundle, numCertsPerCommit, numThreads);
     }
 
   } // class ExportCa
@@ -212,10 +216,14 @@ public class DbActions {
     @Option(name = "--resume", description = "resume from the last successful point")
     private Boolean resume = Boolean.FALSE;
 
+    @Option(name = "--threads",
+        description = "number of threads to import the certificates, each with own connection")
+    private Integer numThreads = 1;
+
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
       return new DbPortWorker.ImportCaDb(datasourceFactory, passwordResolver, dbconfFile, resume,
-          indir, numCertsPerCommit.intValue());
+          indir, numCertsPerCommit.intValue(), numThreads.intValue());
     }
 
   } // class ImportCa
@@ -262,6 +262,20 @@ public class QaCaActions {
     @Option(name = "--thread", description = "number of threads")
     private Integer numThreads = 5;
 
+    @Option(name = "--rate",
+        description = "target number of requests per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer targetRate = 0;
+
+    @Option(name = "--warmup", description = "warm-up time, excluded from the result")
+    private String warmup = "0s";
+
+    @Option(name = "--result-file",
+        description = "file to save the result, CSV (appended) if it ends with .csv, "
+            + "and JSON otherwise")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     @Completion(value = StringsCompleter.class, values = {"RSA", "EC", "DSA"})
     @Option(name = "--key-type", description = "key type to be requested")
     private String keyType = "RSA";
@@ -327,6 +341,9 @@ public class QaCaActions {
 
       benchmark.setDuration(duration);
       benchmark.setThreads(numThreads);
+      benchmark.setTargetRate(targetRate);
+      benchmark.setWarmup(warmup);
+      benchmark.setResultFile(resultFile);
       benchmark.execute();
 
       return null;
@@ -498,6 +498,20 @@ public class QaOcspActions {
     @Option(name = "--thread", description = "number of threads")
     private Integer numThreads = 5;
 
+    @Option(name = "--rate",
+        description = "target number of requests per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer targetRate = 0;
+
+    @Option(name = "--warmup", description = "warm-up time, excluded from the result")
+    private String warmup = "0s";
+
+    @Option(name = "--result-file",
+        description = "file to save the result, CSV (appended) if it ends with .csv, "
+            + "and JSON otherwise")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     @Option(name = "--url", required = true, description = "OCSP responder URL")
     private String serverUrl;
 
@@ -577,6 +591,9 @@ public class QaOcspActions {
             serialNumberIterator, maxRequests, queueSize, description.toString());
         loadTest.setDuration(duration);
         loadTest.setThreads(numThreads);
+        loadTest.setTargetRate(targetRate);
+        loadTest.setWarmup(warmup);
+        loadTest.setResultFile(resultFile);
         loadTest.execute();
       } finally {
         if (serialNumberIterator instanceof FileBigIntegerIterator) {
@@ -26,6 +26,7 @@ import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.FileCompleter;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.gm.GMObjectIdentifiers;
 import org.slf4j.Logger;
@@ -128,6 +129,20 @@ public class QaSecurityActions {
     @Option(name = "--thread", description = "number of threads")
     private Integer numThreads = 5;
 
+    @Option(name = "--rate",
+        description = "target number of requests per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer targetRate = 0;
+
+    @Option(name = "--warmup", description = "warm-up time, excluded from the result")
+    private String warmup = "0s";
+
+    @Option(name = "--result-file",
+        description = "file to save the result, CSV (appended) if it ends with .csv, "
+            + "and JSON otherwise")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     protected abstract BenchmarkExecutor getTester() throws Exception;
 
     @Override
@@ -135,6 +150,9 @@ public class QaSecurityActions {
       BenchmarkExecutor tester = getTester();
       tester.setDuration(duration);
       tester.setThreads(getNumThreads());
+      tester.setTargetRate(targetRate);
+      tester.setWarmup(warmup);
+      tester.setResultFile(resultFile);
 
       tester.execute();
       return null;
@@ -156,6 +174,20 @@ public class QaSecurityActions {
     @Option(name = "--thread", description = "number of threads")
     private Integer numThreads = 5;
 
+    @Option(name = "--rate",
+        description = "target number of requests per second (open-loop)\n"
+            + "0 for closed-loop")
+    private Integer targetRate = 0;
+
+    @Option(name = "--warmup", description = "warm-up time, excluded from the result")
+    private String warmup = "0s";
+
+    @Option(name = "--result-file",
+        description = "file to save the result, CSV (appended) if it ends with .csv, "
+            + "and JSON otherwise")
+    @Completion(FileCompleter.class)
+    private String resultFile;
+
     protected abstract BenchmarkExecutor nextTester() throws Exception;
 
     @Override
@@ -178,6 +210,9 @@ public class QaSecurityActions {
 
         tester.setDuration(duration);
         tester.setThreads(numThreads);
+        tester.setTargetRate(targetRate);
+        tester.setWarmup(warmup);
+        tester.setResultFile(resultFile);
         tester.execute();
         if (tester.isInterrupted()) {
           throw new InterruptedException("cancelled by the user");
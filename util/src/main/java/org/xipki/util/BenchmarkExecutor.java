@@ -17,6 +17,10 @@
 
 package org.xipki.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Date;
@@ -25,10 +29,18 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Benchmark executor.
  *
+ * <p>In the default closed-loop mode, each thread sends the next request once the previous one
+ * has been processed. In the open-loop mode (target rate greater than 0), the requests are
+ * scheduled at fixed intervals independent of the responses, and the latency is measured from
+ * the scheduled start time, so that the waiting time of the delayed requests is included
+ * (no coordinated omission). The requests scheduled within the warm-up are excluded from the
+ * statistics.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
@@ -55,6 +67,31 @@ public abstract class BenchmarkExecutor {
 
   private String unit = "";
 
+  /**
+   * Target number of requests per second of all threads, 0 for the closed-loop mode.
+   */
+  private int targetRate;
+
+  private int warmup; // in seconds
+
+  /**
+   * File to save the result. CSV (the result is appended) if the file name ends with
+   * {@code .csv}, and JSON otherwise.
+   */
+  private String resultFile;
+
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  private final AtomicLong requestIndex = new AtomicLong();
+
+  private long intervalNanos;
+
+  private volatile long scheduleStartNanos;
+
+  private volatile long measureStartNanos;
+
+  private volatile boolean warmedUp;
+
   public BenchmarkExecutor(String description) {
     this(description, 0);
   }
@@ -97,11 +134,22 @@ public abstract class BenchmarkExecutor {
       }
     }
     sb.append("threads: ").append(threads).append("\n");
+    sb.append("mode: ").append(targetRate > 0
+        ? "open-loop, target rate " + targetRate + " requests/s" : "closed-loop").append("\n");
+    if (warmup > 0) {
+      sb.append("warm-up: ").append(StringUtil.formatTime(warmup, false)).append("\n");
+    }
     sb.append("duration: ").append(StringUtil.formatTime(duration, false)).append("\n");
     sb.append("unit: ").append(unit);
 
     System.out.println(sb.toString());
 
+    intervalNanos = targetRate > 0 ? TimeUnit.SECONDS.toNanos(1) / targetRate : 0;
+    requestIndex.set(0);
+    latencies.reset();
+    scheduleStartNanos = System.nanoTime();
+    measureStartNanos = scheduleStartNanos + TimeUnit.SECONDS.toNanos(warmup);
+    warmedUp = (warmup == 0);
     resetStartTime();
 
     ExecutorService executor = Executors.newFixedThreadPool(threads);
@@ -114,17 +162,32 @@ public abstract class BenchmarkExecutor {
     while (true) {
       printStatus();
       try {
-        boolean terminated = executor.awaitTermination(1, TimeUnit.SECONDS);
+        long waitMs = 1000;
+        if (!warmedUp) {
+          waitMs = Math.max(0, Math.min(waitMs,
+              TimeUnit.NANOSECONDS.toMillis(measureStartNanos - System.nanoTime())));
+        }
+
+        boolean terminated = executor.awaitTermination(waitMs, TimeUnit.MILLISECONDS);
         if (terminated) {
           break;
         }
       } catch (InterruptedException ex) {
         interrupted = true;
       }
+
+      if (!warmedUp && System.nanoTime() >= measureStartNanos) {
+        // throughput is measured after the warm-up
+        warmedUp = true;
+        System.out.println("\nwarm-up finished");
+        resetStartTime();
+        printHeader();
+      }
     }
 
     printStatus();
     printSummary();
+    saveResult();
 
     close();
     System.getProperties().remove(PROPKEY_BENCHMARK);
@@ -135,6 +198,39 @@ public abstract class BenchmarkExecutor {
   }
 
   public void setDuration(String duration) {
+    int num = parseDuration(duration);
+    if (num < 1) {
+      throw new IllegalArgumentException("invalid duration " + duration);
+    }
+    this.duration = num;
+  }
+
+  /**
+   * Sets the warm-up time, within which the requests are not measured.
+   *
+   * @param warmup
+   *          The warm-up time, e.g. 30s, 5m. 0 for no warm-up.
+   */
+  public void setWarmup(String warmup) {
+    this.warmup = parseDuration(warmup);
+  }
+
+  /**
+   * Sets the target number of requests per second of all threads.
+   *
+   * @param targetRate
+   *          The target rate. Greater than 0 for the open-loop mode, and 0 for the closed-loop
+   *          mode.
+   */
+  public void setTargetRate(int targetRate) {
+    this.targetRate = Args.notNegative(targetRate, "targetRate");
+  }
+
+  public void setResultFile(String resultFile) {
+    this.resultFile = resultFile;
+  }
+
+  private static int parseDuration(String duration) {
     Args.notBlank(duration, "duration");
     char unit = duration.charAt(duration.length() - 1);
 
@@ -153,24 +249,21 @@ public abstract class BenchmarkExecutor {
       throw new IllegalArgumentException("invalid duration " + duration);
     }
 
-    if (num < 1) {
+    if (num < 0) {
       throw new IllegalArgumentException("invalid duration " + duration);
     }
 
     switch (unit) {
       case 's':
-        this.duration = num;
-        break;
+        return num;
       case 'm':
-        this.duration = num * 60;
-        break;
+        return num * 60;
       case 'h':
-        this.duration = num * 3600; // 3600 = 60 * 60
-        break;
+        return num * 3600; // 3600 = 60 * 60
       default:
         throw new IllegalStateException("invalid duration unit " + unit);
     }
-  }
+  } // method parseDuration
 
   public void setThreads(int threads) {
     if (threads > 0) {
@@ -199,7 +292,38 @@ public abstract class BenchmarkExecutor {
 
   protected boolean stop() {
     return interrupted || errorAccount.get() > 0
-        || System.currentTimeMillis() - processLog.startTimeMs() >= duration * 1000L;
+        || System.nanoTime() - measureStartNanos >= TimeUnit.SECONDS.toNanos(duration);
+  }
+
+  /**
+   * Waits, in the open-loop mode, until the next request is scheduled.
+   *
+   * @return the scheduled start time of the request in nanoseconds, as returned by
+   *     {@link System#nanoTime()}. In the closed-loop mode, the current time.
+   */
+  protected long startRequest() {
+    if (intervalNanos == 0) {
+      return System.nanoTime();
+    }
+
+    long scheduledTime = scheduleStartNanos + requestIndex.getAndIncrement() * intervalNanos;
+    long waitNanos;
+    while ((waitNanos = scheduledTime - System.nanoTime()) > 0 && !interrupted) {
+      LockSupport.parkNanos(waitNanos);
+    }
+    return scheduledTime;
+  } // method startRequest
+
+  /**
+   * Records the latency of a processed request.
+   *
+   * @param startNanos
+   *          The start time returned by {@link #startRequest()}.
+   */
+  protected void recordLatency(long startNanos) {
+    if (startNanos - measureStartNanos >= 0) {
+      latencies.record(System.nanoTime() - startNanos);
+    }
   }
 
   protected void printHeader() {
@@ -225,11 +349,125 @@ public abstract class BenchmarkExecutor {
         "\n   duration: ", StringUtil.formatTime(processLog.totalElapsedTime() / 1000, false),
         "\n    account: ", StringUtil.formatAccount(processLog.numProcessed(), 1), " ", unit,
         "\n     failed: ", StringUtil.formatAccount(errorAccount.get(), 1), " ", unit,
-        "\n    average: ", averageText, " ", unit, "/s\n");
+        "\n    average: ", averageText, " ", unit, "/s");
 
     System.out.println(msg);
+
+    if (latencies.getCount() > 0) {
+      System.out.println(StringUtil.concatObjectsCap(300,
+          "   requests: ", StringUtil.formatAccount(latencies.getCount(), 1),
+          "\nlatency(us): mean=", latencies.getMean(),
+          ", p50=", latencies.getValueAtPercentile(50),
+          ", p99=", latencies.getValueAtPercentile(99),
+          ", p99.9=", latencies.getValueAtPercentile(99.9),
+          ", max=", latencies.getMax()));
+    }
+
+    if (targetRate > 0) {
+      long elapsedMs = Math.max(1, processLog.totalElapsedTime());
+      long rate = latencies.getCount() * 1000 / elapsedMs;
+      if (rate < targetRate * 9L / 10) {
+        System.out.println("target rate " + targetRate + " requests/s not reached, only "
+            + rate + " requests/s");
+      }
+    }
+    System.out.println();
+  } // method printSummary
+
+  private void saveResult() {
+    if (StringUtil.isBlank(resultFile)) {
+      return;
+    }
+
+    boolean csv = resultFile.toLowerCase().endsWith(".csv");
+    String[][] fields = {
+      {"description", description},
+      {"mode", targetRate > 0 ? "open-loop" : "closed-loop"},
+      {"threads", Integer.toString(threads)},
+      {"targetRate", Integer.toString(targetRate)},
+      {"warmup", Integer.toString(warmup)},
+      {"startTime", DateUtil.toUtcTimeyyyyMMddhhmmss(new Date(processLog.startTimeMs()))},
+      {"durationMs", Long.toString(processLog.totalElapsedTime())},
+      {"unit", unit},
+      {"account", Long.toString(processLog.numProcessed())},
+      {"failed", Long.toString(errorAccount.get())},
+      {"average", Integer.toString(processLog.totalAverageSpeed())},
+      {"requests", Long.toString(latencies.getCount())},
+      {"latencyMeanUs", Long.toString(latencies.getMean())},
+      {"latencyP50Us", Long.toString(latencies.getValueAtPercentile(50))},
+      {"latencyP90Us", Long.toString(latencies.getValueAtPercentile(90))},
+      {"latencyP99Us", Long.toString(latencies.getValueAtPercentile(99))},
+      {"latencyP999Us", Long.toString(latencies.getValueAtPercentile(99.9))},
+      {"latencyMaxUs", Long.toString(latencies.getMax())}};
+
+    // only description, mode, startTime and unit are texts
+    StringBuilder sb = new StringBuilder(1000);
+    try {
+      File file = new File(IoUtil.expandFilepath(resultFile));
+      if (csv) {
+        if (!file.exists() || file.length() == 0) {
+          for (int i = 0; i < fields.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(fields[i][0]);
+          }
+          sb.append("\n");
+        }
+
+        for (int i = 0; i < fields.length; i++) {
+          String value = fields[i][1];
+          sb.append(i == 0 ? "" : ",");
+          if (isTextField(fields[i][0])) {
+            sb.append('"').append(value.replace("\"", "\"\"").replace('\n', ' ')).append('"');
+          } else {
+            sb.append(value);
+          }
+        }
+        sb.append("\n");
+
+        IoUtil.mkdirsParent(file.toPath());
+        Files.write(file.toPath(), StringUtil.toUtf8Bytes(sb.toString()),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } else {
+        sb.append("{");
+        for (int i = 0; i < fields.length; i++) {
+          sb.append(i == 0 ? "\n" : ",\n").append("  \"").append(fields[i][0]).append("\": ");
+          if (isTextField(fields[i][0])) {
+            sb.append('"').append(escapeJson(fields[i][1])).append('"');
+          } else {
+            sb.append(fields[i][1]);
+          }
+        }
+        sb.append("\n}\n");
+
+        IoUtil.save(file, StringUtil.toUtf8Bytes(sb.toString()));
+      }
+      System.out.println("saved result in " + file.getPath());
+    } catch (IOException ex) {
+      System.err.println("could not save result in " + resultFile + ": " + ex.getMessage());
+    }
+  } // method saveResult
+
+  private static boolean isTextField(String name) {
+    return "description".equals(name) || "mode".equals(name)
+        || "startTime".equals(name) || "unit".equals(name);
   }
 
+  private static String escapeJson(String text) {
+    StringBuilder sb = new StringBuilder(text.length() + 10);
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      if (ch == '"' || ch == '\\') {
+        sb.append('\\').append(ch);
+      } else if (ch == '\n') {
+        sb.append("\\n");
+      } else if (ch < 0x20) {
+        sb.append(String.format("\\u%04x", (int) ch));
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  } // method escapeJson
+
   protected static long getSecureIndex() {
     SecureRandom random = new SecureRandom();
     while (true) {
@@ -0,0 +1,152 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds with log-linear buckets, similar to
+ * HdrHistogram. Each power of two is divided into 16 sub-buckets, so that the relative error
+ * of the reported values is less than 7%.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int NUM_BUCKETS = (SUB_BUCKETS / 2) * (64 - SUB_BUCKET_BITS + 2);
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos
+   *          the latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(bucketIndex(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+
+    long currentMax = max.get();
+    while (micros > currentMax) {
+      if (max.compareAndSet(currentMax, micros)) {
+        break;
+      }
+      currentMax = max.get();
+    }
+  } // method record
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the mean of the latencies.
+   * @return the mean in microseconds.
+   */
+  public long getMean() {
+    long cnt = count.get();
+    return cnt == 0 ? 0 : sum.get() / cnt;
+  }
+
+  /**
+   * Returns the maximal latency.
+   * @return the maximal latency in microseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   *
+   * @param percentile
+   *          percentile between 0 and 100.
+   * @return the upper bound of the bucket containing the value, in microseconds.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long threshold = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100 * total);
+    threshold = Math.max(1, threshold);
+
+    long accumulated = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      accumulated += snapshot[i];
+      if (accumulated >= threshold) {
+        return Math.min(max.get(), bucketUpperBound(i));
+      }
+    }
+    return max.get();
+  } // method getValueAtPercentile
+
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    // value >>> shift is in [SUB_BUCKETS / 2, SUB_BUCKETS)
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * (SUB_BUCKETS / 2) + (int) (value >>> shift);
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    final int half = SUB_BUCKETS / 2;
+    int shift = index / half - 1;
+    long subBucket = index % half + half;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ * Copyright (c) 2013 - 2019 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.util.LatencyHistogram;
+
+/**
+ * LatencyHistogram test.
+ *
+ * @author Lijun Liao
+ * @since 5.3.6
+ */
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getMean());
+    Assert.assertEquals(0, histogram.getMax());
+    Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+    Assert.assertEquals(0, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testSmallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 0 to 31 microseconds, each value has its own bucket
+    for (int i = 0; i < 32; i++) {
+      histogram.record(i * 1000L + 999);
+    }
+
+    Assert.assertEquals(32, histogram.getCount());
+    Assert.assertEquals(31, histogram.getMax());
+    Assert.assertEquals(15, histogram.getMean());
+    Assert.assertEquals(0, histogram.getValueAtPercentile(0));
+    Assert.assertEquals(15, histogram.getValueAtPercentile(50));
+    Assert.assertEquals(28, histogram.getValueAtPercentile(90));
+    Assert.assertEquals(31, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testBucketBounds() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 32 and 33 microseconds share the first bucket with width 2
+    histogram.record(32000);
+    histogram.record(100000);
+    Assert.assertEquals(33, histogram.getValueAtPercentile(50));
+    Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+
+    histogram.reset();
+    // 1024 to 1087 microseconds share one bucket with width 64
+    histogram.record(1024000);
+    histogram.record(2000000);
+    Assert.assertEquals(1087, histogram.getValueAtPercentile(50));
+
+    // the reported value never exceeds the maximum
+    histogram.reset();
+    histogram.record(1024000);
+    Assert.assertEquals(1024, histogram.getValueAtPercentile(50));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(1);
+    final int num = 100000;
+    long[] values = new long[num];
+    long sum = 0;
+    for (int i = 0; i < num; i++) {
+      // log-uniform distribution between 1 microsecond and 10 seconds
+      values[i] = (long) Math.pow(10, 7 * random.nextDouble());
+      sum += values[i];
+      histogram.record(values[i] * 1000);
+    }
+    Arrays.sort(values);
+
+    Assert.assertEquals(num, histogram.getCount());
+    Assert.assertEquals(values[num - 1], histogram.getMax());
+    Assert.assertEquals(sum / num, histogram.getMean());
+
+    double[] percentiles = {1, 10, 50, 90, 99, 99.9, 100};
+    for (double percentile : percentiles) {
+      long exact = values[(int) Math.ceil(percentile / 100 * num) - 1];
+      long value = histogram.getValueAtPercentile(percentile);
+      Assert.assertTrue("p" + percentile + ": " + value + " < " + exact, value >= exact);
+      Assert.assertTrue("p" + percentile + ": " + value + " too far from " + exact,
+          value <= exact + exact / 16);
+    }
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(5000000);
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getMax());
+    Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+}